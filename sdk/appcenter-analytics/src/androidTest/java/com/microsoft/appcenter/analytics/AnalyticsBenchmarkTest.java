@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.app.Application;
+import android.app.Instrumentation;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measure how many events per second application threads can track and the cost of per event checks.
+ * Results are printed in logcat with the {@link #TAG} tag.
+ */
+@SuppressWarnings("unused")
+public class AnalyticsBenchmarkTest {
+
+    private static final String TAG = "AnalyticsBenchmark";
+
+    private static final int EVENTS_PER_THREAD = 5000;
+
+    private static final int TARGET_TREE_DEPTH = 5;
+
+    private static final int ENABLED_CHECKS = 100000;
+
+    private static final int VALIDATED_EVENTS = 10000;
+
+    @Before
+    public void setUp() throws Exception {
+        Constants.APPLICATION_DEBUGGABLE = false;
+        Application application = Instrumentation.newApplication(Application.class, InstrumentationRegistry.getTargetContext());
+        AppCenter.start(application, UUID.randomUUID().toString(), Analytics.class);
+
+        /* Avoid network while measuring. */
+        Analytics.pause();
+    }
+
+    @After
+    public void tearDown() {
+
+        /* Disabling clears the stored events. */
+        Analytics.setEnabled(false).get();
+        Analytics.setEnabled(true).get();
+    }
+
+    @Test
+    public void trackEventThroughput() throws InterruptedException {
+        for (int producers : new int[]{1, 4, 8}) {
+            double eventsPerSecond = measure(producers);
+            Log.i(TAG, String.format(Locale.ENGLISH, "trackEvent producers=%d eventsPerSecond=%.0f", producers, eventsPerSecond));
+            assertTrue(eventsPerSecond > 0);
+        }
+    }
+
+    @Test
+    public void transmissionTargetTreeEnabledCheck() {
+
+        /* Build a 5 level tree of transmission targets. */
+        AnalyticsTransmissionTarget target = Analytics.getTransmissionTarget(UUID.randomUUID().toString());
+        for (int level = 1; level < TARGET_TREE_DEPTH; level++) {
+            target = target.getTransmissionTarget(UUID.randomUUID().toString());
+        }
+
+        /* Wait for targets to be initialized and warm up. */
+        AnalyticsTransmissionTarget leaf = target;
+        assertTrue(leaf.isEnabledAsync().get());
+
+        /* Measure the enabled check done for every event tracked with the leaf target. */
+        long startTime = System.nanoTime();
+        for (int i = 0; i < ENABLED_CHECKS; i++) {
+            assertTrue(leaf.isEnabled());
+        }
+        long elapsed = System.nanoTime() - startTime;
+        Log.i(TAG, String.format(Locale.ENGLISH, "isEnabled depth=%d nanosPerCall=%.1f", TARGET_TREE_DEPTH, (double) elapsed / ENABLED_CHECKS));
+
+        /* Measure events tracked with the leaf target until processed in background. */
+        startTime = System.nanoTime();
+        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+            leaf.trackEvent("benchmark");
+        }
+        leaf.isEnabledAsync().get();
+        elapsed = System.nanoTime() - startTime;
+        Log.i(TAG, String.format(Locale.ENGLISH, "trackEvent depth=%d eventsPerSecond=%.0f", TARGET_TREE_DEPTH, EVENTS_PER_THREAD * 1e9 / elapsed));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void eventValidationAllocations() {
+
+        /* Create logs first so that only validation allocations are counted. */
+        List<EventLog> eventLogs = new ArrayList<>(VALIDATED_EVENTS);
+        for (int i = 0; i < VALIDATED_EVENTS; i++) {
+            eventLogs.add(createEventLog(i));
+        }
+
+        /* The same event name and property keys are validated repeatedly. */
+        AnalyticsValidator validator = new AnalyticsValidator();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < VALIDATED_EVENTS; i++) {
+            validator.shouldFilter(eventLogs.get(i));
+        }
+        long elapsed = System.nanoTime() - startTime;
+        Debug.stopAllocCounting();
+        Log.i(TAG, String.format(Locale.ENGLISH, "validate allocationsPerEvent=%.2f bytesPerEvent=%.1f nanosPerEvent=%.1f",
+                (double) Debug.getThreadAllocCount() / VALIDATED_EVENTS,
+                (double) Debug.getThreadAllocSize() / VALIDATED_EVENTS,
+                (double) elapsed / VALIDATED_EVENTS));
+    }
+
+    private static EventLog createEventLog(int index) {
+        List<TypedProperty> properties = new ArrayList<>();
+        StringTypedProperty screen = new StringTypedProperty();
+        screen.setName("screen");
+        screen.setValue("home");
+        properties.add(screen);
+        StringTypedProperty item = new StringTypedProperty();
+        item.setName("item");
+        item.setValue("item" + index);
+        properties.add(item);
+        LongTypedProperty position = new LongTypedProperty();
+        position.setName("position");
+        position.setValue(index);
+        properties.add(position);
+        EventLog eventLog = new EventLog();
+        eventLog.setName("benchmark");
+        eventLog.setTypedProperties(properties);
+        return eventLog;
+    }
+
+    private static double measure(int producers) throws InterruptedException {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("key1", "value1");
+        properties.put("key2", "value2");
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int i = 0; i < producers; i++) {
+            new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < EVENTS_PER_THREAD; j++) {
+                        Analytics.trackEvent("benchmark", properties);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - startTime;
+
+        /* Wait for background processing before next measure. */
+        Analytics.isEnabled().get();
+        return producers * EVENTS_PER_THREAD * 1e9 / elapsed;
+    }
+}
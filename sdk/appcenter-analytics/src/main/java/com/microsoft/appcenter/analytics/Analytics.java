@@ -33,18 +33,23 @@ import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.LogIdGenerator;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Analytics service.
@@ -94,6 +99,18 @@ public class Analytics extends AbstractAppCenterService {
     @VisibleForTesting
     static final int MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS = 24 * 60 * 60;
 
+    /**
+     * Maximum number of pending events converted to logs in a single background command.
+     */
+    @VisibleForTesting
+    static final int MAX_EVENTS_PER_DRAIN = 100;
+
+    /**
+     * Default duration of the window over which aggregated events are accumulated.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_EVENT_AGGREGATION_INTERVAL_IN_SECONDS = 60;
+
     /**
      * Log factories managed by this service.
      */
@@ -104,6 +121,12 @@ public class Analytics extends AbstractAppCenterService {
      */
     private final Map<String, AnalyticsTransmissionTarget> mTransmissionTargets;
 
+    /**
+     * Effective enabled state of transmission targets by preference key, shared by all the targets using the same token.
+     * Only accessed from the App Center background thread.
+     */
+    private final Map<String, Boolean> mTransmissionTargetEnabledStates;
+
     /**
      * The default transmission target.
      */
@@ -150,12 +173,105 @@ public class Analytics extends AbstractAppCenterService {
      */
     private long mTransmissionInterval;
 
+    /**
+     * Maximum age of stored events in milliseconds, 0 means events never expire.
+     */
+    private long mLogTimeToLive;
+
+    /**
+     * Maximum size of stored events in bytes, 0 means Analytics shares the whole storage with other services.
+     */
+    private long mMaxEventStorageSize;
+
     /**
      * Automatic page tracking flag.
      * TODO the backend does not support pages yet so the default value would be true after the service becomes public.
      */
     private boolean mAutoPageTrackingEnabled = false;
 
+    /**
+     * Events tracked from any thread and not yet converted to logs.
+     */
+    private final Queue<PendingEvent> mPendingEvents = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True if a command to drain {@link #mPendingEvents} is already posted.
+     */
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+
+    /**
+     * Command draining pending events, shared by all events to avoid allocations.
+     */
+    private final Runnable mDrainPendingEventsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            drainPendingEvents();
+        }
+    };
+
+    /**
+     * Command discarding pending events if App Center or Analytics is disabled.
+     */
+    private final Runnable mDiscardPendingEventsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            AppCenterLog.info(LOG_TAG, "App Center or " + SERVICE_NAME + " service disabled, discarding events.");
+            discardPendingEvents();
+        }
+    };
+
+    /**
+     * Events tracked with {@link #trackAggregatedEvent} in the current window.
+     */
+    private final EventAggregator mEventAggregator = new EventAggregator();
+
+    /**
+     * Sampling policy of tracked events.
+     */
+    private final EventSampler mEventSampler = new EventSampler();
+
+    /**
+     * Duration of the event aggregation window in milliseconds.
+     */
+    private volatile long mEventAggregationInterval = TimeUnit.SECONDS.toMillis(DEFAULT_EVENT_AGGREGATION_INTERVAL_IN_SECONDS);
+
+    /**
+     * Command sending the aggregated events of the current window.
+     */
+    private final Runnable mFlushAggregatedEventsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            flushAggregatedEvents();
+        }
+    };
+
+    /**
+     * Command discarding aggregated events if App Center or Analytics is disabled.
+     */
+    private final Runnable mDiscardAggregatedEventsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            mEventAggregator.clear();
+        }
+    };
+
+    /**
+     * Timer ending the aggregation window, runs on the main thread.
+     */
+    private final Runnable mAggregationWindowTimer = new Runnable() {
+
+        @Override
+        public void run() {
+            if (!post(mFlushAggregatedEventsRunnable, mDiscardAggregatedEventsRunnable, mDiscardAggregatedEventsRunnable)) {
+                mEventAggregator.clear();
+            }
+        }
+    };
+
     /**
      * Init.
      */
@@ -166,6 +282,7 @@ public class Analytics extends AbstractAppCenterService {
         mFactories.put(EventLog.TYPE, new EventLogFactory());
         mFactories.put(CommonSchemaEventLog.TYPE, new CommonSchemaEventLogFactory());
         mTransmissionTargets = new HashMap<>();
+        mTransmissionTargetEnabledStates = new HashMap<>();
         mTransmissionInterval = TimeUnit.SECONDS.toMillis(MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS);
     }
 
@@ -220,6 +337,31 @@ public class Analytics extends AbstractAppCenterService {
         return getInstance().setInstanceTransmissionInterval(seconds);
     }
 
+    /**
+     * Set the maximum age of stored events, older events are deleted instead of being sent.
+     * Events never expire by default, use 0 to restore that behavior.
+     * Should be called before the service is started.
+     *
+     * @param milliseconds maximum age of stored events in milliseconds.
+     * @return <code>true</code> if the time to live is set, <code>false</code> otherwise.
+     */
+    public static boolean setEventTimeToLive(long milliseconds) {
+        return getInstance().setInstanceEventTimeToLive(milliseconds);
+    }
+
+    /**
+     * Set the maximum size of storage used by events, the oldest events are deleted when it is exceeded
+     * so that events cannot evict the logs of other services.
+     * There is no dedicated limit by default, use 0 to restore that behavior.
+     * Should be called before the service is started.
+     *
+     * @param bytes maximum size of stored events in bytes.
+     * @return <code>true</code> if the size is set, <code>false</code> otherwise.
+     */
+    public static boolean setMaxEventStorageSize(long bytes) {
+        return getInstance().setInstanceMaxEventStorageSize(bytes);
+    }
+
     /**
      * Pauses log transmission. This API cannot be used if the service is disabled.
      * Transmission is resumed:
@@ -355,7 +497,7 @@ public class Analytics extends AbstractAppCenterService {
      * @param properties Optional properties.
      */
     public static void trackEvent(String name, Map<String, String> properties) {
-        getInstance().trackEventAsync(name, convertProperties(properties), null, Flags.DEFAULTS);
+        trackEvent(name, properties, Flags.DEFAULTS);
     }
 
     /**
@@ -391,7 +533,11 @@ public class Analytics extends AbstractAppCenterService {
      *                   {@link Flags#CRITICAL} flag.
      */
     public static void trackEvent(String name, Map<String, String> properties, int flags) {
-        getInstance().trackEventAsync(name, convertProperties(properties), null, flags);
+        Analytics instance = getInstance();
+        EventSampler.Decision samplingDecision = instance.mEventSampler.sample(name);
+        if (samplingDecision != EventSampler.Decision.DROPPED) {
+            instance.trackEventAsync(name, convertProperties(properties), null, null, flags, samplingDecision);
+        }
     }
 
     /**
@@ -465,11 +611,198 @@ public class Analytics extends AbstractAppCenterService {
         trackEvent(name, properties, null, flags);
     }
 
+    /**
+     * Track a custom event with name and optional typed properties recorded in a reusable buffer.
+     * <p>
+     * The properties are copied when this method returns, so the buffer can be cleared and reused
+     * for the next event. Validation rules are the same as {@link #trackEvent(String, EventProperties)}.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties.
+     */
+    public static void trackEvent(String name, EventPropertyBuffer properties) {
+        trackEvent(name, properties, Flags.DEFAULTS);
+    }
+
+    /**
+     * Track a custom event with name and optional typed properties recorded in a reusable buffer.
+     * <p>
+     * The properties are copied when this method returns, so the buffer can be cleared and reused
+     * for the next event. Validation rules are the same as {@link #trackEvent(String, EventProperties)}.
+     *
+     * @param name       An event name.
+     * @param properties Optional properties.
+     * @param flags      Optional flags. Events tracked with the {@link Flags#CRITICAL}
+     *                   flag will take precedence over all other events in storage.
+     *                   An event tracked with this option will only be dropped
+     *                   if storage must make room for a newer event that is also marked with the
+     *                   {@link Flags#CRITICAL} flag.
+     */
+    public static void trackEvent(String name, EventPropertyBuffer properties, int flags) {
+        Analytics instance = getInstance();
+        EventSampler.Decision samplingDecision = instance.mEventSampler.sample(name);
+        if (samplingDecision != EventSampler.Decision.DROPPED) {
+
+            /* Copy primitive arrays only, typed properties are created in background. */
+            instance.trackEventAsync(name, null, properties == null ? null : properties.snapshot(), null, flags, samplingDecision);
+        }
+    }
+
+    /**
+     * Count a high frequency event, such as a scroll or an impression, without sending it immediately.
+     * <p>
+     * Occurrences with the same name and properties are aggregated in memory and a single summary event is sent
+     * with the same name and properties at the end of the aggregation window or when the application goes to background.
+     * See {@link #trackAggregatedEvent(String, Map, double)} for the properties of the summary event.
+     *
+     * @param name       An event name, the same rules as {@link #trackEvent(String, Map)} apply.
+     * @param properties Optional properties, the same rules as {@link #trackEvent(String, Map)} apply.
+     */
+    public static void trackAggregatedEvent(String name, Map<String, String> properties) {
+        trackAggregatedEvent(name, properties, 1);
+    }
+
+    /**
+     * Aggregate a value for a high frequency event, such as a duration or a heartbeat, without sending it immediately.
+     * <p>
+     * Values of occurrences with the same name and properties are aggregated in memory and a single summary event is sent
+     * with the same name and properties at the end of the aggregation window or when the application goes to background.
+     * The summary event has the following additional properties, which take precedence over properties with the same name:
+     * <ul>
+     * <li><code>aggregatedCount</code>: number of occurrences.</li>
+     * <li><code>aggregatedSum</code>: sum of values.</li>
+     * <li><code>aggregatedMin</code>: minimum value.</li>
+     * <li><code>aggregatedMax</code>: maximum value.</li>
+     * </ul>
+     * Aggregated events are lost if the process is killed before they are sent.
+     *
+     * @param name       An event name, the same rules as {@link #trackEvent(String, Map)} apply.
+     * @param properties Optional properties, the same rules as {@link #trackEvent(String, Map)} apply.
+     * @param value      The value to aggregate, it must be finite.
+     * @see #setEventAggregationInterval(int)
+     */
+    public static void trackAggregatedEvent(String name, Map<String, String> properties, double value) {
+        getInstance().trackAggregatedEventAsync(name, properties, value);
+    }
+
+    /**
+     * Set the duration of the window over which aggregated events are accumulated before being sent.
+     * The interval should be between 3 seconds and 86400 seconds (1 day), the default is 60 seconds.
+     * The new interval applies from the next window.
+     *
+     * @param seconds the aggregation window in seconds.
+     * @return <code>true</code> if the interval is set, <code>false</code> otherwise.
+     * @see #trackAggregatedEvent(String, Map, double)
+     */
+    public static boolean setEventAggregationInterval(int seconds) {
+        return getInstance().setInstanceEventAggregationInterval(seconds);
+    }
+
+    /**
+     * Set the sampling rate of an event name, overriding the default sampling rate.
+     * <p>
+     * Sampling is deterministic: an install (or a session, see {@link #setEventSamplingBySession(boolean)})
+     * either keeps or drops all the events with the same rate, and installs kept at a given rate
+     * are also kept at any higher rate. Dropped events are discarded immediately when tracked.
+     * Kept events have an additional <code>samplingRate</code> double property
+     * so that they can be re-weighted when analyzed.
+     *
+     * @param eventName An event name.
+     * @param rate      The proportion of installs (or sessions) sending the event, between 0 and 1.
+     */
+    public static void setEventSamplingRate(String eventName, double rate) {
+        if (eventName == null || eventName.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Event name cannot be null or empty for sampling.");
+            return;
+        }
+        if (isInvalidSamplingRate(rate)) {
+            return;
+        }
+        getInstance().mEventSampler.setRate(eventName, rate);
+    }
+
+    /**
+     * Set the sampling rate of events without a specific sampling rate, the default is 1 (no sampling).
+     *
+     * @param rate The proportion of installs (or sessions) sending events, between 0 and 1.
+     * @see #setEventSamplingRate(String, double)
+     */
+    public static void setDefaultEventSamplingRate(double rate) {
+        if (!isInvalidSamplingRate(rate)) {
+            getInstance().mEventSampler.setDefaultRate(rate);
+        }
+    }
+
+    /**
+     * Choose whether sampling is decided per session instead of per install, the default is per install.
+     * Events tracked before the first session is started are sampled per install.
+     *
+     * @param sessionSampling <code>true</code> to sample per session, <code>false</code> to sample per install.
+     * @see #setEventSamplingRate(String, double)
+     */
+    public static void setEventSamplingBySession(boolean sessionSampling) {
+        getInstance().mEventSampler.setSessionSampling(sessionSampling);
+    }
+
+    /**
+     * Get the number of events subject to sampling that were kept since the application started.
+     *
+     * @return number of events kept by sampling.
+     */
+    public static long getSampledInEventCount() {
+        return getInstance().mEventSampler.getKeptEventCount();
+    }
+
+    /**
+     * Get the number of events dropped by sampling since the application started.
+     *
+     * @return number of events dropped by sampling.
+     */
+    public static long getSampledOutEventCount() {
+        return getInstance().mEventSampler.getDroppedEventCount();
+    }
+
+    /**
+     * Check a sampling rate.
+     *
+     * @param rate sampling rate.
+     * @return true and log an error if the rate is not between 0 and 1.
+     */
+    private static boolean isInvalidSamplingRate(double rate) {
+
+        /* Negated comparison to also reject NaN. */
+        if (!(rate >= 0 && rate <= 1)) {
+            AppCenterLog.error(LOG_TAG, "Sampling rate must be between 0 and 1, was " + rate + ".");
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Internal method redirection for trackEvent.
      */
     static void trackEvent(String name, EventProperties properties, AnalyticsTransmissionTarget transmissionTarget, int flags) {
-        getInstance().trackEventAsync(name, convertProperties(properties), transmissionTarget, flags);
+        EventSampler.Decision samplingDecision = sampleEvent(name);
+        if (samplingDecision != EventSampler.Decision.DROPPED) {
+            trackEvent(name, properties, transmissionTarget, flags, samplingDecision);
+        }
+    }
+
+    /**
+     * Internal method redirection for trackEvent, when the event has already been sampled with {@link #sampleEvent(String)}.
+     */
+    static void trackEvent(String name, EventProperties properties, AnalyticsTransmissionTarget transmissionTarget, int flags, EventSampler.Decision samplingDecision) {
+        getInstance().trackEventAsync(name, convertProperties(properties), null, transmissionTarget, flags, samplingDecision);
+    }
+
+    /**
+     * Decide whether to keep an event before any conversion.
+     *
+     * @param name event name.
+     * @return the sampling decision to pass to trackEvent, {@link EventSampler.Decision#DROPPED} if the event must be discarded.
+     */
+    static EventSampler.Decision sampleEvent(String name) {
+        return getInstance().mEventSampler.sample(name);
     }
 
     /**
@@ -626,6 +959,16 @@ public class Analytics extends AbstractAppCenterService {
         return mTransmissionInterval;
     }
 
+    @Override
+    protected long getLogTimeToLive() {
+        return mLogTimeToLive;
+    }
+
+    @Override
+    protected long getMaxGroupStorageSize() {
+        return mMaxEventStorageSize;
+    }
+
     /**
      * On an activity being resumed, start a new session if needed
      * and track current page automatically if that mode is enabled.
@@ -663,6 +1006,13 @@ public class Analytics extends AbstractAppCenterService {
         }, updateCurrentActivityRunnable, updateCurrentActivityRunnable);
     }
 
+    @Override
+    public void onApplicationEnterBackground() {
+
+        /* The process may be killed in background, send what was aggregated so far. */
+        post(mFlushAggregatedEventsRunnable, mDiscardAggregatedEventsRunnable, mDiscardAggregatedEventsRunnable);
+    }
+
     @Override
     protected Channel.GroupListener getChannelListener() {
         return new Channel.GroupListener() {
@@ -700,6 +1050,7 @@ public class Analytics extends AbstractAppCenterService {
 
         /* If we enabled the service. */
         if (enabled) {
+            applyGroupStoragePolicy(mChannel, ANALYTICS_CRITICAL_GROUP);
             mChannel.addGroup(ANALYTICS_CRITICAL_GROUP, getTriggerCount(), Constants.DEFAULT_TRIGGER_INTERVAL, getTriggerMaxParallelRequests(), null, getChannelListener());
 
             /* Check if service started at application level and enable corresponding features. */
@@ -712,7 +1063,9 @@ public class Analytics extends AbstractAppCenterService {
 
             /* Cleanup resources. */
             if (mAnalyticsValidator != null) {
-                mChannel.removeListener(mAnalyticsValidator);
+                mChannel.removeTypedListener(ANALYTICS_GROUP, PageLog.TYPE, mAnalyticsValidator);
+                mChannel.removeTypedListener(ANALYTICS_GROUP, EventLog.TYPE, mAnalyticsValidator);
+                mChannel.removeTypedListener(ANALYTICS_CRITICAL_GROUP, EventLog.TYPE, mAnalyticsValidator);
                 mAnalyticsValidator = null;
             }
             if (mSessionTracker != null) {
@@ -724,6 +1077,7 @@ public class Analytics extends AbstractAppCenterService {
                 mChannel.removeListener(mAnalyticsTransmissionTargetListener);
                 mAnalyticsTransmissionTargetListener = null;
             }
+            mEventAggregator.clear();
         }
     }
 
@@ -736,9 +1090,11 @@ public class Analytics extends AbstractAppCenterService {
         /* Share the started from app check between all calls. */
         if (mStartedFromApp) {
 
-            /* Enable filtering logs. */
+            /* Enable filtering logs, only page and event logs are validated. */
             mAnalyticsValidator = new AnalyticsValidator();
-            mChannel.addListener(mAnalyticsValidator);
+            mChannel.addTypedListener(ANALYTICS_GROUP, PageLog.TYPE, mAnalyticsValidator);
+            mChannel.addTypedListener(ANALYTICS_GROUP, EventLog.TYPE, mAnalyticsValidator);
+            mChannel.addTypedListener(ANALYTICS_CRITICAL_GROUP, EventLog.TYPE, mAnalyticsValidator);
 
             /* Start session tracker. */
             mSessionTracker = new SessionTracker(mChannel, ANALYTICS_GROUP);
@@ -796,44 +1152,154 @@ public class Analytics extends AbstractAppCenterService {
 
     /**
      * Send an event.
+     * <p>
+     * This is called from any application thread so it does not lock: the event is recorded in
+     * a concurrent queue and a single drain command is posted in background for a burst of events.
      *
      * @param name               event name.
      * @param properties         optional properties.
+     * @param propertyValues     optional property values, used instead of properties.
      * @param transmissionTarget optional target.
      * @param flags              optional flags.
+     * @param samplingDecision   sampling decision made when tracking.
      */
-    private synchronized void trackEventAsync(final String name, final List<TypedProperty> properties, final AnalyticsTransmissionTarget transmissionTarget, final int flags) {
-        final String userId = UserIdContext.getInstance().getUserId();
-        post(new Runnable() {
+    private void trackEventAsync(String name, List<TypedProperty> properties, EventPropertyBuffer.Values propertyValues, AnalyticsTransmissionTarget transmissionTarget, int flags, EventSampler.Decision samplingDecision) {
+        String userId = UserIdContext.getInstance().getUserId();
+        double samplingRate = mEventSampler.getRate(name);
+        mPendingEvents.offer(new PendingEvent(name, properties, propertyValues, transmissionTarget, flags, userId, samplingDecision, samplingRate));
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            if (!post(mDrainPendingEventsRunnable, mDiscardPendingEventsRunnable, mDiscardPendingEventsRunnable)) {
+                discardPendingEvents();
+            }
+        }
+    }
 
-            @Override
-            public void run() {
-                AnalyticsTransmissionTarget aTransmissionTarget = (transmissionTarget == null) ? mDefaultTransmissionTarget : transmissionTarget;
-                EventLog eventLog = new EventLog();
-                if (aTransmissionTarget != null) {
-                    if (aTransmissionTarget.isEnabled()) {
-                        eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
-                        eventLog.setTag(aTransmissionTarget);
-                        if (aTransmissionTarget == mDefaultTransmissionTarget) {
-                            eventLog.setUserId(userId);
-                        }
-                    } else {
-                        AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
-                        return;
-                    }
-                } else if (!mStartedFromApp) {
-                    AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
-                    return;
-                }
-                eventLog.setId(UUID.randomUUID());
-                eventLog.setName(name);
-                eventLog.setTypedProperties(properties);
+    /**
+     * Convert a batch of pending events to logs and enqueue them.
+     * Schedule another batch if more events are pending.
+     */
+    @WorkerThread
+    private void drainPendingEvents() {
 
-                /* Filter and validate flags. For now we support only persistence. */
-                int filteredFlags = Flags.getPersistenceFlag(flags, true);
-                mChannel.enqueue(eventLog, filteredFlags == Flags.CRITICAL ? ANALYTICS_CRITICAL_GROUP : ANALYTICS_GROUP, filteredFlags);
+        /* Reset flag first: events added while draining will either be polled now or trigger a new drain. */
+        mDrainScheduled.set(false);
+        PendingEvent event;
+        for (int count = 0; count < MAX_EVENTS_PER_DRAIN && (event = mPendingEvents.poll()) != null; count++) {
+            queueEvent(event);
+        }
+
+        /* Don't hold the background thread too long, let other commands run in between batches. */
+        if (!mPendingEvents.isEmpty() && mDrainScheduled.compareAndSet(false, true)) {
+            if (!post(mDrainPendingEventsRunnable, mDiscardPendingEventsRunnable, mDiscardPendingEventsRunnable)) {
+                discardPendingEvents();
             }
-        });
+        }
+    }
+
+    /**
+     * Discard pending events when App Center or Analytics is disabled or not started.
+     */
+    private void discardPendingEvents() {
+        mDrainScheduled.set(false);
+        int count = 0;
+        while (mPendingEvents.poll() != null) {
+            count++;
+        }
+        AppCenterLog.debug(LOG_TAG, "Discarded " + count + " pending event(s).");
+    }
+
+    /**
+     * Aggregate an event value, called from any application thread.
+     * Only the first value of a window schedules a command, to send the window when it ends.
+     *
+     * @param name       event name.
+     * @param properties optional properties.
+     * @param value      value to aggregate.
+     */
+    private void trackAggregatedEventAsync(String name, Map<String, String> properties, double value) {
+        if (name == null || name.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Aggregated event name cannot be null or empty.");
+            return;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            AppCenterLog.error(LOG_TAG, "Aggregated event value must be finite, discarding value for event '" + name + "'.");
+            return;
+        }
+        switch (mEventAggregator.add(name, properties, value)) {
+            case WINDOW_STARTED:
+                HandlerUtils.getMainHandler().postDelayed(mAggregationWindowTimer, mEventAggregationInterval);
+                break;
+
+            case DROPPED:
+                AppCenterLog.error(LOG_TAG, "Too many distinct aggregated events in the current window, discarding value for event '" + name + "'.");
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Send one event per aggregate of the current window and start a new window.
+     */
+    @WorkerThread
+    private void flushAggregatedEvents() {
+        HandlerUtils.getMainHandler().removeCallbacks(mAggregationWindowTimer);
+        Collection<EventAggregator.SummaryEvent> summaryEvents = mEventAggregator.removeAll();
+        if (summaryEvents.isEmpty()) {
+            return;
+        }
+        String userId = UserIdContext.getInstance().getUserId();
+        for (EventAggregator.SummaryEvent summaryEvent : summaryEvents) {
+            queueEvent(new PendingEvent(summaryEvent.mName, summaryEvent.mProperties, null, null, Flags.DEFAULTS, userId, EventSampler.Decision.NOT_SAMPLED, EventSampler.NO_SAMPLING_RATE));
+        }
+        AppCenterLog.debug(LOG_TAG, "Sent " + summaryEvents.size() + " aggregated event(s).");
+    }
+
+    /**
+     * Enqueue event log now.
+     *
+     * @param event pending event.
+     */
+    @WorkerThread
+    private void queueEvent(PendingEvent event) {
+
+        /* Decide now if the install identifier was not known when the event was tracked. */
+        EventSampler.Decision samplingDecision = event.mSamplingDecision;
+        if (samplingDecision == EventSampler.Decision.UNDECIDED) {
+            samplingDecision = mEventSampler.sampleInBackground(event.mSamplingRate);
+            if (samplingDecision == EventSampler.Decision.DROPPED) {
+                return;
+            }
+        }
+        AnalyticsTransmissionTarget aTransmissionTarget = (event.mTransmissionTarget == null) ? mDefaultTransmissionTarget : event.mTransmissionTarget;
+        EventLog eventLog = new EventLog();
+        if (aTransmissionTarget != null) {
+            if (aTransmissionTarget.isEnabled()) {
+                eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
+                eventLog.setTag(aTransmissionTarget);
+                if (aTransmissionTarget == mDefaultTransmissionTarget) {
+                    eventLog.setUserId(event.mUserId);
+                }
+            } else {
+                AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
+                return;
+            }
+        } else if (!mStartedFromApp) {
+            AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
+            return;
+        }
+        eventLog.setId(LogIdGenerator.nextId());
+        eventLog.setName(event.mName);
+        List<TypedProperty> properties = event.getProperties();
+        if (samplingDecision == EventSampler.Decision.KEPT) {
+            properties = EventSampler.addSamplingRate(properties, event.mSamplingRate);
+        }
+        eventLog.setTypedProperties(properties);
+
+        /* Filter and validate flags. For now we support only persistence. */
+        int filteredFlags = Flags.getPersistenceFlag(event.mFlags, true);
+        mChannel.enqueue(eventLog, filteredFlags == Flags.CRITICAL ? ANALYTICS_CRITICAL_GROUP : ANALYTICS_GROUP, filteredFlags);
     }
 
     /**
@@ -939,6 +1405,54 @@ public class Analytics extends AbstractAppCenterService {
         return true;
     }
 
+    /**
+     * Implements {@link #setEventTimeToLive(long)}.
+     */
+    private boolean setInstanceEventTimeToLive(long milliseconds) {
+        if (mChannel != null) {
+            AppCenterLog.error(LOG_TAG, "Event time to live should be set before the service is started.");
+            return false;
+        }
+        if (milliseconds < 0) {
+            AppCenterLog.error(LOG_TAG, "Event time to live cannot be negative.");
+            return false;
+        }
+        mLogTimeToLive = milliseconds;
+        return true;
+    }
+
+    /**
+     * Implements {@link #setMaxEventStorageSize(long)}.
+     */
+    private boolean setInstanceMaxEventStorageSize(long bytes) {
+        if (mChannel != null) {
+            AppCenterLog.error(LOG_TAG, "Maximum event storage size should be set before the service is started.");
+            return false;
+        }
+        if (bytes < 0) {
+            AppCenterLog.error(LOG_TAG, "Maximum event storage size cannot be negative.");
+            return false;
+        }
+        mMaxEventStorageSize = bytes;
+        return true;
+    }
+
+    /**
+     * Implements {@link #setEventAggregationInterval(int)}.
+     */
+    private boolean setInstanceEventAggregationInterval(int seconds) {
+        if (seconds < MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS || seconds > MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS) {
+            AppCenterLog.error(LOG_TAG, String.format(Locale.ENGLISH,
+                    "The event aggregation interval is invalid. The value should be between %d seconds and %d seconds (%d day).",
+                    MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS,
+                    MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS,
+                    TimeUnit.SECONDS.toDays(MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS)));
+            return false;
+        }
+        mEventAggregationInterval = TimeUnit.SECONDS.toMillis(seconds);
+        return true;
+    }
+
     /**
      * Post a command.
      *
@@ -981,4 +1495,13 @@ public class Analytics extends AbstractAppCenterService {
     String getEnabledPreferenceKeyPrefix() {
         return getEnabledPreferenceKey() + "/";
     }
+
+    /**
+     * Get the effective enabled state of transmission targets by preference key.
+     *
+     * @return enabled states cached in memory.
+     */
+    Map<String, Boolean> getTransmissionTargetEnabledStates() {
+        return mTransmissionTargetEnabledStates;
+    }
 }
@@ -62,6 +62,11 @@ public class AnalyticsTransmissionTarget {
      */
     private final PropertyConfigurator mPropertyConfigurator;
 
+    /**
+     * Preference key of the enabled state, computed on first use.
+     */
+    private String mEnabledPreferenceKey;
+
     /**
      * App context.
      */
@@ -88,7 +93,9 @@ public class AnalyticsTransmissionTarget {
     void initInBackground(Context context, Channel channel) {
         mContext = context;
         mChannel = channel;
-        channel.addListener(mPropertyConfigurator);
+
+        /* Only called for the logs of this target, whatever the number of targets. */
+        channel.addTaggedListener(this, mPropertyConfigurator);
     }
 
     /**
@@ -200,6 +207,10 @@ public class AnalyticsTransmissionTarget {
      *                   {@link Flags#CRITICAL} flag.
      */
     public void trackEvent(String name, Map<String, String> properties, int flags) {
+        EventSampler.Decision samplingDecision = Analytics.sampleEvent(name);
+        if (samplingDecision == EventSampler.Decision.DROPPED) {
+            return;
+        }
         EventProperties eventProperties = null;
         if (properties != null) {
             eventProperties = new EventProperties();
@@ -207,7 +218,7 @@ public class AnalyticsTransmissionTarget {
                 eventProperties.set(entry.getKey(), entry.getValue());
             }
         }
-        trackEvent(name, eventProperties, flags);
+        trackEvent(name, eventProperties, flags, samplingDecision);
     }
 
     /**
@@ -250,12 +261,25 @@ public class AnalyticsTransmissionTarget {
      *                   {@link Flags#CRITICAL} flag.
      */
     public void trackEvent(String name, EventProperties properties, int flags) {
+        EventSampler.Decision samplingDecision = Analytics.sampleEvent(name);
+        if (samplingDecision != EventSampler.Decision.DROPPED) {
+            trackEvent(name, properties, flags, samplingDecision);
+        }
+    }
+
+    /**
+     * Track an event that was not dropped by sampling.
+     *
+     * @param name             event name.
+     * @param properties       optional properties.
+     * @param flags            optional flags.
+     * @param samplingDecision sampling decision.
+     */
+    private void trackEvent(String name, EventProperties properties, int flags, EventSampler.Decision samplingDecision) {
 
-        /* Merge common properties. More specific target wins conflicts. */
+        /* Merge common properties, resolved once for this target and its parents until a property changes. */
         EventProperties mergedProperties = new EventProperties();
-        for (AnalyticsTransmissionTarget target = this; target != null; target = target.mParentTarget) {
-            target.getPropertyConfigurator().mergeEventProperties(mergedProperties);
-        }
+        mergedProperties.getProperties().putAll(mPropertyConfigurator.getResolvedEventProperties());
 
         /* Override with parameter. */
         if (properties != null) {
@@ -271,7 +295,7 @@ public class AnalyticsTransmissionTarget {
         }
 
         /* Track event with merged properties. */
-        Analytics.trackEvent(name, mergedProperties, this, flags);
+        Analytics.trackEvent(name, mergedProperties, this, flags, samplingDecision);
     }
 
     /**
@@ -335,8 +359,7 @@ public class AnalyticsTransmissionTarget {
                  * Like the relation between AppCenter and Analytics, we cannot change state if one of the parent is disabled.
                  * If this callback is called then it was already checked that AppCenter and Analytics are both enabled.
                  */
-                if (areAncestorsEnabled()) {
-
+                if (mParentTarget == null || mParentTarget.isEnabled()) {
 
                     /* Propagate state to this instance then all descendants without a recursive call. */
                     List<AnalyticsTransmissionTarget> descendantTargets = new LinkedList<>();
@@ -346,7 +369,7 @@ public class AnalyticsTransmissionTarget {
                         while (descendantIterator.hasNext()) {
                             AnalyticsTransmissionTarget descendantTarget = descendantIterator.next();
                             descendantIterator.remove();
-                            SharedPreferencesManager.putBoolean(descendantTarget.getEnabledPreferenceKey(), enabled);
+                            descendantTarget.setEnabled(enabled);
                             for (AnalyticsTransmissionTarget childTarget : descendantTarget.mChildrenTargets.values()) {
                                 descendantIterator.add(childTarget);
                             }
@@ -437,27 +460,38 @@ public class AnalyticsTransmissionTarget {
 
     @NonNull
     private String getEnabledPreferenceKey() {
-        return Analytics.getInstance().getEnabledPreferenceKeyPrefix() + PartAUtils.getTargetKey(mTransmissionTargetToken);
-    }
-
-    @WorkerThread
-    private boolean isEnabledInStorage() {
-        return SharedPreferencesManager.getBoolean(getEnabledPreferenceKey(), true);
+        if (mEnabledPreferenceKey == null) {
+            mEnabledPreferenceKey = Analytics.getInstance().getEnabledPreferenceKeyPrefix() + PartAUtils.getTargetKey(mTransmissionTargetToken);
+        }
+        return mEnabledPreferenceKey;
     }
 
+    /**
+     * Persist the state of this target and update its effective state.
+     * Ancestors are not checked, callers apply the state from an enabled ancestor down to descendants.
+     */
     @WorkerThread
-    private boolean areAncestorsEnabled() {
-        for (AnalyticsTransmissionTarget target = mParentTarget; target != null; target = target.mParentTarget) {
-            if (!target.isEnabledInStorage()) {
-                return false;
-            }
-        }
-        return true;
+    private void setEnabled(boolean enabled) {
+        String key = getEnabledPreferenceKey();
+        SharedPreferencesManager.putBoolean(key, enabled);
+        Analytics.getInstance().getTransmissionTargetEnabledStates().put(key, enabled);
     }
 
+    /**
+     * Get the effective state of this target, taking ancestors into account.
+     * It is computed from storage on first use then kept by preference key, so that targets sharing
+     * the same token see the same state and ancestors are not read again.
+     */
     @WorkerThread
     boolean isEnabled() {
-        return areAncestorsEnabled() && isEnabledInStorage();
+        String key = getEnabledPreferenceKey();
+        Map<String, Boolean> enabledStates = Analytics.getInstance().getTransmissionTargetEnabledStates();
+        Boolean enabled = enabledStates.get(key);
+        if (enabled == null) {
+            enabled = (mParentTarget == null || mParentTarget.isEnabled()) && SharedPreferencesManager.getBoolean(key, true);
+            enabledStates.put(key, enabled);
+        }
+        return enabled;
     }
 
     /**
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates high frequency events in memory so that only one summary event is sent per event name and properties for a window.
+ * Methods can be called from any thread.
+ */
+class EventAggregator {
+
+    /**
+     * Property name of the number of aggregated events in the summary event.
+     */
+    @VisibleForTesting
+    static final String COUNT_PROPERTY = "aggregatedCount";
+
+    /**
+     * Property name of the sum of aggregated values in the summary event.
+     */
+    @VisibleForTesting
+    static final String SUM_PROPERTY = "aggregatedSum";
+
+    /**
+     * Property name of the minimum aggregated value in the summary event.
+     */
+    @VisibleForTesting
+    static final String MIN_PROPERTY = "aggregatedMin";
+
+    /**
+     * Property name of the maximum aggregated value in the summary event.
+     */
+    @VisibleForTesting
+    static final String MAX_PROPERTY = "aggregatedMax";
+
+    /**
+     * Maximum number of distinct event name and properties combinations aggregated in a window.
+     */
+    @VisibleForTesting
+    static final int MAX_AGGREGATES = 500;
+
+    /**
+     * Aggregates of the current window, in first tracked order.
+     */
+    private final Map<Key, Aggregate> mAggregates = new LinkedHashMap<>();
+
+    /**
+     * Add a value to the aggregate of an event.
+     *
+     * @param name       event name.
+     * @param properties event properties, copied.
+     * @param value      value to aggregate.
+     * @return {@link Result#WINDOW_STARTED} if this is the first value of a new window,
+     * {@link Result#DROPPED} if too many aggregates are pending, {@link Result#ADDED} otherwise.
+     */
+    synchronized Result add(@NonNull String name, Map<String, String> properties, double value) {
+        Key key = new Key(name, properties == null ? Collections.<String, String>emptyMap() : new HashMap<>(properties));
+        Aggregate aggregate = mAggregates.get(key);
+        if (aggregate == null) {
+            if (mAggregates.size() >= MAX_AGGREGATES) {
+                return Result.DROPPED;
+            }
+            aggregate = new Aggregate();
+            mAggregates.put(key, aggregate);
+        }
+        aggregate.add(value);
+        return mAggregates.size() == 1 && aggregate.mCount == 1 ? Result.WINDOW_STARTED : Result.ADDED;
+    }
+
+    /**
+     * Remove all aggregates and convert them to summary events, this ends the current window.
+     *
+     * @return summary events, empty if nothing was aggregated.
+     */
+    synchronized Collection<SummaryEvent> removeAll() {
+        if (mAggregates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SummaryEvent> summaryEvents = new ArrayList<>(mAggregates.size());
+        for (Map.Entry<Key, Aggregate> entry : mAggregates.entrySet()) {
+            summaryEvents.add(new SummaryEvent(entry.getKey().mName, entry.getValue().toProperties(entry.getKey().mProperties)));
+        }
+        mAggregates.clear();
+        return summaryEvents;
+    }
+
+    /**
+     * Discard all aggregates.
+     */
+    synchronized void clear() {
+        mAggregates.clear();
+    }
+
+    /**
+     * Result of adding a value.
+     */
+    enum Result {
+        ADDED,
+        WINDOW_STARTED,
+        DROPPED
+    }
+
+    /**
+     * Event to send for an aggregate.
+     */
+    static class SummaryEvent {
+
+        /**
+         * Event name.
+         */
+        final String mName;
+
+        /**
+         * Aggregated statistics followed by the event properties.
+         */
+        final List<TypedProperty> mProperties;
+
+        private SummaryEvent(String name, List<TypedProperty> properties) {
+            mName = name;
+            mProperties = properties;
+        }
+    }
+
+    /**
+     * Aggregate identifier: event name and properties.
+     */
+    private static class Key {
+
+        /**
+         * Event name.
+         */
+        private final String mName;
+
+        /**
+         * Event properties.
+         */
+        private final Map<String, String> mProperties;
+
+        private Key(String name, Map<String, String> properties) {
+            mName = name;
+            mProperties = properties;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mName.equals(key.mName) && mProperties.equals(key.mProperties);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mName.hashCode() + mProperties.hashCode();
+        }
+    }
+
+    /**
+     * Statistics of the values aggregated for a key.
+     */
+    private static class Aggregate {
+
+        /**
+         * Number of values.
+         */
+        private long mCount;
+
+        /**
+         * Sum of values.
+         */
+        private double mSum;
+
+        /**
+         * Minimum value.
+         */
+        private double mMin = Double.POSITIVE_INFINITY;
+
+        /**
+         * Maximum value.
+         */
+        private double mMax = Double.NEGATIVE_INFINITY;
+
+        private void add(double value) {
+            mCount++;
+            mSum += value;
+            mMin = Math.min(mMin, value);
+            mMax = Math.max(mMax, value);
+        }
+
+        private List<TypedProperty> toProperties(Map<String, String> eventProperties) {
+
+            /*
+             * The summary replaces all the aggregated events, so the statistics must reach the backend.
+             * The validator keeps the first 20 properties, leaving room for 16 event properties after them.
+             */
+            List<TypedProperty> properties = new ArrayList<>(eventProperties.size() + 4);
+            LongTypedProperty count = new LongTypedProperty();
+            count.setName(COUNT_PROPERTY);
+            count.setValue(mCount);
+            properties.add(count);
+            properties.add(doubleProperty(SUM_PROPERTY, mSum));
+            properties.add(doubleProperty(MIN_PROPERTY, mMin));
+            properties.add(doubleProperty(MAX_PROPERTY, mMax));
+            for (Map.Entry<String, String> eventProperty : eventProperties.entrySet()) {
+
+                /* Statistics win conflicts with event properties. */
+                String name = eventProperty.getKey();
+                if (COUNT_PROPERTY.equals(name) || SUM_PROPERTY.equals(name) || MIN_PROPERTY.equals(name) || MAX_PROPERTY.equals(name)) {
+                    continue;
+                }
+                StringTypedProperty property = new StringTypedProperty();
+                property.setName(name);
+                property.setValue(eventProperty.getValue());
+                properties.add(property);
+            }
+            return properties;
+        }
+
+        private static DoubleTypedProperty doubleProperty(String name, double value) {
+            DoubleTypedProperty property = new DoubleTypedProperty();
+            property.setName(name);
+            property.setValue(value);
+            return property;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.WorkerThread;
+
+import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Reusable event properties builder for events tracked at a high rate.
+ * <p>
+ * Values are recorded in primitive arrays, so setting a property does not allocate on the calling thread once the
+ * arrays are large enough. This only defers allocation: a typed property object is still created for each property
+ * when the event is processed in background. The buffer can be cleared and reused as soon as the event is tracked.
+ * <p>
+ * Unlike {@link EventProperties}, a buffer is not thread safe and must be used by one thread at a time.
+ */
+public class EventPropertyBuffer {
+
+    /**
+     * Initial number of properties that can be set without growing the arrays.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * String value type.
+     */
+    private static final byte TYPE_STRING = 0;
+
+    /**
+     * Long value type.
+     */
+    private static final byte TYPE_LONG = 1;
+
+    /**
+     * Double value type, stored as raw long bits.
+     */
+    private static final byte TYPE_DOUBLE = 2;
+
+    /**
+     * Boolean value type, stored as 1 or 0.
+     */
+    private static final byte TYPE_BOOLEAN = 3;
+
+    /**
+     * Date value type, stored as milliseconds since epoch.
+     */
+    private static final byte TYPE_DATE = 4;
+
+    /**
+     * Property keys.
+     */
+    private String[] mKeys = new String[INITIAL_CAPACITY];
+
+    /**
+     * Property types.
+     */
+    private byte[] mTypes = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Values of non string properties.
+     */
+    private long[] mValues = new long[INITIAL_CAPACITY];
+
+    /**
+     * Values of string properties.
+     */
+    private String[] mStrings = new String[INITIAL_CAPACITY];
+
+    /**
+     * Number of properties.
+     */
+    private int mCount;
+
+    /**
+     * Set the specified property value with the specified key.
+     * If the buffer previously contained a property for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be set.
+     * @param value value to be set with the specified key.
+     * @return this instance.
+     */
+    public EventPropertyBuffer set(String key, boolean value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            setValue(index, TYPE_BOOLEAN, value ? 1 : 0);
+        }
+        return this;
+    }
+
+    /**
+     * Set the specified property value with the specified key.
+     * If the buffer previously contained a property for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be set.
+     * @param value value to be set with the specified key.
+     * @return this instance.
+     */
+    public EventPropertyBuffer set(String key, Date value) {
+        if (isValidValue(value)) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                setValue(index, TYPE_DATE, value.getTime());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Set the specified property value with the specified key.
+     * If the buffer previously contained a property for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be set.
+     * @param value value to be set with the specified key.
+     * @return this instance.
+     */
+    public EventPropertyBuffer set(String key, double value) {
+        if (Double.isInfinite(value) || Double.isNaN(value)) {
+            AppCenterLog.error(LOG_TAG, "Double property value cannot be NaN or infinite.");
+        } else {
+            int index = indexOf(key);
+            if (index >= 0) {
+                setValue(index, TYPE_DOUBLE, Double.doubleToRawLongBits(value));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Set the specified property value with the specified key.
+     * If the buffer previously contained a property for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be set.
+     * @param value value to be set with the specified key.
+     * @return this instance.
+     */
+    public EventPropertyBuffer set(String key, long value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            setValue(index, TYPE_LONG, value);
+        }
+        return this;
+    }
+
+    /**
+     * Set the specified property value with the specified key.
+     * If the buffer previously contained a property for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be set.
+     * @param value value to be set with the specified key.
+     * @return this instance.
+     */
+    public EventPropertyBuffer set(String key, String value) {
+        if (isValidValue(value)) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                mTypes[index] = TYPE_STRING;
+                mStrings[index] = value;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Remove all properties so that the buffer can be reused for another event.
+     *
+     * @return this instance.
+     */
+    public EventPropertyBuffer clear() {
+
+        /* Release references, primitive values are simply overwritten. */
+        Arrays.fill(mKeys, 0, mCount, null);
+        Arrays.fill(mStrings, 0, mCount, null);
+        mCount = 0;
+        return this;
+    }
+
+    /**
+     * Get the number of properties.
+     *
+     * @return the number of properties.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Copy the current properties so that the buffer can be modified after tracking an event.
+     *
+     * @return a copy of the properties.
+     */
+    Values snapshot() {
+        return new Values(Arrays.copyOf(mKeys, mCount), Arrays.copyOf(mTypes, mCount), Arrays.copyOf(mValues, mCount), Arrays.copyOf(mStrings, mCount));
+    }
+
+    /**
+     * Get the index of a property, adding it if it's not set yet.
+     *
+     * @param key property key.
+     * @return the index of the property or -1 if the key is invalid.
+     */
+    private int indexOf(String key) {
+        if (key == null) {
+            AppCenterLog.error(LOG_TAG, "Property key must not be null");
+            return -1;
+        }
+        for (int i = 0; i < mCount; i++) {
+            if (key.equals(mKeys[i])) {
+                AppCenterLog.warn(LOG_TAG, "Property \"" + key + "\" is already set and will be overridden.");
+                return i;
+            }
+        }
+        if (mCount == mKeys.length) {
+            int capacity = mCount * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+            mStrings = Arrays.copyOf(mStrings, capacity);
+        }
+        mKeys[mCount] = key;
+        return mCount++;
+    }
+
+    private void setValue(int index, byte type, long value) {
+        mTypes[index] = type;
+        mValues[index] = value;
+        mStrings[index] = null;
+    }
+
+    private static boolean isValidValue(Object value) {
+        if (value == null) {
+            AppCenterLog.error(LOG_TAG, "Property value cannot be null");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Immutable copy of buffer properties, converted to one typed property object per property in background.
+     */
+    static class Values {
+
+        /**
+         * Property keys.
+         */
+        private final String[] mKeys;
+
+        /**
+         * Property types.
+         */
+        private final byte[] mTypes;
+
+        /**
+         * Values of non string properties.
+         */
+        private final long[] mValues;
+
+        /**
+         * Values of string properties.
+         */
+        private final String[] mStrings;
+
+        private Values(String[] keys, byte[] types, long[] values, String[] strings) {
+            mKeys = keys;
+            mTypes = types;
+            mValues = values;
+            mStrings = strings;
+        }
+
+        /**
+         * Convert to typed properties.
+         *
+         * @return typed properties in the order they were first set.
+         */
+        @WorkerThread
+        List<TypedProperty> toTypedProperties() {
+            List<TypedProperty> properties = new ArrayList<>(mKeys.length);
+            for (int i = 0; i < mKeys.length; i++) {
+                TypedProperty property;
+                switch (mTypes[i]) {
+                    case TYPE_LONG: {
+                        LongTypedProperty longProperty = new LongTypedProperty();
+                        longProperty.setValue(mValues[i]);
+                        property = longProperty;
+                        break;
+                    }
+
+                    case TYPE_DOUBLE: {
+                        DoubleTypedProperty doubleProperty = new DoubleTypedProperty();
+                        doubleProperty.setValue(Double.longBitsToDouble(mValues[i]));
+                        property = doubleProperty;
+                        break;
+                    }
+
+                    case TYPE_BOOLEAN: {
+                        BooleanTypedProperty booleanProperty = new BooleanTypedProperty();
+                        booleanProperty.setValue(mValues[i] != 0);
+                        property = booleanProperty;
+                        break;
+                    }
+
+                    case TYPE_DATE: {
+                        DateTimeTypedProperty dateProperty = new DateTimeTypedProperty();
+                        dateProperty.setValue(new Date(mValues[i]));
+                        property = dateProperty;
+                        break;
+                    }
+
+                    default: {
+                        StringTypedProperty stringProperty = new StringTypedProperty();
+                        stringProperty.setValue(mStrings[i]);
+                        property = stringProperty;
+                        break;
+                    }
+                }
+                property.setName(mKeys[i]);
+                properties.add(property);
+            }
+            return properties;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.context.SessionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic event sampling policy.
+ * <p>
+ * Each install (or session) is assigned a stable bucket in [0, 1) by hashing its identifier,
+ * and an event is kept if the bucket is lower than the sampling rate of the event.
+ * The same users are thus kept for all the events sampled at the same rate,
+ * and users kept at a given rate are also kept at any higher rate.
+ * <p>
+ * Sampling methods can be called from any thread without locking.
+ */
+class EventSampler {
+
+    /**
+     * Sampling rate of events not subject to sampling.
+     */
+    static final double NO_SAMPLING_RATE = 1;
+
+    /**
+     * Bucket value until the install identifier is read from storage.
+     */
+    private static final double UNKNOWN_BUCKET = -1;
+
+    /**
+     * Property added to kept events subject to sampling, with the sampling rate as a value.
+     */
+    @VisibleForTesting
+    static final String SAMPLING_RATE_PROPERTY = "samplingRate";
+
+    /**
+     * Sampling rates by event name.
+     */
+    private final Map<String, Double> mRates = new ConcurrentHashMap<>();
+
+    /**
+     * Sampling rate of events without a specific rate.
+     */
+    private volatile double mDefaultRate = NO_SAMPLING_RATE;
+
+    /**
+     * True to sample by session, false to sample by install.
+     */
+    private volatile boolean mSessionSampling;
+
+    /**
+     * Bucket of the install identifier, {@link #UNKNOWN_BUCKET} until read from storage.
+     */
+    private volatile double mInstallIdBucket = UNKNOWN_BUCKET;
+
+    /**
+     * Bucket of the last session identifier used.
+     */
+    private volatile SessionBucket mSessionBucket;
+
+    /**
+     * Number of events kept by sampling.
+     */
+    private final AtomicLong mKeptEventCount = new AtomicLong();
+
+    /**
+     * Number of events dropped by sampling.
+     */
+    private final AtomicLong mDroppedEventCount = new AtomicLong();
+
+    /**
+     * Set the sampling rate of an event.
+     *
+     * @param name event name.
+     * @param rate sampling rate between 0 and 1.
+     */
+    void setRate(@NonNull String name, double rate) {
+        mRates.put(name, rate);
+    }
+
+    /**
+     * Set the sampling rate of events without a specific rate.
+     *
+     * @param rate sampling rate between 0 and 1.
+     */
+    void setDefaultRate(double rate) {
+        mDefaultRate = rate;
+    }
+
+    /**
+     * Choose the sampling key.
+     *
+     * @param sessionSampling true to sample by session, false to sample by install.
+     */
+    void setSessionSampling(boolean sessionSampling) {
+        mSessionSampling = sessionSampling;
+    }
+
+    /**
+     * Get the number of events kept by sampling.
+     *
+     * @return number of events kept, not counting events not subject to sampling.
+     */
+    long getKeptEventCount() {
+        return mKeptEventCount.get();
+    }
+
+    /**
+     * Get the number of events dropped by sampling.
+     *
+     * @return number of events dropped.
+     */
+    long getDroppedEventCount() {
+        return mDroppedEventCount.get();
+    }
+
+    /**
+     * Get the sampling rate of an event.
+     *
+     * @param name event name.
+     * @return the sampling rate, {@link #NO_SAMPLING_RATE} if the event is not subject to sampling.
+     */
+    double getRate(String name) {
+        Double specificRate = name == null ? null : mRates.get(name);
+        return specificRate != null ? specificRate : mDefaultRate;
+    }
+
+    /**
+     * Decide whether to keep an event.
+     *
+     * @param name event name.
+     * @return the decision, {@link Decision#UNDECIDED} if it must be made with {@link #sampleInBackground}.
+     */
+    Decision sample(String name) {
+        return sample(getRate(name));
+    }
+
+    /**
+     * Decide whether to keep an event sampled at the specified rate.
+     *
+     * @param rate sampling rate of the event.
+     * @return the decision, {@link Decision#UNDECIDED} if it must be made with {@link #sampleInBackground}.
+     */
+    Decision sample(double rate) {
+        if (rate >= NO_SAMPLING_RATE) {
+            return Decision.NOT_SAMPLED;
+        }
+        double bucket = getBucket();
+        if (bucket == UNKNOWN_BUCKET) {
+            return Decision.UNDECIDED;
+        }
+        if (bucket < rate) {
+            mKeptEventCount.incrementAndGet();
+            return Decision.KEPT;
+        }
+        mDroppedEventCount.incrementAndGet();
+        return Decision.DROPPED;
+    }
+
+    /**
+     * Decide whether to keep an event sampled at the specified rate, reading the install identifier from storage if needed.
+     *
+     * @param rate sampling rate of the event.
+     * @return the decision, never {@link Decision#UNDECIDED}.
+     */
+    @WorkerThread
+    Decision sampleInBackground(double rate) {
+        if (mInstallIdBucket == UNKNOWN_BUCKET) {
+            mInstallIdBucket = toBucket(IdHelper.getInstallId());
+        }
+        return sample(rate);
+    }
+
+    /**
+     * Add the sampling rate to the properties of a kept event.
+     * The rate is needed to count each kept event as 1 / rate events, so it is added first
+     * where the 20 property limit cannot push it out, and it replaces any property with the same name.
+     *
+     * @param properties   event properties, not modified.
+     * @param samplingRate sampling rate.
+     * @return new properties starting with the sampling rate.
+     */
+    static List<TypedProperty> addSamplingRate(List<TypedProperty> properties, double samplingRate) {
+        List<TypedProperty> sampledProperties = new ArrayList<>(properties == null ? 1 : properties.size() + 1);
+        DoubleTypedProperty samplingRateProperty = new DoubleTypedProperty();
+        samplingRateProperty.setName(SAMPLING_RATE_PROPERTY);
+        samplingRateProperty.setValue(samplingRate);
+        sampledProperties.add(samplingRateProperty);
+        if (properties != null) {
+            for (TypedProperty property : properties) {
+                if (!SAMPLING_RATE_PROPERTY.equals(property.getName())) {
+                    sampledProperties.add(property);
+                }
+            }
+        }
+        return sampledProperties;
+    }
+
+    /**
+     * Get the bucket of the current sampling key.
+     *
+     * @return the bucket or {@link #UNKNOWN_BUCKET}.
+     */
+    private double getBucket() {
+
+        /* Storage and session context are not safe to load before the first background decision. */
+        double installIdBucket = mInstallIdBucket;
+        if (mSessionSampling && installIdBucket != UNKNOWN_BUCKET) {
+            SessionContext.SessionInfo session = SessionContext.getInstance().getSessionAt(System.currentTimeMillis());
+            UUID sessionId = session == null ? null : session.getSessionId();
+
+            /* Fall back to install outside sessions. */
+            if (sessionId != null) {
+                SessionBucket sessionBucket = mSessionBucket;
+                if (sessionBucket == null || !sessionBucket.mSessionId.equals(sessionId)) {
+                    sessionBucket = new SessionBucket(sessionId, toBucket(sessionId));
+                    mSessionBucket = sessionBucket;
+                }
+                return sessionBucket.mBucket;
+            }
+        }
+        return installIdBucket;
+    }
+
+    /**
+     * Map an identifier to a stable bucket in [0, 1).
+     *
+     * @param id identifier.
+     * @return bucket.
+     */
+    @VisibleForTesting
+    static double toBucket(@NonNull UUID id) {
+
+        /* Mix all bits so that identifiers that are not random still spread uniformly. */
+        long hash = id.getMostSignificantBits() * 31 + id.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        /* Use the 53 upper bits as the mantissa of a double in [0, 1). */
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Sampling decision for an event.
+     */
+    enum Decision {
+
+        /**
+         * Event is discarded.
+         */
+        DROPPED,
+
+        /**
+         * Event is kept and sent with its sampling rate.
+         */
+        KEPT,
+
+        /**
+         * Event is not subject to sampling.
+         */
+        NOT_SAMPLED,
+
+        /**
+         * Sampling key is not known yet, the decision is made in background.
+         */
+        UNDECIDED
+    }
+
+    /**
+     * Bucket computed for a session.
+     */
+    private static class SessionBucket {
+
+        /**
+         * Session identifier.
+         */
+        private final UUID mSessionId;
+
+        /**
+         * Bucket of the session.
+         */
+        private final double mBucket;
+
+        private SessionBucket(UUID sessionId, double bucket) {
+            mSessionId = sessionId;
+            mBucket = bucket;
+        }
+    }
+}
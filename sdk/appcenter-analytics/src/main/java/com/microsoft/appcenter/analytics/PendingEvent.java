@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.WorkerThread;
+
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import java.util.List;
+
+/**
+ * Lightweight record of an event tracked from any thread and waiting
+ * to be converted to a log in the background thread.
+ */
+class PendingEvent {
+
+    /**
+     * Event name.
+     */
+    final String mName;
+
+    /**
+     * Optional properties.
+     */
+    private final List<TypedProperty> mProperties;
+
+    /**
+     * Optional property values recorded with an {@link EventPropertyBuffer}, converted only in background.
+     */
+    private final EventPropertyBuffer.Values mPropertyValues;
+
+    /**
+     * Optional transmission target.
+     */
+    final AnalyticsTransmissionTarget mTransmissionTarget;
+
+    /**
+     * Flags.
+     */
+    final int mFlags;
+
+    /**
+     * User identifier at the time the event was tracked.
+     */
+    final String mUserId;
+
+    /**
+     * Sampling decision made when tracking.
+     */
+    final EventSampler.Decision mSamplingDecision;
+
+    /**
+     * Sampling rate when tracking.
+     */
+    final double mSamplingRate;
+
+    /**
+     * Init.
+     *
+     * @param name               event name.
+     * @param properties         optional properties.
+     * @param propertyValues     optional property values, used instead of properties.
+     * @param transmissionTarget optional transmission target.
+     * @param flags              flags.
+     * @param userId             user identifier when tracking the event.
+     * @param samplingDecision   sampling decision made when tracking the event.
+     * @param samplingRate       sampling rate when tracking the event.
+     */
+    PendingEvent(String name, List<TypedProperty> properties, EventPropertyBuffer.Values propertyValues, AnalyticsTransmissionTarget transmissionTarget, int flags, String userId, EventSampler.Decision samplingDecision, double samplingRate) {
+        mName = name;
+        mProperties = properties;
+        mPropertyValues = propertyValues;
+        mTransmissionTarget = transmissionTarget;
+        mFlags = flags;
+        mUserId = userId;
+        mSamplingDecision = samplingDecision;
+        mSamplingRate = samplingRate;
+    }
+
+    /**
+     * Get the event properties.
+     *
+     * @return the properties, converted from the recorded property values if any.
+     */
+    @WorkerThread
+    List<TypedProperty> getProperties() {
+        return mPropertyValues != null ? mPropertyValues.toTypedProperties() : mProperties;
+    }
+}
@@ -8,18 +8,22 @@ package com.microsoft.appcenter.analytics;
 import android.annotation.SuppressLint;
 import android.provider.Settings.Secure;
 import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
 
 import com.microsoft.appcenter.channel.AbstractChannelListener;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.one.AppExtension;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
-import com.microsoft.appcenter.ingestion.models.one.DeviceExtension;
+import com.microsoft.appcenter.ingestion.models.one.Extensions;
 import com.microsoft.appcenter.ingestion.models.one.UserExtension;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.microsoft.appcenter.Constants.COMMON_SCHEMA_PREFIX_SEPARATOR;
 
@@ -58,6 +62,27 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     private boolean mDeviceIdEnabled;
 
+    /**
+     * Revision of the properties of all targets, incremented whenever a property is set on any target.
+     * Setting properties is rare, so changing any target invalidates the resolved properties of all of them.
+     */
+    private static final AtomicLong sRevision = new AtomicLong();
+
+    /**
+     * Part A properties resolved from this target and its parents, only accessed from the background thread.
+     */
+    private ResolvedPartAProperties mResolvedPartAProperties;
+
+    /**
+     * Event properties resolved from this target and its parents.
+     */
+    private volatile ResolvedEventProperties mResolvedEventProperties;
+
+    /**
+     * Android device identifier, read once when collected.
+     */
+    private String mAndroidId;
+
     /**
      * The transmission target which this configurator belongs to.
      */
@@ -86,71 +111,56 @@ public class PropertyConfigurator extends AbstractChannelListener {
     @Override
     public void onPreparingLog(@NonNull Log log, @NonNull String groupName) {
         if (shouldOverridePartAProperties(log)) {
-            AppExtension app = ((CommonSchemaLog) log).getExt().getApp();
-            UserExtension user = ((CommonSchemaLog) log).getExt().getUser();
-            DeviceExtension device = ((CommonSchemaLog) log).getExt().getDevice();
-
-            /* Override app name if not null, else use the name of the nearest parent. */
-            if (mAppName != null) {
-                app.setName(mAppName);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppName = target.getPropertyConfigurator().getAppName();
-                    if (parentAppName != null) {
-                        app.setName(parentAppName);
-                        break;
-                    }
-                }
-            }
+            Extensions ext = ((CommonSchemaLog) log).getExt();
+            getResolvedPartAProperties().apply(ext.getApp(), ext.getUser());
 
-            /* Override app version if not null, else use the version of the nearest parent. */
-            if (mAppVersion != null) {
-                app.setVer(mAppVersion);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppVersion = target.getPropertyConfigurator().getAppVersion();
-                    if (parentAppVersion != null) {
-                        app.setVer(parentAppVersion);
-                        break;
-                    }
-                }
-            }
-
-            /* Override app locale if not null, else use the locale of the nearest parent. */
-            if (mAppLocale != null) {
-                app.setLocale(mAppLocale);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppLocale = target.getPropertyConfigurator().getAppLocale();
-                    if (parentAppLocale != null) {
-                        app.setLocale(parentAppLocale);
-                        break;
-                    }
-                }
+            /* Fill out the device id if it has been collected. */
+            if (mDeviceIdEnabled) {
+                ext.getDevice().setLocalId(ANDROID_DEVICE_ID_PREFIX + getAndroidId());
             }
+        }
+    }
 
-            /* Override userId if not null, else use the userId of the nearest parent. */
-            if (mUserId != null) {
-                user.setLocalId(mUserId);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentUserId = target.getPropertyConfigurator().getUserId();
-                    if (parentUserId != null) {
-                        user.setLocalId(parentUserId);
-                        break;
-                    }
-                }
+    /**
+     * Get the Part A properties of this target, each property being inherited from the nearest parent if not set here.
+     * The snapshot is rebuilt only after a property has been set.
+     *
+     * @return the resolved Part A properties.
+     */
+    @WorkerThread
+    private ResolvedPartAProperties getResolvedPartAProperties() {
+        long revision = sRevision.get();
+        if (mResolvedPartAProperties == null || mResolvedPartAProperties.mRevision != revision) {
+            String appName = mAppName;
+            String appVersion = mAppVersion;
+            String appLocale = mAppLocale;
+            String userId = mUserId;
+            for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
+                PropertyConfigurator parent = target.getPropertyConfigurator();
+                appName = appName != null ? appName : parent.getAppName();
+                appVersion = appVersion != null ? appVersion : parent.getAppVersion();
+                appLocale = appLocale != null ? appLocale : parent.getAppLocale();
+                userId = userId != null ? userId : parent.getUserId();
             }
+            mResolvedPartAProperties = new ResolvedPartAProperties(revision, appName, appVersion, appLocale, userId);
+        }
+        return mResolvedPartAProperties;
+    }
 
-            /* Fill out the device id if it has been collected. */
-            if (mDeviceIdEnabled) {
+    /**
+     * Get the Android device identifier, read only once.
+     *
+     * @return the Android device identifier.
+     */
+    @WorkerThread
+    private String getAndroidId() {
+        if (mAndroidId == null) {
 
-                /* Get device identifier, Secure class already has an in memory cache. */
-                @SuppressLint("HardwareIds")
-                String androidId = Secure.getString(mTransmissionTarget.mContext.getContentResolver(), Secure.ANDROID_ID);
-                device.setLocalId(ANDROID_DEVICE_ID_PREFIX + androidId);
-            }
+            @SuppressLint("HardwareIds")
+            String androidId = Secure.getString(mTransmissionTarget.mContext.getContentResolver(), Secure.ANDROID_ID);
+            mAndroidId = androidId;
         }
+        return mAndroidId;
     }
 
     /**
@@ -184,6 +194,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppName = appName;
+                sRevision.incrementAndGet();
             }
         });
     }
@@ -208,6 +219,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppVersion = appVersion;
+                sRevision.incrementAndGet();
             }
         });
     }
@@ -232,6 +244,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppLocale = appLocale;
+                sRevision.incrementAndGet();
             }
         });
     }
@@ -260,6 +273,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
                 @Override
                 public void run() {
                     mUserId = UserIdContext.getPrefixedUserId(userId);
+                    sRevision.incrementAndGet();
                 }
             });
         }
@@ -274,6 +288,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, boolean value) {
         mEventProperties.set(key, value);
+        sRevision.incrementAndGet();
     }
 
     /**
@@ -285,6 +300,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, Date value) {
         mEventProperties.set(key, value);
+        sRevision.incrementAndGet();
     }
 
     /**
@@ -296,6 +312,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, double value) {
         mEventProperties.set(key, value);
+        sRevision.incrementAndGet();
     }
 
     /**
@@ -307,6 +324,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, long value) {
         mEventProperties.set(key, value);
+        sRevision.incrementAndGet();
     }
 
     /**
@@ -318,6 +336,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void setEventProperty(String key, String value) {
         mEventProperties.set(key, value);
+        sRevision.incrementAndGet();
     }
 
     /**
@@ -327,6 +346,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     public synchronized void removeEventProperty(String key) {
         mEventProperties.getProperties().remove(key);
+        sRevision.incrementAndGet();
     }
 
     /**
@@ -343,16 +363,119 @@ public class PropertyConfigurator extends AbstractChannelListener {
         });
     }
 
+    /**
+     * Get the common event properties of this target merged with the ones of its parents, the more specific target wins conflicts.
+     * The snapshot is rebuilt only after a property has been set or removed.
+     *
+     * @return the resolved event properties, an immutable map.
+     */
+    Map<String, TypedProperty> getResolvedEventProperties() {
+        ResolvedEventProperties resolvedEventProperties = mResolvedEventProperties;
+
+        /* Read revision before merging, so that a concurrent change is never missed. */
+        long revision = sRevision.get();
+        if (resolvedEventProperties == null || resolvedEventProperties.mRevision != revision) {
+            Map<String, TypedProperty> mergedProperties = new HashMap<>();
+            for (AnalyticsTransmissionTarget target = mTransmissionTarget; target != null; target = target.mParentTarget) {
+                target.getPropertyConfigurator().mergeEventProperties(mergedProperties);
+            }
+            resolvedEventProperties = new ResolvedEventProperties(revision, Collections.unmodifiableMap(mergedProperties));
+            mResolvedEventProperties = resolvedEventProperties;
+        }
+        return resolvedEventProperties.mProperties;
+    }
+
     /*
      * Extracted method to synchronize on each level at once while reading properties.
      * Nesting synchronize between parent/child could lead to deadlocks.
      */
-    synchronized void mergeEventProperties(EventProperties mergedProperties) {
+    private synchronized void mergeEventProperties(Map<String, TypedProperty> mergedProperties) {
         for (Map.Entry<String, TypedProperty> property : mEventProperties.getProperties().entrySet()) {
             String key = property.getKey();
-            if (!mergedProperties.getProperties().containsKey(key)) {
-                mergedProperties.getProperties().put(key, property.getValue());
+            if (!mergedProperties.containsKey(key)) {
+                mergedProperties.put(key, property.getValue());
+            }
+        }
+    }
+
+    /**
+     * Immutable Part A properties resolved for a target.
+     */
+    private static class ResolvedPartAProperties {
+
+        /**
+         * Properties revision this snapshot was built from.
+         */
+        private final long mRevision;
+
+        /**
+         * Resolved app name.
+         */
+        private final String mAppName;
+
+        /**
+         * Resolved app version.
+         */
+        private final String mAppVersion;
+
+        /**
+         * Resolved app locale.
+         */
+        private final String mAppLocale;
+
+        /**
+         * Resolved user identifier.
+         */
+        private final String mUserId;
+
+        private ResolvedPartAProperties(long revision, String appName, String appVersion, String appLocale, String userId) {
+            mRevision = revision;
+            mAppName = appName;
+            mAppVersion = appVersion;
+            mAppLocale = appLocale;
+            mUserId = userId;
+        }
+
+        /**
+         * Override the log extensions with the properties that are set.
+         *
+         * @param app  app extension.
+         * @param user user extension.
+         */
+        private void apply(AppExtension app, UserExtension user) {
+            if (mAppName != null) {
+                app.setName(mAppName);
+            }
+            if (mAppVersion != null) {
+                app.setVer(mAppVersion);
             }
+            if (mAppLocale != null) {
+                app.setLocale(mAppLocale);
+            }
+            if (mUserId != null) {
+                user.setLocalId(mUserId);
+            }
+        }
+    }
+
+    /**
+     * Immutable event properties resolved for a target.
+     */
+    private static class ResolvedEventProperties {
+
+        /**
+         * Properties revision this snapshot was built from.
+         */
+        private final long mRevision;
+
+        /**
+         * Resolved properties.
+         */
+        private final Map<String, TypedProperty> mProperties;
+
+        private ResolvedEventProperties(long revision, Map<String, TypedProperty> properties) {
+            mRevision = revision;
+            mProperties = properties;
         }
     }
 }
@@ -21,6 +21,7 @@ import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
@@ -48,6 +49,23 @@ public class AnalyticsValidator extends AbstractChannelListener {
     @VisibleForTesting
     static final int MAX_PROPERTY_COUNT = 20;
 
+    /**
+     * Max number of event names with cached validation results.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_EVENT_NAMES = 100;
+
+    /**
+     * Max number of cached property key sets per event name.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_SHAPES_PER_EVENT_NAME = 4;
+
+    /**
+     * Validation results of event names and property keys, by raw event name.
+     */
+    private final Map<String, List<EventShape>> mEventShapes = new HashMap<>();
+
     /**
      * Validates log.
      *
@@ -71,16 +89,119 @@ public class AnalyticsValidator extends AbstractChannelListener {
      * @param log The log.
      * @return true if validation passed, false otherwise.
      */
-    private boolean validateLog(@NonNull EventLog log) {
-        String name = validateName(log.getName(), log.getType());
+    private synchronized boolean validateLog(@NonNull EventLog log) {
+
+        /* Repeated event shapes only need their values to be checked. */
+        String rawName = log.getName();
+        List<TypedProperty> properties = log.getTypedProperties();
+        EventShape shape = getCachedShape(rawName, properties);
+        if (shape != null && applyShape(shape, properties)) {
+            log.setName(shape.mValidatedName);
+            return true;
+        }
+        String name = validateName(rawName, log.getType());
         if (name == null) {
             return false;
         }
-        validateProperties(log.getTypedProperties());
+
+        /* Record the shape while validating only if it can be cached. */
+        String[] keys = null;
+        String[] validatedKeys = null;
+        if (shape == null && canCacheShape(rawName)) {
+            int size = properties == null ? 0 : properties.size();
+            keys = new String[size];
+            validatedKeys = new String[size];
+        }
+        boolean nullValues = validateProperties(properties, keys, validatedKeys);
+        if (keys != null && !nullValues) {
+            List<EventShape> shapes = mEventShapes.get(rawName);
+            if (shapes == null) {
+                shapes = new ArrayList<>(MAX_CACHED_SHAPES_PER_EVENT_NAME);
+                mEventShapes.put(rawName, shapes);
+            }
+            shapes.add(new EventShape(name, keys, validatedKeys));
+        }
         log.setName(name);
         return true;
     }
 
+    /**
+     * Get the cached validation result of an event shape.
+     *
+     * @param name       raw event name.
+     * @param properties raw event properties.
+     * @return cached shape or null if not validated yet.
+     */
+    private EventShape getCachedShape(String name, List<TypedProperty> properties) {
+        List<EventShape> shapes = mEventShapes.get(name);
+        if (shapes != null) {
+            for (int i = 0; i < shapes.size(); i++) {
+                EventShape shape = shapes.get(i);
+                if (shape.matches(properties)) {
+                    return shape;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the cache can hold one more shape for an event name.
+     *
+     * @param name raw event name.
+     * @return true if a new shape can be cached.
+     */
+    private boolean canCacheShape(String name) {
+        List<EventShape> shapes = mEventShapes.get(name);
+        if (shapes == null) {
+            return mEventShapes.size() < MAX_CACHED_EVENT_NAMES;
+        }
+        return shapes.size() < MAX_CACHED_SHAPES_PER_EVENT_NAME;
+    }
+
+    /**
+     * Apply a cached validation result to event properties.
+     *
+     * @param shape      cached shape matching the property keys.
+     * @param properties properties to validate.
+     * @return false without modifying properties if a value is null, in which case a full validation is needed.
+     */
+    private static boolean applyShape(EventShape shape, List<TypedProperty> properties) {
+        if (properties == null) {
+            return true;
+        }
+
+        /* Null values are skipped and change which properties are over the count limit. */
+        for (int i = 0; i < properties.size(); i++) {
+            TypedProperty property = properties.get(i);
+            if (property instanceof StringTypedProperty && ((StringTypedProperty) property).getValue() == null) {
+                return false;
+            }
+        }
+        int position = 0;
+        for (String validatedKey : shape.mValidatedKeys) {
+            if (validatedKey == null) {
+                properties.remove(position);
+                continue;
+            }
+            TypedProperty property = properties.get(position);
+            boolean copyNeededOnModification = true;
+
+            /* Keys are only modified by truncation. */
+            if (validatedKey.length() != property.getName().length()) {
+                property = copyProperty(property, validatedKey);
+                properties.set(position, property);
+                copyNeededOnModification = false;
+            }
+            TypedProperty validatedProperty = validateStringValueLength(property, validatedKey, copyNeededOnModification);
+            if (validatedProperty != property) {
+                properties.set(position, validatedProperty);
+            }
+            position++;
+        }
+        return true;
+    }
+
     /**
      * Validates name.
      *
@@ -150,19 +271,28 @@ public class AnalyticsValidator extends AbstractChannelListener {
     /**
      * Validates typed properties.
      *
-     * @param properties Typed properties collection to validate.
+     * @param properties    Typed properties collection to validate.
+     * @param keys          Optional array filled with the original key of each property.
+     * @param validatedKeys Optional array filled with the validated key of each property, null if the property is skipped.
+     * @return true if a string property had a null value.
      */
-    private static void validateProperties(List<TypedProperty> properties) {
+    private static boolean validateProperties(List<TypedProperty> properties, String[] keys, String[] validatedKeys) {
         if (properties == null) {
-            return;
+            return false;
         }
         int count = 0;
+        int index = -1;
         boolean maxCountReached = false;
+        boolean nullValues = false;
         String message;
         for (ListIterator<TypedProperty> iterator = properties.listIterator(); iterator.hasNext(); ) {
             boolean copyNeededOnModification = true;
             TypedProperty property = iterator.next();
             String key = property.getName();
+            index++;
+            if (keys != null) {
+                keys[index] = key;
+            }
             if (count >= MAX_PROPERTY_COUNT) {
                 if (!maxCountReached) {
                     message = String.format("Typed properties cannot contain more than %s items. Skipping other properties.", MAX_PROPERTY_COUNT);
@@ -185,31 +315,50 @@ public class AnalyticsValidator extends AbstractChannelListener {
                 iterator.set(property);
                 copyNeededOnModification = false;
             }
-            if (property instanceof StringTypedProperty) {
-                StringTypedProperty stringTypedProperty = (StringTypedProperty) property;
-                String value = stringTypedProperty.getValue();
-                if (value == null) {
-                    message = String.format("Typed property '%s' : property value cannot be null. Property '%s' will be skipped.", key, key);
-                    AppCenterLog.warn(LOG_TAG, message);
-                    iterator.remove();
-                    continue;
-                }
-                if (value.length() > MAX_PROPERTY_ITEM_LENGTH) {
-                    message = String.format("A String property '%s' : property value cannot be longer than %s characters. Property value will be truncated.", key, MAX_PROPERTY_ITEM_LENGTH);
-                    AppCenterLog.warn(LOG_TAG, message);
-                    value = value.substring(0, MAX_PROPERTY_ITEM_LENGTH);
-                    if (copyNeededOnModification) {
-                        stringTypedProperty = new StringTypedProperty();
-                        stringTypedProperty.setName(key);
-                        stringTypedProperty.setValue(value);
-                        iterator.set(stringTypedProperty);
-                    } else {
-                        stringTypedProperty.setValue(value);
-                    }
-                }
+            if (property instanceof StringTypedProperty && ((StringTypedProperty) property).getValue() == null) {
+                message = String.format("Typed property '%s' : property value cannot be null. Property '%s' will be skipped.", key, key);
+                AppCenterLog.warn(LOG_TAG, message);
+                iterator.remove();
+                nullValues = true;
+                continue;
+            }
+            TypedProperty validatedProperty = validateStringValueLength(property, key, copyNeededOnModification);
+            if (validatedProperty != property) {
+                iterator.set(validatedProperty);
+            }
+            if (validatedKeys != null) {
+                validatedKeys[index] = key;
             }
             count++;
         }
+        return nullValues;
+    }
+
+    /**
+     * Truncate the value of a string property if too long.
+     *
+     * @param property                 Property with a valid key and a non null value if a string property.
+     * @param key                      Validated key.
+     * @param copyNeededOnModification True if the property must be copied to be modified.
+     * @return the property to use, which is a copy if the value was truncated and copy was needed.
+     */
+    private static TypedProperty validateStringValueLength(TypedProperty property, String key, boolean copyNeededOnModification) {
+        if (property instanceof StringTypedProperty) {
+            StringTypedProperty stringTypedProperty = (StringTypedProperty) property;
+            String value = stringTypedProperty.getValue();
+            if (value.length() > MAX_PROPERTY_ITEM_LENGTH) {
+                String message = String.format("A String property '%s' : property value cannot be longer than %s characters. Property value will be truncated.", key, MAX_PROPERTY_ITEM_LENGTH);
+                AppCenterLog.warn(LOG_TAG, message);
+                value = value.substring(0, MAX_PROPERTY_ITEM_LENGTH);
+                if (copyNeededOnModification) {
+                    stringTypedProperty = new StringTypedProperty();
+                    stringTypedProperty.setName(key);
+                }
+                stringTypedProperty.setValue(value);
+                return stringTypedProperty;
+            }
+        }
+        return property;
     }
 
     private static TypedProperty copyProperty(TypedProperty property, String newKey) {
@@ -242,6 +391,54 @@ public class AnalyticsValidator extends AbstractChannelListener {
         return copy;
     }
 
+    /**
+     * Validation result of an event name and property keys in order.
+     * Values are validated for every event.
+     */
+    private static class EventShape {
+
+        /**
+         * Validated event name.
+         */
+        private final String mValidatedName;
+
+        /**
+         * Raw property keys.
+         */
+        private final String[] mKeys;
+
+        /**
+         * Validated key for each raw key, null if the property is skipped.
+         */
+        private final String[] mValidatedKeys;
+
+        private EventShape(String validatedName, String[] keys, String[] validatedKeys) {
+            mValidatedName = validatedName;
+            mKeys = keys;
+            mValidatedKeys = validatedKeys;
+        }
+
+        /**
+         * Check if properties have the same keys in the same order.
+         *
+         * @param properties raw properties.
+         * @return true if this shape matches.
+         */
+        private boolean matches(List<TypedProperty> properties) {
+            int size = properties == null ? 0 : properties.size();
+            if (size != mKeys.length) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                String key = properties.get(i).getName();
+                if (key == null ? mKeys[i] != null : !key.equals(mKeys[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     @Override
     public boolean shouldFilter(@NonNull Log log) {
         if (log instanceof PageLog) {
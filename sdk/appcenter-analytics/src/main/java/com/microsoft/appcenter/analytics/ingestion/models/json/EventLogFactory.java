@@ -47,4 +47,12 @@ public class EventLogFactory extends AbstractLogFactory {
         }
         return commonSchemaLogs;
     }
+
+    @Override
+    public boolean validateCommonSchemaLog(Log log) throws IllegalArgumentException {
+
+        /* Only the event name can make the conversion fail, invalid properties are skipped. */
+        PartAUtils.validateName(((EventLog) log).getName());
+        return true;
+    }
 }
@@ -6,6 +6,7 @@
 package com.microsoft.appcenter.analytics;
 
 import android.content.Context;
+import android.os.Handler;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Flags;
@@ -31,6 +32,7 @@ import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.async.AppCenterConsumer;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
@@ -43,9 +45,12 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -58,6 +63,7 @@ import static com.microsoft.appcenter.analytics.Analytics.ANALYTICS_CRITICAL_GRO
 import static com.microsoft.appcenter.analytics.Analytics.ANALYTICS_GROUP;
 import static com.microsoft.appcenter.analytics.Analytics.MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS;
 import static com.microsoft.appcenter.analytics.Analytics.MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS;
+import static com.microsoft.appcenter.utils.PrefStorageConstants.KEY_INSTALL_ID;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -349,6 +355,49 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         assertEquals(booleanTypedProperty, argumentCaptor.getValue().getTypedProperties().get(4));
     }
 
+    @Test
+    public void trackEventFromAppWithReusedPropertyBuffer() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        ArgumentCaptor<EventLog> argumentCaptor = ArgumentCaptor.forClass(EventLog.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Prepare typed properties. */
+        Date date = new Date();
+        StringTypedProperty stringTypedProperty = new StringTypedProperty();
+        stringTypedProperty.setName("n0");
+        stringTypedProperty.setValue("value");
+        DateTimeTypedProperty dateTimeTypedProperty = new DateTimeTypedProperty();
+        dateTimeTypedProperty.setName("n1");
+        dateTimeTypedProperty.setValue(date);
+        LongTypedProperty longTypedProperty = new LongTypedProperty();
+        longTypedProperty.setName("n2");
+        longTypedProperty.setValue(-1);
+        DoubleTypedProperty doubleTypedProperty = new DoubleTypedProperty();
+        doubleTypedProperty.setName("n3");
+        doubleTypedProperty.setValue(0.5);
+        BooleanTypedProperty booleanTypedProperty = new BooleanTypedProperty();
+        booleanTypedProperty.setName("n4");
+        booleanTypedProperty.setValue(true);
+
+        /* Send event with a buffer, then reuse the buffer for another event. */
+        EventPropertyBuffer buffer = new EventPropertyBuffer();
+        buffer.set("n0", "value").set("n1", date).set("n2", -1L).set("n3", 0.5).set("n4", true);
+        Analytics.trackEvent("eventName", buffer);
+        buffer.clear().set("n0", "other");
+        Analytics.trackEvent("otherEventName", buffer, CRITICAL);
+        Analytics.trackEvent("emptyEventName", (EventPropertyBuffer) null);
+        verify(channel, times(3)).enqueue(argumentCaptor.capture(), anyString(), anyInt());
+        List<EventLog> eventLogs = argumentCaptor.getAllValues();
+        assertEquals("eventName", eventLogs.get(0).getName());
+        assertEquals(Arrays.<TypedProperty>asList(stringTypedProperty, dateTimeTypedProperty, longTypedProperty, doubleTypedProperty, booleanTypedProperty), eventLogs.get(0).getTypedProperties());
+        assertEquals("otherEventName", eventLogs.get(1).getName());
+        stringTypedProperty.setValue("other");
+        assertEquals(Collections.<TypedProperty>singletonList(stringTypedProperty), eventLogs.get(1).getTypedProperties());
+        assertNull(eventLogs.get(2).getTypedProperties());
+    }
+
     @Test
     public void trackEventWithNormalPersistenceFlag() {
         Analytics analytics = Analytics.getInstance();
@@ -484,8 +533,11 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(channel).removeGroup(eq(analytics.getGroupName()));
         verify(channel).addGroup(eq(ANALYTICS_CRITICAL_GROUP), anyInt(), anyLong(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
         verify(channel).addGroup(eq(ANALYTICS_GROUP), anyInt(), anyLong(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+        verify(channel, never()).setGroupStoragePolicy(anyString(), anyLong(), anyLong());
         verify(channel).addListener(isA(SessionTracker.class));
-        verify(channel).addListener(isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_GROUP), eq(PageLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_CRITICAL_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
         verify(channel).addListener(isA(AnalyticsTransmissionTarget.getChannelListener().getClass()));
 
         /* Now we can see the service enabled. */
@@ -495,7 +547,9 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         Analytics.setEnabled(false).get();
         assertFalse(Analytics.isEnabled().get());
         verify(channel).removeListener(isA(SessionTracker.class));
-        verify(channel).removeListener(isA(AnalyticsValidator.class));
+        verify(channel).removeTypedListener(eq(ANALYTICS_GROUP), eq(PageLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).removeTypedListener(eq(ANALYTICS_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).removeTypedListener(eq(ANALYTICS_CRITICAL_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
         verify(channel).removeListener(isA(AnalyticsTransmissionTarget.getChannelListener().getClass()));
         verify(channel).removeGroup(eq(ANALYTICS_CRITICAL_GROUP));
         verify(channel, times(2)).removeGroup(eq(ANALYTICS_GROUP));
@@ -570,7 +624,9 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         analytics.onStarted(mock(Context.class), channel, "", null, true);
         verify(channel).addGroup(eq(analytics.getGroupName()), anyInt(), anyLong(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
         verify(channel).addListener(isA(SessionTracker.class));
-        verify(channel).addListener(isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_GROUP), eq(PageLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_CRITICAL_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
 
         /* Pause Analytics. */
         Analytics.pause();
@@ -609,7 +665,9 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         analytics.onStarted(mock(Context.class), channel, "", null, true);
         verify(channel).addGroup(eq(analytics.getGroupName()), anyInt(), anyLong(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
         verify(channel).addListener(isA(SessionTracker.class));
-        verify(channel).addListener(isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_GROUP), eq(PageLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
+        verify(channel).addTypedListener(eq(ANALYTICS_CRITICAL_GROUP), eq(EventLog.TYPE), isA(AnalyticsValidator.class));
 
         /* Disable and pause Analytics. */
         Analytics.setEnabled(false);
@@ -897,6 +955,309 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         assertFalse(result);
     }
 
+    @Test
+    public void setEventStorageLimits() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        assertFalse(Analytics.setEventTimeToLive(-1));
+        assertFalse(Analytics.setMaxEventStorageSize(-1));
+        assertTrue(Analytics.setEventTimeToLive(1000));
+        assertTrue(Analytics.setMaxEventStorageSize(2048));
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Limits are applied to both event groups. */
+        verify(channel).setGroupStoragePolicy(ANALYTICS_GROUP, 1000, 2048);
+        verify(channel).setGroupStoragePolicy(ANALYTICS_CRITICAL_GROUP, 1000, 2048);
+
+        /* They cannot be changed after start. */
+        assertFalse(Analytics.setEventTimeToLive(0));
+        assertFalse(Analytics.setMaxEventStorageSize(0));
+        verifyStatic(times(2));
+        AppCenterLog.error(anyString(), contains("before the service is started"));
+    }
+
+    @Test
+    public void trackEventBurstIsDrainedWithSinglePost() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Hold background commands. */
+        final List<Runnable> commands = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                commands.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(mAppCenterHandler).post(any(Runnable.class), any(Runnable.class));
+
+        /* Track a burst of events: only one command is posted. */
+        Analytics.trackEvent("eventName1");
+        Analytics.trackEvent("eventName2");
+        Analytics.trackEvent("eventName3", (Map<String, String>) null, CRITICAL);
+        assertEquals(1, commands.size());
+        verify(channel, never()).enqueue(any(Log.class), anyString(), anyInt());
+
+        /* Drain events in order. */
+        commands.remove(0).run();
+        ArgumentCaptor<EventLog> eventLogArgumentCaptor = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(3)).enqueue(eventLogArgumentCaptor.capture(), anyString(), anyInt());
+        assertEquals("eventName1", eventLogArgumentCaptor.getAllValues().get(0).getName());
+        assertEquals("eventName2", eventLogArgumentCaptor.getAllValues().get(1).getName());
+        assertEquals("eventName3", eventLogArgumentCaptor.getAllValues().get(2).getName());
+        verify(channel).enqueue(any(Log.class), eq(ANALYTICS_CRITICAL_GROUP), eq(CRITICAL));
+
+        /* Identifiers are unique. */
+        assertNotNull(eventLogArgumentCaptor.getAllValues().get(0).getId());
+        assertFalse(eventLogArgumentCaptor.getAllValues().get(0).getId().equals(eventLogArgumentCaptor.getAllValues().get(1).getId()));
+
+        /* Next event posts a new command. */
+        Analytics.trackEvent("eventName4");
+        assertEquals(1, commands.size());
+    }
+
+    @Test
+    public void trackEventLargeBurstIsDrainedInSeveralCommands() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        final List<Runnable> commands = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                commands.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(mAppCenterHandler).post(any(Runnable.class), any(Runnable.class));
+        for (int i = 0; i < Analytics.MAX_EVENTS_PER_DRAIN + 1; i++) {
+            Analytics.trackEvent("eventName");
+        }
+        assertEquals(1, commands.size());
+
+        /* First command converts a batch and posts another one for the rest. */
+        commands.remove(0).run();
+        verify(channel, times(Analytics.MAX_EVENTS_PER_DRAIN)).enqueue(isA(EventLog.class), anyString(), anyInt());
+        assertEquals(1, commands.size());
+        commands.remove(0).run();
+        verify(channel, times(Analytics.MAX_EVENTS_PER_DRAIN + 1)).enqueue(isA(EventLog.class), anyString(), anyInt());
+        assertTrue(commands.isEmpty());
+    }
+
+    @Test
+    public void trackEventDiscardedWhenDisabledBeforeDrain() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        final List<Runnable> disabledCommands = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+
+                /* Simulate App Center disabled. */
+                disabledCommands.add((Runnable) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(mAppCenterHandler).post(any(Runnable.class), any(Runnable.class));
+        Analytics.trackEvent("eventName1");
+        Analytics.trackEvent("eventName2");
+        assertEquals(1, disabledCommands.size());
+        disabledCommands.remove(0).run();
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString(), anyInt());
+
+        /* Queue is reset: next event posts again. */
+        Analytics.trackEvent("eventName3");
+        assertEquals(1, disabledCommands.size());
+    }
+
+    @Test
+    public void trackAggregatedEventSentOncePerWindow() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+
+        /* Aggregate values of 2 events: only the first value schedules the end of the window. */
+        Map<String, String> properties = new HashMap<>();
+        properties.put("screen", "home");
+        Analytics.trackAggregatedEvent("scroll", properties, 2);
+        Analytics.trackAggregatedEvent("scroll", new HashMap<>(properties), 5);
+        Analytics.trackAggregatedEvent("scroll", properties, -1);
+        Analytics.trackAggregatedEvent("impression", null);
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(timer.capture(), eq(TimeUnit.SECONDS.toMillis(Analytics.DEFAULT_EVENT_AGGREGATION_INTERVAL_IN_SECONDS)));
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString(), anyInt());
+
+        /* One summary event per name and properties at the end of the window. */
+        timer.getValue().run();
+        ArgumentCaptor<EventLog> eventLogs = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(2)).enqueue(eventLogs.capture(), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        EventLog scrollLog = eventLogs.getAllValues().get(0);
+        assertEquals("scroll", scrollLog.getName());
+        assertEquals(5, scrollLog.getTypedProperties().size());
+        assertEquals(3L, ((LongTypedProperty) getTypedProperty(scrollLog, EventAggregator.COUNT_PROPERTY)).getValue());
+        assertEquals(6.0, ((DoubleTypedProperty) getTypedProperty(scrollLog, EventAggregator.SUM_PROPERTY)).getValue(), 0);
+        assertEquals(-1.0, ((DoubleTypedProperty) getTypedProperty(scrollLog, EventAggregator.MIN_PROPERTY)).getValue(), 0);
+        assertEquals(5.0, ((DoubleTypedProperty) getTypedProperty(scrollLog, EventAggregator.MAX_PROPERTY)).getValue(), 0);
+        assertEquals("home", ((StringTypedProperty) getTypedProperty(scrollLog, "screen")).getValue());
+        EventLog impressionLog = eventLogs.getAllValues().get(1);
+        assertEquals("impression", impressionLog.getName());
+        assertEquals(4, impressionLog.getTypedProperties().size());
+        assertEquals(1L, ((LongTypedProperty) getTypedProperty(impressionLog, EventAggregator.COUNT_PROPERTY)).getValue());
+
+        /* Next value starts a new window. */
+        Analytics.trackAggregatedEvent("impression", null);
+        verify(handler, times(2)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void trackAggregatedEventSentInBackground() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        assertTrue(Analytics.setEventAggregationInterval(MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS));
+        Analytics.trackAggregatedEvent("heartbeat", null);
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(timer.capture(), eq(TimeUnit.SECONDS.toMillis(MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS)));
+
+        /* Going to background sends the window and cancels the timer. */
+        analytics.onApplicationEnterBackground();
+        verify(channel).enqueue(isA(EventLog.class), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        verify(handler).removeCallbacks(timer.getValue());
+
+        /* Nothing more to send when the timer fires anyway. */
+        timer.getValue().run();
+        verify(channel).enqueue(isA(EventLog.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void trackAggregatedEventDiscardedWhenDisabled() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        Analytics.trackAggregatedEvent("scroll", null, 1);
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(timer.capture(), anyLong());
+
+        /* Disabling discards aggregated values. */
+        Analytics.setEnabled(false);
+        Analytics.setEnabled(true);
+        timer.getValue().run();
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void trackAggregatedEventInvalid() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        Analytics.trackAggregatedEvent(null, null);
+        Analytics.trackAggregatedEvent("", null);
+        Analytics.trackAggregatedEvent("scroll", null, Double.NaN);
+        Analytics.trackAggregatedEvent("scroll", null, Double.POSITIVE_INFINITY);
+        verify(handler, never()).postDelayed(any(Runnable.class), anyLong());
+        verifyStatic(times(2));
+        AppCenterLog.error(anyString(), contains("name cannot be null or empty"));
+        verifyStatic(times(2));
+        AppCenterLog.error(anyString(), contains("must be finite"));
+        assertFalse(Analytics.setEventAggregationInterval(MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS - 1));
+        assertFalse(Analytics.setEventAggregationInterval(MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS + 1));
+    }
+
+    @Test
+    public void trackEventSampled() {
+        UUID installId = UUID.randomUUID();
+        when(SharedPreferencesManager.getString(eq(KEY_INSTALL_ID), anyString())).thenReturn(installId.toString());
+        double bucket = EventSampler.toBucket(installId);
+        double keptRate = (1 + bucket) / 2;
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Analytics.setEventSamplingRate("kept", keptRate);
+        Analytics.setEventSamplingRate("dropped", bucket / 2);
+
+        /* Kept events have the sampling rate. */
+        Analytics.trackEvent("kept", Collections.singletonMap("name", "value"));
+        ArgumentCaptor<EventLog> eventLog = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel).enqueue(eventLog.capture(), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        assertEquals(2, eventLog.getValue().getTypedProperties().size());
+        assertEquals(keptRate, ((DoubleTypedProperty) getTypedProperty(eventLog.getValue(), EventSampler.SAMPLING_RATE_PROPERTY)).getValue(), 0);
+
+        /* Dropped events are not sent from any API. */
+        Analytics.trackEvent("dropped");
+        Analytics.trackEvent("dropped", Collections.singletonMap("name", "value"));
+        Analytics.trackEvent("dropped", new EventProperties().set("name", 1L), Flags.CRITICAL);
+        Analytics.getTransmissionTarget("token").trackEvent("dropped", Collections.singletonMap("name", "value"));
+        Analytics.getTransmissionTarget("token").trackEvent("dropped", new EventProperties());
+        verify(channel).enqueue(isA(EventLog.class), anyString(), anyInt());
+        assertEquals(1, Analytics.getSampledInEventCount());
+        assertEquals(5, Analytics.getSampledOutEventCount());
+
+        /* Events without sampling are unchanged. */
+        Analytics.trackEvent("other");
+        verify(channel, times(2)).enqueue(eventLog.capture(), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        assertEquals("other", eventLog.getValue().getName());
+        assertNull(eventLog.getValue().getTypedProperties());
+        assertEquals(1, Analytics.getSampledInEventCount());
+
+        /* Default rate applies to other events. */
+        Analytics.setDefaultEventSamplingRate(0);
+        Analytics.trackEvent("other");
+        verify(channel, times(2)).enqueue(isA(EventLog.class), anyString(), anyInt());
+        assertEquals(6, Analytics.getSampledOutEventCount());
+    }
+
+    @Test
+    public void setInvalidSamplingRate() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Analytics.setEventSamplingRate(null, 0);
+        Analytics.setEventSamplingRate("", 0);
+        verifyStatic(times(2));
+        AppCenterLog.error(anyString(), contains("name cannot be null or empty"));
+        Analytics.setEventSamplingRate("event", -0.1);
+        Analytics.setEventSamplingRate("event", 1.1);
+        Analytics.setEventSamplingRate("event", Double.NaN);
+        Analytics.setDefaultEventSamplingRate(Double.NaN);
+        verifyStatic(times(4));
+        AppCenterLog.error(anyString(), contains("must be between 0 and 1"));
+
+        /* Event is not sampled. */
+        Analytics.trackEvent("event");
+        verify(channel).enqueue(isA(EventLog.class), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        assertEquals(0, Analytics.getSampledOutEventCount());
+    }
+
+    private static TypedProperty getTypedProperty(EventLog eventLog, String name) {
+        for (TypedProperty property : eventLog.getTypedProperties()) {
+            if (property.getName().equals(name)) {
+                return property;
+            }
+        }
+        return null;
+    }
+
     /**
      * Activity with page name automatically resolving to "My" (no "Activity" suffix).
      */
@@ -19,6 +19,7 @@ import com.microsoft.appcenter.ingestion.models.one.ProtocolExtension;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -50,6 +51,7 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.endsWith;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.doNothing;
@@ -85,6 +87,15 @@ public class AnalyticsTransmissionTargetTest extends AbstractAnalyticsTest {
         assertNotNull(Analytics.getTransmissionTarget("token"));
     }
 
+    @Test
+    public void propertyConfiguratorBoundToTarget() {
+        AnalyticsTransmissionTarget target = Analytics.getTransmissionTarget("token");
+        AnalyticsTransmissionTarget child = target.getTransmissionTarget("child");
+        verify(mChannel).addTaggedListener(target, target.getPropertyConfigurator());
+        verify(mChannel).addTaggedListener(child, child.getPropertyConfigurator());
+        verify(mChannel, never()).addListener(any(PropertyConfigurator.class));
+    }
+
     @Test
     public void testGetTransmissionTargetWithNullToken() {
         mockStatic(AppCenterLog.class);
@@ -315,6 +326,62 @@ public class AnalyticsTransmissionTargetTest extends AbstractAnalyticsTest {
         verify(mChannel, never()).enqueue(any(Log.class), anyString(), anyInt());
     }
 
+    @Test
+    public void enabledStateReadOnceFromStorage() {
+
+        /* Check a grandchild state several times. */
+        AnalyticsTransmissionTarget root = Analytics.getTransmissionTarget("root");
+        AnalyticsTransmissionTarget middle = root.getTransmissionTarget("middle");
+        AnalyticsTransmissionTarget leaf = middle.getTransmissionTarget("leaf");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(leaf.isEnabledAsync().get());
+        }
+        assertTrue(root.isEnabledAsync().get());
+
+        /* Each level was read only once from storage. */
+        for (String token : new String[]{"root", "middle", "leaf"}) {
+            verifyStatic();
+            SharedPreferencesManager.getBoolean(endsWith("/" + token), eq(true));
+        }
+
+        /* Disabling the middle target updates the cached state of its descendants only. */
+        middle.setEnabledAsync(false).get();
+        assertTrue(root.isEnabledAsync().get());
+        assertFalse(middle.isEnabledAsync().get());
+        assertFalse(leaf.isEnabledAsync().get());
+
+        /* A child created later reuses the cached state of its ancestors. */
+        AnalyticsTransmissionTarget newLeaf = middle.getTransmissionTarget("newLeaf");
+        assertFalse(newLeaf.isEnabledAsync().get());
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(endsWith("/middle"), eq(true));
+        verifyStatic(never());
+        SharedPreferencesManager.getBoolean(endsWith("/newLeaf"), eq(true));
+
+        /* Enabling it back from the root is propagated. */
+        root.setEnabledAsync(true).get();
+        assertTrue(leaf.isEnabledAsync().get());
+        assertTrue(newLeaf.isEnabledAsync().get());
+    }
+
+    @Test
+    public void enabledStateSharedByTargetsWithSameToken() {
+
+        /* The same token used at root level and as a child has the same storage key. */
+        AnalyticsTransmissionTarget root = Analytics.getTransmissionTarget("shared");
+        AnalyticsTransmissionTarget child = Analytics.getTransmissionTarget("parent").getTransmissionTarget("shared");
+        assertTrue(root.isEnabledAsync().get());
+        assertTrue(child.isEnabledAsync().get());
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(endsWith("/shared"), eq(true));
+
+        /* Disabling one instance is seen by the other one. */
+        root.setEnabledAsync(false).get();
+        assertFalse(child.isEnabledAsync().get());
+        child.setEnabledAsync(true).get();
+        assertTrue(root.isEnabledAsync().get());
+    }
+
     @Test
     public void disableAnalytics() {
 
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventAggregatorTest {
+
+    @Test
+    public void aggregateByNameAndProperties() {
+        EventAggregator aggregator = new EventAggregator();
+        Map<String, String> first = new HashMap<>();
+        first.put("a", "1");
+        first.put("b", "2");
+        Map<String, String> sameAsFirst = new HashMap<>();
+        sameAsFirst.put("b", "2");
+        sameAsFirst.put("a", "1");
+        assertEquals(EventAggregator.Result.WINDOW_STARTED, aggregator.add("event", first, 4));
+        assertEquals(EventAggregator.Result.ADDED, aggregator.add("event", sameAsFirst, 2));
+        assertEquals(EventAggregator.Result.ADDED, aggregator.add("event", null, 1));
+        assertEquals(EventAggregator.Result.ADDED, aggregator.add("other", first, 1));
+
+        /* Properties are copied. */
+        first.put("a", "changed");
+        List<EventAggregator.SummaryEvent> summaryEvents = new ArrayList<>(aggregator.removeAll());
+        assertEquals(3, summaryEvents.size());
+        EventAggregator.SummaryEvent summaryEvent = summaryEvents.get(0);
+        assertEquals("event", summaryEvent.mName);
+        List<TypedProperty> properties = summaryEvent.mProperties;
+        assertEquals(6, properties.size());
+        assertEquals(EventAggregator.COUNT_PROPERTY, properties.get(0).getName());
+        assertEquals(2L, ((LongTypedProperty) properties.get(0)).getValue());
+        assertEquals(EventAggregator.SUM_PROPERTY, properties.get(1).getName());
+        assertEquals(6.0, ((DoubleTypedProperty) properties.get(1)).getValue(), 0);
+        assertEquals(EventAggregator.MIN_PROPERTY, properties.get(2).getName());
+        assertEquals(2.0, ((DoubleTypedProperty) properties.get(2)).getValue(), 0);
+        assertEquals(EventAggregator.MAX_PROPERTY, properties.get(3).getName());
+        assertEquals(4.0, ((DoubleTypedProperty) properties.get(3)).getValue(), 0);
+        for (TypedProperty property : properties.subList(4, 6)) {
+            String expected = property.getName().equals("a") ? "1" : "2";
+            assertEquals(expected, ((StringTypedProperty) property).getValue());
+        }
+        assertEquals(4, summaryEvents.get(1).mProperties.size());
+        assertEquals("other", summaryEvents.get(2).mName);
+
+        /* A new window starts after removing. */
+        assertTrue(aggregator.removeAll().isEmpty());
+        assertEquals(EventAggregator.Result.WINDOW_STARTED, aggregator.add("event", null, 1));
+        aggregator.clear();
+        assertTrue(aggregator.removeAll().isEmpty());
+    }
+
+    @Test
+    public void statisticsWinConflicts() {
+        EventAggregator aggregator = new EventAggregator();
+        aggregator.add("event", Collections.singletonMap(EventAggregator.COUNT_PROPERTY, "value"), 1);
+        List<TypedProperty> properties = aggregator.removeAll().iterator().next().mProperties;
+        assertEquals(4, properties.size());
+        assertEquals(1L, ((LongTypedProperty) properties.get(0)).getValue());
+    }
+
+    @Test
+    public void dropWhenTooManyAggregates() {
+        EventAggregator aggregator = new EventAggregator();
+        for (int i = 0; i < EventAggregator.MAX_AGGREGATES; i++) {
+            aggregator.add("event" + i, null, 1);
+        }
+        assertEquals(EventAggregator.Result.DROPPED, aggregator.add("oneMore", null, 1));
+
+        /* Existing aggregates still accept values. */
+        assertEquals(EventAggregator.Result.ADDED, aggregator.add("event0", null, 1));
+        assertEquals(EventAggregator.MAX_AGGREGATES, aggregator.removeAll().size());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class EventPropertyBufferTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void validProperties() {
+        EventPropertyBuffer buffer = new EventPropertyBuffer();
+        buffer.set("t1", "test")
+                .set("t2", new Date(0))
+                .set("t3", (long) 0)
+                .set("t4", 0.1)
+                .set("t5", false);
+        assertEquals(5, buffer.size());
+        assertEquals(5, buffer.snapshot().toTypedProperties().size());
+        verifyStatic(never());
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+    }
+
+    @Test
+    public void invalidProperties() {
+        EventPropertyBuffer buffer = new EventPropertyBuffer();
+        buffer.set(null, "test")
+                .set(null, new Date(0))
+                .set(null, (long) 0)
+                .set(null, 0.1)
+                .set(null, false)
+                .set("t1", (String) null)
+                .set("t2", (Date) null)
+                .set("t3", Double.NaN)
+                .set("t4", Double.POSITIVE_INFINITY);
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.snapshot().toTypedProperties().isEmpty());
+        verifyStatic(times(9));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+    }
+
+    @Test
+    public void overrideKeepsPositionAndType() {
+        EventPropertyBuffer buffer = new EventPropertyBuffer();
+        buffer.set("t1", "test").set("t2", 1L).set("t1", true);
+        List<TypedProperty> properties = buffer.snapshot().toTypedProperties();
+        assertEquals(2, properties.size());
+        BooleanTypedProperty booleanProperty = new BooleanTypedProperty();
+        booleanProperty.setName("t1");
+        booleanProperty.setValue(true);
+        assertEquals(booleanProperty, properties.get(0));
+        LongTypedProperty longProperty = new LongTypedProperty();
+        longProperty.setName("t2");
+        longProperty.setValue(1);
+        assertEquals(longProperty, properties.get(1));
+        verifyStatic();
+        AppCenterLog.warn(eq(Analytics.LOG_TAG), anyString());
+    }
+
+    @Test
+    public void reuseAfterSnapshot() {
+        EventPropertyBuffer buffer = new EventPropertyBuffer();
+
+        /* Grow beyond initial capacity. */
+        for (int i = 0; i < 20; i++) {
+            buffer.set("key" + i, (double) i);
+        }
+        EventPropertyBuffer.Values values = buffer.snapshot();
+        buffer.clear().set("other", "value");
+        assertEquals(1, buffer.size());
+
+        /* Snapshot is not affected by buffer changes. */
+        List<TypedProperty> properties = values.toTypedProperties();
+        assertEquals(20, properties.size());
+        DoubleTypedProperty doubleProperty = new DoubleTypedProperty();
+        doubleProperty.setName("key19");
+        doubleProperty.setValue(19);
+        assertEquals(doubleProperty, properties.get(19));
+        StringTypedProperty stringProperty = new StringTypedProperty();
+        stringProperty.setName("other");
+        stringProperty.setValue("value");
+        assertEquals(stringProperty, buffer.snapshot().toTypedProperties().get(0));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.analytics.EventSampler.Decision;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.context.SessionContext;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.utils.PrefStorageConstants.KEY_INSTALL_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+public class EventSamplerTest extends AbstractAnalyticsTest {
+
+    private static final UUID INSTALL_ID = UUID.fromString("2d4d8a4d-6a4b-4d4e-9f1a-7c1b6a0d3e5f");
+
+    @After
+    public void resetSessions() {
+        SessionContext.unsetInstance();
+    }
+
+    @Test
+    public void bucketsAreStableAndUniform() {
+        assertEquals(EventSampler.toBucket(INSTALL_ID), EventSampler.toBucket(UUID.fromString(INSTALL_ID.toString())), 0);
+        int count = 10000;
+        int belowTenPercent = 0;
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            double bucket = EventSampler.toBucket(UUID.randomUUID());
+            assertTrue(bucket >= 0 && bucket < 1);
+            sum += bucket;
+            if (bucket < 0.1) {
+                belowTenPercent++;
+            }
+        }
+        assertEquals(0.5, sum / count, 0.02);
+        assertEquals(count / 10, belowTenPercent, 200);
+    }
+
+    @Test
+    public void sampleByInstall() {
+        when(SharedPreferencesManager.getString(eq(KEY_INSTALL_ID), anyString())).thenReturn(INSTALL_ID.toString());
+        double bucket = EventSampler.toBucket(INSTALL_ID);
+        double keptRate = (1 + bucket) / 2;
+        double droppedRate = bucket / 2;
+        EventSampler sampler = new EventSampler();
+
+        /* No sampling by default. */
+        assertEquals(EventSampler.NO_SAMPLING_RATE, sampler.getRate("event"), 0);
+        assertEquals(Decision.NOT_SAMPLED, sampler.sample("event"));
+        assertEquals(Decision.NOT_SAMPLED, sampler.sample((String) null));
+
+        /* Decision is deferred to background until install identifier is loaded. */
+        sampler.setRate("kept", keptRate);
+        assertEquals(keptRate, sampler.getRate("kept"), 0);
+        assertEquals(Decision.UNDECIDED, sampler.sample("kept"));
+        assertEquals(Decision.KEPT, sampler.sampleInBackground(keptRate));
+        assertEquals(Decision.KEPT, sampler.sample("kept"));
+
+        /* Specific rate overrides default rate. */
+        sampler.setDefaultRate(droppedRate);
+        assertEquals(droppedRate, sampler.getRate("event"), 0);
+        assertEquals(Decision.DROPPED, sampler.sample("event"));
+        assertEquals(Decision.KEPT, sampler.sample("kept"));
+        sampler.setRate("kept", 1);
+        assertEquals(Decision.NOT_SAMPLED, sampler.sample("kept"));
+
+        /* A zero rate drops everything. */
+        sampler.setRate("none", 0);
+        assertEquals(Decision.DROPPED, sampler.sample("none"));
+        assertEquals(3, sampler.getKeptEventCount());
+        assertEquals(2, sampler.getDroppedEventCount());
+    }
+
+    @Test
+    public void sampleBySession() {
+        when(SharedPreferencesManager.getString(eq(KEY_INSTALL_ID), anyString())).thenReturn(INSTALL_ID.toString());
+        UUID sessionId = UUID.randomUUID();
+        double installBucket = EventSampler.toBucket(INSTALL_ID);
+        double sessionBucket = EventSampler.toBucket(sessionId);
+        double rate = (installBucket + sessionBucket) / 2;
+        EventSampler sampler = new EventSampler();
+        sampler.setSessionSampling(true);
+        sampler.setRate("event", rate);
+
+        /* Session context is not used before the install identifier is loaded. */
+        assertEquals(Decision.UNDECIDED, sampler.sample("event"));
+        Decision expectedForInstall = installBucket < rate ? Decision.KEPT : Decision.DROPPED;
+        assertEquals(expectedForInstall, sampler.sampleInBackground(rate));
+
+        /* Outside sessions, fall back to install. */
+        SessionContext.getInstance().addSession(null);
+        assertEquals(expectedForInstall, sampler.sample("event"));
+
+        /* Use session bucket within a session. */
+        SessionContext.getInstance().addSession(sessionId);
+        Decision expectedForSession = sessionBucket < rate ? Decision.KEPT : Decision.DROPPED;
+        assertEquals(expectedForSession, sampler.sample("event"));
+        assertEquals(expectedForSession, sampler.sample("event"));
+
+        /* Sampling by install ignores sessions. */
+        sampler.setSessionSampling(false);
+        assertEquals(expectedForInstall, sampler.sample("event"));
+    }
+
+    @Test
+    public void samplingRateIsFirstProperty() {
+        List<TypedProperty> properties = new ArrayList<>();
+        StringTypedProperty conflicting = new StringTypedProperty();
+        conflicting.setName(EventSampler.SAMPLING_RATE_PROPERTY);
+        conflicting.setValue("value");
+        properties.add(conflicting);
+        StringTypedProperty other = new StringTypedProperty();
+        other.setName("other");
+        other.setValue("value");
+        properties.add(other);
+        List<TypedProperty> sampledProperties = EventSampler.addSamplingRate(properties, 0.25);
+        assertEquals(2, sampledProperties.size());
+        assertEquals(EventSampler.SAMPLING_RATE_PROPERTY, sampledProperties.get(0).getName());
+        assertEquals(0.25, ((DoubleTypedProperty) sampledProperties.get(0)).getValue(), 0);
+        assertEquals(other, sampledProperties.get(1));
+
+        /* Input is not modified. */
+        assertEquals(2, properties.size());
+        assertEquals(conflicting, properties.get(0));
+
+        /* Events without properties. */
+        assertEquals(1, EventSampler.addSamplingRate(null, 0.25).size());
+    }
+}
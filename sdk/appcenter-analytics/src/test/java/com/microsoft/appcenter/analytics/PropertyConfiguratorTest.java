@@ -59,6 +59,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 @PrepareForTest(Secure.class)
 public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
@@ -255,6 +256,16 @@ public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
 
         /* Assert device ID is collected. */
         assertEquals("a:mockDeviceId", log.getExt().getDevice().getLocalId());
+
+        /* Device ID is read only once. */
+        CommonSchemaLog log2 = new CommonSchemaEventLog();
+        log2.setExt(new Extensions());
+        log2.getExt().setDevice(new DeviceExtension());
+        log2.setTag(Analytics.getTransmissionTarget("test"));
+        pc.onPreparingLog(log2, "groupName");
+        assertEquals("a:mockDeviceId", log2.getExt().getDevice().getLocalId());
+        verifyStatic();
+        Secure.getString(any(ContentResolver.class), anyString());
     }
 
     @Test
@@ -353,6 +364,50 @@ public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
         assertEquals("c:alice", log.getExt().getUser().getLocalId());
     }
 
+    @Test
+    public void resolvedPropertiesUpdatedWhenAncestorChanges() {
+
+        /* Set up hierarchy with a property on grandparent. */
+        AnalyticsTransmissionTarget grandparent = Analytics.getTransmissionTarget("grandparent");
+        AnalyticsTransmissionTarget parent = grandparent.getTransmissionTarget("parent");
+        AnalyticsTransmissionTarget child = parent.getTransmissionTarget("child");
+        grandparent.getPropertyConfigurator().setAppName("appName1");
+        CommonSchemaLog log = prepareChildLog(child);
+        assertEquals("appName1", log.getExt().getApp().getName());
+        assertNull(log.getExt().getApp().getVer());
+
+        /* Changing an ancestor is applied to next logs of descendants. */
+        grandparent.getPropertyConfigurator().setAppName("appName2");
+        parent.getPropertyConfigurator().setAppVersion("appVersion");
+        log = prepareChildLog(child);
+        assertEquals("appName2", log.getExt().getApp().getName());
+        assertEquals("appVersion", log.getExt().getApp().getVer());
+
+        /* Child value still wins. */
+        child.getPropertyConfigurator().setAppName("childAppName");
+        log = prepareChildLog(child);
+        assertEquals("childAppName", log.getExt().getApp().getName());
+
+        /* Event properties snapshot is also updated when an ancestor changes. */
+        grandparent.getPropertyConfigurator().setEventProperty("key", "value1");
+        assertEquals("value1", ((StringTypedProperty) child.getPropertyConfigurator().getResolvedEventProperties().get("key")).getValue());
+        grandparent.getPropertyConfigurator().setEventProperty("key", "value2");
+        assertEquals("value2", ((StringTypedProperty) child.getPropertyConfigurator().getResolvedEventProperties().get("key")).getValue());
+        grandparent.getPropertyConfigurator().removeEventProperty("key");
+        assertTrue(child.getPropertyConfigurator().getResolvedEventProperties().isEmpty());
+    }
+
+    private static CommonSchemaLog prepareChildLog(AnalyticsTransmissionTarget child) {
+        CommonSchemaLog log = new CommonSchemaEventLog();
+        log.setExt(new Extensions());
+        log.getExt().setApp(new AppExtension());
+        log.getExt().setUser(new UserExtension());
+        log.addTransmissionTarget("child");
+        log.setTag(child);
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        return log;
+    }
+
     @Test
     public void checkGrandParentNotOverriddenByDescendants() {
         CommonSchemaLog log = new CommonSchemaEventLog();
@@ -21,6 +21,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_CACHED_EVENT_NAMES;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_CACHED_SHAPES_PER_EVENT_NAME;
 import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_NAME_LENGTH;
 import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_PROPERTY_COUNT;
 import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_PROPERTY_ITEM_LENGTH;
@@ -248,4 +250,78 @@ public class AnalyticsValidatorForEventLogTest {
         assertEquals("name", booleanProperty.getName());
         assertTrue(booleanProperty.getValue());
     }
+
+    @Test
+    public void repeatedShapeValidatedFromCache() {
+        String longName = generateString(MAX_NAME_LENGTH + 1, '*');
+        String longKey = generateString(MAX_PROPERTY_ITEM_LENGTH + 1, '*');
+        String longValue = generateString(MAX_PROPERTY_ITEM_LENGTH + 1, '*');
+        for (int i = 0; i < 3; i++) {
+
+            /* Same keys and name but different values, the third event has a null value. */
+            EventLog eventLog = new EventLog();
+            eventLog.setName(longName);
+            List<TypedProperty> properties = new ArrayList<>();
+            properties.add(stringProperty("", "skipped"));
+            StringTypedProperty longKeyProperty = stringProperty(longKey, i == 0 ? "short" : longValue);
+            properties.add(longKeyProperty);
+            properties.add(stringProperty("nullable", i == 2 ? null : "value" + i));
+            for (int j = 0; j < MAX_PROPERTY_COUNT; j++) {
+                properties.add(stringProperty("key" + j, "value"));
+            }
+            eventLog.setTypedProperties(properties);
+            assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+            assertEquals(MAX_NAME_LENGTH, eventLog.getName().length());
+            List<TypedProperty> validatedProperties = eventLog.getTypedProperties();
+            assertEquals(MAX_PROPERTY_COUNT, validatedProperties.size());
+            StringTypedProperty truncatedProperty = (StringTypedProperty) validatedProperties.get(0);
+            assertEquals(MAX_PROPERTY_ITEM_LENGTH, truncatedProperty.getName().length());
+            assertEquals(i == 0 ? "short" : longValue.substring(0, MAX_PROPERTY_ITEM_LENGTH), truncatedProperty.getValue());
+
+            /* Original property is not modified. */
+            assertSame(longKey, longKeyProperty.getName());
+            assertEquals(i == 0 ? "short" : longValue, longKeyProperty.getValue());
+            if (i == 2) {
+
+                /* Null value is skipped so one more property fits. */
+                assertEquals("key0", validatedProperties.get(1).getName());
+                assertEquals("key" + (MAX_PROPERTY_COUNT - 2), validatedProperties.get(MAX_PROPERTY_COUNT - 1).getName());
+            } else {
+                assertEquals("nullable", validatedProperties.get(1).getName());
+                assertEquals("value" + i, ((StringTypedProperty) validatedProperties.get(1)).getValue());
+                assertEquals("key" + (MAX_PROPERTY_COUNT - 3), validatedProperties.get(MAX_PROPERTY_COUNT - 1).getName());
+            }
+        }
+    }
+
+    @Test
+    public void shapesValidatedWhenCacheIsFull() {
+        for (int i = 0; i < MAX_CACHED_SHAPES_PER_EVENT_NAME + 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                EventLog eventLog = new EventLog();
+                eventLog.setName("eventName");
+                List<TypedProperty> properties = new ArrayList<>();
+                properties.add(stringProperty("key" + i, generateString(MAX_PROPERTY_ITEM_LENGTH + 1, '*')));
+                properties.add(stringProperty("", "skipped"));
+                eventLog.setTypedProperties(properties);
+                assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+                assertEquals(1, eventLog.getTypedProperties().size());
+                assertEquals("key" + i, eventLog.getTypedProperties().get(0).getName());
+                assertEquals(MAX_PROPERTY_ITEM_LENGTH, ((StringTypedProperty) eventLog.getTypedProperties().get(0)).getValue().length());
+            }
+        }
+        for (int i = 0; i < MAX_CACHED_EVENT_NAMES + 2; i++) {
+            EventLog eventLog = new EventLog();
+            eventLog.setName("eventName" + i);
+            assertFalse(mAnalyticsValidator.shouldFilter(eventLog));
+            assertEquals("eventName" + i, eventLog.getName());
+        }
+    }
+
+    private static StringTypedProperty stringProperty(String name, String value) {
+        StringTypedProperty property = new StringTypedProperty();
+        property.setName(name);
+        property.setValue(value);
+        return property;
+    }
 }
\ No newline at end of file
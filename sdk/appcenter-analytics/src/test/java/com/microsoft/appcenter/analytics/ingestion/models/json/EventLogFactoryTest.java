@@ -27,6 +27,7 @@ import java.util.Map;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Matchers.same;
@@ -55,6 +56,20 @@ public class EventLogFactoryTest {
         assertEquals(0, convertedLogs.size());
     }
 
+    @Test
+    public void validateEventName() {
+        EventLog log = new EventLog();
+        log.setName("test");
+        assertTrue(new EventLogFactory().validateCommonSchemaLog(log));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validateInvalidEventName() {
+        EventLog log = new EventLog();
+        log.setName("invalid name");
+        new EventLogFactory().validateCommonSchemaLog(log);
+    }
+
     @Test
     @PrepareForTest({PartAUtils.class, CommonSchemaDataUtils.class})
     public void convertEventWithoutProperties() {
@@ -18,6 +18,7 @@ import org.json.JSONStringer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
 
@@ -478,6 +479,52 @@ public class ErrorModelTest {
         checkSerialization(errorLog1, serializer);
     }
 
+    @Test
+    public void managedErrorLogWithFrameTable() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setTimestamp(new Date());
+        errorLog.setId(UUID.randomUUID());
+        StackFrame frame1 = new StackFrame();
+        frame1.setClassName("1");
+        frame1.setMethodName("1");
+        StackFrame frame2 = new StackFrame();
+        frame2.setClassName("2");
+        frame2.setMethodName("2");
+        errorLog.setFrameTable(Arrays.asList(frame1, frame2));
+        Thread thread1 = new Thread();
+        thread1.setId(1);
+        thread1.setFrames(Arrays.asList(frame1, frame2));
+        thread1.setFrameIndexes(Arrays.asList(0, 1));
+        Thread thread2 = new Thread();
+        thread2.setId(2);
+        thread2.setFrames(singletonList(frame2));
+        thread2.setFrameIndexes(singletonList(1));
+        errorLog.setThreads(Arrays.asList(thread1, thread2));
+
+        /* Frames are written once and resolved when read. */
+        String payload = serializer.serializeLog(errorLog);
+        assertEquals(1, payload.split("\"className\":\"2\"").length - 1);
+        ManagedErrorLog deserializedLog = (ManagedErrorLog) serializer.deserializeLog(payload, null);
+        checkEquals(errorLog, deserializedLog);
+        assertEquals(singletonList(frame2), deserializedLog.getThreads().get(1).getFrames());
+
+        /* Expanded log is written with frames in each thread. */
+        deserializedLog.expandFrames();
+        payload = serializer.serializeLog(deserializedLog);
+        assertEquals(2, payload.split("\"className\":\"2\"").length - 1);
+        checkEquals(errorLog, serializer.deserializeLog(payload, null));
+
+        /* Invalid index. */
+        thread2.setFrameIndexes(singletonList(2));
+        try {
+            serializer.deserializeLog(serializer.serializeLog(errorLog), null);
+            fail();
+        } catch (JSONException ignored) {
+        }
+    }
+
     @Test
     public void handledErrorLog() throws JSONException {
         LogSerializer serializer = new DefaultLogSerializer();
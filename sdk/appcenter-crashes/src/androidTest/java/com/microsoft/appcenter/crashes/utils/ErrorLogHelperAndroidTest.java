@@ -8,6 +8,9 @@ package com.microsoft.appcenter.crashes.utils;
 import android.support.test.InstrumentationRegistry;
 
 import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.model.CrashSummary;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.utils.storage.FileManager;
 
@@ -17,6 +20,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Date;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
@@ -96,6 +100,7 @@ public class ErrorLogHelperAndroidTest {
              * file.setLastModified does not work on most devices or emulators and returns false.
              * So we can only sleep at least 1 second between each to make sure the time is different...
              */
+            ErrorLogHelper.addStoredFiles(file);
             FileManager.write(file, "contents");
             testFiles[i] = file;
             Thread.sleep(1000);
@@ -104,6 +109,7 @@ public class ErrorLogHelperAndroidTest {
         assertEquals(testFiles[2], ErrorLogHelper.getLastErrorLogFile());
 
         testFiles[3] = new File(mErrorDirectory, new UUID(0, 3).toString() + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+        ErrorLogHelper.addStoredFiles(testFiles[3]);
         FileManager.write(testFiles[3], "contents");
 
         /* Get all error logs stored in the file system when logs exist. */
@@ -155,6 +161,128 @@ public class ErrorLogHelperAndroidTest {
             FileManager.delete(testFiles[i]);
     }
 
+    @Test
+    public void manifestReloadedAndRebuiltWhenCorrupted() throws Exception {
+        File errorLogFile = new File(mErrorDirectory, new UUID(0, 0).toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        File throwableFile = new File(mErrorDirectory, new UUID(0, 0).toString() + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+        ErrorLogHelper.addStoredFiles(errorLogFile, throwableFile);
+        FileManager.write(errorLogFile, "contents");
+        FileManager.write(throwableFile, "contents");
+        File manifestFile = new File(mErrorDirectory, ErrorLogManifest.MANIFEST_FILE);
+        assertTrue(manifestFile.exists());
+
+        /* Reload from manifest in a new process. */
+        ErrorLogHelper.clearStaticState();
+        assertEquals(1, ErrorLogHelper.getStoredErrorLogFiles().length);
+        assertEquals(errorLogFile, ErrorLogHelper.getLastErrorLogFile());
+        assertEquals(throwableFile, ErrorLogHelper.getStoredThrowableFile(new UUID(0, 0)));
+
+        /* Files deleted without updating the manifest are forgotten. */
+        assertTrue(errorLogFile.delete());
+        assertNull(ErrorLogHelper.getLastErrorLogFile());
+        ErrorLogHelper.clearStaticState();
+        assertEquals(0, ErrorLogHelper.getStoredErrorLogFiles().length);
+        assertEquals(throwableFile, ErrorLogHelper.getStoredThrowableFile(new UUID(0, 0)));
+
+        /* Corrupted manifest is rebuilt from the directory, including files that were never recorded. */
+        File otherErrorLogFile = new File(mErrorDirectory, new UUID(0, 1).toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        FileManager.write(otherErrorLogFile, "contents");
+        FileManager.write(manifestFile, "+ corrupted");
+        ErrorLogHelper.clearStaticState();
+        File[] files = ErrorLogHelper.getStoredErrorLogFiles();
+        assertEquals(1, files.length);
+        assertEquals(otherErrorLogFile, files[0]);
+        assertEquals(throwableFile, ErrorLogHelper.getStoredThrowableFile(new UUID(0, 0)));
+
+        /* Reset forgets everything. */
+        assertTrue(otherErrorLogFile.delete());
+        assertTrue(throwableFile.delete());
+        ErrorLogHelper.resetManifest();
+        assertEquals(0, ErrorLogHelper.getStoredErrorLogFiles().length);
+        assertNull(ErrorLogHelper.getStoredThrowableFile(new UUID(0, 0)));
+    }
+
+    @Test
+    public void manifestOnlyAppendedWhenSavingCrash() throws Exception {
+        File manifestFile = new File(mErrorDirectory, ErrorLogManifest.MANIFEST_FILE);
+        File errorLogFile = new File(mErrorDirectory, new UUID(0, 0).toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        File otherErrorLogFile = new File(mErrorDirectory, new UUID(0, 1).toString() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+
+        /* Without manifest file, saving a crash in a new process does not build one. */
+        ErrorLogHelper.resetManifest();
+        assertTrue(manifestFile.delete());
+        ErrorLogHelper.clearStaticState();
+        ErrorLogHelper.addStoredFiles(errorLogFile);
+        FileManager.write(errorLogFile, "contents");
+        assertFalse(manifestFile.exists());
+
+        /* It is rebuilt from the directory on next launch. */
+        ErrorLogHelper.clearStaticState();
+        assertEquals(errorLogFile, ErrorLogHelper.getLastErrorLogFile());
+        assertTrue(manifestFile.exists());
+
+        /* With a manifest file, saving a crash in a new process appends to it without loading it. */
+        long length = manifestFile.length();
+        ErrorLogHelper.clearStaticState();
+        ErrorLogHelper.addStoredFiles(otherErrorLogFile);
+        FileManager.write(otherErrorLogFile, "contents");
+        assertTrue(manifestFile.length() > length);
+        ErrorLogHelper.clearStaticState();
+        assertEquals(2, ErrorLogHelper.getStoredErrorLogFiles().length);
+
+        /* Clean up. */
+        assertTrue(errorLogFile.delete());
+        assertTrue(otherErrorLogFile.delete());
+        ErrorLogHelper.resetManifest();
+    }
+
+    @Test
+    public void crashSummary() throws java.lang.Exception {
+
+        /* No summary. */
+        assertNull(ErrorLogHelper.readAndDeleteCrashSummary());
+
+        /* Save and read summary. */
+        Exception exception = new Exception();
+        exception.setType("java.lang.IllegalStateException");
+        exception.setMessage(new String(new char[ErrorLogHelper.CRASH_SUMMARY_MESSAGE_LIMIT + 1]).replace('\0', '*'));
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        errorLog.setAppLaunchTimestamp(new Date(1000));
+        errorLog.setTimestamp(new Date(2000));
+        errorLog.setException(exception);
+        ErrorLogHelper.saveCrashSummary(errorLog);
+        CrashSummary summary = ErrorLogHelper.readAndDeleteCrashSummary();
+        assertNotNull(summary);
+        assertEquals(errorLog.getId().toString(), summary.getId());
+        assertEquals(new Date(1000), summary.getAppStartTime());
+        assertEquals(new Date(2000), summary.getAppErrorTime());
+        assertEquals(exception.getType(), summary.getExceptionType());
+        assertEquals(ErrorLogHelper.CRASH_SUMMARY_MESSAGE_LIMIT, summary.getExceptionMessage().length());
+
+        /* Summary is read only once. */
+        assertFalse(new File(mErrorDirectory, ErrorLogHelper.LAST_SESSION_CRASH_SUMMARY_FILE).exists());
+        assertNull(ErrorLogHelper.readAndDeleteCrashSummary());
+
+        /* Corrupted summary. */
+        FileManager.write(new File(mErrorDirectory, ErrorLogHelper.LAST_SESSION_CRASH_SUMMARY_FILE), "{");
+        assertNull(ErrorLogHelper.readAndDeleteCrashSummary());
+        assertFalse(new File(mErrorDirectory, ErrorLogHelper.LAST_SESSION_CRASH_SUMMARY_FILE).exists());
+    }
+
+    @Test
+    public void suppressedErrors() throws java.lang.Exception {
+
+        /* Nothing saved. */
+        assertNull(ErrorLogHelper.readAndDeleteSuppressedErrors());
+
+        /* Save and read once. */
+        ErrorLogHelper.saveSuppressedErrors("{\"logs\":[]}");
+        assertEquals("{\"logs\":[]}", ErrorLogHelper.readAndDeleteSuppressedErrors());
+        assertFalse(new File(mErrorDirectory, ErrorLogHelper.SUPPRESSED_ERRORS_FILE).exists());
+        assertNull(ErrorLogHelper.readAndDeleteSuppressedErrors());
+    }
+
     @Test
     public void parseDevice() {
         String deviceInfoString = "{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"2.5.4.2\",\"model\":\"Android SDK built for x86\",\"oemName\":\"Google\",\"osName\":\"Android\",\"osVersion\":\"9\",\"osBuild\":\"PSR1.180720.075\",\"osApiLevel\":28,\"locale\":\"en_US\",\"timeZoneOffset\":240,\"screenSize\":\"1080x1794\",\"appVersion\":\"2.5.4.2\",\"carrierName\":\"Android\",\"carrierCountry\":\"us\",\"appBuild\":\"59\",\"appNamespace\":\"com.microsoft.appcenter.sasquatch.project\"}";
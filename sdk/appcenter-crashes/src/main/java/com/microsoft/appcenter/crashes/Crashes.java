@@ -9,6 +9,8 @@ import android.annotation.SuppressLint;
 import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -25,15 +27,20 @@ import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.appcenter.crashes.model.CrashSummary;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.HandledErrorAggregator;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogBundle;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.StreamedDataUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
@@ -47,8 +54,11 @@ import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 import org.json.JSONException;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -56,9 +66,15 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
 import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
@@ -121,6 +137,64 @@ public class Crashes extends AbstractAppCenterService {
      */
     private static final int MAX_ATTACHMENT_SIZE = 7 * 1024 * 1024;
 
+    /**
+     * Prefix of the files where attachment data is copied.
+     */
+    @VisibleForTesting
+    static final String ATTACHMENT_DATA_FILE_PREFIX = "errorAttachment_";
+
+    /**
+     * File name of minidump attachments.
+     */
+    private static final String MINIDUMP_FILE_NAME = "minidump.dmp";
+
+    /**
+     * Content type of minidump attachments.
+     */
+    private static final String MINIDUMP_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * Property added to a handled error to report how many identical errors were suppressed before it.
+     */
+    @VisibleForTesting
+    static final String SUPPRESSED_COUNT_PROPERTY = "AppCenter.SuppressedCount";
+
+    /**
+     * Buffer size when copying attachment data.
+     */
+    private static final int ATTACHMENT_COPY_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Size of the memory reserved to save a crash when the heap is exhausted.
+     */
+    @VisibleForTesting
+    static final int CRASH_CAPTURE_RESERVED_MEMORY_SIZE = 256 * 1024;
+
+    /**
+     * When less heap than this is available at crash time, the crash is saved in low memory mode.
+     */
+    @VisibleForTesting
+    static final long LOW_MEMORY_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Minimum number of pending error logs to parse them in parallel at startup.
+     */
+    @VisibleForTesting
+    static final int PARALLEL_PROCESSING_THRESHOLD = 4;
+
+    /**
+     * Maximum number of threads used to parse pending error logs.
+     */
+    @VisibleForTesting
+    static final int MAX_PROCESSING_THREADS = 4;
+
+    /**
+     * Maximum number of error reports kept in memory, least recently used are evicted first
+     * and rebuilt from storage when needed again.
+     */
+    @VisibleForTesting
+    static final int MAX_ERROR_REPORT_CACHE_SIZE = 32;
+
     /**
      * Default crashes listener.
      */
@@ -138,14 +212,29 @@ public class Crashes extends AbstractAppCenterService {
     private final Map<String, LogFactory> mFactories;
 
     /**
-     * Crash reports not processed yet.
+     * Error logs of crash reports not processed yet, reports are built on demand.
      */
-    private final Map<UUID, ErrorLogReport> mUnprocessedErrorReports;
+    private final Map<UUID, ManagedErrorLog> mUnprocessedErrorReports;
 
     /**
-     * Cache for reports that are queued to channel but not yet sent.
+     * Bounded cache for reports that are queued to channel but not yet sent, reports only reference their throwable file.
      */
-    private final Map<UUID, ErrorLogReport> mErrorReportCache;
+    private final Map<UUID, ErrorReport> mErrorReportCache;
+
+    /**
+     * Duration in milliseconds of the processing of pending error logs at startup, -1 until done.
+     */
+    private volatile long mPendingErrorsProcessingTime = -1;
+
+    /**
+     * Number of error reports found in cache.
+     */
+    private volatile long mErrorReportCacheHits;
+
+    /**
+     * Number of error reports rebuilt from storage.
+     */
+    private volatile long mErrorReportCacheMisses;
 
     /**
      * Log serializer.
@@ -167,6 +256,16 @@ public class Crashes extends AbstractAppCenterService {
      */
     private Device mDevice;
 
+    /**
+     * Memory released when saving a crash so that saving it does not fail when the heap is exhausted.
+     */
+    private byte[] mCrashCaptureReservedMemory;
+
+    /**
+     * Device properties snapshot used when saving a crash in low memory mode.
+     */
+    private Device mCrashCaptureDevice;
+
     /**
      * Crash handler.
      */
@@ -202,6 +301,42 @@ public class Crashes extends AbstractAppCenterService {
      */
     private boolean mHasReceivedMemoryWarningInLastSession;
 
+    /**
+     * Lock for the last session crash summary, which is read from any thread.
+     */
+    private final Object mLastSessionCrashSummaryLock = new Object();
+
+    /**
+     * Summary of the last session crash, if any.
+     */
+    private CrashSummary mLastSessionCrashSummary;
+
+    /**
+     * Whether the last session crash summary was already read from storage in this process.
+     */
+    private boolean mLastSessionCrashSummaryLoaded;
+
+    /**
+     * Rate limiter of handled errors, null when disabled.
+     */
+    private HandledErrorAggregator mHandledErrorAggregator;
+
+    /**
+     * Timer sending the suppressed handled errors that were not reported by the end of their window, runs on the main thread.
+     */
+    private final Runnable mSuppressedErrorsTimer = new Runnable() {
+
+        @Override
+        public void run() {
+            queueDueSuppressedErrors();
+        }
+    };
+
+    /**
+     * Whether crash reports are persisted and sent as a single unit with their attachments.
+     */
+    private boolean mCrashBundlingEnabled;
+
     /**
      * Init.
      */
@@ -212,10 +347,17 @@ public class Crashes extends AbstractAppCenterService {
         mFactories.put(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
         mLogSerializer = new DefaultLogSerializer();
         mLogSerializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        mLogSerializer.addLogFactory(HandledErrorLog.TYPE, HandledErrorLogFactory.getInstance());
         mLogSerializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
         mCrashesListener = DEFAULT_ERROR_REPORTING_LISTENER;
         mUnprocessedErrorReports = new LinkedHashMap<>();
-        mErrorReportCache = new LinkedHashMap<>();
+        mErrorReportCache = new LinkedHashMap<UUID, ErrorReport>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, ErrorReport> eldest) {
+                return size() > MAX_ERROR_REPORT_CACHE_SIZE;
+            }
+        };
     }
 
     @NonNull
@@ -279,6 +421,72 @@ public class Crashes extends AbstractAppCenterService {
         getInstance().queueException(throwable, properties, attachments);
     }
 
+    /**
+     * Limit how many handled errors with the same stack trace are sent by {@link #trackError}.
+     * At most the specified number of errors per window are sent for each stack trace, other occurrences are
+     * suppressed and the next error sent includes the number of suppressed occurrences
+     * in the "AppCenter.SuppressedCount" property. If no error is sent for that stack trace
+     * by the end of the window, one error is sent with that property to report them.
+     * Aggregation is disabled by default.
+     *
+     * @param windowMillis       window duration in milliseconds, 0 to disable aggregation.
+     * @param maxErrorsPerWindow maximum number of errors sent per stack trace within a window.
+     */
+    public static void setHandledErrorAggregation(long windowMillis, int maxErrorsPerWindow) {
+        getInstance().setInstanceHandledErrorAggregation(windowMillis, maxErrorsPerWindow);
+    }
+
+    /**
+     * Get the number of handled errors that were suppressed by aggregation since it was enabled.
+     *
+     * @return number of suppressed handled errors.
+     * @see #setHandledErrorAggregation(long, int)
+     */
+    public static long getSuppressedErrorCount() {
+        return getInstance().getInstanceSuppressedErrorCount();
+    }
+
+    /**
+     * Get how long the processing of the crash reports stored by previous sessions took at startup.
+     * This includes reading and parsing the crash reports and calling {@link CrashesListener#shouldProcess(ErrorReport)}.
+     *
+     * @return duration in milliseconds, or -1 if the stored crash reports were not processed yet.
+     */
+    public static long getPendingCrashProcessingTime() {
+        return getInstance().mPendingErrorsProcessingTime;
+    }
+
+    /**
+     * Get the number of times an error report was found in memory, for example when calling
+     * {@link CrashesListener} callbacks while sending, since the application started.
+     *
+     * @return number of error report cache hits.
+     */
+    public static long getErrorReportCacheHitCount() {
+        return getInstance().mErrorReportCacheHits;
+    }
+
+    /**
+     * Get the number of times an error report had to be built again from storage since the application started.
+     *
+     * @return number of error report cache misses.
+     */
+    public static long getErrorReportCacheMissCount() {
+        return getInstance().mErrorReportCacheMisses;
+    }
+
+    /**
+     * Persist and send each crash report together with its attachments as a single unit.
+     * The crash and its attachments are then sent in the same request, and retried or deleted together.
+     * A request is not dedicated to a single crash: other crash reports or bundles can be sent in the same request.
+     * Bundling is disabled by default, each attachment is then sent after the crash in separate requests.
+     *
+     * @param enabled true to bundle crash reports with their attachments, false otherwise.
+     */
+    public static void setCrashBundlingEnabled(boolean enabled) {
+        getInstance().setInstanceCrashBundlingEnabled(enabled);
+    }
+
     /**
      * Generates crash for test purpose.
      */
@@ -341,6 +549,25 @@ public class Crashes extends AbstractAppCenterService {
         return getInstance().getInstanceLastSessionCrashReport();
     }
 
+    /**
+     * Provides a summary of the crash from the last session, if it crashed.
+     * <p>
+     * Unlike {@link #getLastSessionCrashReport()}, this method does not wait for the SDK to process
+     * pending work and can be called from any thread, even before App Center is started.
+     * It reads a small file saved at crash time, so the summary of a native crash is available only
+     * once the minidump has been processed, as for {@link #getLastSessionCrashReport()}.
+     *
+     * @param context application context.
+     * @return summary of the last session crash or null if there wasn't one.
+     */
+    @Nullable
+    public static CrashSummary getLastSessionCrashSummary(@NonNull Context context) {
+        if (Constants.FILES_PATH == null) {
+            Constants.loadFromContext(context);
+        }
+        return getInstance().loadLastSessionCrashSummary();
+    }
+
     /**
      * Check whether there was a memory warning in the last session.
      *
@@ -351,6 +578,52 @@ public class Crashes extends AbstractAppCenterService {
         return getInstance().hasInstanceReceivedMemoryWarningInLastSession();
     }
 
+    /**
+     * Implements {@link #setHandledErrorAggregation(long, int)} at instance level.
+     */
+    private synchronized void setInstanceHandledErrorAggregation(long windowMillis, int maxErrorsPerWindow) {
+        if (windowMillis > 0 && maxErrorsPerWindow <= 0) {
+            AppCenterLog.error(LOG_TAG, "Maximum errors per window must be positive.");
+            return;
+        }
+
+        /* Send what the previous configuration suppressed before replacing it. */
+        if (mHandledErrorAggregator != null) {
+            HandlerUtils.getMainHandler().removeCallbacks(mSuppressedErrorsTimer);
+            queueSuppressedErrors(mHandledErrorAggregator.removeAllSummaries());
+        }
+        mHandledErrorAggregator = windowMillis > 0 ? new HandledErrorAggregator(windowMillis, maxErrorsPerWindow) : null;
+    }
+
+    /**
+     * Implements {@link #setCrashBundlingEnabled(boolean)} at instance level.
+     */
+    private synchronized void setInstanceCrashBundlingEnabled(boolean enabled) {
+        mCrashBundlingEnabled = enabled;
+    }
+
+    /**
+     * Implements {@link #getSuppressedErrorCount()} at instance level.
+     */
+    private synchronized long getInstanceSuppressedErrorCount() {
+        return mHandledErrorAggregator != null ? mHandledErrorAggregator.getSuppressedCount() : 0;
+    }
+
+    /**
+     * Read the summary of the last session crash from storage on first call in this process.
+     *
+     * @return summary of the last session crash, if any.
+     */
+    private CrashSummary loadLastSessionCrashSummary() {
+        synchronized (mLastSessionCrashSummaryLock) {
+            if (!mLastSessionCrashSummaryLoaded) {
+                mLastSessionCrashSummaryLoaded = true;
+                mLastSessionCrashSummary = ErrorLogHelper.readAndDeleteCrashSummary();
+            }
+            return mLastSessionCrashSummary;
+        }
+    }
+
     /**
      * Implements {@link #getMinidumpDirectory()} at instance level.
      */
@@ -445,11 +718,31 @@ public class Crashes extends AbstractAppCenterService {
                     }
                 }
             }
+            ErrorLogHelper.resetManifest();
+            File[] attachmentFiles = StreamedDataUtils.getDirectory().listFiles(new FilenameFilter() {
+
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith(ATTACHMENT_DATA_FILE_PREFIX);
+                }
+            });
+            if (attachmentFiles != null) {
+                for (File file : attachmentFiles) {
+                    AppCenterLog.debug(LOG_TAG, "Deleting file " + file);
+                    if (!file.delete()) {
+                        AppCenterLog.warn(LOG_TAG, "Failed to delete file " + file);
+                    }
+                }
+            }
             AppCenterLog.info(LOG_TAG, "Deleted crashes local files");
 
             /* Delete cache and in memory last session report. */
             mErrorReportCache.clear();
             mLastSessionErrorReport = null;
+            synchronized (mLastSessionCrashSummaryLock) {
+                mLastSessionCrashSummary = null;
+                mLastSessionCrashSummaryLoaded = true;
+            }
             mContext.unregisterComponentCallbacks(mMemoryWarningListener);
             mMemoryWarningListener = null;
             SharedPreferencesManager.remove(PREF_KEY_MEMORY_RUNNING_LEVEL);
@@ -532,7 +825,13 @@ public class Crashes extends AbstractAppCenterService {
                             } else {
                                 AppCenterLog.warn(LOG_TAG, "Cannot find crash report for the error log: " + id);
                             }
-                        } else if (!(log instanceof ErrorAttachmentLog) && !(log instanceof HandledErrorLog)) {
+                        } else if (log instanceof ErrorAttachmentLog) {
+
+                            /* Attachment data copy is no longer needed once sent or discarded. */
+                            if (callbackProcessor.shouldDeleteThrowable()) {
+                                deleteAttachmentData(log);
+                            }
+                        } else if (!(log instanceof HandledErrorLog)) {
                             AppCenterLog.warn(LOG_TAG, "A different type of log comes to crashes: " + log.getClass().getName());
                         }
                     }
@@ -613,13 +912,30 @@ public class Crashes extends AbstractAppCenterService {
      * @param attachments optional attachments.
      */
     private synchronized void queueException(@NonNull final Throwable throwable, Map<String, String> properties, Iterable<ErrorAttachmentLog> attachments) {
+
+        /* Check rate limit before building anything. */
+        int suppressedCount = 0;
+        if (mHandledErrorAggregator != null) {
+            long now = SystemClock.elapsedRealtime();
+            suppressedCount = mHandledErrorAggregator.onError(HandledErrorAggregator.getFingerprint(throwable), throwable, now);
+            queueSuppressedErrors(mHandledErrorAggregator.removeDueSummaries(now));
+            if (suppressedCount == HandledErrorAggregator.SUPPRESSED) {
+                AppCenterLog.debug(LOG_TAG, "Handled error suppressed by aggregation: " + throwable.getClass().getName());
+
+                /* Report the suppressed errors if no other error reports them by the end of the window. */
+                Handler mainHandler = HandlerUtils.getMainHandler();
+                mainHandler.removeCallbacks(mSuppressedErrorsTimer);
+                mainHandler.postDelayed(mSuppressedErrorsTimer, mHandledErrorAggregator.getWindowMillis());
+                return;
+            }
+        }
         queueException(new ExceptionModelBuilder() {
 
             @Override
             public Exception buildExceptionModel() {
                 return ErrorLogHelper.getModelExceptionFromThrowable(throwable);
             }
-        }, properties, attachments);
+        }, properties, attachments, suppressedCount);
     }
 
     /**
@@ -637,15 +953,54 @@ public class Crashes extends AbstractAppCenterService {
             public Exception buildExceptionModel() {
                 return modelException;
             }
-        }, properties, attachments);
+        }, properties, attachments, 0);
+    }
+
+    /**
+     * Send the suppressed handled errors whose window ended without another error reporting them.
+     */
+    private synchronized void queueDueSuppressedErrors() {
+        if (mHandledErrorAggregator != null) {
+            queueSuppressedErrors(mHandledErrorAggregator.removeDueSummaries(SystemClock.elapsedRealtime()));
+            if (mHandledErrorAggregator.hasPendingSummaries()) {
+                HandlerUtils.getMainHandler().postDelayed(mSuppressedErrorsTimer, mHandledErrorAggregator.getWindowMillis());
+            }
+        }
     }
 
-    private synchronized UUID queueException(@NonNull final ExceptionModelBuilder exceptionModelBuilder, Map<String, String> properties, final Iterable<ErrorAttachmentLog> attachments) {
+    /**
+     * Send one handled error per summary of suppressed errors, with the number of suppressed occurrences.
+     *
+     * @param summaries summaries of suppressed errors.
+     */
+    private synchronized void queueSuppressedErrors(List<HandledErrorAggregator.Summary> summaries) {
+        for (final HandledErrorAggregator.Summary summary : summaries) {
+            queueException(new ExceptionModelBuilder() {
+
+                @Override
+                public Exception buildExceptionModel() {
+                    return ErrorLogHelper.getModelExceptionFromThrowable(summary.getThrowable());
+                }
+            }, null, null, summary.getSuppressedCount());
+        }
+    }
+
+    private synchronized UUID queueException(@NonNull final ExceptionModelBuilder exceptionModelBuilder, Map<String, String> properties, final Iterable<ErrorAttachmentLog> attachments, int suppressedCount) {
 
         /* Snapshot userId as early as possible. */
         final String userId = UserIdContext.getInstance().getUserId();
         final UUID errorId = UUID.randomUUID();
-        final Map<String, String> validatedProperties = ErrorLogHelper.validateProperties(properties, "HandledError");
+
+        /* Keep a property slot for the suppressed occurrences so that it's never dropped. */
+        int maxPropertyCount = ErrorLogHelper.MAX_PROPERTY_COUNT - (suppressedCount > 0 ? 1 : 0);
+        Map<String, String> validatedProperties = ErrorLogHelper.validateProperties(properties, "HandledError", maxPropertyCount);
+        if (suppressedCount > 0) {
+            if (validatedProperties == null) {
+                validatedProperties = new HashMap<>();
+            }
+            validatedProperties.put(SUPPRESSED_COUNT_PROPERTY, String.valueOf(suppressedCount));
+        }
+        final Map<String, String> errorProperties = validatedProperties;
         post(new Runnable() {
 
             @Override
@@ -656,7 +1011,7 @@ public class Crashes extends AbstractAppCenterService {
                 errorLog.setId(errorId);
                 errorLog.setUserId(userId);
                 errorLog.setException(exceptionModelBuilder.buildExceptionModel());
-                errorLog.setProperties(validatedProperties);
+                errorLog.setProperties(errorProperties);
                 mChannel.enqueue(errorLog, ERROR_GROUP, Flags.DEFAULTS);
 
                 /* Then attachments if any. */
@@ -674,6 +1029,8 @@ public class Crashes extends AbstractAppCenterService {
                 mUncaughtExceptionHandler.unregister();
                 mUncaughtExceptionHandler = null;
             }
+            mCrashCaptureReservedMemory = null;
+            mCrashCaptureDevice = null;
         } else {
 
             /* Register Java crash handler. */
@@ -682,9 +1039,42 @@ public class Crashes extends AbstractAppCenterService {
 
             /* Process minidump files. */
             processMinidumpFiles();
+
+            /* Prepare what a crash needs in low memory conditions. */
+            prepareCrashCapture();
         }
     }
 
+    /**
+     * Reserve memory and snapshot device properties for saving a crash when the heap is exhausted.
+     */
+    private void prepareCrashCapture() {
+        if (mCrashCaptureReservedMemory == null) {
+            mCrashCaptureReservedMemory = new byte[CRASH_CAPTURE_RESERVED_MEMORY_SIZE];
+        }
+        try {
+            mCrashCaptureDevice = DeviceInfoHelper.getDeviceInfo(mContext);
+        } catch (DeviceInfoHelper.DeviceInfoException | RuntimeException e) {
+            AppCenterLog.warn(LOG_TAG, "Could not snapshot device properties for crash capture.", e);
+        }
+    }
+
+    /**
+     * Check if a crash has to be saved using as little memory as possible.
+     *
+     * @param throwable uncaught exception or error.
+     * @return true if the crash is an out of memory error or if the heap is almost exhausted.
+     */
+    @VisibleForTesting
+    static boolean isLowMemory(Throwable throwable) {
+        if (throwable instanceof OutOfMemoryError) {
+            return true;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long availableMemory = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+        return availableMemory < LOW_MEMORY_THRESHOLD;
+    }
+
     private void processMinidumpFiles() {
 
         /* Convert minidump files to App Center crash files. */
@@ -711,7 +1101,8 @@ public class Crashes extends AbstractAppCenterService {
             }
         }
 
-        /* Check last session crash. */
+        /* Check last session crash, consuming its summary so that it's not reported in the next sessions. */
+        loadLastSessionCrashSummary();
         File logFile = ErrorLogHelper.getLastErrorLogFile();
         while (logFile != null && logFile.length() == 0) {
             AppCenterLog.warn(Crashes.LOG_TAG, "Deleting empty error file: " + logFile);
@@ -729,6 +1120,13 @@ public class Crashes extends AbstractAppCenterService {
                 try {
                     ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logFileContents, null);
                     mLastSessionErrorReport = buildErrorReport(log);
+
+                    /* Native crashes and crashes saved by previous SDK versions have no summary yet. */
+                    synchronized (mLastSessionCrashSummaryLock) {
+                        if (mLastSessionCrashSummary == null) {
+                            mLastSessionCrashSummary = ErrorLogHelper.getCrashSummaryFromErrorLog(log);
+                        }
+                    }
                     AppCenterLog.debug(LOG_TAG, "Processed crash report for the last session.");
                 } catch (JSONException e) {
                     AppCenterLog.error(LOG_TAG, "Error parsing last session error log.", e);
@@ -804,7 +1202,7 @@ public class Crashes extends AbstractAppCenterService {
                 savedDeviceInfo.setWrapperSdkName(WRAPPER_SDK_NAME_NDK);
             }
             errorLog.setDevice(savedDeviceInfo);
-            saveErrorLogFiles(new NativeException(), errorLog);
+            saveErrorLogFiles(new NativeException(), errorLog.getId(), mLogSerializer.serializeLog(errorLog));
             if (!minidumpFile.renameTo(dest)) {
                 throw new IOException("Failed to move file");
             }
@@ -818,38 +1216,29 @@ public class Crashes extends AbstractAppCenterService {
     }
 
     private void processPendingErrors() {
-        for (File logFile : ErrorLogHelper.getStoredErrorLogFiles()) {
-            AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
-            String logfileContents = FileManager.read(logFile);
-            if (logfileContents != null) {
-                try {
-                    ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
-                    UUID id = log.getId();
-                    ErrorReport report = buildErrorReport(log);
-                    if (report == null) {
-                        removeAllStoredErrorLogFiles(id);
-                    } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
-                        if (!mAutomaticProcessing) {
-                            AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
-                        }
-                        mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
-                    } else {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
-                        removeAllStoredErrorLogFiles(id);
-                    }
-                } catch (JSONException e) {
-                    AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e);
+        long startTime = System.currentTimeMillis();
+        File[] logFiles = ErrorLogHelper.getStoredErrorLogFiles();
+        for (PendingErrorLog pendingErrorLog : parsePendingErrorLogs(logFiles)) {
+            if (pendingErrorLog.mParsingException != null) {
+                AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + pendingErrorLog.mFile, pendingErrorLog.mParsingException);
 
-                    //noinspection ResultOfMethodCallIgnored
-                    logFile.delete();
-                }
+                //noinspection ResultOfMethodCallIgnored
+                pendingErrorLog.mFile.delete();
+            } else if (pendingErrorLog.mLog != null) {
+                processPendingErrorLog(pendingErrorLog.mLog);
             }
         }
+        mPendingErrorsProcessingTime = System.currentTimeMillis() - startTime;
+        if (logFiles.length > 0) {
+            AppCenterLog.info(LOG_TAG, "Processed " + logFiles.length + " pending error logs in " + mPendingErrorsProcessingTime + " ms.");
+        }
+        logErrorReportCacheStatistics();
         mHasReceivedMemoryWarningInLastSession = isMemoryRunningLevelWasReceived(SharedPreferencesManager.getInt(PREF_KEY_MEMORY_RUNNING_LEVEL, -1));
         if (mHasReceivedMemoryWarningInLastSession) {
             AppCenterLog.debug(LOG_TAG, "The application received a low memory warning in the last session.");
         }
         SharedPreferencesManager.remove(PREF_KEY_MEMORY_RUNNING_LEVEL);
+        queueSavedSuppressedErrors();
 
         /* If automatic processing is enabled. */
         if (mAutomaticProcessing) {
@@ -859,6 +1248,100 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Read and parse pending error logs, without their throwable files. When there are many of them,
+     * this is done on a small thread pool that only lives for this call.
+     *
+     * @param logFiles pending error log files.
+     * @return parsed error logs, in the same order as the files.
+     */
+    @NonNull
+    private List<PendingErrorLog> parsePendingErrorLogs(@NonNull final File[] logFiles) {
+        List<PendingErrorLog> pendingErrorLogs = new ArrayList<>(logFiles.length);
+        int threadCount = Math.min(Math.min(MAX_PROCESSING_THREADS, Runtime.getRuntime().availableProcessors()), logFiles.length);
+        if (logFiles.length < PARALLEL_PROCESSING_THRESHOLD || threadCount < 2) {
+            for (File logFile : logFiles) {
+                pendingErrorLogs.add(parsePendingErrorLog(logFile));
+            }
+            return pendingErrorLogs;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<PendingErrorLog>> futures = new ArrayList<>(logFiles.length);
+            for (final File logFile : logFiles) {
+                futures.add(executor.submit(new Callable<PendingErrorLog>() {
+
+                    @Override
+                    public PendingErrorLog call() {
+                        return parsePendingErrorLog(logFile);
+                    }
+                }));
+            }
+            for (int i = 0; i < logFiles.length; i++) {
+                PendingErrorLog pendingErrorLog;
+                try {
+                    pendingErrorLog = futures.get(i).get();
+                } catch (InterruptedException | ExecutionException e) {
+                    AppCenterLog.error(LOG_TAG, "Failed to read pending error file: " + logFiles[i], e);
+                    pendingErrorLog = new PendingErrorLog(logFiles[i]);
+                }
+                pendingErrorLogs.add(pendingErrorLog);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return pendingErrorLogs;
+    }
+
+    /**
+     * Read and parse a pending error log.
+     *
+     * @param logFile error log file.
+     * @return parsed error log.
+     */
+    @NonNull
+    private PendingErrorLog parsePendingErrorLog(@NonNull File logFile) {
+        AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
+        PendingErrorLog pendingErrorLog = new PendingErrorLog(logFile);
+        String logfileContents = FileManager.read(logFile);
+        if (logfileContents != null) {
+            try {
+                pendingErrorLog.mLog = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
+            } catch (JSONException e) {
+                pendingErrorLog.mParsingException = e;
+            }
+        }
+        return pendingErrorLog;
+    }
+
+    /**
+     * Filter a pending error log. The report, and thus the throwable file, is only read when
+     * the listener needs it, otherwise it is built later on demand.
+     *
+     * @param log pending error log.
+     */
+    private void processPendingErrorLog(@NonNull ManagedErrorLog log) {
+        UUID id = log.getId();
+        if (!mAutomaticProcessing) {
+            if (ErrorLogHelper.getStoredThrowableFile(id) == null) {
+                removeAllStoredErrorLogFiles(id);
+            } else {
+                AppCenterLog.debug(LOG_TAG, "Automatic processing disabled, keep log for manual processing: " + id.toString());
+                mUnprocessedErrorReports.put(id, log);
+            }
+            return;
+        }
+        ErrorReport report = buildErrorReport(log);
+        if (report == null) {
+            removeAllStoredErrorLogFiles(id);
+        } else if (mCrashesListener.shouldProcess(report)) {
+            mUnprocessedErrorReports.put(id, log);
+        } else {
+            AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
+            removeAllStoredErrorLogFiles(id);
+        }
+    }
+
     private static boolean isMemoryRunningLevelWasReceived(int memoryLevel) {
         return memoryLevel == TRIM_MEMORY_RUNNING_MODERATE
                 || memoryLevel == TRIM_MEMORY_RUNNING_LOW
@@ -934,25 +1417,33 @@ public class Crashes extends AbstractAppCenterService {
     @Nullable
     ErrorReport buildErrorReport(ManagedErrorLog log) {
         UUID id = log.getId();
-        if (mErrorReportCache.containsKey(id)) {
-            ErrorReport report = mErrorReportCache.get(id).report;
-            report.setDevice(log.getDevice());
-            return report;
+        ErrorReport cachedReport = mErrorReportCache.get(id);
+        if (cachedReport != null) {
+            mErrorReportCacheHits++;
+            cachedReport.setDevice(log.getDevice());
+            return cachedReport;
         } else {
+            mErrorReportCacheMisses++;
             File file = ErrorLogHelper.getStoredThrowableFile(id);
             if (file != null) {
-                String stackTrace = null;
-                if (file.length() > 0) {
-                    stackTrace = FileManager.read(file);
-                }
-                ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, stackTrace);
-                mErrorReportCache.put(id, new ErrorLogReport(log, report));
+
+                /* Cached reports only reference the throwable file, the stack trace is read when requested. */
+                ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, file);
+                mErrorReportCache.put(id, report);
                 return report;
             }
         }
         return null;
     }
 
+    private void logErrorReportCacheStatistics() {
+        long lookups = mErrorReportCacheHits + mErrorReportCacheMisses;
+        if (lookups > 0) {
+            AppCenterLog.debug(LOG_TAG, "Error report cache hit rate: " + (mErrorReportCacheHits * 100 / lookups) + "% (" +
+                    mErrorReportCacheHits + " hits, " + mErrorReportCacheMisses + " misses, " + mErrorReportCache.size() + " cached).");
+        }
+    }
+
     @VisibleForTesting
     CrashesListener getInstanceListener() {
         return mCrashesListener;
@@ -968,6 +1459,7 @@ public class Crashes extends AbstractAppCenterService {
 
     @VisibleForTesting
     private synchronized void handleUserConfirmation(@UserConfirmationDef final int userConfirmation) {
+        final boolean crashBundlingEnabled = mCrashBundlingEnabled;
         post(new Runnable() {
 
             @Override
@@ -994,18 +1486,17 @@ public class Crashes extends AbstractAppCenterService {
                     }
 
                     /* Send every pending report. */
-                    Iterator<Map.Entry<UUID, ErrorLogReport>> unprocessedIterator = mUnprocessedErrorReports.entrySet().iterator();
+                    Iterator<Map.Entry<UUID, ManagedErrorLog>> unprocessedIterator = mUnprocessedErrorReports.entrySet().iterator();
                     while (unprocessedIterator.hasNext()) {
 
                         /* If native crash, send dump as attachment and remove the fake stack trace. */
-                        File dumpFile = null;
                         ErrorAttachmentLog dumpAttachment = null;
-                        Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
-                        ErrorLogReport errorLogReport = unprocessedEntry.getValue();
-                        if (errorLogReport.report.getDevice() != null && WRAPPER_SDK_NAME_NDK.equals(errorLogReport.report.getDevice().getWrapperSdkName())) {
+                        Map.Entry<UUID, ManagedErrorLog> unprocessedEntry = unprocessedIterator.next();
+                        ManagedErrorLog errorLog = unprocessedEntry.getValue();
+                        if (errorLog.getDevice() != null && WRAPPER_SDK_NAME_NDK.equals(errorLog.getDevice().getWrapperSdkName())) {
 
                             /* Get minidump file path. */
-                            Exception exception = errorLogReport.log.getException();
+                            Exception exception = errorLog.getException();
                             String minidumpFilePath = exception.getMinidumpFilePath();
 
                             /* Erase temporary field so that it's not sent to server. */
@@ -1024,29 +1515,41 @@ public class Crashes extends AbstractAppCenterService {
 
                             /* It can be null when NativeException is thrown or there is already invalid stored data. */
                             if (minidumpFilePath != null) {
-                                dumpFile = new File(minidumpFilePath);
-                                byte[] logfileContents = FileManager.readBytes(dumpFile);
-                                dumpAttachment = ErrorAttachmentLog.attachmentWithBinary(logfileContents, "minidump.dmp", "application/octet-stream");
+                                dumpAttachment = buildMinidumpAttachment(new File(minidumpFilePath));
                             } else {
                                 AppCenterLog.warn(LOG_TAG, "NativeException found without minidump.");
                             }
                         }
 
-                        /* Send report. */
-                        mChannel.enqueue(errorLogReport.log, ERROR_GROUP, Flags.CRITICAL);
+                        /* Send report, ingestion expects frames in each thread. In bundle mode, it's enqueued with its attachments. */
+                        errorLog.expandFrames();
+                        List<Log> bundledLogs = null;
+                        if (crashBundlingEnabled) {
+                            bundledLogs = new ArrayList<>();
+                            bundledLogs.add(errorLog);
+                        } else {
+                            mChannel.enqueue(errorLog, ERROR_GROUP, Flags.CRITICAL);
+                        }
 
-                        /* Send dump attachment and remove file. */
+                        /* Send dump attachment, its file is deleted once the server acknowledges it. */
                         if (dumpAttachment != null) {
-                            sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(dumpAttachment));
-
-                            //noinspection ResultOfMethodCallIgnored
-                            dumpFile.delete();
+                            sendErrorAttachment(errorLog.getId(), Collections.singleton(dumpAttachment), bundledLogs);
                         }
 
-                        /* Get attachments from callback in automatic processing. */
+                        /* Get attachments from callback in automatic processing, report may have to be rebuilt from storage. */
                         if (mAutomaticProcessing) {
-                            Iterable<ErrorAttachmentLog> attachments = mCrashesListener.getErrorAttachments(errorLogReport.report);
-                            sendErrorAttachment(errorLogReport.log.getId(), attachments);
+                            ErrorReport report = buildErrorReport(errorLog);
+                            if (report != null) {
+                                Iterable<ErrorAttachmentLog> attachments = mCrashesListener.getErrorAttachments(report);
+                                sendErrorAttachment(errorLog.getId(), attachments, bundledLogs);
+                            } else {
+                                AppCenterLog.warn(LOG_TAG, "Cannot find crash report for the error log: " + errorLog.getId());
+                            }
+                        }
+                        if (bundledLogs != null) {
+                            LogBundle bundle = new LogBundle();
+                            bundle.setLogs(bundledLogs);
+                            mChannel.enqueue(bundle, ERROR_GROUP, Flags.CRITICAL);
                         }
 
                         /* Clean up an error log file and map entry. */
@@ -1063,6 +1566,14 @@ public class Crashes extends AbstractAppCenterService {
      */
     @WorkerThread
     private void sendErrorAttachment(UUID errorId, Iterable<ErrorAttachmentLog> attachments) {
+        sendErrorAttachment(errorId, attachments, null);
+    }
+
+    /**
+     * Send error attachment logs through channel, or add them to a bundle of logs that is enqueued later.
+     */
+    @WorkerThread
+    private void sendErrorAttachment(UUID errorId, Iterable<ErrorAttachmentLog> attachments, @Nullable List<Log> bundledLogs) {
         if (attachments == null) {
             AppCenterLog.debug(LOG_TAG, "Error report: " + errorId.toString() + " does not have any attachment.");
         } else {
@@ -1072,10 +1583,15 @@ public class Crashes extends AbstractAppCenterService {
                     attachment.setErrorId(errorId);
                     if (!attachment.isValid()) {
                         AppCenterLog.error(LOG_TAG, "Not all required fields are present in ErrorAttachmentLog.");
-                    } else if (attachment.getData().length > MAX_ATTACHMENT_SIZE) {
+                    } else if (attachment.getData() == null && attachment.getDataUri() != null && !copyAttachmentData(attachment)) {
+                        AppCenterLog.error(LOG_TAG, "Discarding attachment that could not be copied: fileName=" + attachment.getFileName());
+                    } else if (attachment.getDataSize() > MAX_ATTACHMENT_SIZE) {
                         AppCenterLog.error(LOG_TAG, String.format(Locale.ENGLISH,
                                 "Discarding attachment with size above %d bytes: size=%d, fileName=%s.",
-                                MAX_ATTACHMENT_SIZE, attachment.getData().length, attachment.getFileName()));
+                                MAX_ATTACHMENT_SIZE, attachment.getDataSize(), attachment.getFileName()));
+                        deleteAttachmentData(attachment);
+                    } else if (bundledLogs != null) {
+                        bundledLogs.add(attachment);
                     } else {
                         mChannel.enqueue(attachment, ERROR_GROUP, Flags.DEFAULTS);
                     }
@@ -1086,6 +1602,96 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Copy the data of an attachment built from a URI into the SDK storage, using a small buffer.
+     * Copy stops as soon as the data is known to be too large.
+     *
+     * @param attachment attachment with a data URI.
+     * @return true if copied, false otherwise.
+     */
+    @WorkerThread
+    private boolean copyAttachmentData(ErrorAttachmentLog attachment) {
+        File dataFile = StreamedDataUtils.getFile(ATTACHMENT_DATA_FILE_PREFIX + attachment.getId());
+        try {
+            InputStream inputStream = mContext.getContentResolver().openInputStream(attachment.getDataUri());
+            if (inputStream == null) {
+                throw new IOException("Cannot open " + attachment.getDataUri());
+            }
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                OutputStream outputStream = new FileOutputStream(dataFile);
+
+                //noinspection TryFinallyCanBeTryWithResources
+                try {
+                    byte[] buffer = new byte[ATTACHMENT_COPY_BUFFER_SIZE];
+                    long size = 0;
+                    int length;
+                    while (size <= MAX_ATTACHMENT_SIZE && (length = inputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, length);
+                        size += length;
+                    }
+                } finally {
+                    outputStream.close();
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException | SecurityException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to copy attachment data from " + attachment.getDataUri(), e);
+
+            //noinspection ResultOfMethodCallIgnored
+            dataFile.delete();
+            return false;
+        }
+        attachment.setDataFile(dataFile);
+        attachment.setDataUri(null);
+        return true;
+    }
+
+    /**
+     * Build the attachment of a minidump file. The file is moved next to the other attachment data
+     * so that it's streamed into the request when sent, and kept until the upload succeeds.
+     *
+     * @param dumpFile minidump file.
+     * @return attachment for the minidump.
+     */
+    @WorkerThread
+    private static ErrorAttachmentLog buildMinidumpAttachment(File dumpFile) {
+        File dataFile = StreamedDataUtils.getFile(ATTACHMENT_DATA_FILE_PREFIX + UUID.randomUUID());
+        if (dumpFile.renameTo(dataFile)) {
+            ErrorAttachmentLog attachment = new ErrorAttachmentLog();
+            attachment.setDataFile(dataFile);
+            attachment.setFileName(MINIDUMP_FILE_NAME);
+            attachment.setContentType(MINIDUMP_CONTENT_TYPE);
+            return attachment;
+        }
+
+        /* Fall back to reading the file in memory. */
+        AppCenterLog.warn(LOG_TAG, "Failed to move minidump file: " + dumpFile);
+        byte[] logfileContents = FileManager.readBytes(dumpFile);
+
+        //noinspection ResultOfMethodCallIgnored
+        dumpFile.delete();
+        return ErrorAttachmentLog.attachmentWithBinary(logfileContents, MINIDUMP_FILE_NAME, MINIDUMP_CONTENT_TYPE);
+    }
+
+    /**
+     * Delete the copy of attachment data from the SDK storage, if any.
+     *
+     * @param log attachment log.
+     */
+    private static void deleteAttachmentData(Log log) {
+        if (log instanceof ErrorAttachmentLog) {
+            File dataFile = ((ErrorAttachmentLog) log).getDataFile();
+            if (dataFile != null) {
+
+                //noinspection ResultOfMethodCallIgnored
+                dataFile.delete();
+            }
+        }
+    }
+
     @VisibleForTesting
     void setLogSerializer(LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
@@ -1106,6 +1712,8 @@ public class Crashes extends AbstractAppCenterService {
             AppCenterLog.error(Crashes.LOG_TAG, "Error serializing error log to JSON", e);
         } catch (IOException e) {
             AppCenterLog.error(Crashes.LOG_TAG, "Error writing error log to file", e);
+        } catch (OutOfMemoryError e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Not enough memory to save error log", e);
         }
         return reportUUID;
     }
@@ -1136,28 +1744,113 @@ public class Crashes extends AbstractAppCenterService {
         }
         mSavedUncaughtException = true;
 
-        /* Save error log. */
-        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, Thread.getAllStackTraces(), mInitializeTimestamp, true);
-        return saveErrorLogFiles(throwable, errorLog);
+        /* The process is going down, give the reserved memory back for saving the crash. */
+        boolean lowMemory = isLowMemory(throwable);
+        mCrashCaptureReservedMemory = null;
+
+        /* Build and serialize error log, falling back to low memory mode if heap gets exhausted. */
+        ManagedErrorLog errorLog = null;
+        String errorLogString = null;
+        if (!lowMemory) {
+            try {
+                errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, Thread.getAllStackTraces(), mInitializeTimestamp, true);
+                errorLogString = mLogSerializer.serializeLog(errorLog);
+            } catch (OutOfMemoryError e) {
+                errorLog = null;
+                lowMemory = true;
+            }
+        }
+        if (lowMemory) {
+            errorLog = ErrorLogHelper.createLowMemoryErrorLog(thread, modelException, mCrashCaptureDevice, mInitializeTimestamp);
+            errorLogString = mLogSerializer.serializeLog(errorLog);
+        }
+        UUID errorId = saveErrorLogFiles(throwable, errorLog.getId(), errorLogString);
+
+        /* Save summary for a quick access in the next session, the crash report is already saved. */
+        try {
+            ErrorLogHelper.saveCrashSummary(errorLog);
+        } catch (JSONException | IOException | OutOfMemoryError e) {
+            AppCenterLog.error(LOG_TAG, "Failed to save crash summary.", e);
+        }
+
+        /* Suppressed handled errors not sent yet would be lost with the process, save them for the next session. */
+        if (!lowMemory) {
+            try {
+                saveSuppressedErrors();
+            } catch (JSONException | IOException | OutOfMemoryError e) {
+                AppCenterLog.error(LOG_TAG, "Failed to save suppressed handled errors.", e);
+            }
+        }
+        return errorId;
+    }
+
+    /**
+     * Save the suppressed handled errors that were not reported yet, they are sent by the next session.
+     *
+     * @throws JSONException if an error occurred during JSON serialization of the errors.
+     * @throws IOException   if an error occurred while accessing the file system.
+     */
+    private void saveSuppressedErrors() throws JSONException, IOException {
+        HandledErrorAggregator handledErrorAggregator = mHandledErrorAggregator;
+        if (handledErrorAggregator == null) {
+            return;
+        }
+        List<HandledErrorAggregator.Summary> summaries = handledErrorAggregator.removeAllSummaries();
+        if (summaries.isEmpty()) {
+            return;
+        }
+        String userId = UserIdContext.getInstance().getUserId();
+        List<Log> errorLogs = new ArrayList<>(summaries.size());
+        for (HandledErrorAggregator.Summary summary : summaries) {
+            HandledErrorLog errorLog = new HandledErrorLog();
+            errorLog.setId(UUID.randomUUID());
+            errorLog.setTimestamp(new Date());
+            errorLog.setUserId(userId);
+            errorLog.setDevice(mCrashCaptureDevice);
+            errorLog.setException(ErrorLogHelper.getModelExceptionFromThrowable(summary.getThrowable()));
+            errorLog.setProperties(Collections.singletonMap(SUPPRESSED_COUNT_PROPERTY, String.valueOf(summary.getSuppressedCount())));
+            errorLogs.add(errorLog);
+        }
+        LogContainer logContainer = new LogContainer();
+        logContainer.setLogs(errorLogs);
+        ErrorLogHelper.saveSuppressedErrors(mLogSerializer.serializeContainer(logContainer));
+    }
+
+    /**
+     * Send the suppressed handled errors saved by the previous session when it crashed.
+     */
+    private void queueSavedSuppressedErrors() {
+        String errorLogs = ErrorLogHelper.readAndDeleteSuppressedErrors();
+        if (errorLogs == null) {
+            return;
+        }
+        try {
+            for (Log errorLog : mLogSerializer.deserializeContainer(errorLogs, null).getLogs()) {
+                mChannel.enqueue(errorLog, ERROR_GROUP, Flags.DEFAULTS);
+            }
+        } catch (JSONException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to read suppressed handled errors of the previous session.", e);
+        }
     }
 
     @NonNull
-    private UUID saveErrorLogFiles(Throwable throwable, ManagedErrorLog errorLog) throws JSONException, IOException {
+    private UUID saveErrorLogFiles(Throwable throwable, UUID errorLogId, String errorLogString) throws IOException {
         File errorStorageDirectory = ErrorLogHelper.getErrorStorageDirectory();
-        UUID errorLogId = errorLog.getId();
         String filename = errorLogId.toString();
         AppCenterLog.debug(Crashes.LOG_TAG, "Saving uncaught exception.");
         File errorLogFile = new File(errorStorageDirectory, filename + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
-        String errorLogString = mLogSerializer.serializeLog(errorLog);
-        FileManager.write(errorLogFile, errorLogString);
-        AppCenterLog.debug(Crashes.LOG_TAG, "Saved JSON content for ingestion into " + errorLogFile);
         File throwableFile = new File(errorStorageDirectory, filename + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+        ErrorLogHelper.addStoredFiles(errorLogFile, throwableFile);
+
+        /* Make sure the error log reaches the storage before the process is killed. */
+        FileManager.writeAndSync(errorLogFile, errorLogString);
+        AppCenterLog.debug(Crashes.LOG_TAG, "Saved JSON content for ingestion into " + errorLogFile);
         if (throwable != null) {
             try {
                 String stackTrace = getStackTraceString(throwable);
                 FileManager.write(throwableFile, stackTrace);
                 AppCenterLog.debug(LOG_TAG, "Saved stack trace as is for client side inspection in " + throwableFile + " stack trace:" + stackTrace);
-            } catch (StackOverflowError e) {
+            } catch (StackOverflowError | OutOfMemoryError e) {
                 AppCenterLog.error(Crashes.LOG_TAG, "Failed to store stack trace.", e);
                 throwable = null;
 
@@ -1196,8 +1889,11 @@ public class Crashes extends AbstractAppCenterService {
             @Override
             public void run() {
                 Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
-                for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
-                    reports.add(entry.report);
+                for (ManagedErrorLog errorLog : mUnprocessedErrorReports.values()) {
+                    ErrorReport report = buildErrorReport(errorLog);
+                    if (report != null) {
+                        reports.add(report);
+                    }
                 }
                 future.complete(reports);
             }
@@ -1216,11 +1912,11 @@ public class Crashes extends AbstractAppCenterService {
             public void run() {
 
                 /* Apply the filtering. */
-                Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
+                Iterator<Map.Entry<UUID, ManagedErrorLog>> iterator = mUnprocessedErrorReports.entrySet().iterator();
                 while (iterator.hasNext()) {
-                    Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
+                    Map.Entry<UUID, ManagedErrorLog> entry = iterator.next();
                     UUID id = entry.getKey();
-                    String idString = entry.getValue().report.getId();
+                    String idString = id.toString();
                     if (filteredReportIds != null && filteredReportIds.contains(idString)) {
                         AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
                     } else {
@@ -1308,17 +2004,27 @@ public class Crashes extends AbstractAppCenterService {
     }
 
     /**
-     * Class holding an error log and its corresponding error report.
+     * Pending error log parsed from storage at startup.
      */
-    private static class ErrorLogReport {
+    private static class PendingErrorLog {
+
+        /**
+         * Error log file.
+         */
+        private final File mFile;
 
-        private final ManagedErrorLog log;
+        /**
+         * Parsed error log, null if the file could not be read.
+         */
+        private ManagedErrorLog mLog;
 
-        private final ErrorReport report;
+        /**
+         * Parsing error, if the file is invalid.
+         */
+        private JSONException mParsingException;
 
-        private ErrorLogReport(ManagedErrorLog log, ErrorReport report) {
-            this.log = log;
-            this.report = report;
+        private PendingErrorLog(File file) {
+            mFile = file;
         }
     }
 }
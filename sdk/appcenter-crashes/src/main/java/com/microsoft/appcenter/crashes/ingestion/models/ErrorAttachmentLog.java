@@ -5,16 +5,21 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.net.Uri;
+import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import android.util.Base64;
 
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.StreamedDataLog;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.ingestion.models.json.StreamedDataUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.UUID;
@@ -24,7 +29,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Error attachment log.
  */
-public class ErrorAttachmentLog extends AbstractLog {
+public class ErrorAttachmentLog extends AbstractLog implements StreamedDataLog {
 
     /**
      * Plain text mime type.
@@ -71,6 +76,16 @@ public class ErrorAttachmentLog extends AbstractLog {
      */
     private byte[] data;
 
+    /**
+     * Source of the data to copy into the SDK storage, not serialized.
+     */
+    private Uri dataUri;
+
+    /**
+     * Data copied into the SDK storage, serialized as a reference and streamed as base64 when sending.
+     */
+    private File dataFile;
+
     /**
      * Build an error attachment log with text suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
      *
@@ -101,6 +116,36 @@ public class ErrorAttachmentLog extends AbstractLog {
         return attachmentLog;
     }
 
+    /**
+     * Build an error attachment log with the contents of a file or content {@link Uri} suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
+     * The contents are copied into the SDK storage when the attachment is sent and are never fully loaded in memory.
+     *
+     * @param dataUri     file or content URI of the data.
+     * @param fileName    file name to use in error attachment log.
+     * @param contentType data MIME type.
+     * @return ErrorAttachmentLog built attachment.
+     */
+    public static ErrorAttachmentLog attachmentWithUri(@NonNull Uri dataUri, String fileName, String contentType) {
+        ErrorAttachmentLog attachmentLog = new ErrorAttachmentLog();
+        attachmentLog.setDataUri(dataUri);
+        attachmentLog.setFileName(fileName);
+        attachmentLog.setContentType(contentType);
+        return attachmentLog;
+    }
+
+    /**
+     * Build an error attachment log with the contents of a file suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
+     * The contents are copied into the SDK storage when the attachment is sent and are never fully loaded in memory.
+     *
+     * @param file        file to attach.
+     * @param fileName    file name to use in error attachment log.
+     * @param contentType data MIME type.
+     * @return ErrorAttachmentLog built attachment.
+     */
+    public static ErrorAttachmentLog attachmentWithFile(@NonNull File file, String fileName, String contentType) {
+        return attachmentWithUri(Uri.fromFile(file), fileName, contentType);
+    }
+
     @Override
     public String getType() {
         return TYPE;
@@ -198,13 +243,57 @@ public class ErrorAttachmentLog extends AbstractLog {
         this.data = data;
     }
 
+    /**
+     * Get the dataUri value.
+     *
+     * @return the dataUri value
+     */
+    public Uri getDataUri() {
+        return this.dataUri;
+    }
+
+    /**
+     * Set the dataUri value.
+     *
+     * @param dataUri the dataUri value to set
+     */
+    public void setDataUri(Uri dataUri) {
+        this.dataUri = dataUri;
+    }
+
+    @Override
+    public File getDataFile() {
+        return this.dataFile;
+    }
+
+    /**
+     * Set the dataFile value.
+     *
+     * @param dataFile the dataFile value to set
+     */
+    public void setDataFile(File dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * Get the size of the data, either in memory or in the SDK storage.
+     *
+     * @return data size in bytes.
+     */
+    public long getDataSize() {
+        if (data != null) {
+            return data.length;
+        }
+        return dataFile != null ? dataFile.length() : 0;
+    }
+
     /**
      * Checks if the log's values are valid.
      *
      * @return true if validation succeeded, otherwise false.
      */
     public boolean isValid() {
-        return getId() != null && getErrorId() != null && getContentType() != null && getData() != null;
+        return getId() != null && getErrorId() != null && getContentType() != null && (getData() != null || getDataFile() != null || getDataUri() != null);
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -215,8 +304,14 @@ public class ErrorAttachmentLog extends AbstractLog {
         setErrorId(UUID.fromString(object.getString(ERROR_ID)));
         setContentType(object.getString(CONTENT_TYPE));
         setFileName(object.optString(FILE_NAME, null));
+        String data = object.getString(DATA);
+        File dataFile = StreamedDataUtils.parseReference(data);
+        if (dataFile != null) {
+            setDataFile(dataFile);
+            return;
+        }
         try {
-            setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
+            setData(Base64.decode(data, Base64.DEFAULT));
         } catch (IllegalArgumentException e) {
             throw new JSONException(e.getMessage());
         }
@@ -229,7 +324,11 @@ public class ErrorAttachmentLog extends AbstractLog {
         JSONUtils.write(writer, ERROR_ID, getErrorId());
         JSONUtils.write(writer, CONTENT_TYPE, getContentType());
         JSONUtils.write(writer, FILE_NAME, getFileName());
-        JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        if (getDataFile() != null) {
+            JSONUtils.write(writer, DATA, StreamedDataUtils.getReference(getDataFile()));
+        } else {
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        }
     }
 
     @SuppressWarnings({"SimplifiableIfStatement", "EqualsReplaceableByObjectsCall"})
@@ -257,6 +356,9 @@ public class ErrorAttachmentLog extends AbstractLog {
         if (fileName != null ? !fileName.equals(that.fileName) : that.fileName != null) {
             return false;
         }
+        if (dataFile != null ? !dataFile.equals(that.dataFile) : that.dataFile != null) {
+            return false;
+        }
         return Arrays.equals(data, that.data);
 
     }
@@ -268,6 +370,7 @@ public class ErrorAttachmentLog extends AbstractLog {
         result = 31 * result + (errorId != null ? errorId.hashCode() : 0);
         result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
         result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
+        result = 31 * result + (dataFile != null ? dataFile.hashCode() : 0);
         result = 31 * result + Arrays.hashCode(data);
         return result;
     }
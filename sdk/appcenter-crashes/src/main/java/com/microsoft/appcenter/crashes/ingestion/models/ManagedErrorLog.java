@@ -5,6 +5,7 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import com.microsoft.appcenter.crashes.ingestion.models.json.StackFrameFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ThreadFactory;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
@@ -12,6 +13,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -28,6 +30,8 @@ public class ManagedErrorLog extends AbstractErrorLog {
 
     private static final String THREADS = "threads";
 
+    private static final String FRAME_TABLE = "frameTable";
+
     /**
      * Exception.
      */
@@ -38,6 +42,11 @@ public class ManagedErrorLog extends AbstractErrorLog {
      */
     private List<Thread> threads;
 
+    /**
+     * Unique stack frames referenced by index from threads, when frames are interned.
+     */
+    private List<StackFrame> frameTable;
+
     @Override
     public String getType() {
         return TYPE;
@@ -79,6 +88,37 @@ public class ManagedErrorLog extends AbstractErrorLog {
         this.threads = threads;
     }
 
+    /**
+     * Get the frameTable value.
+     *
+     * @return the frameTable value
+     */
+    public List<StackFrame> getFrameTable() {
+        return this.frameTable;
+    }
+
+    /**
+     * Set the frameTable value.
+     *
+     * @param frameTable the frameTable value to set
+     */
+    public void setFrameTable(List<StackFrame> frameTable) {
+        this.frameTable = frameTable;
+    }
+
+    /**
+     * Stop using the frame table so that each thread is serialized with its own frames,
+     * as ingestion expects. Thread frames already reference the table frames so nothing is copied.
+     */
+    public void expandFrames() {
+        if (frameTable != null && threads != null) {
+            for (Thread thread : threads) {
+                thread.setFrameIndexes(null);
+            }
+        }
+        frameTable = null;
+    }
+
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
@@ -88,7 +128,28 @@ public class ManagedErrorLog extends AbstractErrorLog {
             exception.read(jException);
             setException(exception);
         }
+        setFrameTable(JSONUtils.readArray(object, FRAME_TABLE, StackFrameFactory.getInstance()));
         setThreads(JSONUtils.readArray(object, THREADS, ThreadFactory.getInstance()));
+
+        /* Resolve interned frames. */
+        if (threads != null) {
+            for (Thread thread : threads) {
+                List<Integer> frameIndexes = thread.getFrameIndexes();
+                if (frameIndexes != null) {
+                    if (frameTable == null) {
+                        throw new JSONException("Missing frame table.");
+                    }
+                    List<StackFrame> frames = new ArrayList<>(frameIndexes.size());
+                    for (Integer frameIndex : frameIndexes) {
+                        if (frameIndex == null || frameIndex < 0 || frameIndex >= frameTable.size()) {
+                            throw new JSONException("Invalid frame index: " + frameIndex);
+                        }
+                        frames.add(frameTable.get(frameIndex));
+                    }
+                    thread.setFrames(frames);
+                }
+            }
+        }
     }
 
     @Override
@@ -99,6 +160,7 @@ public class ManagedErrorLog extends AbstractErrorLog {
             exception.write(writer);
             writer.endObject();
         }
+        JSONUtils.writeArray(writer, FRAME_TABLE, getFrameTable());
         JSONUtils.writeArray(writer, THREADS, getThreads());
     }
 
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.model;
+
+import java.util.Date;
+
+/**
+ * Compact summary of a crash, available without loading the full error report.
+ */
+public class CrashSummary {
+
+    /**
+     * UUID for crash report.
+     */
+    private String id;
+
+    /**
+     * The date and time the application started, <code>null</code> if unknown.
+     */
+    private Date appStartTime;
+
+    /**
+     * The date and time the crash occurred, <code>null</code> if unknown.
+     */
+    private Date appErrorTime;
+
+    /**
+     * The exception type.
+     */
+    private String exceptionType;
+
+    /**
+     * The exception message.
+     */
+    private String exceptionMessage;
+
+    /**
+     * Gets the UUID for crash report.
+     *
+     * @return The UUID for crash report.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the UUID for crash report.
+     *
+     * @param id A UUID for crash report to set.
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets the application start datetime.
+     *
+     * @return The application start datetime.
+     */
+    public Date getAppStartTime() {
+        return appStartTime;
+    }
+
+    /**
+     * Sets the application start datetime.
+     *
+     * @param appStartTime An application start datetime to set.
+     */
+    public void setAppStartTime(Date appStartTime) {
+        this.appStartTime = appStartTime;
+    }
+
+    /**
+     * Gets the application error datetime.
+     *
+     * @return The application error datetime.
+     */
+    public Date getAppErrorTime() {
+        return appErrorTime;
+    }
+
+    /**
+     * Sets the application error datetime.
+     *
+     * @param appErrorTime An application error datetime to set.
+     */
+    public void setAppErrorTime(Date appErrorTime) {
+        this.appErrorTime = appErrorTime;
+    }
+
+    /**
+     * Gets the exception type.
+     *
+     * @return The exception type.
+     */
+    public String getExceptionType() {
+        return exceptionType;
+    }
+
+    /**
+     * Sets the exception type.
+     *
+     * @param exceptionType An exception type to set.
+     */
+    public void setExceptionType(String exceptionType) {
+        this.exceptionType = exceptionType;
+    }
+
+    /**
+     * Gets the exception message.
+     *
+     * @return The exception message.
+     */
+    public String getExceptionMessage() {
+        return exceptionMessage;
+    }
+
+    /**
+     * Sets the exception message.
+     *
+     * @param exceptionMessage An exception message to set.
+     */
+    public void setExceptionMessage(String exceptionMessage) {
+        this.exceptionMessage = exceptionMessage;
+    }
+}
@@ -7,6 +7,7 @@ package com.microsoft.appcenter.crashes.utils;
 
 import android.annotation.TargetApi;
 import android.app.ActivityManager;
+import android.app.Application;
 import android.content.Context;
 import android.os.Build;
 import android.os.Process;
@@ -20,8 +21,10 @@ import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
 import com.microsoft.appcenter.crashes.ingestion.models.Thread;
+import com.microsoft.appcenter.crashes.model.CrashSummary;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.context.UserIdContext;
@@ -65,6 +68,37 @@ public class ErrorLogHelper {
      */
     public static final String THROWABLE_FILE_EXTENSION = ".throwable";
 
+    /**
+     * File name of the summary of the last crash, within the error log directory.
+     */
+    @VisibleForTesting
+    static final String LAST_SESSION_CRASH_SUMMARY_FILE = "lastSessionCrash.summary";
+
+    /**
+     * File name of the suppressed handled errors saved when crashing, within the error log directory.
+     */
+    @VisibleForTesting
+    static final String SUPPRESSED_ERRORS_FILE = "suppressedErrors.logs";
+
+    /**
+     * Maximum length of the exception message kept in a crash summary.
+     */
+    @VisibleForTesting
+    static final int CRASH_SUMMARY_MESSAGE_LIMIT = 1024;
+
+    /**
+     * Crash summary JSON keys.
+     */
+    private static final String CRASH_SUMMARY_ID = "id";
+
+    private static final String CRASH_SUMMARY_APP_START_TIME = "appStartTime";
+
+    private static final String CRASH_SUMMARY_APP_ERROR_TIME = "appErrorTime";
+
+    private static final String CRASH_SUMMARY_TYPE = "type";
+
+    private static final String CRASH_SUMMARY_MESSAGE = "message";
+
     /**
      * Directory under the FILES_PATH containing minidump files.
      */
@@ -116,7 +150,7 @@ public class ErrorLogHelper {
     /**
      * Max number of properties.
      */
-    private static final int MAX_PROPERTY_COUNT = 20;
+    public static final int MAX_PROPERTY_COUNT = 20;
 
     /**
      * Max length of properties.
@@ -138,6 +172,11 @@ public class ErrorLogHelper {
      */
     private static File sPendingMinidumpDirectory;
 
+    /**
+     * Index of the files stored in the error directory.
+     */
+    private static ErrorLogManifest sManifest;
+
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Throwable throwable, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp) {
         return createErrorLog(context, thread, getModelExceptionFromThrowable(throwable), allStackTraces, initializeTimestamp, true);
@@ -145,16 +184,7 @@ public class ErrorLogHelper {
 
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Exception exception, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp, boolean fatal) {
-
-        /* Build error log with a unique identifier. */
-        ManagedErrorLog errorLog = new ManagedErrorLog();
-        errorLog.setId(UUID.randomUUID());
-
-        /* Set current time. Will be correlated to session after restart. */
-        errorLog.setTimestamp(new Date());
-
-        /* Set user identifier. */
-        errorLog.setUserId(UserIdContext.getInstance().getUserId());
+        ManagedErrorLog errorLog = newErrorLog(thread, exception, initializeTimestamp, fatal);
 
         /* Snapshot device properties. */
         try {
@@ -185,6 +215,81 @@ public class ErrorLogHelper {
             errorLog.setProcessName("");
         }
 
+        /* Attach thread states, frames shared by threads (such as pools and loopers) are converted and stored once. */
+        List<Thread> threads = new ArrayList<>(allStackTraces.size());
+        List<StackFrame> frameTable = new ArrayList<>();
+        Map<StackTraceElement, Integer> frameTableIndexes = new HashMap<>();
+        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
+            StackTraceElement[] stackTrace = entry.getValue();
+            List<StackFrame> frames = new ArrayList<>(stackTrace.length);
+            List<Integer> frameIndexes = new ArrayList<>(stackTrace.length);
+            for (StackTraceElement stackTraceElement : stackTrace) {
+                Integer frameIndex = frameTableIndexes.get(stackTraceElement);
+                if (frameIndex == null) {
+                    frameIndex = frameTable.size();
+                    frameTable.add(getModelStackFrame(stackTraceElement));
+                    frameTableIndexes.put(stackTraceElement, frameIndex);
+                }
+                frames.add(frameTable.get(frameIndex));
+                frameIndexes.add(frameIndex);
+            }
+            Thread javaThread = new Thread();
+            javaThread.setId(entry.getKey().getId());
+            javaThread.setName(entry.getKey().getName());
+            javaThread.setFrames(frames);
+            javaThread.setFrameIndexes(frameIndexes);
+            threads.add(javaThread);
+        }
+        errorLog.setThreads(threads);
+        errorLog.setFrameTable(frameTable);
+        return errorLog;
+    }
+
+    /**
+     * Create a fatal error log while the heap is almost exhausted. It uses a device properties snapshot
+     * taken earlier, does not query running processes and does not capture the other threads.
+     *
+     * @param thread              thread where the exception occurred.
+     * @param exception           model exception.
+     * @param device              device properties snapshot, if null they are attached at sending time.
+     * @param initializeTimestamp SDK initialization time.
+     * @return error log.
+     */
+    @NonNull
+    public static ManagedErrorLog createLowMemoryErrorLog(@NonNull java.lang.Thread thread, @NonNull Exception exception, @Nullable Device device, long initializeTimestamp) {
+        ManagedErrorLog errorLog = newErrorLog(thread, exception, initializeTimestamp, true);
+        errorLog.setDevice(device);
+        errorLog.setProcessId(Process.myPid());
+        String processName = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            processName = Application.getProcessName();
+        }
+        errorLog.setProcessName(processName != null ? processName : "");
+        return errorLog;
+    }
+
+    /**
+     * Create an error log with the properties that don't require querying the system.
+     *
+     * @param thread              thread where the exception occurred.
+     * @param exception           model exception.
+     * @param initializeTimestamp SDK initialization time.
+     * @param fatal               true for an uncaught exception.
+     * @return error log.
+     */
+    @NonNull
+    private static ManagedErrorLog newErrorLog(@NonNull java.lang.Thread thread, @NonNull Exception exception, long initializeTimestamp, boolean fatal) {
+
+        /* Build error log with a unique identifier. */
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+
+        /* Set current time. Will be correlated to session after restart. */
+        errorLog.setTimestamp(new Date());
+
+        /* Set user identifier. */
+        errorLog.setUserId(UserIdContext.getInstance().getUserId());
+
         /* CPU architecture. */
         errorLog.setArchitecture(getArchitecture());
 
@@ -200,17 +305,6 @@ public class ErrorLogHelper {
 
         /* Attach exceptions. */
         errorLog.setException(exception);
-
-        /* Attach thread states. */
-        List<Thread> threads = new ArrayList<>(allStackTraces.size());
-        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
-            Thread javaThread = new Thread();
-            javaThread.setId(entry.getKey().getId());
-            javaThread.setName(entry.getKey().getName());
-            javaThread.setFrames(getModelFramesFromStackTrace(entry.getValue()));
-            threads.add(javaThread);
-        }
-        errorLog.setThreads(threads);
         return errorLog;
     }
 
@@ -310,15 +404,47 @@ public class ErrorLogHelper {
         return sPendingMinidumpDirectory;
     }
 
+    /**
+     * Get the index of the files stored in the error directory, loading it if needed.
+     *
+     * @return manifest of the error directory.
+     */
+    @NonNull
+    private static synchronized ErrorLogManifest getManifest() {
+        if (sManifest == null) {
+            sManifest = new ErrorLogManifest(getErrorStorageDirectory());
+        }
+        return sManifest;
+    }
+
+    /**
+     * Record error log or throwable files in the manifest. Must be called before writing the files.
+     * This is called when saving a crash, so the manifest is never loaded nor rebuilt here.
+     *
+     * @param files files about to be written in the error directory.
+     */
+    public static void addStoredFiles(@NonNull File... files) {
+        ErrorLogManifest manifest;
+        synchronized (ErrorLogHelper.class) {
+            manifest = sManifest;
+        }
+        if (manifest == null) {
+            ErrorLogManifest.append(getErrorStorageDirectory(), files);
+        } else {
+            manifest.add(files);
+        }
+    }
+
+    /**
+     * Forget all stored files after the error directory has been emptied.
+     */
+    public static void resetManifest() {
+        getManifest().reset();
+    }
+
     @NonNull
     public static File[] getStoredErrorLogFiles() {
-        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.endsWith(ERROR_LOG_FILE_EXTENSION);
-            }
-        });
-        return files != null ? files : new File[0];
+        return getManifest().getErrorLogFiles();
     }
 
     @NonNull
@@ -404,12 +530,7 @@ public class ErrorLogHelper {
 
     @Nullable
     public static File getLastErrorLogFile() {
-        return FileManager.lastModifiedFile(getErrorStorageDirectory(), new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.endsWith(ERROR_LOG_FILE_EXTENSION);
-            }
-        });
+        return getManifest().getLastErrorLogFile();
     }
 
     @Nullable
@@ -422,6 +543,7 @@ public class ErrorLogHelper {
         if (file != null) {
             AppCenterLog.info(Crashes.LOG_TAG, "Deleting throwable file " + file.getName());
             FileManager.delete(file);
+            getManifest().remove(id, THROWABLE_FILE_EXTENSION);
         }
     }
 
@@ -435,36 +557,164 @@ public class ErrorLogHelper {
         if (file != null) {
             AppCenterLog.info(Crashes.LOG_TAG, "Deleting error log file " + file.getName());
             FileManager.delete(file);
+            getManifest().remove(id, ERROR_LOG_FILE_EXTENSION);
         }
     }
 
     @NonNull
     public static ErrorReport getErrorReportFromErrorLog(@NonNull ManagedErrorLog log, String stackTrace) {
         ErrorReport report = new ErrorReport();
+        report.setStackTrace(stackTrace);
+        fillErrorReport(report, log);
+        return report;
+    }
+
+    /**
+     * Get an error report from an error log without keeping the stack trace in memory.
+     *
+     * @param log           error log.
+     * @param throwableFile stored throwable file, read each time the stack trace is requested.
+     * @return error report.
+     */
+    @NonNull
+    public static ErrorReport getErrorReportFromErrorLog(@NonNull ManagedErrorLog log, @NonNull File throwableFile) {
+        ErrorReport report = new StoredErrorReport(throwableFile);
+        fillErrorReport(report, log);
+        return report;
+    }
+
+    private static void fillErrorReport(@NonNull ErrorReport report, @NonNull ManagedErrorLog log) {
         report.setId(log.getId().toString());
         report.setThreadName(log.getErrorThreadName());
-        report.setStackTrace(stackTrace);
         report.setAppStartTime(log.getAppLaunchTimestamp());
         report.setAppErrorTime(log.getTimestamp());
         report.setDevice(log.getDevice());
-        return report;
     }
 
-    @VisibleForTesting
-    static void setErrorLogDirectory(File file) {
-        sErrorLogDirectory = file;
+    /**
+     * Get a crash summary from an error log.
+     *
+     * @param log error log.
+     * @return crash summary.
+     */
+    @NonNull
+    public static CrashSummary getCrashSummaryFromErrorLog(@NonNull ManagedErrorLog log) {
+        CrashSummary summary = new CrashSummary();
+        summary.setId(log.getId().toString());
+        summary.setAppStartTime(log.getAppLaunchTimestamp());
+        summary.setAppErrorTime(log.getTimestamp());
+        Exception exception = log.getException();
+        if (exception != null) {
+            summary.setExceptionType(exception.getType());
+            String message = exception.getMessage();
+            if (message != null && message.length() > CRASH_SUMMARY_MESSAGE_LIMIT) {
+                message = message.substring(0, CRASH_SUMMARY_MESSAGE_LIMIT);
+            }
+            summary.setExceptionMessage(message);
+        }
+        return summary;
     }
 
+    /**
+     * Save the summary of a crash so that the next session can read it without processing error logs.
+     *
+     * @param log error log of the crash.
+     * @throws JSONException if the summary cannot be serialized.
+     * @throws IOException   if the summary cannot be written.
+     */
+    public static void saveCrashSummary(@NonNull ManagedErrorLog log) throws JSONException, IOException {
+        CrashSummary summary = getCrashSummaryFromErrorLog(log);
+        JSONStringer writer = new JSONStringer();
+        writer.object();
+        JSONUtils.write(writer, CRASH_SUMMARY_ID, summary.getId());
+        if (summary.getAppStartTime() != null) {
+            JSONUtils.write(writer, CRASH_SUMMARY_APP_START_TIME, summary.getAppStartTime().getTime());
+        }
+        if (summary.getAppErrorTime() != null) {
+            JSONUtils.write(writer, CRASH_SUMMARY_APP_ERROR_TIME, summary.getAppErrorTime().getTime());
+        }
+        JSONUtils.write(writer, CRASH_SUMMARY_TYPE, summary.getExceptionType());
+        JSONUtils.write(writer, CRASH_SUMMARY_MESSAGE, summary.getExceptionMessage());
+        writer.endObject();
+        FileManager.writeAndSync(new File(getErrorStorageDirectory(), LAST_SESSION_CRASH_SUMMARY_FILE), writer.toString());
+    }
+
+    /**
+     * Read the crash summary saved by the previous session and delete it,
+     * so that it's not reported again in the next sessions.
+     *
+     * @return crash summary or null if the previous session did not crash.
+     */
     @Nullable
-    private static File getStoredFile(@NonNull final UUID id, @NonNull final String extension) {
-        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.startsWith(id.toString()) && filename.endsWith(extension);
+    public static CrashSummary readAndDeleteCrashSummary() {
+        File file = new File(getErrorStorageDirectory(), LAST_SESSION_CRASH_SUMMARY_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        String json = FileManager.read(file);
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        if (json == null) {
+            return null;
+        }
+        try {
+            JSONObject object = new JSONObject(json);
+            CrashSummary summary = new CrashSummary();
+            summary.setId(object.getString(CRASH_SUMMARY_ID));
+            if (object.has(CRASH_SUMMARY_APP_START_TIME)) {
+                summary.setAppStartTime(new Date(object.getLong(CRASH_SUMMARY_APP_START_TIME)));
             }
-        });
+            if (object.has(CRASH_SUMMARY_APP_ERROR_TIME)) {
+                summary.setAppErrorTime(new Date(object.getLong(CRASH_SUMMARY_APP_ERROR_TIME)));
+            }
+            summary.setExceptionType(object.optString(CRASH_SUMMARY_TYPE, null));
+            summary.setExceptionMessage(object.optString(CRASH_SUMMARY_MESSAGE, null));
+            return summary;
+        } catch (JSONException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Failed to read last session crash summary.", e);
+            return null;
+        }
+    }
 
-        return files != null && files.length > 0 ? files[0] : null;
+    /**
+     * Save the suppressed handled errors that were not sent, so that the next session can send them.
+     *
+     * @param errorLogs serialized log container of the handled errors.
+     * @throws IOException if the errors cannot be written.
+     */
+    public static void saveSuppressedErrors(@NonNull String errorLogs) throws IOException {
+        FileManager.writeAndSync(new File(getErrorStorageDirectory(), SUPPRESSED_ERRORS_FILE), errorLogs);
+    }
+
+    /**
+     * Read the suppressed handled errors saved by the previous session and delete them,
+     * so that they are not sent again in the next sessions.
+     *
+     * @return serialized log container of the handled errors, or null if none were saved.
+     */
+    @Nullable
+    public static String readAndDeleteSuppressedErrors() {
+        File file = new File(getErrorStorageDirectory(), SUPPRESSED_ERRORS_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        String errorLogs = FileManager.read(file);
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        return errorLogs;
+    }
+
+    @VisibleForTesting
+    static synchronized void setErrorLogDirectory(File file) {
+        sErrorLogDirectory = file;
+        sManifest = null;
+    }
+
+    @Nullable
+    private static File getStoredFile(@NonNull UUID id, @NonNull String extension) {
+        return getManifest().get(id, extension);
     }
 
     @NonNull
@@ -537,6 +787,18 @@ public class ErrorLogHelper {
      * @return valid properties collection with maximum size of 5.
      */
     public static Map<String, String> validateProperties(Map<String, String> properties, String logType) {
+        return validateProperties(properties, logType, MAX_PROPERTY_COUNT);
+    }
+
+    /**
+     * Validates properties, keeping at most the specified number of them.
+     *
+     * @param properties       Properties collection to validate.
+     * @param logType          Log type.
+     * @param maxPropertyCount Maximum number of properties kept.
+     * @return valid properties collection with maximum size of maxPropertyCount.
+     */
+    public static Map<String, String> validateProperties(Map<String, String> properties, String logType, int maxPropertyCount) {
         if (properties == null) {
             return null;
         }
@@ -545,8 +807,8 @@ public class ErrorLogHelper {
         for (Map.Entry<String, String> property : properties.entrySet()) {
             String key = property.getKey();
             String value = property.getValue();
-            if (result.size() >= MAX_PROPERTY_COUNT) {
-                message = String.format("%s : properties cannot contain more than %s items. Skipping other properties.", logType, MAX_PROPERTY_COUNT);
+            if (result.size() >= maxPropertyCount) {
+                message = String.format("%s : properties cannot contain more than %s items. Skipping other properties.", logType, maxPropertyCount);
                 AppCenterLog.warn(Crashes.LOG_TAG, message);
                 break;
             }
@@ -606,5 +868,6 @@ public class ErrorLogHelper {
         sNewMinidumpDirectory = null;
         sErrorLogDirectory = null;
         sPendingMinidumpDirectory = null;
+        sManifest = null;
     }
 }
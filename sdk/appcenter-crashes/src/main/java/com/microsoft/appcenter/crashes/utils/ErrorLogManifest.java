@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.FileManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.crashes.utils.ErrorLogHelper.ERROR_LOG_FILE_EXTENSION;
+import static com.microsoft.appcenter.crashes.utils.ErrorLogHelper.THROWABLE_FILE_EXTENSION;
+
+/**
+ * Index of the error log and throwable files stored in the error directory.
+ * The index is kept in memory and persisted as an append-only file, so that looking up stored files
+ * by error identifier does not need to list the directory. The directory is only scanned again when
+ * the manifest file is missing or corrupted, and this is only done when loading the manifest:
+ * saving a crash only appends to the manifest file.
+ */
+class ErrorLogManifest {
+
+    /**
+     * Manifest file name in the error directory.
+     */
+    @VisibleForTesting
+    static final String MANIFEST_FILE = "manifest.idx";
+
+    /**
+     * Number of obsolete lines in the manifest file after which the file is rewritten when loading.
+     */
+    @VisibleForTesting
+    static final int COMPACTION_THRESHOLD = 64;
+
+    /**
+     * Manifest line prefix when a file is added.
+     */
+    private static final String OPERATION_ADD = "+";
+
+    /**
+     * Manifest line prefix when a file is removed.
+     */
+    private static final String OPERATION_REMOVE = "-";
+
+    /**
+     * Manifest line separator.
+     */
+    private static final String LINE_SEPARATOR = "\n";
+
+    /**
+     * Error directory.
+     */
+    private final File mDirectory;
+
+    /**
+     * Manifest file.
+     */
+    private final File mManifestFile;
+
+    /**
+     * Stored files by error identifier, in order of creation.
+     */
+    private final Map<UUID, Entry> mEntries = new LinkedHashMap<>();
+
+    /**
+     * Flag set when the manifest file could not be updated. Changes are only kept in memory
+     * until next process, that will rebuild the manifest from the directory.
+     */
+    private boolean mManifestFileBroken;
+
+    /**
+     * Init and load the manifest of a directory.
+     *
+     * @param directory error directory.
+     */
+    ErrorLogManifest(@NonNull File directory) {
+        mDirectory = directory;
+        mManifestFile = new File(directory, MANIFEST_FILE);
+        load();
+    }
+
+    /**
+     * Record new files before writing them.
+     *
+     * @param files error log or throwable files, other files are ignored.
+     */
+    synchronized void add(@NonNull File... files) {
+        StringBuilder lines = new StringBuilder();
+        long timestamp = System.currentTimeMillis();
+        for (File file : files) {
+            String fileName = file.getName();
+            UUID id = parseId(fileName);
+            if (id != null && put(id, fileName, timestamp)) {
+                appendAddLine(lines, fileName, timestamp);
+            }
+        }
+
+        /* Make sure a crash saved right before the process is killed can be found on next launch. */
+        if (lines.length() > 0) {
+            append(lines.toString(), true);
+        }
+    }
+
+    /**
+     * Record new files before writing them without loading the manifest, when saving a crash before
+     * the manifest was loaded by this process. Nothing is written if the manifest file is missing,
+     * the next process rebuilds it from the directory including these files.
+     *
+     * @param directory error directory.
+     * @param files     error log or throwable files, other files are ignored.
+     */
+    static void append(@NonNull File directory, @NonNull File... files) {
+        File manifestFile = new File(directory, MANIFEST_FILE);
+        if (!manifestFile.exists()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        long timestamp = System.currentTimeMillis();
+        for (File file : files) {
+            String fileName = file.getName();
+            if (parseId(fileName) != null) {
+                appendAddLine(lines, fileName, timestamp);
+            }
+        }
+        try {
+            write(manifestFile, lines.toString(), true, true);
+        } catch (IOException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Failed to update error log manifest.", e);
+
+            //noinspection ResultOfMethodCallIgnored
+            manifestFile.delete();
+        }
+    }
+
+    /**
+     * Record that a file was deleted.
+     *
+     * @param id        error identifier.
+     * @param extension file extension.
+     */
+    synchronized void remove(@NonNull UUID id, @NonNull String extension) {
+        if (delete(id, extension)) {
+            append(OPERATION_REMOVE + ' ' + id + extension + LINE_SEPARATOR, false);
+        }
+    }
+
+    /**
+     * Get a stored file.
+     *
+     * @param id        error identifier.
+     * @param extension file extension.
+     * @return stored file or null if not found.
+     */
+    @Nullable
+    synchronized File get(@NonNull UUID id, @NonNull String extension) {
+        File file = new File(mDirectory, id + extension);
+        Entry entry = mEntries.get(id);
+        if (entry != null && entry.hasFile(extension)) {
+            if (file.exists()) {
+                return file;
+            }
+            remove(id, extension);
+            return null;
+        }
+
+        /* Recover a file that was written without being recorded. */
+        if (file.exists()) {
+            long timestamp = file.lastModified();
+            if (put(id, file.getName(), timestamp)) {
+                StringBuilder line = new StringBuilder();
+                appendAddLine(line, file.getName(), timestamp);
+                append(line.toString(), false);
+            }
+            return file;
+        }
+        return null;
+    }
+
+    /**
+     * Get all stored error log files.
+     *
+     * @return error log files in order of creation.
+     */
+    @NonNull
+    synchronized File[] getErrorLogFiles() {
+        List<File> files = new ArrayList<>(mEntries.size());
+        List<UUID> deletedIds = new ArrayList<>();
+        for (Map.Entry<UUID, Entry> entry : mEntries.entrySet()) {
+            if (entry.getValue().mErrorLogStored) {
+                File file = new File(mDirectory, entry.getKey() + ERROR_LOG_FILE_EXTENSION);
+                if (file.exists()) {
+                    files.add(file);
+                } else {
+                    deletedIds.add(entry.getKey());
+                }
+            }
+        }
+
+        /* Forget files deleted without being recorded. */
+        for (UUID id : deletedIds) {
+            remove(id, ERROR_LOG_FILE_EXTENSION);
+        }
+        return files.toArray(new File[0]);
+    }
+
+    /**
+     * Get the most recent error log file.
+     *
+     * @return most recent error log file or null if there are none.
+     */
+    @Nullable
+    synchronized File getLastErrorLogFile() {
+        while (true) {
+            UUID lastId = null;
+            long lastTimestamp = Long.MIN_VALUE;
+            for (Map.Entry<UUID, Entry> entry : mEntries.entrySet()) {
+                Entry value = entry.getValue();
+                if (value.mErrorLogStored && value.mTimestamp >= lastTimestamp) {
+                    lastId = entry.getKey();
+                    lastTimestamp = value.mTimestamp;
+                }
+            }
+            if (lastId == null) {
+                return null;
+            }
+            File file = new File(mDirectory, lastId + ERROR_LOG_FILE_EXTENSION);
+            if (file.exists()) {
+                return file;
+            }
+            remove(lastId, ERROR_LOG_FILE_EXTENSION);
+        }
+    }
+
+    /**
+     * Forget all files, used when all the files of the directory have been deleted.
+     */
+    synchronized void reset() {
+        mEntries.clear();
+        mManifestFileBroken = false;
+        rewrite();
+    }
+
+    /**
+     * Load the manifest file, rebuilding it from the directory if missing or corrupted.
+     */
+    private void load() {
+        String contents = mManifestFile.exists() ? FileManager.read(mManifestFile) : null;
+        int lineCount = 0;
+        boolean valid = contents != null;
+        if (valid) {
+            for (String line : contents.split("\r?\n")) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                lineCount++;
+                if (!parseLine(line)) {
+                    AppCenterLog.warn(Crashes.LOG_TAG, "Error log manifest is corrupted, rebuilding it.");
+                    valid = false;
+                    break;
+                }
+            }
+        }
+        if (!valid) {
+            scan();
+            rewrite();
+            return;
+        }
+
+        /* Forget files deleted without being recorded, and compact the manifest if needed. */
+        boolean pruned = false;
+        for (Iterator<Map.Entry<UUID, Entry>> iterator = mEntries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<UUID, Entry> entry = iterator.next();
+            Entry value = entry.getValue();
+            if (value.mErrorLogStored && !new File(mDirectory, entry.getKey() + ERROR_LOG_FILE_EXTENSION).exists()) {
+                value.mErrorLogStored = false;
+                pruned = true;
+            }
+            if (value.mThrowableStored && !new File(mDirectory, entry.getKey() + THROWABLE_FILE_EXTENSION).exists()) {
+                value.mThrowableStored = false;
+                pruned = true;
+            }
+            if (value.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        if (pruned || lineCount - mEntries.size() * 2 > COMPACTION_THRESHOLD) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Rebuild the index from the files of the directory.
+     */
+    private void scan() {
+        mEntries.clear();
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String fileName = file.getName();
+            UUID id = parseId(fileName);
+            if (id != null) {
+                put(id, fileName, file.lastModified());
+            }
+        }
+    }
+
+    /**
+     * Apply a manifest line to the index.
+     *
+     * @param line manifest line.
+     * @return false if the line is corrupted.
+     */
+    private boolean parseLine(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            return false;
+        }
+        String fileName = parts[1];
+        UUID id = parseId(fileName);
+        if (id == null) {
+            return false;
+        }
+        if (OPERATION_ADD.equals(parts[0]) && parts.length == 3) {
+            try {
+                put(id, fileName, Long.parseLong(parts[2]));
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        if (OPERATION_REMOVE.equals(parts[0]) && parts.length == 2) {
+            delete(id, fileName.substring(id.toString().length()));
+            return true;
+        }
+        return false;
+    }
+
+    private boolean put(UUID id, String fileName, long timestamp) {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(id, entry);
+        }
+        if (fileName.endsWith(ERROR_LOG_FILE_EXTENSION)) {
+            if (entry.mErrorLogStored) {
+                return false;
+            }
+            entry.mErrorLogStored = true;
+            entry.mTimestamp = timestamp;
+        } else {
+            if (entry.mThrowableStored) {
+                return false;
+            }
+            entry.mThrowableStored = true;
+        }
+        return true;
+    }
+
+    private boolean delete(UUID id, String extension) {
+        Entry entry = mEntries.get(id);
+        if (entry == null || !entry.hasFile(extension)) {
+            return false;
+        }
+        if (ERROR_LOG_FILE_EXTENSION.equals(extension)) {
+            entry.mErrorLogStored = false;
+        } else {
+            entry.mThrowableStored = false;
+        }
+        if (entry.isEmpty()) {
+            mEntries.remove(id);
+        }
+        return true;
+    }
+
+    /**
+     * Append lines to the manifest file.
+     *
+     * @param lines lines to append.
+     * @param sync  true to wait for the storage device to persist them.
+     */
+    private void append(String lines, boolean sync) {
+        if (mManifestFileBroken) {
+            return;
+        }
+
+        /* If the manifest file was deleted from outside, the next process rebuilds it from the directory. */
+        if (!mManifestFile.exists()) {
+            mManifestFileBroken = true;
+            return;
+        }
+        try {
+            write(mManifestFile, lines, true, sync);
+        } catch (IOException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Failed to update error log manifest.", e);
+            invalidate();
+        }
+    }
+
+    /**
+     * Write the manifest file with the current index, replacing the previous file atomically.
+     */
+    private void rewrite() {
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<UUID, Entry> entry : mEntries.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.mErrorLogStored) {
+                appendAddLine(contents, entry.getKey() + ERROR_LOG_FILE_EXTENSION, value.mTimestamp);
+            }
+            if (value.mThrowableStored) {
+                appendAddLine(contents, entry.getKey() + THROWABLE_FILE_EXTENSION, 0);
+            }
+        }
+        File temporaryFile = new File(mDirectory, MANIFEST_FILE + ".tmp");
+        try {
+            write(temporaryFile, contents.toString(), false, true);
+            if (!temporaryFile.renameTo(mManifestFile)) {
+                throw new IOException("Failed to rename " + temporaryFile);
+            }
+            mManifestFileBroken = false;
+        } catch (IOException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Failed to write error log manifest.", e);
+
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            invalidate();
+        }
+    }
+
+    /**
+     * Delete the manifest file so that the next process rebuilds it from the directory,
+     * and stop updating it in this process.
+     */
+    private void invalidate() {
+        mManifestFileBroken = true;
+
+        //noinspection ResultOfMethodCallIgnored
+        mManifestFile.delete();
+    }
+
+    /**
+     * Write text to a file.
+     *
+     * @param file     file to write.
+     * @param contents text to write.
+     * @param append   true to append to the file, false to replace it.
+     * @param sync     true to wait for the storage device to persist the file.
+     * @throws IOException if the file could not be written.
+     */
+    private static void write(File file, String contents, boolean append, boolean sync) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file, append);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            outputStream.write(contents.getBytes("UTF-8"));
+            if (sync) {
+                outputStream.getFD().sync();
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void appendAddLine(StringBuilder lines, String fileName, long timestamp) {
+        lines.append(OPERATION_ADD).append(' ').append(fileName).append(' ').append(timestamp).append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Parse the error identifier of a stored file name.
+     *
+     * @param fileName file name.
+     * @return error identifier or null if the file is not an error log or throwable file.
+     */
+    @Nullable
+    private static UUID parseId(String fileName) {
+        String extension;
+        if (fileName.endsWith(ERROR_LOG_FILE_EXTENSION)) {
+            extension = ERROR_LOG_FILE_EXTENSION;
+        } else if (fileName.endsWith(THROWABLE_FILE_EXTENSION)) {
+            extension = THROWABLE_FILE_EXTENSION;
+        } else {
+            return null;
+        }
+        String name = fileName.substring(0, fileName.length() - extension.length());
+        try {
+            UUID id = UUID.fromString(name);
+            return name.equals(id.toString()) ? id : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Files stored for an error.
+     */
+    private static class Entry {
+
+        /**
+         * Creation time of the error log file.
+         */
+        private long mTimestamp;
+
+        /**
+         * Whether the error log file is stored.
+         */
+        private boolean mErrorLogStored;
+
+        /**
+         * Whether the throwable file is stored.
+         */
+        private boolean mThrowableStored;
+
+        private boolean hasFile(String extension) {
+            return ERROR_LOG_FILE_EXTENSION.equals(extension) ? mErrorLogStored : mThrowableStored;
+        }
+
+        private boolean isEmpty() {
+            return !mErrorLogStored && !mThrowableStored;
+        }
+    }
+}
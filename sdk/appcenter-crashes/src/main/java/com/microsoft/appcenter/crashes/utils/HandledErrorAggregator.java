@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rate limits handled errors sharing the same stack trace fingerprint.
+ * <p>
+ * Each fingerprint has a token bucket holding up to the maximum number of errors per window and refilled
+ * at that rate over the window. An error is sent when a token is available, otherwise it is suppressed and
+ * counted. The next error sent for that fingerprint reports how many occurrences were suppressed before it.
+ * If no error is sent for that fingerprint by the end of the window, or if the fingerprint is forgotten,
+ * the suppressed occurrences are returned as a summary instead.
+ */
+public class HandledErrorAggregator {
+
+    /**
+     * Value returned by {@link #onError(long, Throwable, long)} when the error must not be sent.
+     */
+    public static final int SUPPRESSED = -1;
+
+    /**
+     * Maximum number of fingerprints tracked, the least recently seen is forgotten first.
+     */
+    @VisibleForTesting
+    static final int MAX_FINGERPRINTS = 128;
+
+    /**
+     * Summaries of fingerprints that were forgotten while they had suppressed occurrences.
+     */
+    private final List<Summary> mForgottenSummaries = new ArrayList<>();
+
+    /**
+     * Token bucket per fingerprint.
+     */
+    private final Map<Long, Bucket> mBuckets = new LinkedHashMap<Long, Bucket>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Bucket> eldest) {
+            if (size() > MAX_FINGERPRINTS) {
+
+                /* Keep the suppressed occurrences of the forgotten fingerprint to report them. */
+                Bucket bucket = eldest.getValue();
+                if (bucket.mSuppressed > 0) {
+                    mForgottenSummaries.add(new Summary(bucket.mSample, bucket.mSuppressed));
+                }
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Window duration in milliseconds.
+     */
+    private final long mWindowMillis;
+
+    /**
+     * Maximum number of errors sent per fingerprint and per window.
+     */
+    private final int mMaxErrorsPerWindow;
+
+    /**
+     * Total number of suppressed errors since creation.
+     */
+    private long mSuppressedCount;
+
+    /**
+     * Init.
+     *
+     * @param windowMillis       window duration in milliseconds.
+     * @param maxErrorsPerWindow maximum number of errors sent per fingerprint within a window.
+     */
+    public HandledErrorAggregator(long windowMillis, int maxErrorsPerWindow) {
+        if (windowMillis <= 0 || maxErrorsPerWindow <= 0) {
+            throw new IllegalArgumentException("Window and maximum errors per window must be positive.");
+        }
+        mWindowMillis = windowMillis;
+        mMaxErrorsPerWindow = maxErrorsPerWindow;
+    }
+
+    /**
+     * Get the window duration.
+     *
+     * @return window duration in milliseconds.
+     */
+    public long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    /**
+     * Compute a fingerprint of the stack traces of a throwable and its causes.
+     * Only class names, method names and line numbers are used, messages are ignored.
+     *
+     * @param throwable throwable.
+     * @return fingerprint.
+     */
+    public static long getFingerprint(@NonNull Throwable throwable) {
+        long fingerprint = 17;
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        for (Throwable cause = throwable; cause != null && visited.add(cause); cause = cause.getCause()) {
+            fingerprint = 31 * fingerprint + cause.getClass().getName().hashCode();
+            for (StackTraceElement frame : cause.getStackTrace()) {
+                fingerprint = 31 * fingerprint + frame.getClassName().hashCode();
+                fingerprint = 31 * fingerprint + frame.getMethodName().hashCode();
+                fingerprint = 31 * fingerprint + frame.getLineNumber();
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Record an error occurrence.
+     *
+     * @param fingerprint error fingerprint.
+     * @param throwable   error, kept to report the summary of suppressed occurrences.
+     * @param now         current time in milliseconds, must be monotonic.
+     * @return {@link #SUPPRESSED} if the error must not be sent,
+     * otherwise the number of occurrences suppressed since the previous error sent with that fingerprint.
+     */
+    public synchronized int onError(long fingerprint, @NonNull Throwable throwable, long now) {
+        Bucket bucket = mBuckets.get(fingerprint);
+        if (bucket == null) {
+            bucket = new Bucket(mMaxErrorsPerWindow, now);
+            mBuckets.put(fingerprint, bucket);
+        } else {
+
+            /* Refill proportionally to the time elapsed. */
+            double refill = (double) (now - bucket.mLastRefill) * mMaxErrorsPerWindow / mWindowMillis;
+            bucket.mTokens = Math.min(mMaxErrorsPerWindow, bucket.mTokens + refill);
+            bucket.mLastRefill = now;
+        }
+        if (bucket.mTokens < 1) {
+            if (bucket.mSuppressed == 0) {
+                bucket.mSample = throwable;
+                bucket.mFirstSuppressed = now;
+            }
+            bucket.mSuppressed++;
+            mSuppressedCount++;
+            return SUPPRESSED;
+        }
+        bucket.mTokens--;
+        int suppressed = bucket.mSuppressed;
+        bucket.mSuppressed = 0;
+        bucket.mSample = null;
+        return suppressed;
+    }
+
+    /**
+     * Remove the summaries of fingerprints whose window ended without reporting their suppressed occurrences,
+     * and of fingerprints forgotten while they had suppressed occurrences.
+     *
+     * @param now current time in milliseconds, must be monotonic.
+     * @return summaries to report.
+     */
+    public synchronized List<Summary> removeDueSummaries(long now) {
+        List<Summary> summaries = new ArrayList<>(mForgottenSummaries);
+        mForgottenSummaries.clear();
+        for (Bucket bucket : mBuckets.values()) {
+            if (bucket.mSuppressed > 0 && now - bucket.mFirstSuppressed >= mWindowMillis) {
+                summaries.add(removeSummary(bucket));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Remove the summaries of all suppressed occurrences that were not reported yet.
+     *
+     * @return summaries to report.
+     */
+    public synchronized List<Summary> removeAllSummaries() {
+        List<Summary> summaries = new ArrayList<>(mForgottenSummaries);
+        mForgottenSummaries.clear();
+        for (Bucket bucket : mBuckets.values()) {
+            if (bucket.mSuppressed > 0) {
+                summaries.add(removeSummary(bucket));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Check if some suppressed occurrences were not reported yet.
+     *
+     * @return true if there are suppressed occurrences to report.
+     */
+    public synchronized boolean hasPendingSummaries() {
+        if (!mForgottenSummaries.isEmpty()) {
+            return true;
+        }
+        for (Bucket bucket : mBuckets.values()) {
+            if (bucket.mSuppressed > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the summary of a bucket and reset its suppressed occurrences.
+     *
+     * @param bucket bucket with suppressed occurrences.
+     * @return summary.
+     */
+    private static Summary removeSummary(Bucket bucket) {
+        Summary summary = new Summary(bucket.mSample, bucket.mSuppressed);
+        bucket.mSuppressed = 0;
+        bucket.mSample = null;
+        return summary;
+    }
+
+    /**
+     * Get the total number of suppressed errors.
+     *
+     * @return number of errors that were not sent.
+     */
+    public synchronized long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    /**
+     * Token bucket state.
+     */
+    private static class Bucket {
+
+        /**
+         * Available tokens.
+         */
+        double mTokens;
+
+        /**
+         * Last time tokens were refilled.
+         */
+        long mLastRefill;
+
+        /**
+         * Occurrences suppressed since the last error sent.
+         */
+        int mSuppressed;
+
+        /**
+         * First occurrence suppressed since the last error sent.
+         */
+        Throwable mSample;
+
+        /**
+         * Time of the first occurrence suppressed since the last error sent.
+         */
+        long mFirstSuppressed;
+
+        Bucket(int tokens, long now) {
+            mTokens = tokens;
+            mLastRefill = now;
+        }
+    }
+
+    /**
+     * Suppressed occurrences of a fingerprint that were not reported by a later error.
+     */
+    public static class Summary {
+
+        /**
+         * First suppressed occurrence.
+         */
+        private final Throwable mThrowable;
+
+        /**
+         * Number of suppressed occurrences.
+         */
+        private final int mSuppressedCount;
+
+        Summary(Throwable throwable, int suppressedCount) {
+            mThrowable = throwable;
+            mSuppressedCount = suppressedCount;
+        }
+
+        /**
+         * Get the first suppressed occurrence.
+         *
+         * @return the first suppressed occurrence.
+         */
+        public Throwable getThrowable() {
+            return mThrowable;
+        }
+
+        /**
+         * Get the number of suppressed occurrences.
+         *
+         * @return the number of suppressed occurrences.
+         */
+        public int getSuppressedCount() {
+            return mSuppressedCount;
+        }
+    }
+}
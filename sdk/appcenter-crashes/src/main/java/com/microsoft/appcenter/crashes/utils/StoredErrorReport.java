@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.crashes.model.ErrorReport;
+import com.microsoft.appcenter.utils.storage.FileManager;
+
+import java.io.File;
+
+/**
+ * Error report that keeps a reference to its throwable file instead of the stack trace,
+ * the stack trace is read from storage each time it is requested.
+ */
+class StoredErrorReport extends ErrorReport {
+
+    /**
+     * Throwable file, null once a stack trace was explicitly set.
+     */
+    private File mThrowableFile;
+
+    StoredErrorReport(@NonNull File throwableFile) {
+        mThrowableFile = throwableFile;
+    }
+
+    @Override
+    public String getStackTrace() {
+        File throwableFile = mThrowableFile;
+        if (throwableFile == null) {
+            return super.getStackTrace();
+        }
+        return throwableFile.length() > 0 ? FileManager.read(throwableFile) : null;
+    }
+
+    @Override
+    public void setStackTrace(String stackTrace) {
+        mThrowableFile = null;
+        super.setStackTrace(stackTrace);
+    }
+}
@@ -20,12 +20,15 @@ import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.appcenter.crashes.model.CrashSummary;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogBundle;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
@@ -82,6 +85,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -104,6 +108,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.doCallRealMethod;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -300,7 +305,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(report);
         when(FileManager.read(any(File.class))).thenReturn("");
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(report)).thenReturn(true);
@@ -348,7 +353,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(report);
         when(FileManager.read(any(File.class))).thenReturn("");
 
         CrashesListener mockListener = mock(CrashesListener.class);
@@ -390,7 +395,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(report);
         when(FileManager.read(any(File.class))).thenReturn("");
         when(SharedPreferencesManager.getBoolean(eq(Crashes.PREF_KEY_ALWAYS_SEND), anyBoolean())).thenReturn(true);
 
@@ -425,6 +430,44 @@ public class CrashesTest extends AbstractCrashesTest {
         verify(mockChannel, times(errorAttachmentLogList.size())).enqueue(mockAttachment, crashes.getGroupName(), DEFAULTS);
     }
 
+    @Test
+    public void queuePendingCrashesAsBundle() throws JSONException {
+        Channel mockChannel = mock(Channel.class);
+        ErrorReport report = new ErrorReport();
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(report);
+        when(FileManager.read(any(File.class))).thenReturn("");
+        final ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithText("hello", "log.txt");
+        ErrorAttachmentLog invalidAttachment = mock(ErrorAttachmentLog.class);
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(report)).thenReturn(true);
+        when(mockListener.shouldAwaitUserConfirmation()).thenReturn(false);
+        when(mockListener.getErrorAttachments(report)).thenReturn(Arrays.asList(attachment, invalidAttachment, null));
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(mErrorLog);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        Crashes.setCrashBundlingEnabled(true);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mockChannel, "", null, true);
+
+        /* The crash and its valid attachment are enqueued together as a critical bundle. */
+        verify(mockChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object log) {
+                return log instanceof LogBundle && ((LogBundle) log).getLogs().equals(Arrays.<Log>asList(mErrorLog, attachment));
+            }
+        }), eq(crashes.getGroupName()), eq(CRITICAL));
+        verify(mockChannel, never()).enqueue(eq(mErrorLog), anyString(), anyInt());
+        verify(mockChannel, never()).enqueue(any(ErrorAttachmentLog.class), anyString(), anyInt());
+        assertEquals(mErrorLog.getId(), attachment.getErrorId());
+    }
+
     @Test
     public void processPendingErrorsCorrupted() throws JSONException {
         mockStatic(ErrorLogHelper.class);
@@ -448,6 +491,86 @@ public class CrashesTest extends AbstractCrashesTest {
         verify(channel, never()).enqueue(any(Log.class), anyString(), anyInt());
     }
 
+    @Test
+    public void processManyPendingErrors() throws JSONException {
+        int count = Crashes.PARALLEL_PROCESSING_THRESHOLD * 2;
+        File[] files = new File[count];
+        ManagedErrorLog[] errorLogs = new ManagedErrorLog[count];
+        ErrorReport[] reports = new ErrorReport[count];
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        mockStatic(ErrorLogHelper.class);
+        for (int i = 0; i < count; i++) {
+            files[i] = mock(File.class);
+            errorLogs[i] = mock(ManagedErrorLog.class);
+            when(errorLogs[i].getId()).thenReturn(UUID.randomUUID());
+            reports[i] = new ErrorReport();
+            when(FileManager.read(files[i])).thenReturn("log" + i);
+            when(logSerializer.deserializeLog("log" + i, null)).thenReturn(errorLogs[i]);
+            when(ErrorLogHelper.getErrorReportFromErrorLog(eq(errorLogs[i]), any(File.class))).thenReturn(reports[i]);
+        }
+
+        /* Last file is corrupted. */
+        when(logSerializer.deserializeLog("log" + (count - 1), null)).thenThrow(new JSONException("corrupted"));
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(files);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        CrashesListener listener = mock(CrashesListener.class);
+        when(listener.shouldProcess(any(ErrorReport.class))).thenReturn(false);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(listener);
+        assertEquals(-1, Crashes.getPendingCrashProcessingTime());
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        assertTrue(Crashes.getPendingCrashProcessingTime() >= 0);
+
+        /* Logs are parsed in parallel but reports are still processed in the order of the files. */
+        InOrder inOrder = inOrder(listener);
+        for (int i = 0; i < count - 1; i++) {
+            inOrder.verify(listener).shouldProcess(reports[i]);
+            verify(files[i], never()).delete();
+        }
+        verify(files[count - 1]).delete();
+        verifyStatic(times(count - 1));
+        ErrorLogHelper.getStoredThrowableFile(any(UUID.class));
+    }
+
+    @Test
+    public void doNotBuildPendingReportsInManualProcessing() throws Exception {
+        File logFile = mock(File.class);
+        File throwableFile = mock(File.class);
+        when(throwableFile.length()).thenReturn(1L);
+        ManagedErrorLog errorLog = mock(ManagedErrorLog.class);
+        when(errorLog.getId()).thenReturn(UUID.randomUUID());
+        ErrorReport report = new ErrorReport();
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(FileManager.read(logFile)).thenReturn("log");
+        when(FileManager.read(throwableFile)).thenReturn("stackTrace");
+        when(logSerializer.deserializeLog("log", null)).thenReturn(errorLog);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{logFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(errorLog, throwableFile)).thenReturn(report);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        WrapperSdkExceptionManager.setAutomaticProcessing(false);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+
+        /* Only the error log was read at startup. */
+        verifyStatic(never());
+        FileManager.read(throwableFile);
+        verifyStatic(never());
+        ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class));
+
+        /* Report is built when requested. */
+        Collection<ErrorReport> reports = WrapperSdkExceptionManager.getUnprocessedErrorReports().get();
+        assertEquals(Collections.singletonList(report), new ArrayList<>(reports));
+        verifyStatic();
+        ErrorLogHelper.getErrorReportFromErrorLog(errorLog, throwableFile);
+    }
+
     @Test
     public void noQueueingWhenDisabled() {
         mockStatic(ErrorLogHelper.class);
@@ -530,7 +653,7 @@ public class CrashesTest extends AbstractCrashesTest {
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE)).thenReturn(errorReport);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, throwableFile)).thenReturn(errorReport);
         when(FileManager.read(any(File.class))).thenReturn("");
         when(FileManager.read(any(File.class))).thenReturn(STACK_TRACE);
 
@@ -546,7 +669,7 @@ public class CrashesTest extends AbstractCrashesTest {
 
         /* The error report was created and cached but device is null here. */
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE);
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, throwableFile);
         assertNull(errorReport.getDevice());
 
         /* The channel sets a device. */
@@ -567,7 +690,7 @@ public class CrashesTest extends AbstractCrashesTest {
 
         /* No more error reports should be produced at the point. */
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE);
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, throwableFile);
 
         /* Simulate onFailure event. */
         channelListener.onFailure(mErrorLog, EXCEPTION);
@@ -576,7 +699,7 @@ public class CrashesTest extends AbstractCrashesTest {
 
         /* onSuccess and onFailure invalidate the cache, so one more call is expected. */
         verifyStatic(times(2));
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE);
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, throwableFile);
     }
 
     @Test
@@ -614,7 +737,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(new ErrorReport());
         File pendingFolder = mock(File.class);
         when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(pendingFolder);
         when(FileManager.read(any(File.class))).thenReturn("");
@@ -683,25 +806,67 @@ public class CrashesTest extends AbstractCrashesTest {
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile).thenReturn(null);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE)).thenReturn(errorReport);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, throwableFile)).thenReturn(errorReport);
         when(FileManager.read(any(File.class))).thenReturn(STACK_TRACE);
 
         Crashes crashes = Crashes.getInstance();
         ErrorReport report = crashes.buildErrorReport(mErrorLog);
         assertErrorEquals(mErrorLog, report);
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE);
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, throwableFile);
 
         /* Verify the caching. */
         assertEquals(report, crashes.buildErrorReport(mErrorLog));
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, STACK_TRACE);
+        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, throwableFile);
 
         mErrorLog.setId(UUID.randomUUID());
         report = crashes.buildErrorReport(mErrorLog);
         assertNull(report);
     }
 
+    @Test
+    public void errorReportCacheEviction() {
+        mockStatic(ErrorLogHelper.class);
+        File throwableFile = mock(File.class);
+        when(throwableFile.length()).thenReturn(1L);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenAnswer(new Answer<ErrorReport>() {
+
+            @Override
+            public ErrorReport answer(InvocationOnMock invocation) {
+                return new ErrorReport();
+            }
+        });
+        when(FileManager.read(any(File.class))).thenReturn(STACK_TRACE);
+
+        /* Build one report more than the cache can hold. */
+        Crashes crashes = Crashes.getInstance();
+        ManagedErrorLog[] logs = new ManagedErrorLog[Crashes.MAX_ERROR_REPORT_CACHE_SIZE + 1];
+        for (int i = 0; i < logs.length; i++) {
+            logs[i] = new ManagedErrorLog();
+            logs[i].setId(UUID.randomUUID());
+            assertNotNull(crashes.buildErrorReport(logs[i]));
+        }
+        assertEquals(0, Crashes.getErrorReportCacheHitCount());
+        assertEquals(logs.length, Crashes.getErrorReportCacheMissCount());
+
+        /* Recently used report is still in memory. */
+        ErrorReport report = crashes.buildErrorReport(logs[logs.length - 1]);
+        assertSame(report, crashes.buildErrorReport(logs[logs.length - 1]));
+        assertEquals(2, Crashes.getErrorReportCacheHitCount());
+
+        /* Least recently used report was evicted and is built again from storage. */
+        assertNotNull(crashes.buildErrorReport(logs[0]));
+        assertEquals(logs.length + 1, Crashes.getErrorReportCacheMissCount());
+        verifyStatic(times(logs.length + 1));
+        ErrorLogHelper.getStoredThrowableFile(any(UUID.class));
+
+        /* Stack traces are not read when building reports. */
+        verifyStatic(never());
+        FileManager.read(throwableFile);
+    }
+
     @Test
     public void defaultErrorReportingListener() {
         Crashes crashes = Crashes.getInstance();
@@ -790,7 +955,7 @@ public class CrashesTest extends AbstractCrashesTest {
         File throwableFile = errorStorageDirectory.newFile();
         new FileWriter(throwableFile).append(STACK_TRACE).close();
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(errorLog, STACK_TRACE)).thenReturn(errorReport);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(errorLog, throwableFile)).thenReturn(errorReport);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(FileManager.read(any(File.class))).thenReturn("fake_data").thenReturn(STACK_TRACE);
@@ -842,6 +1007,87 @@ public class CrashesTest extends AbstractCrashesTest {
         assertNull(report.getThrowable());
     }
 
+    @Test
+    public void sendSuppressedErrorsSavedByPreviousSession() throws java.lang.Exception {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        when(ErrorLogHelper.readAndDeleteSuppressedErrors()).thenReturn("suppressedErrors");
+        HandledErrorLog errorLog = new HandledErrorLog();
+        LogContainer logContainer = new LogContainer();
+        logContainer.setLogs(Collections.<Log>singletonList(errorLog));
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeContainer("suppressedErrors", null)).thenReturn(logContainer);
+
+        /* Start crashes. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        Channel channel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* The suppressed errors saved when crashing are sent. */
+        verify(channel).enqueue(errorLog, crashes.getGroupName(), DEFAULTS);
+    }
+
+    @Test
+    public void getLastSessionCrashSummaryReadOnce() {
+        mockStatic(ErrorLogHelper.class);
+        CrashSummary summary = new CrashSummary();
+        when(ErrorLogHelper.readAndDeleteCrashSummary()).thenReturn(summary);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        String filesPath = Constants.FILES_PATH;
+        Constants.FILES_PATH = errorStorageDirectory.getRoot().getAbsolutePath();
+        try {
+
+            /* Available before start. */
+            assertSame(summary, Crashes.getLastSessionCrashSummary(mock(Context.class)));
+            assertSame(summary, Crashes.getLastSessionCrashSummary(mock(Context.class)));
+
+            /* Start does not read it again. */
+            Crashes crashes = Crashes.getInstance();
+            crashes.onStarting(mAppCenterHandler);
+            crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+            assertSame(summary, Crashes.getLastSessionCrashSummary(mock(Context.class)));
+            verifyStatic();
+            ErrorLogHelper.readAndDeleteCrashSummary();
+
+            /* Cleared when disabled. */
+            Crashes.setEnabled(false);
+            assertNull(Crashes.getLastSessionCrashSummary(mock(Context.class)));
+        } finally {
+            Constants.FILES_PATH = filesPath;
+        }
+    }
+
+    @Test
+    public void getLastSessionCrashSummaryFromErrorLog() throws Exception {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(errorLog);
+        mockStatic(ErrorLogHelper.class);
+        File lastErrorLogFile = errorStorageDirectory.newFile("last-error-log.json");
+        new FileWriter(lastErrorLogFile).append("fake_data").close();
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(null);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(eq(errorLog), any(File.class))).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        CrashSummary summary = new CrashSummary();
+        when(ErrorLogHelper.getCrashSummaryFromErrorLog(errorLog)).thenReturn(summary);
+        when(FileManager.read(any(File.class))).thenReturn("fake_data");
+
+        /* No summary file, e.g. native crash: the summary is built once the crash is processed. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        assertSame(summary, Crashes.getLastSessionCrashSummary(mock(Context.class)));
+    }
+
     @Test
     public void noCrashInLastSessionWhenDisabled() {
 
@@ -953,7 +1199,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(new ErrorReport());
         when(FileManager.read(any(File.class))).thenReturn("");
 
         /* Mock starting crashes so that attachments are processed. */
@@ -982,7 +1228,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report1).thenReturn(report2);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenAnswer(reportsWithLogIds(report1, report2));
         when(FileManager.read(any(File.class))).thenReturn("");
         LogSerializer logSerializer = mock(LogSerializer.class);
         when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
@@ -1062,7 +1308,7 @@ public class CrashesTest extends AbstractCrashesTest {
         /* Reset instance to test another tine with always send. */
         Crashes.unsetInstance();
         crashes = Crashes.getInstance();
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report1).thenReturn(report2);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenAnswer(reportsWithLogIds(report1, report2));
         WrapperSdkExceptionManager.setAutomaticProcessing(false);
         crashes.setLogSerializer(logSerializer);
         crashes.onStarting(mAppCenterHandler);
@@ -1089,7 +1335,7 @@ public class CrashesTest extends AbstractCrashesTest {
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report1).thenReturn(report2);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(report1).thenReturn(report2);
         when(FileManager.read(any(File.class))).thenReturn("");
         LogSerializer logSerializer = mock(LogSerializer.class);
         when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
@@ -1171,7 +1417,7 @@ public class CrashesTest extends AbstractCrashesTest {
         Whitebox.setInternalState(pendingDir, "path", "");
         when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(pendingDir);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(report);
         when(ErrorLogHelper.parseLogFolderUuid(any(File.class))).thenReturn(UUID.randomUUID());
         when(FileManager.read(any(File.class))).thenReturn("");
         LogSerializer logSerializer = mock(LogSerializer.class);
@@ -1258,7 +1504,7 @@ public class CrashesTest extends AbstractCrashesTest {
         Device device = new Device();
         device.setWrapperSdkName(WRAPPER_SDK_NAME_NDK);
         errorReport.setDevice(device);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(errorReport);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(errorReport);
         whenNew(DefaultLogSerializer.class).withAnyArguments().thenReturn(defaultLogSerializer);
         whenNew(com.microsoft.appcenter.crashes.ingestion.models.Exception.class).withAnyArguments().thenReturn(exception);
         when(exception.getMinidumpFilePath()).thenReturn(null);
@@ -1310,7 +1556,7 @@ public class CrashesTest extends AbstractCrashesTest {
         Device device = new Device();
         device.setWrapperSdkName(WRAPPER_SDK_NAME_NDK);
         errorReport.setDevice(device);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(errorReport);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(errorReport);
         whenNew(DefaultLogSerializer.class).withAnyArguments().thenReturn(defaultLogSerializer);
         whenNew(com.microsoft.appcenter.crashes.ingestion.models.Exception.class).withAnyArguments().thenReturn(exception);
         when(exception.getStackTrace()).thenReturn("some minidump");
@@ -1351,6 +1597,76 @@ public class CrashesTest extends AbstractCrashesTest {
         verify(exception).setStackTrace(null);
     }
 
+    @Test
+    public void minidumpStreamedAndDeletedAfterUpload() throws Exception {
+
+        /* Set up mock for the crash. */
+        final com.microsoft.appcenter.crashes.ingestion.models.Exception exception = mock(com.microsoft.appcenter.crashes.ingestion.models.Exception.class);
+        DefaultLogSerializer defaultLogSerializer = mock(DefaultLogSerializer.class);
+        mockStatic(ErrorLogHelper.class);
+        mockStatic(ErrorAttachmentLog.class);
+        ErrorReport errorReport = new ErrorReport();
+        Device device = new Device();
+        device.setWrapperSdkName(WRAPPER_SDK_NAME_NDK);
+        errorReport.setDevice(device);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(File.class))).thenReturn(errorReport);
+        whenNew(DefaultLogSerializer.class).withAnyArguments().thenReturn(defaultLogSerializer);
+        File minidumpFile = mTemporaryFolder.newFile("minidump.dmp");
+        when(exception.getMinidumpFilePath()).thenReturn(minidumpFile.getPath());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(FileManager.read(any(File.class))).thenReturn("");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) {
+                ManagedErrorLog log = mock(ManagedErrorLog.class);
+                when(log.getId()).thenReturn(UUID.randomUUID());
+                when(log.getException()).thenReturn(exception);
+                return log;
+            }
+        });
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+        final ErrorAttachmentLog errorAttachmentLog = mock(ErrorAttachmentLog.class);
+        when(errorAttachmentLog.isValid()).thenReturn(true);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                when(errorAttachmentLog.getDataFile()).thenReturn((File) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(errorAttachmentLog).setDataFile(any(File.class));
+        whenNew(ErrorAttachmentLog.class).withAnyArguments().thenReturn(errorAttachmentLog);
+
+        /* Start crashes. */
+        Channel mockChannel = mock(Channel.class);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mockChannel, "secret-app-mock", null, true);
+
+        /* Verify the minidump is moved, not read in memory. */
+        verifyStatic(never());
+        FileManager.readBytes(any(File.class));
+        verifyStatic(never());
+        attachmentWithBinary(any(byte[].class), anyString(), anyString());
+        verify(exception).setMinidumpFilePath(null);
+        verify(mockChannel).enqueue(errorAttachmentLog, crashes.getGroupName(), DEFAULTS);
+        File dataFile = errorAttachmentLog.getDataFile();
+        assertNotNull(dataFile);
+        assertFalse(minidumpFile.exists());
+        assertTrue(dataFile.exists());
+
+        /* The file is kept until the upload succeeds. */
+        crashes.getChannelListener().onBeforeSending(errorAttachmentLog);
+        assertTrue(dataFile.exists());
+        crashes.getChannelListener().onSuccess(errorAttachmentLog);
+        assertFalse(dataFile.exists());
+    }
+
     @Test
     @PrepareForTest({android.util.Log.class})
     public void stackOverflowOnSavingThrowable() throws Exception {
@@ -1403,7 +1719,7 @@ public class CrashesTest extends AbstractCrashesTest {
 
         /* Verify it didn't prevent saving the JSON file. */
         verifyStatic();
-        FileManager.write(any(File.class), eq(jsonCrash));
+        FileManager.writeAndSync(any(File.class), eq(jsonCrash));
     }
 
     @Test
@@ -1499,6 +1815,23 @@ public class CrashesTest extends AbstractCrashesTest {
         checkHasReceivedMemoryWarningInLastSession(true);
     }
 
+    /**
+     * Return the given reports in order, with identifiers matching the error logs they are built from.
+     */
+    private static Answer<ErrorReport> reportsWithLogIds(final ErrorReport... reports) {
+        return new Answer<ErrorReport>() {
+
+            private int mIndex;
+
+            @Override
+            public ErrorReport answer(InvocationOnMock invocation) {
+                ErrorReport report = reports[Math.min(mIndex++, reports.length - 1)];
+                report.setId(((ManagedErrorLog) invocation.getArguments()[0]).getId().toString());
+                return report;
+            }
+        };
+    }
+
     private void checkHasReceivedMemoryWarningInLastSession(boolean expected) {
         Crashes crashes = Crashes.getInstance();
         crashes.onStarting(mAppCenterHandler);
@@ -6,6 +6,8 @@
 package com.microsoft.appcenter.crashes;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.channel.Channel;
@@ -17,6 +19,7 @@ import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import org.junit.Test;
@@ -39,6 +42,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
@@ -47,6 +51,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 public class HandledErrorTest extends AbstractCrashesTest {
@@ -69,6 +74,131 @@ public class HandledErrorTest extends AbstractCrashesTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString());
     }
 
+    @Test
+    public void trackErrorAggregation() {
+        startCrashes();
+        when(HandlerUtils.getMainHandler()).thenReturn(mock(Handler.class));
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        Crashes.setHandledErrorAggregation(60000, 1);
+
+        /* Only first occurrence is sent within the window. */
+        for (int i = 0; i < 5; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        verify(mChannel).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertEquals(4, Crashes.getSuppressedErrorCount());
+
+        /* A different stack trace is not suppressed. */
+        Crashes.trackError(new java.lang.Exception());
+        verify(mChannel, times(2)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* After the window, next occurrence reports the suppressed count. */
+        reset(mChannel);
+        when(SystemClock.elapsedRealtime()).thenReturn(61000L);
+        Crashes.trackError(EXCEPTION);
+        verify(mChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return item instanceof HandledErrorLog
+                        && "4".equals(((HandledErrorLog) item).getProperties().get(Crashes.SUPPRESSED_COUNT_PROPERTY));
+            }
+        }), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* Disable aggregation. */
+        reset(mChannel);
+        Crashes.setHandledErrorAggregation(0, 0);
+        Crashes.trackError(EXCEPTION);
+        Crashes.trackError(EXCEPTION);
+        verify(mChannel, times(2)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertEquals(0, Crashes.getSuppressedErrorCount());
+    }
+
+    @Test
+    public void sendSuppressedErrorsAtEndOfWindow() {
+        startCrashes();
+        Handler handler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(handler);
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        Crashes.setHandledErrorAggregation(60000, 1);
+
+        /* Suppress 2 errors, the timer is restarted each time. */
+        Crashes.trackError(EXCEPTION);
+        Crashes.trackError(EXCEPTION);
+        Crashes.trackError(EXCEPTION);
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler, times(2)).postDelayed(timer.capture(), eq(60000L));
+        verify(handler, times(2)).removeCallbacks(timer.getValue());
+        verify(mChannel).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* At the end of the window, the suppressed errors are sent as one error. */
+        reset(mChannel);
+        when(SystemClock.elapsedRealtime()).thenReturn(61000L);
+        timer.getValue().run();
+        verify(mChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return item instanceof HandledErrorLog
+                        && EXCEPTION.getMessage().equals(((HandledErrorLog) item).getException().getMessage())
+                        && Collections.singletonMap(Crashes.SUPPRESSED_COUNT_PROPERTY, "2").equals(((HandledErrorLog) item).getProperties());
+            }
+        }), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* Nothing left, the timer is not restarted. */
+        verify(handler, times(2)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void sendSuppressedErrorsWhenChangingAggregation() {
+        startCrashes();
+        when(HandlerUtils.getMainHandler()).thenReturn(mock(Handler.class));
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        Crashes.setHandledErrorAggregation(60000, 1);
+        Crashes.trackError(EXCEPTION);
+        Crashes.trackError(EXCEPTION);
+        reset(mChannel);
+
+        /* Disabling aggregation sends the suppressed error right away. */
+        Crashes.setHandledErrorAggregation(0, 0);
+        verify(mChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return item instanceof HandledErrorLog
+                        && "1".equals(((HandledErrorLog) item).getProperties().get(Crashes.SUPPRESSED_COUNT_PROPERTY));
+            }
+        }), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+    }
+
+    @Test
+    public void suppressedCountDoesNotExceedPropertyLimit() {
+        startCrashes();
+        when(HandlerUtils.getMainHandler()).thenReturn(mock(Handler.class));
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        Crashes.setHandledErrorAggregation(60000, 1);
+        Crashes.trackError(EXCEPTION);
+        Crashes.trackError(EXCEPTION);
+        reset(mChannel);
+
+        /* Next error reports the suppressed count and keeps the maximum number of properties. */
+        when(SystemClock.elapsedRealtime()).thenReturn(61000L);
+        Crashes.trackError(EXCEPTION, new HashMap<String, String>() {{
+            for (int i = 0; i < 30; i++) {
+                put("valid" + i, "valid");
+            }
+        }}, null);
+        verify(mChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return item instanceof HandledErrorLog
+                        && ((HandledErrorLog) item).getProperties().size() == 20
+                        && "1".equals(((HandledErrorLog) item).getProperties().get(Crashes.SUPPRESSED_COUNT_PROPERTY));
+            }
+        }), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+    }
+
     @Test
     public void trackError() {
         startCrashes();
@@ -13,6 +13,7 @@ import com.microsoft.appcenter.AppCenterHandler;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -43,12 +44,15 @@ import java.util.UUID;
 
 import static com.microsoft.appcenter.utils.PrefStorageConstants.KEY_ENABLED;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
@@ -108,6 +112,7 @@ public class UncaughtExceptionHandlerTest {
         when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean()))
                 .thenReturn(errorLogMock);
 
+        when(ErrorLogHelper.createLowMemoryErrorLog(any(Thread.class), any(Exception.class), any(Device.class), anyLong())).thenReturn(errorLogMock);
         when(errorLogMock.getId()).thenReturn(UUID.randomUUID());
 
         mDefaultExceptionHandler = mock(Thread.UncaughtExceptionHandler.class);
@@ -163,6 +168,10 @@ public class UncaughtExceptionHandlerTest {
 
         verifyStatic();
         ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean());
+
+        /* Files are recorded in the manifest before being written. */
+        verifyStatic();
+        ErrorLogHelper.addStoredFiles(any(File.class), any(File.class));
     }
 
     @Test
@@ -216,7 +225,7 @@ public class UncaughtExceptionHandlerTest {
 
         IOException ioException = new IOException("Fake IO exception");
         PowerMockito.doThrow(ioException).when(FileManager.class);
-        FileManager.write(any(File.class), anyString());
+        FileManager.writeAndSync(any(File.class), anyString());
 
         final Thread thread = Thread.currentThread();
         final RuntimeException exception = new RuntimeException();
@@ -227,4 +236,46 @@ public class UncaughtExceptionHandlerTest {
 
         verify(mDefaultExceptionHandler).uncaughtException(thread, exception);
     }
+
+    @Test
+    public void outOfMemoryErrorSavedInLowMemoryMode() throws java.lang.Exception {
+        mExceptionHandler.register();
+        Thread thread = Thread.currentThread();
+        OutOfMemoryError error = new OutOfMemoryError();
+        mExceptionHandler.uncaughtException(thread, error);
+
+        /* The full capture with all threads and process list is skipped. */
+        verifyStatic(never());
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean());
+        verifyStatic();
+        ErrorLogHelper.createLowMemoryErrorLog(eq(thread), any(Exception.class), any(Device.class), anyLong());
+        verifyStatic();
+        FileManager.writeAndSync(any(File.class), anyString());
+        verify(mDefaultExceptionHandler).uncaughtException(thread, error);
+    }
+
+    @Test
+    public void fallbackToLowMemoryModeWhenHeapIsExhaustedWhileSaving() throws java.lang.Exception {
+        mExceptionHandler.register();
+
+        /* Simulate the heap being exhausted while building the full error log. */
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean()))
+                .thenThrow(new OutOfMemoryError());
+        Thread thread = Thread.currentThread();
+        RuntimeException exception = new RuntimeException();
+        mExceptionHandler.uncaughtException(thread, exception);
+
+        /* Crash is still saved and passed on. */
+        verifyStatic();
+        ErrorLogHelper.createLowMemoryErrorLog(eq(thread), any(Exception.class), any(Device.class), anyLong());
+        verifyStatic();
+        FileManager.writeAndSync(any(File.class), anyString());
+        verify(mDefaultExceptionHandler).uncaughtException(thread, exception);
+    }
+
+    @Test
+    public void lowMemoryDetection() {
+        assertTrue(Crashes.isLowMemory(new OutOfMemoryError()));
+        assertFalse(Crashes.isLowMemory(new RuntimeException()));
+    }
 }
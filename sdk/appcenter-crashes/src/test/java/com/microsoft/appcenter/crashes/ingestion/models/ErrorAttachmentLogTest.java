@@ -5,8 +5,13 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.net.Uri;
+
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.CHARSET;
@@ -15,6 +20,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
 
 @SuppressWarnings("unused")
 public class ErrorAttachmentLogTest {
@@ -91,4 +97,47 @@ public class ErrorAttachmentLogTest {
             assertTrue(log.isValid());
         }
     }
+
+    @Test
+    public void attachmentWithUri() {
+        Uri uri = mock(Uri.class);
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithUri(uri, "image.png", "image/png");
+        assertNotNull(attachment);
+        assertNull(attachment.getData());
+        assertNull(attachment.getDataFile());
+        assertEquals(uri, attachment.getDataUri());
+        assertEquals("image.png", attachment.getFileName());
+        assertEquals("image/png", attachment.getContentType());
+        assertEquals(0, attachment.getDataSize());
+        attachment.setId(UUID.randomUUID());
+        attachment.setErrorId(UUID.randomUUID());
+        assertTrue(attachment.isValid());
+    }
+
+    @Test
+    public void dataFileSize() throws IOException {
+        File file = File.createTempFile("attachment", ".bin");
+        try {
+            FileOutputStream outputStream = new FileOutputStream(file);
+            try {
+                outputStream.write(new byte[42]);
+            } finally {
+                outputStream.close();
+            }
+            ErrorAttachmentLog attachment = new ErrorAttachmentLog();
+            attachment.setId(UUID.randomUUID());
+            attachment.setErrorId(UUID.randomUUID());
+            attachment.setContentType("application/octet-stream");
+            assertFalse(attachment.isValid());
+            attachment.setDataFile(file);
+            assertTrue(attachment.isValid());
+            assertEquals(42, attachment.getDataSize());
+
+            /* In memory data takes precedence. */
+            attachment.setData(new byte[3]);
+            assertEquals(3, attachment.getDataSize());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
 }
@@ -54,6 +54,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
@@ -61,6 +62,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
@@ -177,6 +179,21 @@ public class ErrorLogHelperTest {
                 assertNotNull(frame.getClassName());
                 assertNotNull(frame.getMethodName());
             }
+
+            /* Check frames are interned. */
+            assertNotNull(thread.getFrameIndexes());
+            assertEquals(thread.getFrames().size(), thread.getFrameIndexes().size());
+            for (int i = 0; i < thread.getFrames().size(); i++) {
+                assertSame(errorLog.getFrameTable().get(thread.getFrameIndexes().get(i)), thread.getFrames().get(i));
+            }
+        }
+
+        /* Check expansion keeps frames. */
+        errorLog.expandFrames();
+        assertNull(errorLog.getFrameTable());
+        for (Thread thread : errorLog.getThreads()) {
+            assertNull(thread.getFrameIndexes());
+            assertNotNull(thread.getFrames());
         }
     }
 
@@ -233,6 +250,34 @@ public class ErrorLogHelperTest {
         assertEquals(launchTimeStamp, errorLog.getAppLaunchTimestamp().getTime());
     }
 
+    @Test
+    public void createLowMemoryErrorLog() throws java.lang.Exception {
+
+        /* Mock base. */
+        when(Process.myPid()).thenReturn(123);
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 21);
+        TestUtils.setInternalState(Build.class, "SUPPORTED_ABIS", new String[]{"armeabi-v7a", "arm"});
+        Device device = mock(Device.class);
+
+        /* Test. */
+        long launchTimeStamp = 2000;
+        ManagedErrorLog errorLog = ErrorLogHelper.createLowMemoryErrorLog(java.lang.Thread.currentThread(), new Exception(), device, launchTimeStamp);
+        assertNotNull(errorLog.getId());
+        assertNotNull(errorLog.getTimestamp());
+        assertSame(device, errorLog.getDevice());
+        assertEquals(Integer.valueOf(123), errorLog.getProcessId());
+        assertEquals("", errorLog.getProcessName());
+        assertEquals("armeabi-v7a", errorLog.getArchitecture());
+        assertEquals((Long) java.lang.Thread.currentThread().getId(), errorLog.getErrorThreadId());
+        assertEquals(Boolean.TRUE, errorLog.getFatal());
+        assertEquals(launchTimeStamp, errorLog.getAppLaunchTimestamp().getTime());
+
+        /* Other threads are not captured and device info is not queried. */
+        assertNull(errorLog.getThreads());
+        verifyStatic(never());
+        DeviceInfoHelper.getDeviceInfo(any(Context.class));
+    }
+
     @Test
     public void createErrorLogWithFailedDeviceGetAndNullProcesses() throws java.lang.Exception {
 
@@ -318,13 +363,31 @@ public class ErrorLogHelperTest {
         assertEquals(errorLog.getDevice(), report.getDevice());
     }
 
+    @Test
+    public void getErrorReportFromErrorLogWithThrowableFile() throws java.lang.Exception {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        errorLog.setErrorThreadName("main");
+        File throwableFile = mTemporaryFolder.newFile();
+
+        /* Stack trace is read from the file when requested. */
+        ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(errorLog, throwableFile);
+        assertEquals(errorLog.getId().toString(), report.getId());
+        assertEquals("main", report.getThreadName());
+        assertNull(report.getStackTrace());
+        FileManager.write(throwableFile, "Sample stack trace");
+        assertEquals("Sample stack trace", report.getStackTrace());
+
+        /* Explicit stack trace replaces the file. */
+        report.setStackTrace("Other stack trace");
+        assertEquals("Other stack trace", report.getStackTrace());
+    }
+
     @Test
     public void getStoredErrorLogFilesNullCases() {
 
-        /* Mock instance. */
-        File mockErrorLogDirectory = mock(File.class);
-        when(mockErrorLogDirectory.listFiles(any(FilenameFilter.class))).thenReturn(null);
-        ErrorLogHelper.setErrorLogDirectory(mockErrorLogDirectory);
+        /* Use a missing directory so that listing files returns null. */
+        ErrorLogHelper.setErrorLogDirectory(new File(mTemporaryFolder.getRoot(), "missing"));
 
         /* Test getStoredErrorLogFiles. */
         File[] files = ErrorLogHelper.getStoredErrorLogFiles();
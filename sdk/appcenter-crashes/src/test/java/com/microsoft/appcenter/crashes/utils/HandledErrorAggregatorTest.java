@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.microsoft.appcenter.crashes.utils.HandledErrorAggregator.SUPPRESSED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HandledErrorAggregatorTest {
+
+    private static final Throwable EXCEPTION = new IllegalStateException();
+
+    @Test
+    public void fingerprintIgnoresMessage() {
+        Throwable[] throwables = new Throwable[2];
+        for (int i = 0; i < throwables.length; i++) {
+            throwables[i] = new IllegalStateException("message " + i);
+        }
+        assertEquals(HandledErrorAggregator.getFingerprint(throwables[0]), HandledErrorAggregator.getFingerprint(throwables[1]));
+        assertNotEquals(HandledErrorAggregator.getFingerprint(throwables[0]), HandledErrorAggregator.getFingerprint(new IllegalStateException()));
+        assertNotEquals(HandledErrorAggregator.getFingerprint(throwables[0]), HandledErrorAggregator.getFingerprint(new RuntimeException(throwables[0])));
+    }
+
+    @Test
+    public void fingerprintWithCauseCycle() {
+        Exception first = new Exception();
+        Exception second = new Exception(first);
+        first.initCause(second);
+        HandledErrorAggregator.getFingerprint(first);
+    }
+
+    @Test
+    public void tokenBucket() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator(1000, 2);
+
+        /* Burst up to the bucket capacity. */
+        assertEquals(0, aggregator.onError(1, EXCEPTION, 0));
+        assertEquals(0, aggregator.onError(1, EXCEPTION, 0));
+        assertEquals(SUPPRESSED, aggregator.onError(1, EXCEPTION, 0));
+        assertEquals(SUPPRESSED, aggregator.onError(1, EXCEPTION, 100));
+        assertTrue(aggregator.hasPendingSummaries());
+        assertTrue(aggregator.removeDueSummaries(100).isEmpty());
+
+        /* Other fingerprints are independent. */
+        assertEquals(0, aggregator.onError(2, EXCEPTION, 100));
+
+        /* One token is refilled after half the window, the summary is reported. */
+        assertEquals(2, aggregator.onError(1, EXCEPTION, 500));
+        assertFalse(aggregator.hasPendingSummaries());
+        assertEquals(SUPPRESSED, aggregator.onError(1, EXCEPTION, 500));
+
+        /* Bucket does not exceed capacity after a long idle period. */
+        assertEquals(1, aggregator.onError(1, EXCEPTION, 100000));
+        assertEquals(0, aggregator.onError(1, EXCEPTION, 100000));
+        assertEquals(SUPPRESSED, aggregator.onError(1, EXCEPTION, 100000));
+        assertEquals(4, aggregator.getSuppressedCount());
+    }
+
+    @Test
+    public void oldestFingerprintForgotten() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator(1000, 1);
+        aggregator.onError(0, EXCEPTION, 0);
+        aggregator.onError(0, EXCEPTION, 0);
+        for (int i = 1; i <= HandledErrorAggregator.MAX_FINGERPRINTS; i++) {
+            aggregator.onError(i, EXCEPTION, 0);
+        }
+
+        /* Suppressed occurrences of the forgotten fingerprint are reported without waiting for the window. */
+        assertTrue(aggregator.hasPendingSummaries());
+        List<HandledErrorAggregator.Summary> summaries = aggregator.removeDueSummaries(0);
+        assertEquals(1, summaries.size());
+        assertSame(EXCEPTION, summaries.get(0).getThrowable());
+        assertEquals(1, summaries.get(0).getSuppressedCount());
+        assertFalse(aggregator.hasPendingSummaries());
+        assertEquals(0, aggregator.onError(0, EXCEPTION, 0));
+    }
+
+    @Test
+    public void summaryAtEndOfWindow() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator(1000, 1);
+        Throwable other = new RuntimeException();
+        aggregator.onError(1, EXCEPTION, 0);
+        assertEquals(SUPPRESSED, aggregator.onError(1, EXCEPTION, 100));
+        assertEquals(SUPPRESSED, aggregator.onError(1, other, 200));
+        aggregator.onError(2, other, 500);
+        assertEquals(SUPPRESSED, aggregator.onError(2, other, 600));
+
+        /* Only the window of the first fingerprint has ended, the first occurrence is kept. */
+        assertTrue(aggregator.removeDueSummaries(1099).isEmpty());
+        List<HandledErrorAggregator.Summary> summaries = aggregator.removeDueSummaries(1100);
+        assertEquals(1, summaries.size());
+        assertSame(EXCEPTION, summaries.get(0).getThrowable());
+        assertEquals(2, summaries.get(0).getSuppressedCount());
+        assertTrue(aggregator.removeDueSummaries(1100).isEmpty());
+        assertTrue(aggregator.hasPendingSummaries());
+
+        /* The next error sent does not report them again. */
+        assertEquals(0, aggregator.onError(1, EXCEPTION, 1100));
+
+        /* Remove all summaries, for example before the process goes down. */
+        summaries = aggregator.removeAllSummaries();
+        assertEquals(1, summaries.size());
+        assertSame(other, summaries.get(0).getThrowable());
+        assertEquals(1, summaries.get(0).getSuppressedCount());
+        assertFalse(aggregator.hasPendingSummaries());
+        assertEquals(3, aggregator.getSuppressedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWindow() {
+        new HandledErrorAggregator(0, 1);
+    }
+}
@@ -8,13 +8,16 @@ package com.microsoft.appcenter.ingestion.models.json;
 import com.microsoft.appcenter.AndroidTestUtils;
 import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogBundle;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 
 import org.json.JSONException;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -83,6 +86,45 @@ public class LogSerializerAndroidTest {
         assertEquals(log, actualContainer);
     }
 
+    @Test
+    public void logBundle() throws JSONException {
+        StartServiceLog startServiceLog = new StartServiceLog();
+        startServiceLog.setServices(Collections.singletonList("FIRST"));
+        startServiceLog.setTimestamp(new Date());
+        MockLog mockLog = AndroidTestUtils.generateMockLog();
+        mockLog.setTimestamp(new Date());
+        LogBundle bundle = new LogBundle();
+        bundle.setTimestamp(new Date());
+        bundle.setLogs(Arrays.<Log>asList(startServiceLog, mockLog));
+
+        /* Verify serialize and deserialize, bundled logs keep their own types. */
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        String payload = serializer.serializeLog(bundle);
+        Log actualLog = serializer.deserializeLog(payload, LogBundle.TYPE);
+        assertEquals(bundle, actualLog);
+    }
+
+    @Test
+    public void deferredCommonSchemaLog() throws JSONException {
+        MockLog mockLog = AndroidTestUtils.generateMockLog();
+        mockLog.setTimestamp(new Date());
+        DeferredCommonSchemaLog log = new DeferredCommonSchemaLog(mockLog, "token-1");
+        log.setFlags(1L);
+        log.getExt().getSdk().setEpoch("epoch");
+        log.getExt().getSdk().setSeq(2L);
+        log.getExt().getProtocol().setTicketKeys(Collections.singletonList("ticket"));
+
+        /* Verify serialize and deserialize, target token is restored by persistence. */
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        String payload = serializer.serializeLog(log);
+        Log actualLog = serializer.deserializeLog(payload, DeferredCommonSchemaLog.TYPE);
+        actualLog.addTransmissionTarget("token-1");
+        assertEquals(log, actualLog);
+    }
+
     @Test
     public void logWithUserId() throws JSONException {
         MockLog expectedLog = AndroidTestUtils.generateMockLog();
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.test.InstrumentationRegistry;
+import android.util.Base64;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.StreamedDataLog;
+import com.microsoft.appcenter.utils.storage.FileManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("unused")
+public class StreamedDataUtilsAndroidTest {
+
+    private static final String CONTENTS = "Some attachment data";
+
+    private File mDataFile;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Constants.loadFromContext(InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void tearDown() {
+        if (mDataFile != null) {
+
+            //noinspection ResultOfMethodCallIgnored
+            mDataFile.delete();
+        }
+    }
+
+    @Test
+    public void writeBodyReplacesDataPropertyOnly() throws JSONException, IOException {
+        mDataFile = StreamedDataUtils.getFile("test_data");
+        FileManager.write(mDataFile, CONTENTS);
+
+        /* A property with the same value as the reference is kept as is. */
+        MockLog otherLog = AndroidTestUtils.generateMockLog();
+        Map<String, String> properties = new HashMap<>();
+        properties.put("copy", StreamedDataUtils.getReference(mDataFile));
+        otherLog.setProperties(properties);
+        MockStreamedDataLog streamedLog = new MockStreamedDataLog();
+        streamedLog.setTimestamp(otherLog.getTimestamp());
+        streamedLog.setProperties(properties);
+        streamedLog.mDataFile = mDataFile;
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.<Log>asList(otherLog, streamedLog));
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        String body = serializer.serializeContainer(container);
+
+        /* Write body. */
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        StreamedDataUtils.writeBody(body, container, outputStream);
+        JSONArray jLogs = new JSONObject(outputStream.toString("UTF-8")).getJSONArray("logs");
+        assertEquals(2, jLogs.length());
+        assertEquals(StreamedDataUtils.getReference(mDataFile), jLogs.getJSONObject(0).getJSONObject("properties").getString("copy"));
+        JSONObject jStreamedLog = jLogs.getJSONObject(1);
+        assertEquals(StreamedDataUtils.getReference(mDataFile), jStreamedLog.getJSONObject("properties").getString("copy"));
+        assertEquals(CONTENTS, new String(Base64.decode(jStreamedLog.getString(StreamedDataLog.DATA), Base64.DEFAULT), "UTF-8"));
+        assertEquals(MockStreamedDataLog.TYPE, jStreamedLog.getString("type"));
+    }
+
+    @Test
+    public void writeBodyFailsWithoutReference() throws JSONException, IOException {
+        mDataFile = StreamedDataUtils.getFile("test_data");
+        FileManager.write(mDataFile, CONTENTS);
+        MockStreamedDataLog streamedLog = new MockStreamedDataLog();
+        streamedLog.setTimestamp(AndroidTestUtils.generateMockLog().getTimestamp());
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.<Log>singletonList(streamedLog));
+        String body = new DefaultLogSerializer().serializeContainer(container);
+
+        /* Log has a data file that was not serialized. */
+        streamedLog.mDataFile = mDataFile;
+        try {
+            StreamedDataUtils.writeBody(body, container, new ByteArrayOutputStream());
+            fail("Expected IOException");
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static class MockStreamedDataLog extends MockLog implements StreamedDataLog {
+
+        private static final String TYPE = "mockStreamedDataLog";
+
+        private File mDataFile;
+
+        @Override
+        public String getType() {
+            return TYPE;
+        }
+
+        @Override
+        public File getDataFile() {
+            return mDataFile;
+        }
+
+        @Override
+        public void write(JSONStringer writer) throws JSONException {
+            super.write(writer);
+            if (mDataFile != null) {
+                JSONUtils.write(writer, DATA, StreamedDataUtils.getReference(mDataFile));
+            }
+        }
+    }
+}
@@ -72,6 +72,9 @@ import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 @SuppressWarnings("TryFinallyCanBeTryWithResources")
 @MediumTest
@@ -370,6 +373,8 @@ public class DatabasePersistenceAndroidTest {
         /* Initialize database persistence. */
         DatabasePersistence persistence = new DatabasePersistence(sContext);
         assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+        Persistence.Listener listener = mock(Persistence.Listener.class);
+        persistence.setListener(listener);
 
         /* Set a mock log serializer. */
         LogSerializer logSerializer = new DefaultLogSerializer();
@@ -392,6 +397,7 @@ public class DatabasePersistenceAndroidTest {
             /* When eviction happened it can be 1 or more logs, but deleted logs should be first ones. */
             int databaseCount = persistence.countLogs(group);
             List<Log> expectedLogs = allLogs.subList(allLogs.size() - databaseCount, allLogs.size());
+            verify(listener).onLogsDeleted(group, allLogs.size() - databaseCount, 0);
 
             /* Get logs from persistence and check we have all the most recent logs. */
             List<Log> actualLogs = new ArrayList<>();
@@ -828,6 +834,221 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @Test
+    public void clearPendingLogStateForBatch() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Generate logs and persist. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test", NORMAL);
+            persistence.putLog(log2, "test", NORMAL);
+
+            /* Get them in 2 batches. */
+            List<Log> outputLogs = new ArrayList<>();
+            String id1 = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs);
+            String id2 = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs);
+            assertNotNull(id1);
+            assertNotNull(id2);
+
+            /* Release only the first batch. */
+            persistence.clearPendingLogState("test", id1);
+            assertNull(persistence.mPendingDbIdentifiersGroups.get("test" + id1));
+            assertNotNull(persistence.mPendingDbIdentifiersGroups.get("test" + id2));
+            assertEquals(1, persistence.mPendingDbIdentifiers.size());
+
+            /* Only the first log can be returned again. */
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs));
+            assertEquals(1, outputLogs.size());
+            assertEquals(log1, outputLogs.get(0));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void deleteExpiredLogs() throws PersistenceException, InterruptedException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Nothing expires without a time to live. */
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "other", NORMAL);
+            assertEquals(0, persistence.deleteExpiredLogs("test"));
+
+            /* Put a large log as well so that its file is deleted too. */
+            MockLog largeLog = AndroidTestUtils.generateMockLog();
+            Map<String, String> properties = new HashMap<>();
+            properties.put("key", generateString(2 * 1024 * 1024, '*'));
+            largeLog.setProperties(properties);
+            long largeLogId = persistence.putLog(largeLog, "test", NORMAL);
+            File largeLogFile = persistence.getLargePayloadFile(persistence.getLargePayloadGroupDirectory("test"), largeLogId);
+            assertTrue(largeLogFile.exists());
+
+            /* Let these logs expire then put a recent one. */
+            Thread.sleep(500);
+            Log recentLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(recentLog, "test", NORMAL);
+            persistence.setGroupStoragePolicy("test", 250, 0);
+            persistence.setGroupStoragePolicy("other", 250, 0);
+
+            /* Only the old logs of the group are deleted. */
+            assertEquals(2, persistence.deleteExpiredLogs("test"));
+            assertFalse(largeLogFile.exists());
+            assertEquals(1, persistence.countLogs("test"));
+            assertEquals(1, persistence.countLogs("other"));
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs);
+            assertEquals(Collections.singletonList(recentLog), outputLogs);
+
+            /* Removing the policy disables the expiration. */
+            persistence.setGroupStoragePolicy("other", 0, 0);
+            assertEquals(0, persistence.deleteExpiredLogs("other"));
+            assertEquals(1, persistence.countLogs("other"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void deleteExpiredLogsKeepsPendingLogsAndNotifies() throws PersistenceException, InterruptedException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        Persistence.Listener listener = mock(Persistence.Listener.class);
+        persistence.setListener(listener);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put logs and start sending one of them. */
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", CRITICAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", CRITICAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs);
+            assertEquals(1, outputLogs.size());
+
+            /* Let logs expire, the one being sent is kept. */
+            Thread.sleep(500);
+            persistence.setGroupStoragePolicy("test", 250, 0);
+            assertEquals(2, persistence.deleteExpiredLogs("test"));
+            assertEquals(1, persistence.countLogs("test"));
+            verify(listener).onLogsDeleted("test", 2, 1);
+
+            /* Nothing is reported when nothing is deleted. */
+            assertEquals(0, persistence.deleteExpiredLogs("test"));
+            verifyNoMoreInteractions(listener);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putLogEvictsOldLogsOfGroupOverQuota() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Allow about 3 logs in the group. */
+            Persistence.Listener listener = mock(Persistence.Listener.class);
+            persistence.setListener(listener);
+            Log firstLog = AndroidTestUtils.generateMockLog();
+            long logSize = logSerializer.serializeLog(firstLog).length();
+            persistence.setGroupStoragePolicy("test", 0, logSize * 3 + logSize / 2);
+            persistence.putLog(firstLog, "test", NORMAL);
+            Log criticalLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(criticalLog, "test", CRITICAL);
+            List<Log> normalLogs = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Log log = AndroidTestUtils.generateMockLog();
+                normalLogs.add(log);
+                persistence.putLog(log, "test", NORMAL);
+            }
+
+            /* Other groups are not affected. */
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "other", NORMAL);
+            assertEquals(1, persistence.countLogs("other"));
+
+            /* The oldest normal logs were deleted, critical one is kept. */
+            assertEquals(3, persistence.countLogs("test"));
+            verify(listener, times(2)).onLogsDeleted("test", 1, 0);
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 5, outputLogs);
+            assertThat(outputLogs, hasItems(criticalLog, normalLogs.get(1), normalLogs.get(2)));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putNormalLogFailsIfGroupIsFullOfCritical() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Fill the group with critical logs. */
+            Log criticalLog = AndroidTestUtils.generateMockLog();
+            long logSize = logSerializer.serializeLog(criticalLog).length();
+            persistence.setGroupStoragePolicy("test", 0, logSize * 2 + logSize / 2);
+            persistence.putLog(criticalLog, "test", CRITICAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test", CRITICAL);
+
+            /* Normal log does not fit. */
+            try {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+                fail("Expected persistence exception");
+            } catch (PersistenceException ignore) {
+            }
+            assertEquals(2, persistence.countLogs("test"));
+
+            /* Log larger than the group quota is not even tried. */
+            MockLog largeLog = AndroidTestUtils.generateMockLog();
+            Map<String, String> properties = new HashMap<>();
+            properties.put("key", generateString((int) logSize * 3, '*'));
+            largeLog.setProperties(properties);
+            try {
+                persistence.putLog(largeLog, "test", CRITICAL);
+                fail("Expected persistence exception");
+            } catch (PersistenceException ignore) {
+            }
+            assertEquals(2, persistence.countLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
+
     @Test
     public void getLogsWithNormalPriority() throws PersistenceException {
 
@@ -932,6 +1153,41 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @Test
+    public void getCriticalLogsOnly() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Put normal and critical logs. */
+            Log normalLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(normalLog, "test", NORMAL);
+            Log criticalLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(criticalLog, "test", CRITICAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test2", CRITICAL);
+            assertEquals(2, persistence.countLogs("test"));
+            assertEquals(1, persistence.countCriticalLogs("test"));
+
+            /* Normal logs are not returned even if the limit allows it. */
+            List<Log> actualLogs = new ArrayList<>();
+            assertNotNull(persistence.getCriticalLogs("test", Collections.<String>emptyList(), 2, actualLogs));
+            assertEquals(Collections.singletonList(criticalLog), actualLogs);
+
+            /* Pending critical logs are not returned again. */
+            actualLogs.clear();
+            assertNull(persistence.getCriticalLogs("test", Collections.<String>emptyList(), 2, actualLogs));
+            assertEquals(0, actualLogs.size());
+        } finally {
+            persistence.close();
+        }
+    }
+
     @Test
     public void getLogsFilteringOutPausedTargetKeys() throws PersistenceException {
 
@@ -1177,4 +1433,75 @@ public class DatabasePersistenceAndroidTest {
             persistence.close();
         }
     }
+
+    @Test
+    public void upgradeFromVersion6to7() throws PersistenceException, JSONException, IOException {
+
+        /* Initialize database persistence with old version and its schema. */
+        ContentValues schema = new ContentValues(SCHEMA);
+        schema.remove(DatabasePersistence.COLUMN_STORED_TIME);
+        schema.remove(DatabasePersistence.COLUMN_SIZE);
+        String createLogsSql = "CREATE TABLE IF NOT EXISTS `logs`(" +
+                "`oid` INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "`target_token` TEXT," +
+                "`type` TEXT," +
+                "`priority` INTEGER," +
+                "`log` TEXT," +
+                "`persistence_group` TEXT," +
+                "`target_key` TEXT);";
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_STORED_TIME_COLUMN, schema, createLogsSql, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade, including a large payload stored in a file. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        String oldPayload = logSerializer.serializeLog(oldLog);
+        long largeLogId;
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, oldPayload);
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+            contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "large");
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            largeLogId = databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade, the database is opened on first use. */
+        long beforeUpgrade = System.currentTimeMillis();
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        File largePayloadDirectory = persistence.getLargePayloadGroupDirectory("large");
+        assertTrue(largePayloadDirectory.mkdirs() || largePayloadDirectory.isDirectory());
+        File largePayloadFile = persistence.getLargePayloadFile(largePayloadDirectory, largeLogId);
+        String largePayload = generateString(1024, '*');
+        FileManager.write(largePayloadFile, largePayload);
+        try {
+
+            /* Large payload size is read from its file. */
+            ContentValues largeValues = getContentValues(persistence, "large");
+            assertEquals((Long) (long) largePayload.length(), largeValues.getAsLong(DatabasePersistence.COLUMN_SIZE));
+
+            /* Old data is kept, with the new columns filled. */
+            assertEquals(1, persistence.countLogs("test"));
+            ContentValues values = getContentValues(persistence, "test");
+            assertTrue(values.getAsLong(DatabasePersistence.COLUMN_STORED_TIME) >= beforeUpgrade);
+            assertEquals((Long) (long) oldPayload.length(), values.getAsLong(DatabasePersistence.COLUMN_SIZE));
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs);
+            assertEquals(Collections.singletonList(oldLog), outputLogs);
+
+            /* Old data is not considered expired right after the upgrade. */
+            persistence.setGroupStoragePolicy("test", 60000, 0);
+            assertEquals(0, persistence.deleteExpiredLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
 }
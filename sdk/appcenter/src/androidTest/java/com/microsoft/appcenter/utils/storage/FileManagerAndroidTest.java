@@ -169,4 +169,23 @@ public class FileManagerAndroidTest {
         /* Check file not found. */
         assertNull(FileManager.readBytes(file));
     }
+
+    @Test
+    public void writeAndSync() throws IOException {
+        File file = new File(sAndroidFilesPath + UUID.randomUUID().toString() + FILE_STORAGE_TEST_FILE_EXTENSION);
+
+        /* Empty contents are ignored. */
+        FileManager.writeAndSync(file, " ");
+        assertFalse(file.exists());
+
+        /* Non ASCII contents are written as UTF-8. */
+        String contents = "Hello w\u00f6rld \u2713";
+        FileManager.writeAndSync(file, contents);
+        assertEquals(contents, FileManager.read(file));
+
+        /* Overwrite. */
+        FileManager.writeAndSync(file, "Hello");
+        assertEquals("Hello", FileManager.read(file));
+        FileManager.delete(file);
+    }
 }
\ No newline at end of file
@@ -153,6 +153,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
 
             /* Register service to channel on enabling. */
             if (enabled) {
+                applyGroupStoragePolicy(mChannel, groupName);
                 mChannel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
             }
 
@@ -206,6 +207,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
 
             /* Add a group to the channel if the service is enabled */
             if (enabled) {
+                applyGroupStoragePolicy(channel, groupName);
                 channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
             }
 
@@ -277,6 +279,39 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         return DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
     }
 
+    /**
+     * Gets the maximum age in milliseconds of the logs stored for the group.
+     *
+     * @return A time to live in milliseconds, 0 to keep logs until they are sent.
+     */
+    @SuppressWarnings("SameReturnValue")
+    protected long getLogTimeToLive() {
+        return 0;
+    }
+
+    /**
+     * Gets the maximum storage size in bytes of the logs stored for the group.
+     *
+     * @return A size in bytes, 0 for no limit other than the storage size.
+     */
+    protected long getMaxGroupStorageSize() {
+        return 0;
+    }
+
+    /**
+     * Apply the storage policy of the service to a group, if the service has one.
+     *
+     * @param channel   channel.
+     * @param groupName the name of a group.
+     */
+    protected void applyGroupStoragePolicy(@NonNull Channel channel, @NonNull String groupName) {
+        long timeToLive = getLogTimeToLive();
+        long maxSize = getMaxGroupStorageSize();
+        if (timeToLive > 0 || maxSize > 0) {
+            channel.setGroupStoragePolicy(groupName, timeToLive, maxSize);
+        }
+    }
+
     /**
      * Gets a listener which will be called when channel completes synchronization.
      *
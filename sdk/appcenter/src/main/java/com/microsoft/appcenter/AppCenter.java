@@ -135,6 +135,11 @@ public class AppCenter {
      */
     private String mLogUrl;
 
+    /**
+     * True to convert logs to Common Schema only when sending them.
+     */
+    private boolean mLazyCommonSchemaConversion;
+
     /**
      * Application context.
      */
@@ -285,6 +290,17 @@ public class AppCenter {
         getInstance().setInstanceLogUrl(logUrl);
     }
 
+    /**
+     * Enable or disable lazy conversion of transmission target logs to Common Schema.
+     * When enabled, logs are persisted with their source log and only converted in background when sent,
+     * which makes tracking faster. Disabled by default.
+     *
+     * @param enabled true to convert logs when they are sent, false to convert them when they are tracked.
+     */
+    public static void setLazyCommonSchemaConversion(boolean enabled) {
+        getInstance().setInstanceLazyCommonSchemaConversion(enabled);
+    }
+
     /**
      * Get the current version of App Center SDK.
      *
@@ -551,6 +567,28 @@ public class AppCenter {
         }
     }
 
+    /**
+     * {@link #setLazyCommonSchemaConversion(boolean)} implementation at instance level.
+     *
+     * @param enabled true to convert logs when they are sent.
+     */
+    private synchronized void setInstanceLazyCommonSchemaConversion(final boolean enabled) {
+        mLazyCommonSchemaConversion = enabled;
+
+        /* If SDK already configured, update the listener. */
+        if (mHandler != null) {
+
+            /* Every channel operation must be in background since it uses locks and accesses disks. */
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    mOneCollectorChannelListener.setLazyConversion(enabled);
+                }
+            });
+        }
+    }
+
     /**
      * {@link #setCustomProperties(CustomProperties)} implementation at instance level.
      *
@@ -816,6 +854,7 @@ public class AppCenter {
         mChannel.setEnabled(enabled);
         mChannel.addGroup(CORE_GROUP, DEFAULT_TRIGGER_COUNT, DEFAULT_TRIGGER_INTERVAL, DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS, null, null);
         mOneCollectorChannelListener = new OneCollectorChannelListener(mChannel, mLogSerializer, httpClient, IdHelper.getInstallId());
+        mOneCollectorChannelListener.setLazyConversion(mLazyCommonSchemaConversion);
         if (mLogUrl != null) {
             if (mAppSecret != null) {
                 AppCenterLog.info(LOG_TAG, "The log url of App Center endpoint has been changed to " + mLogUrl);
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Empty implementation of the optional channel features, so that a channel only has to implement the core operations.
+ */
+public abstract class AbstractChannel implements Channel {
+
+    @Override
+    public void setGroupStoragePolicy(String groupName, long timeToLive, long maxSizeInBytes) {
+    }
+
+    @Override
+    public void addTaggedListener(@NonNull Object tag, @NonNull Listener listener) {
+    }
+
+    @Override
+    public void removeTaggedListener(@NonNull Object tag) {
+    }
+
+    @Override
+    public void addTypedListener(@NonNull String groupName, @NonNull String logType, @NonNull Listener listener) {
+    }
+
+    @Override
+    public void removeTypedListener(@NonNull String groupName, @NonNull String logType, @NonNull Listener listener) {
+    }
+}
@@ -51,4 +51,16 @@ public class AbstractChannelListener implements Channel.Listener {
     @Override
     public void onResumed(@NonNull String groupName, String targetToken) {
     }
+
+    @Override
+    public void onBacklogDrainProgress(@NonNull String groupName, int sentLogCount, int pendingLogCount) {
+    }
+
+    @Override
+    public void onBacklogDrained(@NonNull String groupName, int sentLogCount) {
+    }
+
+    @Override
+    public void onLogsDeleted(@NonNull String groupName, int deletedLogCount) {
+    }
 }
@@ -47,6 +47,16 @@ public interface Channel {
      */
     void addGroup(String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener groupListener);
 
+    /**
+     * Set how long logs of a group are kept and how much storage they can use.
+     * Must be called before adding the group so that expired logs are deleted when it's added.
+     *
+     * @param groupName      the name of a group.
+     * @param timeToLive     maximum age of logs in milliseconds, 0 to keep logs until they are sent.
+     * @param maxSizeInBytes maximum storage size of the group logs in bytes, 0 for no limit.
+     */
+    void setGroupStoragePolicy(String groupName, long timeToLive, long maxSizeInBytes);
+
     /**
      * Remove a group for logs.
      *
@@ -72,6 +82,8 @@ public interface Channel {
 
     /**
      * Add log to queue to be persisted and sent.
+     * A {@link com.microsoft.appcenter.ingestion.models.LogBundle} is persisted as a single log,
+     * its logs are sent in the same request and the group listener is called for each of them.
      *
      * @param log       the log to be enqueued.
      * @param groupName the group to use.
@@ -129,6 +141,43 @@ public interface Channel {
      */
     void removeListener(Listener listener);
 
+    /**
+     * Add a listener called only for the logs tagged with the specified object (see {@link Log#getTag()}).
+     * Only {@link Listener#onPreparingLog}, {@link Listener#onPreparedLog} and {@link Listener#shouldFilter} are called.
+     * Unlike global listeners, the dispatch cost for a log does not grow with the number of tagged listeners.
+     * A previous listener bound to the same tag is replaced.
+     *
+     * @param tag      the tag, compared by identity.
+     * @param listener listener to add.
+     */
+    void addTaggedListener(@NonNull Object tag, @NonNull Listener listener);
+
+    /**
+     * Remove the listener bound to a tag.
+     *
+     * @param tag the tag.
+     */
+    void removeTaggedListener(@NonNull Object tag);
+
+    /**
+     * Add a listener called only for the logs of the specified type enqueued in the specified group.
+     * Only {@link Listener#onPreparingLog}, {@link Listener#onPreparedLog} and {@link Listener#shouldFilter} are called.
+     *
+     * @param groupName the group name.
+     * @param logType   the log type (see {@link Log#getType()}).
+     * @param listener  listener to add.
+     */
+    void addTypedListener(@NonNull String groupName, @NonNull String logType, @NonNull Listener listener);
+
+    /**
+     * Remove a listener previously added with {@link #addTypedListener}.
+     *
+     * @param groupName the group name.
+     * @param logType   the log type.
+     * @param listener  listener to remove.
+     */
+    void removeTypedListener(@NonNull String groupName, @NonNull String logType, @NonNull Listener listener);
+
     /**
      * Suspend channel and wait for a limited period of time for queued logs to be persisted.
      */
@@ -212,6 +261,33 @@ public interface Channel {
          * @param targetToken The target token is resumed, or null when the entire group is resumed.
          */
         void onResumed(@NonNull String groupName, String targetToken);
+
+        /**
+         * Called when a group is draining a backlog of logs with larger and more parallel batches,
+         * once when draining starts and then every time a batch is sent.
+         *
+         * @param groupName       The group name.
+         * @param sentLogCount    The number of logs sent since draining started.
+         * @param pendingLogCount The number of logs still waiting to be sent.
+         */
+        void onBacklogDrainProgress(@NonNull String groupName, int sentLogCount, int pendingLogCount);
+
+        /**
+         * Called when a group stops draining a backlog and goes back to normal batches.
+         *
+         * @param groupName    The group name.
+         * @param sentLogCount The number of logs sent while draining.
+         */
+        void onBacklogDrained(@NonNull String groupName, int sentLogCount);
+
+        /**
+         * Called when stored logs are deleted before being sent, because they expired
+         * or to make room for other logs.
+         *
+         * @param groupName       The group name.
+         * @param deletedLogCount The number of deleted logs.
+         */
+        void onLogsDeleted(@NonNull String groupName, int deletedLogCount);
     }
 
     /**
@@ -13,22 +13,27 @@ import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 
 import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogBundle;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.persistence.DatabasePersistence;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import java.io.IOException;
@@ -38,6 +43,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -47,7 +53,7 @@ import java.util.UUID;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
-public class DefaultChannel implements Channel {
+public class DefaultChannel extends AbstractChannel {
 
     /**
      * Persistence batch size for {@link Persistence#getLogs(String, Collection, int, List)} when clearing.
@@ -66,6 +72,38 @@ public class DefaultChannel implements Channel {
      */
     private static final long MINIMUM_TRANSMISSION_INTERVAL = 3000;
 
+    /**
+     * Number of batches per group that can be sent in parallel for critical logs,
+     * in addition to the maximum number of parallel batches of the group.
+     */
+    @VisibleForTesting
+    static final int CRITICAL_RESERVED_BATCHES = 1;
+
+    /**
+     * Number of pending logs in a group from which the backlog is drained with larger and more
+     * parallel batches, if the network is unmetered.
+     */
+    @VisibleForTesting
+    static final int BACKLOG_DRAIN_THRESHOLD = 1000;
+
+    /**
+     * Factor applied to the maximum number of logs per batch while draining a backlog.
+     */
+    @VisibleForTesting
+    static final int BACKLOG_DRAIN_BATCH_SIZE_FACTOR = 4;
+
+    /**
+     * Factor applied to the maximum number of parallel batches while draining a backlog.
+     */
+    @VisibleForTesting
+    static final int BACKLOG_DRAIN_PARALLEL_BATCHES_FACTOR = 2;
+
+    /**
+     * Minimum interval between two deletions of expired logs for a group while sending, in ms.
+     */
+    @VisibleForTesting
+    static final long EXPIRED_LOGS_DELETION_INTERVAL = 60 * 1000;
+
     /**
      * Application context.
      */
@@ -91,6 +129,16 @@ public class DefaultChannel implements Channel {
      */
     private final Collection<Listener> mListeners;
 
+    /**
+     * Listeners called only for the logs tagged with a given object, such as a transmission target.
+     */
+    private final Map<Object, Listener> mTaggedListeners;
+
+    /**
+     * Listeners called only for a given log type, indexed by group name then by log type.
+     */
+    private final Map<String, Map<String, Collection<Listener>>> mTypedListeners;
+
     /**
      * The Persistence instance used to store events in the local storage.
      */
@@ -122,6 +170,19 @@ public class DefaultChannel implements Channel {
      */
     private boolean mDiscardLogs;
 
+    /**
+     * Was the channel suspended by a recoverable failure of a batch of normal logs?
+     * In that case critical logs are still sent and the channel is enabled again
+     * as soon as a batch of critical logs is sent successfully.
+     */
+    private boolean mSuspendedByNormalLogs;
+
+    /**
+     * Were ingestions closed when suspending? They are kept open while only normal logs are suspended,
+     * so that critical logs can still be sent without reopening them.
+     */
+    private boolean mIngestionsClosed;
+
     /**
      * Device properties.
      */
@@ -162,12 +223,21 @@ public class DefaultChannel implements Channel {
         mInstallId = IdHelper.getInstallId();
         mGroupStates = new HashMap<>();
         mListeners = new LinkedHashSet<>();
+        mTaggedListeners = new IdentityHashMap<>();
+        mTypedListeners = new HashMap<>();
         mPersistence = persistence;
         mIngestion = ingestion;
         mIngestions = new HashSet<>();
         mIngestions.add(mIngestion);
         mAppCenterHandler = appCenterHandler;
         mEnabled = true;
+        mPersistence.setListener(new Persistence.Listener() {
+
+            @Override
+            public void onLogsDeleted(@NonNull String group, int count, int criticalCount) {
+                handleLogsDeleted(group, count, criticalCount);
+            }
+        });
     }
 
     /**
@@ -226,8 +296,10 @@ public class DefaultChannel implements Channel {
         final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, ingestion, groupListener);
         mGroupStates.put(groupName, groupState);
 
-        /* Count pending logs. */
+        /* Delete logs that expired while the application was not running, then count pending logs. */
+        deleteExpiredLogs(groupState);
         groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+        groupState.mPendingCriticalLogCount = mPersistence.countCriticalLogs(groupName);
 
         /*
          * If no app secret, don't resume sending App Center logs from storage.
@@ -246,12 +318,18 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    @Override
+    public void setGroupStoragePolicy(String groupName, long timeToLive, long maxSizeInBytes) {
+        mPersistence.setGroupStoragePolicy(groupName, timeToLive, maxSizeInBytes);
+    }
+
     @Override
     public void removeGroup(String groupName) {
         AppCenterLog.debug(LOG_TAG, "removeGroup(" + groupName + ")");
         GroupState groupState = mGroupStates.remove(groupName);
         if (groupState != null) {
             cancelTimer(groupState);
+            releasePreparedBatch(groupState);
         }
 
         /* Call listeners so that they can react on group removed. */
@@ -268,6 +346,9 @@ public class DefaultChannel implements Channel {
                 String targetKey = PartAUtils.getTargetKey(targetToken);
                 if (groupState.mPausedTargetKeys.add(targetKey)) {
                     AppCenterLog.debug(LOG_TAG, "pauseGroup(" + groupName + ", " + targetKey + ")");
+
+                    /* The prepared batch might contain logs for this target. */
+                    releasePreparedBatch(groupState);
                 }
             } else if (!groupState.mPaused) {
                 AppCenterLog.debug(LOG_TAG, "pauseGroup(" + groupName + ")");
@@ -299,6 +380,7 @@ public class DefaultChannel implements Channel {
                      */
                     AppCenterLog.debug(LOG_TAG, "resumeGroup(" + groupName + ", " + targetKey + ")");
                     groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+                    groupState.mPendingCriticalLogCount = mPersistence.countCriticalLogs(groupName);
                     checkPendingLogs(groupState);
                 }
             } else if (groupState.mPaused) {
@@ -329,20 +411,18 @@ public class DefaultChannel implements Channel {
     @Override
     public void setEnabled(boolean enabled) {
         if (mEnabled == enabled) {
+
+            /* Stop sending critical logs as well if explicitly disabled while suspended. */
+            if (!enabled && mSuspendedByNormalLogs) {
+                mSuspendedByNormalLogs = false;
+                closeIngestions();
+            }
             return;
         }
         if (enabled) {
-            mEnabled = true;
-            mDiscardLogs = false;
-            mCurrentState++;
-            for (Ingestion ingestion : mIngestions) {
-                ingestion.reopen();
-            }
-            for (GroupState groupState : mGroupStates.values()) {
-                checkPendingLogs(groupState);
-            }
+            resume();
         } else {
-            suspend(true, new CancellationException());
+            suspend(true, false, new CancellationException());
         }
 
         /* Notify listeners that channel state has changed. */
@@ -351,6 +431,25 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Resume sending logs after the channel was suspended.
+     */
+    private void resume() {
+        mEnabled = true;
+        mDiscardLogs = false;
+        mSuspendedByNormalLogs = false;
+        mCurrentState++;
+        if (mIngestionsClosed) {
+            mIngestionsClosed = false;
+            for (Ingestion ingestion : mIngestions) {
+                ingestion.reopen();
+            }
+        }
+        for (GroupState groupState : mGroupStates.values()) {
+            checkPendingLogs(groupState);
+        }
+    }
+
     @Override
     public void setLogUrl(String logUrl) {
         mIngestion.setLogUrl(logUrl);
@@ -368,6 +467,7 @@ public class DefaultChannel implements Channel {
         }
         AppCenterLog.debug(LOG_TAG, "clear(" + groupName + ")");
         mPersistence.deleteLogs(groupName);
+        clearPreparedBatch(mGroupStates.get(groupName));
 
         /* Call listeners so that they can react on group clearing. */
         for (Listener listener : mListeners) {
@@ -383,36 +483,68 @@ public class DefaultChannel implements Channel {
     /**
      * Stop sending logs until app is restarted or the channel is enabled again.
      *
-     * @param deleteLogs in addition to suspending, if this is true, delete all logs from Persistence.
-     * @param exception  the exception that caused suspension.
+     * @param deleteLogs         in addition to suspending, if this is true, delete all logs from Persistence.
+     * @param keepIngestionsOpen if true, only cancel the calls in progress instead of closing ingestions,
+     *                           so that critical logs can still be sent.
+     * @param exception          the exception that caused suspension.
      */
-    private void suspend(boolean deleteLogs, Exception exception) {
+    private void suspend(boolean deleteLogs, boolean keepIngestionsOpen, Exception exception) {
         mEnabled = false;
         mDiscardLogs = deleteLogs;
+        mSuspendedByNormalLogs = false;
         mCurrentState++;
         for (GroupState groupState : mGroupStates.values()) {
             cancelTimer(groupState);
 
+            /* Critical logs of the batches in progress are sent again first on resuming. */
+            if (!deleteLogs) {
+                for (Integer criticalLogCount : groupState.mSendingCriticalLogCounts.values()) {
+                    groupState.mPendingCriticalLogCount += criticalLogCount;
+                    groupState.mPendingLogCount += criticalLogCount;
+                }
+            }
+            groupState.mCriticalBatchIds.clear();
+            groupState.mSendingCriticalLogCounts.clear();
+            stopBacklogDrain(groupState);
+
+            /* Discard the prepared batch, its logs are either deleted or read again on resuming. */
+            if (groupState.mPreparedBatchId != null) {
+                if (deleteLogs) {
+                    GroupListener groupListener = groupState.mListener;
+                    if (groupListener != null) {
+                        for (Log log : LogBundle.expand(groupState.mPreparedBatch)) {
+                            groupListener.onBeforeSending(log);
+                            groupListener.onFailure(log, exception);
+                        }
+                    }
+                    clearPreparedBatch(groupState);
+                } else {
+                    releasePreparedBatch(groupState);
+                }
+            }
+
             /* Delete all other batches and call callback method that are currently in progress. */
+            if (keepIngestionsOpen) {
+                for (ServiceCall call : groupState.mSendingCalls.values()) {
+                    call.cancel();
+                }
+            }
+            groupState.mSendingCalls.clear();
             for (Iterator<Map.Entry<String, List<Log>>> iterator = groupState.mSendingBatches.entrySet().iterator(); iterator.hasNext(); ) {
                 Map.Entry<String, List<Log>> entry = iterator.next();
                 iterator.remove();
                 if (deleteLogs) {
                     GroupListener groupListener = groupState.mListener;
                     if (groupListener != null) {
-                        for (Log log : entry.getValue()) {
+                        for (Log log : LogBundle.expand(entry.getValue())) {
                             groupListener.onFailure(log, exception);
                         }
                     }
                 }
             }
         }
-        for (Ingestion ingestion : mIngestions) {
-            try {
-                ingestion.close();
-            } catch (IOException e) {
-                AppCenterLog.error(LOG_TAG, "Failed to close ingestion: " + ingestion, e);
-            }
+        if (!keepIngestionsOpen) {
+            closeIngestions();
         }
         if (deleteLogs) {
             for (GroupState groupState : mGroupStates.values()) {
@@ -423,11 +555,25 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Close all ingestions, cancelling the calls in progress.
+     */
+    private void closeIngestions() {
+        mIngestionsClosed = true;
+        for (Ingestion ingestion : mIngestions) {
+            try {
+                ingestion.close();
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to close ingestion: " + ingestion, e);
+            }
+        }
+    }
+
     private void deleteLogsOnSuspended(final GroupState groupState) {
         final List<Log> logs = new ArrayList<>();
         mPersistence.getLogs(groupState.mName, Collections.<String>emptyList(), CLEAR_BATCH_SIZE, logs);
         if (logs.size() > 0 && groupState.mListener != null) {
-            for (Log log : logs) {
+            for (Log log : LogBundle.expand(logs)) {
                 groupState.mListener.onBeforeSending(log);
                 groupState.mListener.onFailure(log, new CancellationException());
             }
@@ -448,6 +594,19 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Delete the expired logs of a group and schedule the next deletion.
+     *
+     * @param groupState the group state.
+     */
+    private void deleteExpiredLogs(@NonNull GroupState groupState) {
+        int expiredLogCount = mPersistence.deleteExpiredLogs(groupState.mName);
+        if (expiredLogCount > 0) {
+            AppCenterLog.debug(LOG_TAG, "Deleted " + expiredLogCount + " expired logs for " + groupState.mName);
+        }
+        groupState.mNextExpiredLogsDeletionTime = System.currentTimeMillis() + EXPIRED_LOGS_DELETION_INTERVAL;
+    }
+
     /**
      * This will, if we're not using the limit for pending batches, trigger sending of a new request.
      * It will also reset the counters for sending out items for both the number of items enqueued and
@@ -460,33 +619,224 @@ public class DefaultChannel implements Channel {
         if (!mEnabled) {
             return;
         }
+
+        /*
+         * Don't send logs that expired while waiting, pending counts are updated by the persistence listener.
+         * This is a database write, so it's done at most once per interval rather than before each batch.
+         */
+        if (System.currentTimeMillis() >= groupState.mNextExpiredLogsDeletionTime) {
+            deleteExpiredLogs(groupState);
+        }
         int pendingLogCount = groupState.mPendingLogCount;
-        int maxFetch = Math.min(pendingLogCount, groupState.mMaxLogsPerBatch);
         AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + pendingLogCount);
         cancelTimer(groupState);
 
+        /* Critical logs are sent first using reserved batches. */
+        triggerCriticalIngestion(groupState);
+
+        /* Use larger and more parallel batches while draining a backlog. */
+        updateBacklogDrain(groupState);
+        int maxLogsPerBatch = groupState.mMaxLogsPerBatch;
+        int maxParallelBatches = groupState.mMaxParallelBatches;
+        if (groupState.mDrainingBacklog) {
+            maxLogsPerBatch *= BACKLOG_DRAIN_BATCH_SIZE_FACTOR;
+            maxParallelBatches *= BACKLOG_DRAIN_PARALLEL_BATCHES_FACTOR;
+        }
+        int maxFetch = Math.min(pendingLogCount, maxLogsPerBatch);
+
         /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
-        if (groupState.mSendingBatches.size() == groupState.mMaxParallelBatches) {
-            AppCenterLog.debug(LOG_TAG, "Already sending " + groupState.mMaxParallelBatches + " batches of analytics data to the server.");
+        if (groupState.mSendingBatches.size() - groupState.mCriticalBatchIds.size() >= maxParallelBatches) {
+            AppCenterLog.debug(LOG_TAG, "Already sending " + maxParallelBatches + " batches of analytics data to the server.");
             return;
         }
 
-        /* Get a batch from Persistence. */
-        final List<Log> batch = new ArrayList<>(maxFetch);
-        final String batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch);
+        /* Get a batch from Persistence unless it was already prepared while waiting for a free slot. */
+        if (groupState.mPreparedBatchId == null) {
+
+            /* Reevaluate fetch size as critical ingestion might have already taken logs. */
+            prepareBatch(groupState, Math.min(maxFetch, groupState.mPendingLogCount));
+
+            /* Nothing more to do if no logs. */
+            if (groupState.mPreparedBatchId == null) {
+                return;
+            }
+        }
+        String batchId = groupState.mPreparedBatchId;
+        List<Log> batch = groupState.mPreparedBatch;
+        if (groupState.mPreparedCriticalLogCount > 0) {
+            groupState.mSendingCriticalLogCounts.put(batchId, groupState.mPreparedCriticalLogCount);
+        }
+        clearPreparedBatch(groupState);
+        ingestBatch(groupState, batch, batchId);
+
+        /*
+         * If all batches are now in use, read the next batch while this one is uploading so that
+         * it can be sent as soon as a batch completes. This is done only for a full batch that
+         * would be sent immediately anyway, and critical logs are left for the reserved batch.
+         */
+        if (groupState.mPreparedBatchId == null
+                && groupState.mSendingBatches.size() - groupState.mCriticalBatchIds.size() >= maxParallelBatches
+                && groupState.mPendingLogCount >= maxLogsPerBatch
+                && groupState.mPendingCriticalLogCount == 0
+                && !groupState.mPaused) {
+            AppCenterLog.debug(LOG_TAG, "Preparing next batch for " + groupState.mName + " while sending.");
+            prepareBatch(groupState, maxLogsPerBatch);
+        }
+    }
+
+    /**
+     * Read a batch of logs from persistence and keep it as the next batch to send.
+     *
+     * @param groupState the group state.
+     * @param maxFetch   the maximum number of logs to read.
+     */
+    private void prepareBatch(@NonNull GroupState groupState, int maxFetch) {
+        if (maxFetch <= 0) {
+            return;
+        }
+        List<Log> batch = new ArrayList<>(maxFetch);
+        String batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch);
 
-        /* Decrement counter. */
+        /* Decrement counter. Critical logs are sorted first, count how many are part of this batch. */
         groupState.mPendingLogCount -= maxFetch;
+        int criticalLogCount = Math.min(groupState.mPendingCriticalLogCount, batch.size());
+        groupState.mPendingCriticalLogCount -= criticalLogCount;
+        if (batchId != null) {
+            groupState.mPreparedBatchId = batchId;
+            groupState.mPreparedBatch = batch;
+            groupState.mPreparedCriticalLogCount = criticalLogCount;
+        }
+    }
 
-        /* Nothing more to do if no logs. */
+    /**
+     * Forget the prepared batch.
+     *
+     * @param groupState the group state.
+     */
+    private void clearPreparedBatch(@NonNull GroupState groupState) {
+        groupState.mPreparedBatchId = null;
+        groupState.mPreparedBatch = null;
+        groupState.mPreparedCriticalLogCount = 0;
+    }
+
+    /**
+     * Give back the logs of the prepared batch to persistence so that they are read again later.
+     *
+     * @param groupState the group state.
+     */
+    private void releasePreparedBatch(@NonNull GroupState groupState) {
+        if (groupState.mPreparedBatchId != null) {
+            AppCenterLog.debug(LOG_TAG, "Releasing prepared batch " + groupState.mPreparedBatchId + " of " + groupState.mName);
+            mPersistence.clearPendingLogState(groupState.mName, groupState.mPreparedBatchId);
+            groupState.mPendingLogCount += groupState.mPreparedBatch.size();
+            groupState.mPendingCriticalLogCount += groupState.mPreparedCriticalLogCount;
+            clearPreparedBatch(groupState);
+        }
+    }
+
+    /**
+     * Stop counting logs that the persistence deleted before they were sent.
+     *
+     * @param groupName     the group name.
+     * @param count         the number of deleted logs.
+     * @param criticalCount the number of deleted logs that had the critical priority.
+     */
+    private void handleLogsDeleted(@NonNull String groupName, int count, int criticalCount) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState != null) {
+            groupState.mPendingLogCount = Math.max(0, groupState.mPendingLogCount - count);
+            groupState.mPendingCriticalLogCount = Math.max(0, groupState.mPendingCriticalLogCount - criticalCount);
+        }
+        AppCenterLog.debug(LOG_TAG, "Persistence deleted " + count + " unsent logs for " + groupName);
+        for (Listener listener : mListeners) {
+            listener.onLogsDeleted(groupName, count);
+        }
+    }
+
+    /**
+     * Send a batch of critical logs if there are any pending and a reserved batch is available.
+     * This does not wait for the batch time interval nor for the batches of normal logs,
+     * and this is also done if the channel was suspended by a failure of normal logs.
+     *
+     * @param groupState the group state.
+     */
+    private void triggerCriticalIngestion(@NonNull GroupState groupState) {
+        if (!(mEnabled || mSuspendedByNormalLogs) || groupState.mPaused || groupState.mPendingCriticalLogCount <= 0 || groupState.mPendingLogCount <= 0) {
+            return;
+        }
+        if (groupState.mCriticalBatchIds.size() >= CRITICAL_RESERVED_BATCHES) {
+            AppCenterLog.debug(LOG_TAG, "Already sending " + CRITICAL_RESERVED_BATCHES + " batches of critical logs for " + groupState.mName + ".");
+            return;
+        }
+
+        /* Only read critical logs, and count what was actually read as logs of paused targets are skipped. */
+        int maxFetch = Math.min(Math.min(groupState.mPendingCriticalLogCount, groupState.mPendingLogCount), groupState.mMaxLogsPerBatch);
+        List<Log> batch = new ArrayList<>(maxFetch);
+        String batchId = mPersistence.getCriticalLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch);
         if (batchId == null) {
+
+            /* Remaining critical logs belong to paused targets, they are counted again when resumed. */
+            groupState.mPendingCriticalLogCount = 0;
             return;
         }
+        groupState.mPendingCriticalLogCount -= batch.size();
+        groupState.mPendingLogCount -= batch.size();
+        AppCenterLog.debug(LOG_TAG, "triggerCriticalIngestion(" + groupState.mName + "," + batchId + ") pendingCriticalLogCount=" + groupState.mPendingCriticalLogCount);
+        groupState.mCriticalBatchIds.add(batchId);
+        groupState.mSendingCriticalLogCounts.put(batchId, batch.size());
+        ingestBatch(groupState, batch, batchId);
+    }
+
+    /**
+     * Start draining the backlog of a group if it has too many pending logs and the network
+     * is unmetered, or stop draining if the network became metered.
+     *
+     * @param groupState the group state.
+     */
+    private void updateBacklogDrain(@NonNull GroupState groupState) {
+        if (groupState.mDrainingBacklog) {
+            if (NetworkStateHelper.getSharedInstance(mContext).isNetworkMetered()) {
+                AppCenterLog.debug(LOG_TAG, "Network is metered, stop draining backlog of " + groupState.mName + ".");
+                stopBacklogDrain(groupState);
+            }
+        } else if (groupState.mPendingLogCount >= BACKLOG_DRAIN_THRESHOLD && !NetworkStateHelper.getSharedInstance(mContext).isNetworkMetered()) {
+            AppCenterLog.info(LOG_TAG, "Draining backlog of " + groupState.mPendingLogCount + " logs for " + groupState.mName + ".");
+            groupState.mDrainingBacklog = true;
+            groupState.mDrainedLogCount = 0;
+            for (Listener listener : mListeners) {
+                listener.onBacklogDrainProgress(groupState.mName, 0, groupState.mPendingLogCount);
+            }
+        }
+    }
+
+    /**
+     * Go back to normal batches after draining a backlog.
+     *
+     * @param groupState the group state.
+     */
+    private void stopBacklogDrain(@NonNull GroupState groupState) {
+        if (groupState.mDrainingBacklog) {
+            AppCenterLog.info(LOG_TAG, "Drained " + groupState.mDrainedLogCount + " logs for " + groupState.mName + ".");
+            groupState.mDrainingBacklog = false;
+            for (Listener listener : mListeners) {
+                listener.onBacklogDrained(groupState.mName, groupState.mDrainedLogCount);
+            }
+        }
+    }
+
+    /**
+     * Call listeners and send a batch that was read from persistence.
+     *
+     * @param groupState the group state.
+     * @param batch      the log batch.
+     * @param batchId    the batch ID.
+     */
+    private void ingestBatch(@NonNull GroupState groupState, @NonNull List<Log> batch, @NonNull String batchId) {
         AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
 
         /* Call group listener before sending logs to ingestion service. */
         if (groupState.mListener != null) {
-            for (Log log : batch) {
+            for (Log log : LogBundle.expand(batch)) {
                 groupState.mListener.onBeforeSending(log);
             }
         }
@@ -509,8 +859,8 @@ public class DefaultChannel implements Channel {
 
         /* Send logs. */
         LogContainer logContainer = new LogContainer();
-        logContainer.setLogs(batch);
-        groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
+        logContainer.setLogs(LogBundle.expand(batch));
+        ServiceCall call = groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
 
             @Override
             public void onCallSucceeded(HttpResponse httpResponse) {
@@ -534,6 +884,10 @@ public class DefaultChannel implements Channel {
                 });
             }
         });
+        /* The callback may already have been called if the ingestion failed immediately. */
+        if (call != null && groupState.mSendingBatches.containsKey(batchId)) {
+            groupState.mSendingCalls.put(batchId, call);
+        }
 
         /* Check for more pending logs. */
         mAppCenterHandler.post(new Runnable() {
@@ -559,15 +913,43 @@ public class DefaultChannel implements Channel {
      */
     private void handleSendingSuccess(@NonNull GroupState groupState, @NonNull String batchId) {
         List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+        groupState.mSendingCalls.remove(batchId);
         if (removedLogsForBatchId != null) {
+            boolean criticalBatch = groupState.mCriticalBatchIds.remove(batchId);
+            groupState.mSendingCriticalLogCounts.remove(batchId);
             mPersistence.deleteLogs(groupState.mName, batchId);
             GroupListener groupListener = groupState.mListener;
             if (groupListener != null) {
-                for (Log log : removedLogsForBatchId) {
-                    groupListener.onSuccess(log);
+                for (Log log : LogBundle.expand(removedLogsForBatchId)) {
+
+                    /* Deferred logs that could not be converted were not sent. */
+                    if (log instanceof DeferredCommonSchemaLog && ((DeferredCommonSchemaLog) log).getConversionError() != null) {
+                        groupListener.onFailure(log, ((DeferredCommonSchemaLog) log).getConversionError());
+                    } else {
+                        groupListener.onSuccess(log);
+                    }
                 }
             }
-            checkPendingLogs(groupState);
+
+            /* Report backlog drain progress, the backlog is cleared once everything is sent. */
+            if (groupState.mDrainingBacklog) {
+                groupState.mDrainedLogCount += removedLogsForBatchId.size();
+                if (groupState.mPendingLogCount <= 0 && groupState.mSendingBatches.isEmpty()) {
+                    stopBacklogDrain(groupState);
+                } else {
+                    for (Listener listener : mListeners) {
+                        listener.onBacklogDrainProgress(groupState.mName, groupState.mDrainedLogCount, groupState.mPendingLogCount);
+                    }
+                }
+            }
+
+            /* Ingestion works again, resume sending normal logs. */
+            if (criticalBatch && mSuspendedByNormalLogs) {
+                AppCenterLog.debug(LOG_TAG, "Critical logs sent, resume sending all logs.");
+                resume();
+            } else {
+                checkPendingLogs(groupState);
+            }
         }
     }
 
@@ -583,20 +965,35 @@ public class DefaultChannel implements Channel {
     private void handleSendingFailure(@NonNull GroupState groupState, @NonNull String batchId, @NonNull Exception e) {
         String groupName = groupState.mName;
         List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+        groupState.mSendingCalls.remove(batchId);
         if (removedLogsForBatchId != null) {
             AppCenterLog.error(LOG_TAG, "Sending logs groupName=" + groupName + " id=" + batchId + " failed", e);
+            boolean criticalBatch = groupState.mCriticalBatchIds.remove(batchId);
+            Integer criticalLogCount = groupState.mSendingCriticalLogCounts.remove(batchId);
             boolean recoverableError = HttpUtils.isRecoverableError(e);
             if (recoverableError) {
                 groupState.mPendingLogCount += removedLogsForBatchId.size();
+                if (criticalLogCount != null) {
+                    groupState.mPendingCriticalLogCount += criticalLogCount;
+                }
             } else {
                 GroupListener groupListener = groupState.mListener;
                 if (groupListener != null) {
-                    for (Log log : removedLogsForBatchId) {
+                    for (Log log : LogBundle.expand(removedLogsForBatchId)) {
                         groupListener.onFailure(log, e);
                     }
                 }
             }
-            suspend(!recoverableError, e);
+
+            /* A recoverable failure of normal logs does not stop critical logs, they keep using the open ingestion. */
+            boolean sendCriticalLogs = recoverableError && !criticalBatch;
+            suspend(!recoverableError, sendCriticalLogs, e);
+            if (sendCriticalLogs) {
+                mSuspendedByNormalLogs = true;
+                for (GroupState state : mGroupStates.values()) {
+                    triggerCriticalIngestion(state);
+                }
+            }
         }
     }
 
@@ -610,52 +1007,46 @@ public class DefaultChannel implements Channel {
             return;
         }
 
+        /* The group listener is notified about each log of a bundle. */
+        List<Log> logs = log instanceof LogBundle ? ((LogBundle) log).getLogs() : Collections.singletonList(log);
+
         /* Check if disabled with discarding logs. */
         if (mDiscardLogs) {
             AppCenterLog.warn(LOG_TAG, "Channel is disabled, the log is discarded.");
             if (groupState.mListener != null) {
-                groupState.mListener.onBeforeSending(log);
-                groupState.mListener.onFailure(log, new CancellationException());
+                for (Log discardedLog : logs) {
+                    groupState.mListener.onBeforeSending(discardedLog);
+                    groupState.mListener.onFailure(discardedLog, new CancellationException());
+                }
             }
             return;
         }
 
-        /* Call listeners so that they can decorate the log. */
-        for (Listener listener : mListeners) {
-            listener.onPreparingLog(log, groupName);
-        }
-
-        /* Attach device properties to every log if its not already attached by a service. */
-        if (log.getDevice() == null) {
-
-            /* Generate device properties only once per process life time. */
-            if (mDevice == null) {
-                try {
-                    mDevice = DeviceInfoHelper.getDeviceInfo(mContext);
-                } catch (DeviceInfoHelper.DeviceInfoException e) {
-                    AppCenterLog.error(LOG_TAG, "Device log cannot be generated", e);
+        /* Prepare each log of a bundle, the bundle only keeps the logs that are not filtered out. */
+        boolean filteredOut;
+        if (log instanceof LogBundle) {
+            List<Log> keptLogs = new ArrayList<>(logs.size());
+            for (Log bundledLog : logs) {
+                if (!prepareLog(bundledLog, groupName, flags)) {
                     return;
                 }
+                if (isFilteredOut(bundledLog, groupName)) {
+                    AppCenterLog.debug(LOG_TAG, "Log of type '" + bundledLog.getType() + "' was filtered out of bundle by listener(s)");
+                } else {
+                    keptLogs.add(bundledLog);
+                }
             }
-
-            /* Attach device properties. */
-            log.setDevice(mDevice);
-        }
-
-        /* Set date to current if not explicitly set in the past by a module (such as a crash). */
-        if (log.getTimestamp() == null) {
-            log.setTimestamp(new Date());
-        }
-
-        /* Notify listeners that log is prepared and is in a final state. */
-        for (Listener listener : mListeners) {
-            listener.onPreparedLog(log, groupName, flags);
-        }
-
-        /* Call listeners so that they can filter the log. */
-        boolean filteredOut = false;
-        for (Listener listener : mListeners) {
-            filteredOut = filteredOut || listener.shouldFilter(log);
+            ((LogBundle) log).setLogs(keptLogs);
+            logs = keptLogs;
+            if (log.getTimestamp() == null) {
+                log.setTimestamp(new Date());
+            }
+            filteredOut = keptLogs.isEmpty();
+        } else {
+            if (!prepareLog(log, groupName, flags)) {
+                return;
+            }
+            filteredOut = isFilteredOut(log, groupName);
         }
 
         /* If filtered out, nothing more to do. */
@@ -675,8 +1066,10 @@ public class DefaultChannel implements Channel {
             } catch (Persistence.PersistenceException e) {
                 AppCenterLog.error(LOG_TAG, "Error persisting log", e);
                 if (groupState.mListener != null) {
-                    groupState.mListener.onBeforeSending(log);
-                    groupState.mListener.onFailure(log, e);
+                    for (Log failedLog : logs) {
+                        groupState.mListener.onBeforeSending(failedLog);
+                        groupState.mListener.onFailure(failedLog, e);
+                    }
                 }
                 return;
             }
@@ -691,15 +1084,136 @@ public class DefaultChannel implements Channel {
 
             /* Increment counters and schedule ingestion if we are enabled. */
             groupState.mPendingLogCount++;
+            if (Flags.getPersistenceFlag(flags, false) == Flags.CRITICAL) {
+                groupState.mPendingCriticalLogCount++;
+            }
             AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
             if (mEnabled) {
                 checkPendingLogs(groupState);
+            } else if (mSuspendedByNormalLogs) {
+                AppCenterLog.debug(LOG_TAG, "Channel is suspended by a failure of normal logs, only critical logs are sent.");
+                triggerCriticalIngestion(groupState);
             } else {
                 AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
             }
         }
     }
 
+    /**
+     * Call listeners to decorate a log and attach device properties and timestamp if missing.
+     *
+     * @param log       the log to prepare.
+     * @param groupName the group of the log.
+     * @param flags     the flags for this log.
+     * @return false if device properties could not be generated, true otherwise.
+     */
+    private boolean prepareLog(@NonNull Log log, @NonNull String groupName, int flags) {
+
+        /* Call listeners so that they can decorate the log. */
+        Listener taggedListener = getTaggedListener(log);
+        Collection<Listener> typedListeners = getTypedListeners(log, groupName);
+        for (Listener listener : mListeners) {
+            listener.onPreparingLog(log, groupName);
+        }
+        if (taggedListener != null) {
+            taggedListener.onPreparingLog(log, groupName);
+        }
+        for (Listener listener : typedListeners) {
+            listener.onPreparingLog(log, groupName);
+        }
+
+        /* Attach device properties to every log if its not already attached by a service. */
+        if (log.getDevice() == null) {
+
+            /* Generate device properties only once per process life time. */
+            if (mDevice == null) {
+                try {
+                    mDevice = DeviceInfoHelper.getDeviceInfo(mContext);
+                } catch (DeviceInfoHelper.DeviceInfoException e) {
+                    AppCenterLog.error(LOG_TAG, "Device log cannot be generated", e);
+                    return false;
+                }
+            }
+
+            /* Attach device properties. */
+            log.setDevice(mDevice);
+        }
+
+        /* Set date to current if not explicitly set in the past by a module (such as a crash). */
+        if (log.getTimestamp() == null) {
+            log.setTimestamp(new Date());
+        }
+
+        /* Notify listeners that log is prepared and is in a final state. */
+        for (Listener listener : mListeners) {
+            listener.onPreparedLog(log, groupName, flags);
+        }
+        if (taggedListener != null) {
+            taggedListener.onPreparedLog(log, groupName, flags);
+        }
+        for (Listener listener : typedListeners) {
+            listener.onPreparedLog(log, groupName, flags);
+        }
+        return true;
+    }
+
+    /**
+     * Call listeners so that they can filter the log.
+     *
+     * @param log       the log.
+     * @param groupName the group of the log.
+     * @return true if any listener filtered out the log.
+     */
+    private boolean isFilteredOut(@NonNull Log log, @NonNull String groupName) {
+        boolean filteredOut = false;
+        for (Listener listener : mListeners) {
+            filteredOut = filteredOut || listener.shouldFilter(log);
+        }
+        if (filteredOut) {
+            return true;
+        }
+        Listener taggedListener = getTaggedListener(log);
+        if (taggedListener != null && taggedListener.shouldFilter(log)) {
+            return true;
+        }
+        for (Listener listener : getTypedListeners(log, groupName)) {
+            if (listener.shouldFilter(log)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the listener bound to the tag of a log.
+     *
+     * @param log the log.
+     * @return the tagged listener or null if none.
+     */
+    private Listener getTaggedListener(@NonNull Log log) {
+        Object tag = log.getTag();
+        return tag == null || mTaggedListeners.isEmpty() ? null : mTaggedListeners.get(tag);
+    }
+
+    /**
+     * Get the listeners registered for the type of a log in a group.
+     *
+     * @param log       the log.
+     * @param groupName the group of the log.
+     * @return the typed listeners, empty if none.
+     */
+    @NonNull
+    private Collection<Listener> getTypedListeners(@NonNull Log log, @NonNull String groupName) {
+        Map<String, Collection<Listener>> listenersByType = mTypedListeners.get(groupName);
+        if (listenersByType != null) {
+            Collection<Listener> listeners = listenersByType.get(log.getType());
+            if (listeners != null) {
+                return listeners;
+            }
+        }
+        return Collections.emptyList();
+    }
+
     /**
      * Check for logs to trigger immediately or schedule with a timer or does nothing if no logs.
      *
@@ -709,6 +1223,15 @@ public class DefaultChannel implements Channel {
     void checkPendingLogs(@NonNull GroupState groupState) {
         AppCenterLog.debug(LOG_TAG, String.format("checkPendingLogs(%s) pendingLogCount=%s batchTimeInterval=%s",
                 groupState.mName, groupState.mPendingLogCount, groupState.mBatchTimeInterval));
+
+        /* Critical logs don't wait for the batch time interval. */
+        triggerCriticalIngestion(groupState);
+
+        /* A prepared batch is full, send it without waiting. */
+        if (groupState.mPreparedBatchId != null && !groupState.mPaused) {
+            triggerIngestion(groupState);
+            return;
+        }
         Long batchTimeInterval = resolveTriggerInterval(groupState);
 
         /* Check if there is no need to trigger ingestion. */
@@ -793,9 +1316,52 @@ public class DefaultChannel implements Channel {
         mListeners.remove(listener);
     }
 
+    @Override
+    public void addTaggedListener(@NonNull Object tag, @NonNull Listener listener) {
+        mTaggedListeners.put(tag, listener);
+    }
+
+    @Override
+    public void removeTaggedListener(@NonNull Object tag) {
+        mTaggedListeners.remove(tag);
+    }
+
+    @Override
+    public void addTypedListener(@NonNull String groupName, @NonNull String logType, @NonNull Listener listener) {
+        Map<String, Collection<Listener>> listenersByType = mTypedListeners.get(groupName);
+        if (listenersByType == null) {
+            listenersByType = new HashMap<>();
+            mTypedListeners.put(groupName, listenersByType);
+        }
+        Collection<Listener> listeners = listenersByType.get(logType);
+        if (listeners == null) {
+            listeners = new LinkedHashSet<>();
+            listenersByType.put(logType, listeners);
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeTypedListener(@NonNull String groupName, @NonNull String logType, @NonNull Listener listener) {
+        Map<String, Collection<Listener>> listenersByType = mTypedListeners.get(groupName);
+        if (listenersByType == null) {
+            return;
+        }
+        Collection<Listener> listeners = listenersByType.get(logType);
+        if (listeners != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                listenersByType.remove(logType);
+            }
+        }
+        if (listenersByType.isEmpty()) {
+            mTypedListeners.remove(groupName);
+        }
+    }
+
     @Override
     public void shutdown() {
-        suspend(false, new CancellationException());
+        suspend(false, false, new CancellationException());
     }
 
     /**
@@ -839,11 +1405,36 @@ public class DefaultChannel implements Channel {
          */
         final GroupListener mListener;
 
+        /**
+         * Calls in progress by batch identifier, cancelled when suspending without closing ingestions.
+         */
+        final Map<String, ServiceCall> mSendingCalls = new HashMap<>();
+
+        /**
+         * Identifiers of the batches being sent using the batches reserved for critical logs.
+         */
+        final Set<String> mCriticalBatchIds = new HashSet<>();
+
+        /**
+         * Number of critical logs for the batches being sent that contain any.
+         */
+        final Map<String, Integer> mSendingCriticalLogCounts = new HashMap<>();
+
         /**
          * Pending log count not part of a batch yet.
          */
         int mPendingLogCount;
 
+        /**
+         * Pending critical log count not part of a batch yet, included in {@link #mPendingLogCount}.
+         */
+        int mPendingCriticalLogCount;
+
+        /**
+         * Time from which expired logs can be deleted again before sending a batch.
+         */
+        long mNextExpiredLogsDeletionTime;
+
         /**
          * Is timer scheduled.
          */
@@ -854,6 +1445,31 @@ public class DefaultChannel implements Channel {
          */
         boolean mPaused;
 
+        /**
+         * Indicates if the group is draining a backlog with larger and more parallel batches.
+         */
+        boolean mDrainingBacklog;
+
+        /**
+         * Number of logs sent since the group started draining its backlog.
+         */
+        int mDrainedLogCount;
+
+        /**
+         * Identifier of the next batch to send, already read from persistence.
+         */
+        String mPreparedBatchId;
+
+        /**
+         * Logs of the next batch to send, already read from persistence.
+         */
+        List<Log> mPreparedBatch;
+
+        /**
+         * Number of critical logs in the prepared batch.
+         */
+        int mPreparedCriticalLogCount;
+
         /**
          * List of paused target keys.
          */
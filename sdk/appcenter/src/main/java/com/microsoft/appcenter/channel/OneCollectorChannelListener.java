@@ -12,11 +12,14 @@ import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.OneCollectorIngestion;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.SdkExtension;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -72,6 +75,11 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
      */
     private final Map<String, EpochAndSeq> mEpochsAndSeqsByIKey = new HashMap<>();
 
+    /**
+     * True to persist the source logs and convert them to Common Schema only when sending them.
+     */
+    private boolean mLazyConversion;
+
     /**
      * Init with channel.
      *
@@ -101,6 +109,16 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
         mIngestion.setLogUrl(logUrl);
     }
 
+    /**
+     * Enable or disable lazy conversion of logs to Common Schema.
+     * When enabled, logs are persisted with their source log and only converted when their batch is sent.
+     *
+     * @param lazyConversion true to convert logs when they are sent, false to convert them when they are enqueued.
+     */
+    public void setLazyConversion(boolean lazyConversion) {
+        mLazyConversion = lazyConversion;
+    }
+
     @Override
     public void onGroupAdded(@NonNull String groupName, Channel.GroupListener groupListener, long batchTimeInterval) {
         if (isOneCollectorGroup(groupName)) {
@@ -127,13 +145,30 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
             return;
         }
 
-        /* Convert logs to Common Schema. */
+        /* Convert logs to Common Schema, or only wrap them to be converted when sent. */
         Collection<CommonSchemaLog> commonSchemaLogs;
-        try {
-            commonSchemaLogs = mLogSerializer.toCommonSchemaLog(log);
-        } catch (IllegalArgumentException e) {
-            AppCenterLog.error(LOG_TAG, "Cannot send a log to one collector: " + e.getMessage());
-            return;
+        if (mLazyConversion) {
+
+            /* Validate the log now so that every deferred log can be converted when sent. */
+            try {
+                if (!validateCommonSchemaLog(log)) {
+                    return;
+                }
+            } catch (IllegalArgumentException e) {
+                AppCenterLog.error(LOG_TAG, "Cannot send a log to one collector: " + e.getMessage());
+                return;
+            }
+            commonSchemaLogs = new ArrayList<>();
+            for (String targetToken : log.getTransmissionTargetTokens()) {
+                commonSchemaLogs.add(new DeferredCommonSchemaLog(log, targetToken));
+            }
+        } else {
+            try {
+                commonSchemaLogs = mLogSerializer.toCommonSchemaLog(log);
+            } catch (IllegalArgumentException e) {
+                AppCenterLog.error(LOG_TAG, "Cannot send a log to one collector: " + e.getMessage());
+                return;
+            }
         }
 
         /* Add additional part A fields that are not known by the modules during conversion. */
@@ -222,6 +257,22 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
         return !(log instanceof CommonSchemaLog) && !log.getTransmissionTargetTokens().isEmpty();
     }
 
+    /**
+     * Checks that a log can be converted to Common Schema when it will be sent.
+     *
+     * @param log The log.
+     * @return true if the log can be converted, false if it is not converted for One Collector.
+     * @throws IllegalArgumentException if the log is invalid.
+     */
+    private boolean validateCommonSchemaLog(@NonNull Log log) throws IllegalArgumentException {
+        if (mLogSerializer instanceof DefaultLogSerializer) {
+            return ((DefaultLogSerializer) mLogSerializer).validateCommonSchemaLog(log);
+        }
+
+        /* Other serializers can only be checked by converting the log. */
+        return !mLogSerializer.toCommonSchemaLog(log).isEmpty();
+    }
+
     @Override
     public void onGloballyEnabled(boolean isEnabled) {
         if (!isEnabled) {
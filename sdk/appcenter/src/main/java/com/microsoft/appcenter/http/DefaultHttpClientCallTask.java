@@ -165,13 +165,23 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             String payload = null;
             byte[] binaryPayload = null;
             boolean shouldCompress = false;
+            boolean streamed = false;
             boolean isPost = mMethod.equals(METHOD_POST);
             if (isPost && mCallTemplate != null) {
 
-                /* Get bytes, check if large enough to compress. */
+                /* Get bytes, check if large enough to compress. Streamed bodies are always large. */
                 payload = mCallTemplate.buildRequestBody();
-                binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                if (payload == null) {
+                    AppCenterLog.debug(LOG_TAG, "Nothing to send, skipping the request.");
+                    return null;
+                }
+                streamed = mCallTemplate instanceof HttpClient.StreamingCallTemplate && ((HttpClient.StreamingCallTemplate) mCallTemplate).isStreamed();
+                if (streamed) {
+                    shouldCompress = mCompressionEnabled;
+                } else {
+                    binaryPayload = payload.getBytes(CHARSET_NAME);
+                    shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                }
 
                 /* If no content type specified, assume json. */
                 if (!mHeaders.containsKey(CONTENT_TYPE_KEY)) {
@@ -197,6 +207,25 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 mCallTemplate.onBeforeCalling(url, mHeaders);
             }
 
+            /* Send streamed payload, references to data are logged instead of data. */
+            if (streamed) {
+                if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
+                    AppCenterLog.verbose(LOG_TAG, payload);
+                }
+                httpsURLConnection.setDoOutput(true);
+                httpsURLConnection.setChunkedStreamingMode(WRITE_BUFFER_SIZE);
+                OutputStream out = httpsURLConnection.getOutputStream();
+
+                //noinspection TryFinallyCanBeTryWithResources
+                try {
+                    OutputStream bodyStream = shouldCompress ? new GZIPOutputStream(out, WRITE_BUFFER_SIZE) : out;
+                    ((HttpClient.StreamingCallTemplate) mCallTemplate).writeRequestBody(payload, bodyStream);
+                    bodyStream.close();
+                } finally {
+                    out.close();
+                }
+            }
+
             /* Send payload. */
             if (binaryPayload != null) {
 
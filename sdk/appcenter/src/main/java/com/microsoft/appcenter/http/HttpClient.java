@@ -8,6 +8,8 @@ package com.microsoft.appcenter.http;
 import org.json.JSONException;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.Map;
 
@@ -36,7 +38,8 @@ public interface HttpClient extends Closeable {
         /**
          * Called when the method is POST to provide request body.
          *
-         * @return request body.
+         * @return request body, or null if there is nothing to send: the request is then not made
+         * and the call succeeds with a null response.
          * @throws JSONException callback can throw this to make the call fail if a JSON error occurs.
          */
         String buildRequestBody() throws JSONException;
@@ -50,6 +53,28 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call callbacks for a request body that can be too large to be built in memory.
+     */
+    interface StreamingCallTemplate extends CallTemplate {
+
+        /**
+         * Called after {@link #buildRequestBody()} to check whether the body must be streamed.
+         *
+         * @return true to write the body with {@link #writeRequestBody(String, OutputStream)}.
+         */
+        boolean isStreamed();
+
+        /**
+         * Called to write a streamed request body.
+         *
+         * @param requestBody  body returned by {@link #buildRequestBody()}.
+         * @param outputStream where to write the body.
+         * @throws IOException if writing fails.
+         */
+        void writeRequestBody(String requestBody, OutputStream outputStream) throws IOException;
+    }
+
     /**
      * Make this client active again after closing.
      */
@@ -14,11 +14,15 @@ import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.StreamedDataUtils;
 
 import org.json.JSONException;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -105,12 +109,17 @@ public class AppCenterIngestion implements Ingestion {
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate extends AbstractAppCallTemplate {
+    private static class IngestionCallTemplate extends AbstractAppCallTemplate implements HttpClient.StreamingCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
         private final LogContainer mLogContainer;
 
+        /**
+         * Files of the logs with data stored in a file, streamed after the JSON is serialized.
+         */
+        private List<File> mDataFiles;
+
         IngestionCallTemplate(LogSerializer logSerializer, LogContainer logContainer) {
             mLogSerializer = logSerializer;
             mLogContainer = logContainer;
@@ -120,7 +129,18 @@ public class AppCenterIngestion implements Ingestion {
         public String buildRequestBody() throws JSONException {
 
             /* Serialize payload. */
+            mDataFiles = StreamedDataUtils.getDataFiles(mLogContainer);
             return mLogSerializer.serializeContainer(mLogContainer);
         }
+
+        @Override
+        public boolean isStreamed() {
+            return mDataFiles != null && !mDataFiles.isEmpty();
+        }
+
+        @Override
+        public void writeRequestBody(String requestBody, OutputStream outputStream) throws IOException {
+            StreamedDataUtils.writeBody(requestBody, mLogContainer, outputStream);
+        }
     }
 }
@@ -17,6 +17,7 @@ import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.TicketCache;
 
@@ -25,7 +26,9 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -74,9 +77,15 @@ public class OneCollectorIngestion implements Ingestion {
     static final String CLIENT_VERSION_KEY = "Client-Version";
 
     /**
-     * Client version format string.
+     * Client version header value (no import to avoid Javadoc issue).
      */
-    private static final String CLIENT_VERSION_FORMAT = "ACS-Android-Java-no-%s-no";
+    private static final String CLIENT_VERSION = String.format("ACS-Android-Java-no-%s-no", com.microsoft.appcenter.BuildConfig.VERSION_NAME);
+
+    /**
+     * Maximum number of batch compositions with cached header values.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_HEADERS = 16;
 
     /**
      * Upload time header key.
@@ -99,6 +108,22 @@ public class OneCollectorIngestion implements Ingestion {
      */
     private String mLogUrl;
 
+    /**
+     * Header values by batch composition, least recently used first.
+     */
+    private final Map<HeaderKey, HeaderValues> mHeaderCache = new LinkedHashMap<HeaderKey, HeaderValues>(MAX_CACHED_HEADERS, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HeaderKey, HeaderValues> eldest) {
+            return size() > MAX_CACHED_HEADERS;
+        }
+    };
+
+    /**
+     * Ticket cache version of the cached header values.
+     */
+    private int mHeaderCacheTicketVersion;
+
     /**
      * Init.
      *
@@ -114,45 +139,23 @@ public class OneCollectorIngestion implements Ingestion {
     @Override
     public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) throws IllegalArgumentException {
 
-        /* Gather API keys from logs. */
-        Map<String, String> headers = new HashMap<>();
+        /* Gather API keys and ticket keys from logs, deferred logs already have them. */
         Set<String> apiKeys = new LinkedHashSet<>();
+        Set<String> ticketKeys = new LinkedHashSet<>();
         for (Log log : logContainer.getLogs()) {
             apiKeys.addAll(log.getTransmissionTargetTokens());
-        }
-
-        /* Build the header. String.join with iterable is only API level 26+. */
-        StringBuilder apiKey = new StringBuilder();
-        for (String targetToken : apiKeys) {
-            apiKey.append(targetToken).append(",");
-        }
-        if (!apiKeys.isEmpty()) {
-            apiKey.deleteCharAt(apiKey.length() - 1);
-        }
-        headers.put(API_KEY, apiKey.toString());
-
-        /* Gather tokens from logs. */
-        JSONObject tickets = new JSONObject();
-        for (Log log : logContainer.getLogs()) {
-            List<String> ticketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
-            if (ticketKeys != null) {
-                for (String ticketKey : ticketKeys) {
-                    String token = TicketCache.getTicket(ticketKey);
-                    if (token != null) {
-                        try {
-                            tickets.put(ticketKey, token);
-                        } catch (JSONException e) {
-                            AppCenterLog.error(LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
-                            break;
-                        }
-                    }
-                }
+            List<String> logTicketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
+            if (logTicketKeys != null) {
+                ticketKeys.addAll(logTicketKeys);
             }
         }
+        HeaderValues headerValues = getHeaderValues(new HeaderKey(apiKeys, ticketKeys));
+        Map<String, String> headers = new HashMap<>();
+        headers.put(API_KEY, headerValues.mApiKey);
 
         /* Pass ticket header if we have at least 1 token. */
-        if (tickets.length() > 0) {
-            headers.put(TICKETS, tickets.toString());
+        if (headerValues.mTickets != null) {
+            headers.put(TICKETS, headerValues.mTickets);
 
             /* Enable 400 errors on invalid tickets on debug builds. */
             if (Constants.APPLICATION_DEBUGGABLE) {
@@ -163,9 +166,8 @@ public class OneCollectorIngestion implements Ingestion {
         /* Content type. */
         headers.put(CONTENT_TYPE_KEY, CONTENT_TYPE_VALUE);
 
-        /* Client version (no import to avoid Javadoc issue). */
-        String sdkVersion = com.microsoft.appcenter.BuildConfig.VERSION_NAME;
-        headers.put(CLIENT_VERSION_KEY, String.format(CLIENT_VERSION_FORMAT, sdkVersion));
+        /* Client version. */
+        headers.put(CLIENT_VERSION_KEY, CLIENT_VERSION);
 
         /* Upload time */
         headers.put(UPLOAD_TIME_KEY, String.valueOf(System.currentTimeMillis()));
@@ -175,6 +177,59 @@ public class OneCollectorIngestion implements Ingestion {
         return mHttpClient.callAsync(mLogUrl, METHOD_POST, headers, callTemplate, serviceCallback);
     }
 
+    /**
+     * Get the API key and tickets header values of a batch composition.
+     * Values are cached until a ticket is refreshed.
+     *
+     * @param key target tokens and ticket keys of the batch.
+     * @return header values.
+     */
+    private synchronized HeaderValues getHeaderValues(HeaderKey key) {
+
+        /* Read version first: a ticket changing while building values invalidates them on next call. */
+        int ticketVersion = TicketCache.getVersion();
+        if (ticketVersion != mHeaderCacheTicketVersion) {
+            mHeaderCache.clear();
+            mHeaderCacheTicketVersion = ticketVersion;
+        }
+        HeaderValues values = mHeaderCache.get(key);
+        if (values != null) {
+            return values;
+        }
+
+        /* Build the header. String.join with iterable is only API level 26+. */
+        StringBuilder apiKey = new StringBuilder();
+        for (String targetToken : key.mApiKeys) {
+            apiKey.append(targetToken).append(",");
+        }
+        if (!key.mApiKeys.isEmpty()) {
+            apiKey.deleteCharAt(apiKey.length() - 1);
+        }
+
+        /* Gather tokens. */
+        JSONObject tickets = new JSONObject();
+        boolean ticketsSerialized = true;
+        for (String ticketKey : key.mTicketKeys) {
+            String token = TicketCache.getTicket(ticketKey);
+            if (token != null) {
+                try {
+                    tickets.put(ticketKey, token);
+                } catch (JSONException e) {
+                    AppCenterLog.error(LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
+                    ticketsSerialized = false;
+                    break;
+                }
+            }
+        }
+        values = new HeaderValues(apiKey.toString(), ticketsSerialized && tickets.length() > 0 ? tickets.toString() : null);
+
+        /* Retry serializing tickets on next batch. */
+        if (ticketsSerialized) {
+            mHeaderCache.put(key, values);
+        }
+        return values;
+    }
+
     /**
      * Update log URL.
      *
@@ -196,6 +251,66 @@ public class OneCollectorIngestion implements Ingestion {
         mHttpClient.close();
     }
 
+    /**
+     * Batch composition that determines the API key and tickets headers.
+     * Keys are lists as header values depend on the order of the tokens.
+     */
+    private static class HeaderKey {
+
+        /**
+         * Target tokens, in order of first appearance in the batch.
+         */
+        private final List<String> mApiKeys;
+
+        /**
+         * Ticket keys, in order of first appearance in the batch.
+         */
+        private final List<String> mTicketKeys;
+
+        HeaderKey(Set<String> apiKeys, Set<String> ticketKeys) {
+            mApiKeys = new ArrayList<>(apiKeys);
+            mTicketKeys = new ArrayList<>(ticketKeys);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            HeaderKey headerKey = (HeaderKey) o;
+            return mApiKeys.equals(headerKey.mApiKeys) && mTicketKeys.equals(headerKey.mTicketKeys);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mApiKeys.hashCode() + mTicketKeys.hashCode();
+        }
+    }
+
+    /**
+     * Cached header values.
+     */
+    private static class HeaderValues {
+
+        /**
+         * API key header value.
+         */
+        private final String mApiKey;
+
+        /**
+         * Tickets header value, null if there are no tickets.
+         */
+        private final String mTickets;
+
+        HeaderValues(String apiKey, String tickets) {
+            mApiKey = apiKey;
+            mTickets = tickets;
+        }
+    }
+
     /**
      * Call template implementation for One Collector.
      */
@@ -211,6 +326,11 @@ public class OneCollectorIngestion implements Ingestion {
          */
         private final LogContainer mLogContainer;
 
+        /**
+         * Logs to send once deferred logs are converted, kept for retries.
+         */
+        private List<Log> mConvertedLogs;
+
         /**
          * Init.
          */
@@ -222,9 +342,19 @@ public class OneCollectorIngestion implements Ingestion {
         @Override
         public String buildRequestBody() throws JSONException {
 
+            /* Convert deferred logs on the call thread, the ones that cannot be converted are reported as failures by the channel. */
+            if (mConvertedLogs == null) {
+                mConvertedLogs = convertDeferredLogs();
+            }
+
+            /* Don't send an empty request. */
+            if (mConvertedLogs.isEmpty()) {
+                return null;
+            }
+
             /* Serialize payload. */
             StringBuilder jsonStream = new StringBuilder();
-            for (Log log : mLogContainer.getLogs()) {
+            for (Log log : mConvertedLogs) {
                 jsonStream.append(mLogSerializer.serializeLog(log));
 
                 /* We have to use a different delimiter specific to OneCollector. */
@@ -233,6 +363,32 @@ public class OneCollectorIngestion implements Ingestion {
             return jsonStream.toString();
         }
 
+        /**
+         * Convert the deferred logs of the container to Common Schema.
+         *
+         * @return the logs to send.
+         */
+        private List<Log> convertDeferredLogs() {
+            List<Log> logs = new ArrayList<>(mLogContainer.getLogs().size());
+            for (Log log : mLogContainer.getLogs()) {
+                if (log instanceof DeferredCommonSchemaLog) {
+                    DeferredCommonSchemaLog deferredLog = (DeferredCommonSchemaLog) log;
+                    try {
+                        log = deferredLog.toCommonSchemaLog(mLogSerializer);
+                        if (log == null) {
+                            throw new IllegalArgumentException("Log of type '" + deferredLog.getSource().getType() + "' is not converted for its transmission target.");
+                        }
+                    } catch (IllegalArgumentException e) {
+                        AppCenterLog.error(LOG_TAG, "Cannot send a log to one collector: " + e.getMessage());
+                        deferredLog.setConversionError(e);
+                        continue;
+                    }
+                }
+                logs.add(log);
+            }
+            return logs;
+        }
+
         @Override
         public void onBeforeCalling(URL url, Map<String, String> headers) {
             if (AppCenterLog.getLogLevel() <= VERBOSE) {
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logs persisted as a single unit so that they are sent in the same request, retried together and deleted together.
+ * A bundle is never sent as is: the channel replaces it by its logs when reading it back from persistence.
+ */
+public class LogBundle extends AbstractLog {
+
+    /**
+     * Log type.
+     */
+    public static final String TYPE = "logBundle";
+
+    /**
+     * Property name of the bundled logs, they are read by the log serializer.
+     */
+    public static final String LOGS = "logs";
+
+    /**
+     * Bundled logs.
+     */
+    private List<Log> logs = new ArrayList<>();
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * Get the bundled logs.
+     *
+     * @return the bundled logs.
+     */
+    @NonNull
+    public List<Log> getLogs() {
+        return logs;
+    }
+
+    /**
+     * Set the bundled logs.
+     *
+     * @param logs the bundled logs.
+     */
+    public void setLogs(@NonNull List<Log> logs) {
+        this.logs = logs;
+    }
+
+    /**
+     * Get logs with bundles replaced by the logs they contain, keeping the order.
+     *
+     * @param logs logs read from persistence.
+     * @return the same list if it contains no bundle, otherwise a new list.
+     */
+    @NonNull
+    public static List<Log> expand(@NonNull List<Log> logs) {
+        List<Log> expandedLogs = null;
+        for (int i = 0; i < logs.size(); i++) {
+            Log log = logs.get(i);
+            if (log instanceof LogBundle) {
+                if (expandedLogs == null) {
+                    expandedLogs = new ArrayList<>(logs.subList(0, i));
+                }
+                expandedLogs.addAll(((LogBundle) log).getLogs());
+            } else if (expandedLogs != null) {
+                expandedLogs.add(log);
+            }
+        }
+        return expandedLogs != null ? expandedLogs : logs;
+    }
+
+    @Override
+    public void write(JSONStringer writer) throws JSONException {
+        super.write(writer);
+        JSONUtils.writeArray(writer, LOGS, getLogs());
+    }
+
+    @Override
+    @SuppressWarnings({"EqualsReplaceableByObjectsCall", "RedundantSuppression"})
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+        LogBundle that = (LogBundle) o;
+        return logs.equals(that.logs);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + logs.hashCode();
+        return result;
+    }
+}
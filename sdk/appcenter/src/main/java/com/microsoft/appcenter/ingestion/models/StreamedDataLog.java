@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * Log with binary data too large to be kept in memory. The data is stored in a file,
+ * the log JSON only contains a reference to it until the data is streamed into the request body.
+ */
+public interface StreamedDataLog extends Log {
+
+    /**
+     * JSON property holding the data, or the reference to the data file.
+     */
+    String DATA = "data";
+
+    /**
+     * Get the file holding the data.
+     *
+     * @return data file or null if the data is held in memory.
+     */
+    @Nullable
+    File getDataFile();
+}
@@ -17,5 +17,16 @@ public abstract class AbstractLogFactory implements LogFactory {
     public Collection<CommonSchemaLog> toCommonSchemaLogs(Log log) {
         return Collections.emptyList();
     }
+
+    /**
+     * Check that a log can be converted to Common Schema without converting it.
+     *
+     * @param log log to check.
+     * @return true if the log is converted to Common Schema, false if its type is not converted.
+     * @throws IllegalArgumentException if the log cannot be converted.
+     */
+    public boolean validateCommonSchemaLog(Log log) throws IllegalArgumentException {
+        return false;
+    }
 }
 
@@ -8,8 +8,10 @@ package com.microsoft.appcenter.ingestion.models.json;
 import android.support.annotation.NonNull;
 
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogBundle;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -18,17 +20,17 @@ import org.json.JSONStringer;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 
 public class DefaultLogSerializer implements LogSerializer {
 
-    private static final String LOGS = "logs";
+    static final String LOGS = "logs";
 
-    private final Map<String, LogFactory> mLogFactories = new HashMap<>();
+    private final Map<String, LogFactory> mLogFactories = new ConcurrentHashMap<>();
 
     @NonNull
     private JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
@@ -43,6 +45,27 @@ public class DefaultLogSerializer implements LogSerializer {
         if (type == null) {
             type = object.getString(TYPE);
         }
+
+        /* Bundled logs have their own types. */
+        if (LogBundle.TYPE.equals(type)) {
+            LogBundle bundle = new LogBundle();
+            bundle.read(object);
+            JSONArray jLogs = object.getJSONArray(LogBundle.LOGS);
+            List<Log> logs = new ArrayList<>(jLogs.length());
+            for (int i = 0; i < jLogs.length(); i++) {
+                logs.add(readLog(jLogs.getJSONObject(i), null));
+            }
+            bundle.setLogs(logs);
+            return bundle;
+        }
+
+        /* Deferred Common Schema logs contain their source log. */
+        if (DeferredCommonSchemaLog.TYPE.equals(type)) {
+            DeferredCommonSchemaLog deferredLog = new DeferredCommonSchemaLog();
+            deferredLog.read(object);
+            deferredLog.setSource(readLog(object.getJSONObject(DeferredCommonSchemaLog.SOURCE), null));
+            return deferredLog;
+        }
         LogFactory logFactory = mLogFactories.get(type);
         if (logFactory == null) {
             throw new JSONException("Unknown log type: " + type);
@@ -69,6 +92,23 @@ public class DefaultLogSerializer implements LogSerializer {
         return mLogFactories.get(log.getType()).toCommonSchemaLogs(log);
     }
 
+    /**
+     * Check that a log can be converted to Common Schema, without converting it if its factory can check it.
+     *
+     * @param log log to check.
+     * @return true if the log can be converted, false if it is not converted to Common Schema.
+     * @throws IllegalArgumentException if the log is invalid.
+     */
+    public boolean validateCommonSchemaLog(@NonNull Log log) throws IllegalArgumentException {
+        LogFactory logFactory = mLogFactories.get(log.getType());
+        if (logFactory instanceof AbstractLogFactory) {
+            return ((AbstractLogFactory) logFactory).validateCommonSchemaLog(log);
+        }
+
+        /* Other factories can only be checked by converting the log. */
+        return logFactory != null && !logFactory.toCommonSchemaLogs(log).isEmpty();
+    }
+
     @NonNull
     @Override
     public String serializeContainer(@NonNull LogContainer logContainer) throws JSONException {
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Base64;
+import android.util.Base64OutputStream;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogBundle;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.StreamedDataLog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Utilities to store log data in files and stream it as base64 into request bodies.
+ */
+public class StreamedDataUtils {
+
+    /**
+     * Prefix of the JSON string value that references a data file.
+     */
+    public static final String REFERENCE_PREFIX = "@file:";
+
+    /**
+     * Sub path for directory where to store data files.
+     */
+    private static final String STREAMED_DATA_DIRECTORY = "/appcenter/streamed_data";
+
+    /**
+     * Allowed data file names, they must not need escaping in JSON.
+     */
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /**
+     * Buffer size when copying data.
+     */
+    @VisibleForTesting
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Charset of request bodies.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
+    @VisibleForTesting
+    StreamedDataUtils() {
+    }
+
+    /**
+     * Get the directory where data files are stored.
+     *
+     * @return data file directory.
+     */
+    @NonNull
+    public static File getDirectory() {
+        File directory = new File(Constants.FILES_PATH + STREAMED_DATA_DIRECTORY);
+
+        //noinspection ResultOfMethodCallIgnored we handle errors at read/write time for each file.
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Get a data file.
+     *
+     * @param name file name, made of letters, digits, dashes or underscores.
+     * @return data file.
+     */
+    @NonNull
+    public static File getFile(@NonNull String name) {
+        if (!FILE_NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid data file name: " + name);
+        }
+        return new File(getDirectory(), name);
+    }
+
+    /**
+     * Get the JSON string value to use in place of the data stored in a file.
+     *
+     * @param file data file.
+     * @return reference to the file.
+     */
+    @NonNull
+    public static String getReference(@NonNull File file) {
+        return REFERENCE_PREFIX + file.getName();
+    }
+
+    /**
+     * Get the data file from a JSON string value.
+     *
+     * @param value JSON string value.
+     * @return data file or null if the value is not a data file reference.
+     */
+    @Nullable
+    public static File parseReference(@Nullable String value) {
+        if (value != null && value.startsWith(REFERENCE_PREFIX)) {
+            String name = value.substring(REFERENCE_PREFIX.length());
+            if (FILE_NAME_PATTERN.matcher(name).matches()) {
+                return new File(getDirectory(), name);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get data files referenced by logs of a container.
+     *
+     * @param logContainer log container.
+     * @return data files, empty if no log uses one.
+     */
+    @NonNull
+    public static List<File> getDataFiles(@NonNull LogContainer logContainer) {
+        List<File> files = new ArrayList<>();
+        if (logContainer.getLogs() == null) {
+            return files;
+        }
+        for (Log log : logContainer.getLogs()) {
+            File file = getDataFile(log);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Get data files referenced by a log or by the logs of a bundle.
+     *
+     * @param log log.
+     * @return data files, empty if the log does not use one.
+     */
+    @NonNull
+    public static List<File> getDataFiles(@NonNull Log log) {
+        List<File> files = new ArrayList<>();
+        for (Log expandedLog : LogBundle.expand(Collections.singletonList(log))) {
+            File file = getDataFile(expandedLog);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Nullable
+    private static File getDataFile(Log log) {
+        return log instanceof StreamedDataLog ? ((StreamedDataLog) log).getDataFile() : null;
+    }
+
+    /**
+     * Write a JSON request body replacing the data property of the logs that use a data file by the base64
+     * encoded contents of the file. Only a small buffer is used whatever the size of the files.
+     *
+     * @param body         JSON request body of the log container, with references.
+     * @param logContainer log container the body was serialized from.
+     * @param outputStream where to write the body.
+     * @throws IOException if a file cannot be read, the body does not match the logs or writing fails.
+     */
+    public static void writeBody(@NonNull String body, @NonNull LogContainer logContainer, @NonNull OutputStream outputStream) throws IOException {
+        try {
+            JSONArray jLogs = new JSONObject(body).getJSONArray(DefaultLogSerializer.LOGS);
+            List<Log> logs = logContainer.getLogs();
+            if (logs == null || jLogs.length() != logs.size()) {
+                throw new IOException("Request body does not match the logs.");
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            outputStream.write(("{\"" + DefaultLogSerializer.LOGS + "\":[").getBytes(CHARSET_NAME));
+            for (int i = 0; i < jLogs.length(); i++) {
+                if (i > 0) {
+                    outputStream.write(',');
+                }
+                JSONObject jLog = jLogs.getJSONObject(i);
+                File file = getDataFile(logs.get(i));
+                if (file == null) {
+                    outputStream.write(jLog.toString().getBytes(CHARSET_NAME));
+                    continue;
+                }
+
+                /* Only the data property of the log holds the reference, write the file contents as its value. */
+                if (!getReference(file).equals(jLog.opt(StreamedDataLog.DATA))) {
+                    throw new IOException("Data file reference not found in log: " + file.getName());
+                }
+                jLog.remove(StreamedDataLog.DATA);
+                String json = jLog.toString();
+                StringBuilder prefix = new StringBuilder(json.substring(0, json.length() - 1));
+                if (jLog.length() > 0) {
+                    prefix.append(',');
+                }
+                prefix.append(JSONObject.quote(StreamedDataLog.DATA)).append(":\"");
+                outputStream.write(prefix.toString().getBytes(CHARSET_NAME));
+                writeBase64(file, buffer, outputStream);
+                outputStream.write("\"}".getBytes(CHARSET_NAME));
+            }
+            outputStream.write("]}".getBytes(CHARSET_NAME));
+        } catch (JSONException e) {
+            throw new IOException("Cannot read request body.", e);
+        }
+    }
+
+    private static void writeBase64(File file, byte[] buffer, OutputStream outputStream) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            OutputStream base64Stream = new Base64OutputStream(outputStream, Base64.NO_WRAP | Base64.NO_CLOSE);
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                base64Stream.write(buffer, 0, length);
+            }
+
+            /* Flush padding without closing the request stream. */
+            base64Stream.close();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
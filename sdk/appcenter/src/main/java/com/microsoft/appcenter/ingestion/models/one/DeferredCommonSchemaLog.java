@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.one;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.microsoft.appcenter.ingestion.models.CommonProperties;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.util.Collection;
+
+/**
+ * Log persisted for a transmission target and converted to Common Schema only when sent.
+ * It contains the source log and only the Part A fields that are known when the log is prepared:
+ * flags, SDK epoch and sequence, and the fields set by channel listeners.
+ */
+public class DeferredCommonSchemaLog extends CommonSchemaLog {
+
+    /**
+     * Log type.
+     */
+    public static final String TYPE = "deferredCommonSchema";
+
+    /**
+     * Property name of the source log, it is read by the log serializer.
+     */
+    public static final String SOURCE = "source";
+
+    /**
+     * iKey property.
+     */
+    private static final String IKEY = "iKey";
+
+    /**
+     * Flags property.
+     */
+    private static final String FLAGS = "flags";
+
+    /**
+     * Extensions property.
+     */
+    private static final String EXT = "ext";
+
+    /**
+     * Source log.
+     */
+    private Log source;
+
+    /**
+     * Error of the conversion when the log was sent, null if it was converted.
+     */
+    private IllegalArgumentException conversionError;
+
+    /**
+     * Init empty log to read it from JSON.
+     */
+    public DeferredCommonSchemaLog() {
+    }
+
+    /**
+     * Init log for a transmission target of the source log.
+     *
+     * @param source      source log.
+     * @param targetToken transmission target token.
+     */
+    public DeferredCommonSchemaLog(@NonNull Log source, @NonNull String targetToken) {
+        setSource(source);
+        setTag(source.getTag());
+        setIKey(PartAUtils.getIKey(targetToken));
+        addTransmissionTarget(targetToken);
+
+        /* Extensions that channel listeners can set before the log is converted. */
+        Extensions ext = new Extensions();
+        ext.setProtocol(new ProtocolExtension());
+        ext.setUser(new UserExtension());
+        ext.setDevice(new DeviceExtension());
+        ext.setApp(new AppExtension());
+        ext.setSdk(new SdkExtension());
+        setExt(ext);
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * Get the source log.
+     *
+     * @return the source log.
+     */
+    public Log getSource() {
+        return source;
+    }
+
+    /**
+     * Set the source log, this log has the timestamp of the source log.
+     *
+     * @param source the source log.
+     */
+    public void setSource(@NonNull Log source) {
+        this.source = source;
+        setTimestamp(source.getTimestamp());
+    }
+
+    /**
+     * Get the error that prevented converting this log when it was sent.
+     *
+     * @return the conversion error, or null if the log was converted.
+     */
+    public IllegalArgumentException getConversionError() {
+        return conversionError;
+    }
+
+    /**
+     * Set the error that prevented converting this log when it was sent.
+     *
+     * @param conversionError the conversion error.
+     */
+    public void setConversionError(IllegalArgumentException conversionError) {
+        this.conversionError = conversionError;
+    }
+
+    /**
+     * Convert the source log to the Common Schema log of the transmission target,
+     * then apply the fields of this log.
+     *
+     * @param logSerializer log serializer that knows the source log type.
+     * @return the Common Schema log, or null if the source log is not converted for the transmission target.
+     * @throws IllegalArgumentException if the source log cannot be converted.
+     */
+    @Nullable
+    public CommonSchemaLog toCommonSchemaLog(@NonNull LogSerializer logSerializer) throws IllegalArgumentException {
+
+        /* Target tokens are not serialized in the source log. */
+        String targetToken = getTransmissionTargetTokens().iterator().next();
+        if (!source.getTransmissionTargetTokens().contains(targetToken)) {
+            source.addTransmissionTarget(targetToken);
+        }
+        Collection<CommonSchemaLog> commonSchemaLogs = logSerializer.toCommonSchemaLog(source);
+        for (CommonSchemaLog commonSchemaLog : commonSchemaLogs) {
+            if (commonSchemaLog.getTransmissionTargetTokens().contains(targetToken)) {
+                applyTo(commonSchemaLog);
+                return commonSchemaLog;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copy the fields that were set on this log to a converted log.
+     *
+     * @param log converted log.
+     */
+    private void applyTo(CommonSchemaLog log) {
+        log.setFlags(getFlags());
+        Extensions ext = log.getExt();
+        Extensions overlay = getExt();
+        if (overlay.getProtocol().getTicketKeys() != null) {
+            ext.getProtocol().setTicketKeys(overlay.getProtocol().getTicketKeys());
+        }
+        if (overlay.getUser().getLocalId() != null) {
+            ext.getUser().setLocalId(overlay.getUser().getLocalId());
+        }
+        if (overlay.getDevice().getLocalId() != null) {
+            ext.getDevice().setLocalId(overlay.getDevice().getLocalId());
+        }
+        AppExtension app = overlay.getApp();
+        if (app.getName() != null) {
+            ext.getApp().setName(app.getName());
+        }
+        if (app.getVer() != null) {
+            ext.getApp().setVer(app.getVer());
+        }
+        if (app.getLocale() != null) {
+            ext.getApp().setLocale(app.getLocale());
+        }
+        SdkExtension sdk = overlay.getSdk();
+        ext.getSdk().setEpoch(sdk.getEpoch());
+        ext.getSdk().setSeq(sdk.getSeq());
+        ext.getSdk().setInstallId(sdk.getInstallId());
+    }
+
+    @Override
+    public void read(JSONObject object) throws JSONException {
+        setIKey(object.optString(IKEY, null));
+        setFlags(JSONUtils.readLong(object, FLAGS));
+        Extensions extensions = new Extensions();
+        extensions.read(object.getJSONObject(EXT));
+        setExt(extensions);
+    }
+
+    @Override
+    public void write(JSONStringer writer) throws JSONException {
+        JSONUtils.write(writer, CommonProperties.TYPE, getType());
+        JSONUtils.write(writer, IKEY, getIKey());
+        JSONUtils.write(writer, FLAGS, getFlags());
+        writer.key(EXT).object();
+        getExt().write(writer);
+        writer.endObject();
+        writer.key(SOURCE).object();
+        source.write(writer);
+        writer.endObject();
+    }
+
+    @Override
+    @SuppressWarnings({"EqualsReplaceableByObjectsCall", "RedundantSuppression"})
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+        DeferredCommonSchemaLog that = (DeferredCommonSchemaLog) o;
+        return source != null ? source.equals(that.source) : that.source == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + (source != null ? source.hashCode() : 0);
+        return result;
+    }
+}
@@ -34,6 +34,16 @@ public class PartAUtils {
         return targetToken.split("-")[0];
     }
 
+    /**
+     * Get the instrumentation key of a transmission target.
+     *
+     * @param targetToken transmission target token.
+     * @return the instrumentation key.
+     */
+    public static String getIKey(String targetToken) {
+        return "o" + COMMON_SCHEMA_PREFIX_SEPARATOR + getTargetKey(targetToken);
+    }
+
     /**
      * Validate and set name for common schema log.
      *
@@ -42,13 +52,23 @@ public class PartAUtils {
      * @throws IllegalArgumentException if name is invalid.
      */
     public static void setName(CommonSchemaLog log, String name) throws IllegalArgumentException {
+        validateName(name);
+        log.setName(name);
+    }
+
+    /**
+     * Validate name for common schema log.
+     *
+     * @param name name.
+     * @throws IllegalArgumentException if name is invalid.
+     */
+    public static void validateName(String name) throws IllegalArgumentException {
         if (name == null) {
             throw new IllegalArgumentException("Name cannot be null.");
         }
         if (!NAME_REGEX.matcher(name).matches()) {
             throw new IllegalArgumentException("Name must match '" + NAME_REGEX + "' but was '" + name + "'.");
         }
-        log.setName(name);
     }
 
     /**
@@ -68,7 +88,7 @@ public class PartAUtils {
         dest.setTimestamp(src.getTimestamp());
 
         /* TODO: We should cache the ikey for transmission target */
-        dest.setIKey("o" + COMMON_SCHEMA_PREFIX_SEPARATOR + getTargetKey(transmissionTarget));
+        dest.setIKey(getIKey(transmissionTarget));
 
         /* Copy target token also in the set. */
         dest.addTransmissionTarget(transmissionTarget);
@@ -18,6 +18,7 @@ import android.support.annotation.VisibleForTesting;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.StreamedDataUtils;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -31,6 +32,7 @@ import org.json.JSONException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -80,10 +82,16 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final int VERSION_TIMESTAMP_COLUMN = 5;
 
+    /**
+     * Version without the stored time and size columns, they are added when upgrading from this version.
+     */
+    @VisibleForTesting
+    static final int VERSION_STORED_TIME_COLUMN = 6;
+
     /**
      * Current version of the schema.
      */
-    private static final int VERSION = 6;
+    private static final int VERSION = 7;
 
     /**
      * Project identifier part of the target token in clear text (the target token key).
@@ -102,6 +110,18 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String COLUMN_DATA_TYPE = "type";
 
+    /**
+     * Time when the log was stored, in milliseconds since epoch.
+     */
+    @VisibleForTesting
+    static final String COLUMN_STORED_TIME = "stored_time";
+
+    /**
+     * Size of the log payload in bytes.
+     */
+    @VisibleForTesting
+    static final String COLUMN_SIZE = "size";
+
     /**
      * Database name.
      */
@@ -112,7 +132,7 @@ public class DatabasePersistence extends Persistence {
      * Table schema for Persistence.
      */
     @VisibleForTesting
-    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0);
+    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0, 0L, 0L);
 
     /**
      * Order by clause to select logs.
@@ -146,7 +166,9 @@ public class DatabasePersistence extends Persistence {
             "`priority` INTEGER," +
             "`log` TEXT," +
             "`persistence_group` TEXT," +
-            "`target_key` TEXT);";
+            "`target_key` TEXT," +
+            "`stored_time` INTEGER," +
+            "`size` INTEGER);";
 
     /**
      * SQL command to drop logs table
@@ -158,6 +180,21 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String CREATE_PRIORITY_INDEX_LOGS = "CREATE INDEX `ix_logs_priority` ON logs (`priority`)";
 
+    /**
+     * SQL command to create index for deleting expired logs of a group with range queries.
+     */
+    private static final String CREATE_STORED_TIME_INDEX_LOGS = "CREATE INDEX `ix_logs_group_stored_time` ON logs (`persistence_group`, `stored_time`)";
+
+    /**
+     * Where clause to select a log by its database identifier.
+     */
+    private static final String WHERE_ID = PRIMARY_KEY + " = ?";
+
+    /**
+     * Where clause to select logs of a group stored before a given time.
+     */
+    private static final String WHERE_EXPIRED = COLUMN_GROUP + " = ? AND " + COLUMN_STORED_TIME + " < ?";
+
     /**
      * Database manager instance to access Persistence database.
      */
@@ -176,6 +213,22 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     final Set<Long> mPendingDbIdentifiers;
 
+    /**
+     * Time to live in milliseconds for each group that has one.
+     */
+    private final Map<String, Long> mGroupTimeToLives = new HashMap<>();
+
+    /**
+     * Maximum size in bytes of the logs payloads for each group that has one.
+     */
+    private final Map<String, Long> mGroupMaxSizes = new HashMap<>();
+
+    /**
+     * Total size in bytes of the logs payloads of groups that have a maximum size,
+     * cached between puts and computed again after logs of the group are deleted.
+     */
+    private final Map<String, Long> mGroupSizes = new HashMap<>();
+
     /**
      * Application context.
      */
@@ -212,6 +265,7 @@ public class DatabasePersistence extends Persistence {
             @Override
             public void onCreate(SQLiteDatabase db) {
                 db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                db.execSQL(CREATE_STORED_TIME_INDEX_LOGS);
             }
 
             @Override
@@ -220,12 +274,23 @@ public class DatabasePersistence extends Persistence {
                 /*
                  * With version 3.0 of the SDK we decided to remove timestamp column and as
                  * it's a major SDK version and SQLite does not support removing column we just start over.
-                 * When adding a new column in a future version, update this code by something like
-                 * if (oldVersion <= VERSION_TIMESTAMP_COLUMN) {drop/create} else {add missing columns}
                  */
-                db.execSQL(DROP_LOGS_SQL);
-                db.execSQL(CREATE_LOGS_SQL);
-                db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                if (oldVersion <= VERSION_TIMESTAMP_COLUMN) {
+                    db.execSQL(DROP_LOGS_SQL);
+                    db.execSQL(CREATE_LOGS_SQL);
+                    db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                    db.execSQL(CREATE_STORED_TIME_INDEX_LOGS);
+                    return;
+                }
+
+                /* Add the stored time and size columns, existing logs are considered stored now. */
+                if (oldVersion <= VERSION_STORED_TIME_COLUMN) {
+                    db.execSQL("ALTER TABLE `logs` ADD COLUMN `stored_time` INTEGER");
+                    db.execSQL("ALTER TABLE `logs` ADD COLUMN `size` INTEGER");
+                    db.execSQL("UPDATE `logs` SET `stored_time` = " + System.currentTimeMillis() + ", `size` = COALESCE(LENGTH(CAST(`log` AS BLOB)), 0)");
+                    db.execSQL(CREATE_STORED_TIME_INDEX_LOGS);
+                    updateLargePayloadSizes(db);
+                }
             }
         });
         mLargePayloadDirectory = new File(Constants.FILES_PATH + PAYLOAD_LARGE_DIRECTORY);
@@ -234,6 +299,26 @@ public class DatabasePersistence extends Persistence {
         mLargePayloadDirectory.mkdirs();
     }
 
+    /**
+     * Set the size of the logs stored in large payload files when upgrading the schema.
+     *
+     * @param db The database being upgraded.
+     */
+    private void updateLargePayloadSizes(SQLiteDatabase db) {
+        Cursor cursor = db.query(TABLE, new String[]{PRIMARY_KEY, COLUMN_GROUP}, COLUMN_LOG + " IS NULL", null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                File file = getLargePayloadFile(getLargePayloadGroupDirectory(cursor.getString(1)), id);
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_SIZE, file.length());
+                db.update(TABLE, values, PRIMARY_KEY + " = ?", new String[]{String.valueOf(id)});
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Instantiates {@link ContentValues} with the give values.
      *
@@ -242,9 +327,11 @@ public class DatabasePersistence extends Persistence {
      * @param targetToken The target token if the log is common schema.
      * @param targetKey   The project identifier part of the target token in clear text.
      * @param priority    The persistence priority.
+     * @param storedTime  The time when the log is stored.
+     * @param size        The size of the log payload in bytes.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority, long storedTime, long size) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
         values.put(COLUMN_LOG, logJ);
@@ -252,6 +339,8 @@ public class DatabasePersistence extends Persistence {
         values.put(COLUMN_DATA_TYPE, type);
         values.put(COLUMN_TARGET_KEY, targetKey);
         values.put(COLUMN_PRIORITY, priority);
+        values.put(COLUMN_STORED_TIME, storedTime);
+        values.put(COLUMN_SIZE, size);
         return values;
     }
 
@@ -293,8 +382,24 @@ public class DatabasePersistence extends Persistence {
                 throw new PersistenceException("Log is too large (" + payloadSize + " bytes) to store in database. " +
                         "Current maximum database size is " + maxSize + " bytes.");
             }
-            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, Flags.getPersistenceFlag(flags, false));
-            long databaseId = mDatabaseManager.put(contentValues, COLUMN_PRIORITY);
+            Long groupMaxSize = mGroupMaxSizes.get(group);
+            if (groupMaxSize != null && groupMaxSize < payloadSize) {
+                throw new PersistenceException("Log is too large (" + payloadSize + " bytes) to store in group " + group + ". " +
+                        "Maximum size of the group is " + groupMaxSize + " bytes.");
+            }
+            int priority = Flags.getPersistenceFlag(flags, false);
+            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, priority, System.currentTimeMillis(), payloadSize);
+            final Map<String, int[]> evictedLogCounts = new HashMap<>();
+            long databaseId = mDatabaseManager.put(contentValues, COLUMN_PRIORITY, new DatabaseManager.EvictionListener() {
+
+                @Override
+                public void onEvicting(long id) {
+                    onLogEvicting(id, evictedLogCounts);
+                }
+            });
+            for (Map.Entry<String, int[]> entry : evictedLogCounts.entrySet()) {
+                notifyLogsDeleted(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            }
             if (databaseId == -1) {
                 throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
             }
@@ -316,6 +421,9 @@ public class DatabasePersistence extends Persistence {
                 }
                 AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
             }
+            if (groupMaxSize != null) {
+                enforceGroupMaxSize(group, groupMaxSize, priority, databaseId, payloadSize);
+            }
             return databaseId;
         } catch (JSONException e) {
             throw new PersistenceException("Cannot convert to JSON string.", e);
@@ -343,6 +451,48 @@ public class DatabasePersistence extends Persistence {
         mDatabaseManager.delete(id);
     }
 
+    /**
+     * Clean up after a log that the database is about to delete to make room for a new log,
+     * and count it if it was not being sent.
+     *
+     * @param id                 The database identifier of the evicted log.
+     * @param deletedCountsByGroup Number of deleted logs then number of deleted critical logs, by group.
+     */
+    private void onLogEvicting(long id, Map<String, int[]> deletedCountsByGroup) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(WHERE_ID);
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{COLUMN_GROUP, COLUMN_PRIORITY}, new String[]{String.valueOf(id)}, null);
+            try {
+                if (cursor.moveToNext()) {
+                    String group = cursor.getString(0);
+
+                    //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+                    getLargePayloadFile(getLargePayloadGroupDirectory(group), id).delete();
+                    deleteDataFiles(WHERE_ID, new String[]{String.valueOf(id)});
+                    mGroupSizes.remove(group);
+
+                    /* Logs being sent are not counted as pending anymore. */
+                    if (!mPendingDbIdentifiers.contains(id)) {
+                        int[] deletedCounts = deletedCountsByGroup.get(group);
+                        if (deletedCounts == null) {
+                            deletedCounts = new int[2];
+                            deletedCountsByGroup.put(group, deletedCounts);
+                        }
+                        deletedCounts[0]++;
+                        if (cursor.getInt(1) >= Flags.CRITICAL) {
+                            deletedCounts[1]++;
+                        }
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to read evicted log " + id, e);
+        }
+    }
+
     @Override
     public void deleteLogs(@NonNull String group, @NonNull String id) {
 
@@ -353,6 +503,7 @@ public class DatabasePersistence extends Persistence {
         /* Delete logs. */
         List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
         File directory = getLargePayloadGroupDirectory(group);
+        mGroupSizes.remove(group);
         if (dbIdentifiers != null) {
             for (Long dbIdentifier : dbIdentifiers) {
                 AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
@@ -382,8 +533,10 @@ public class DatabasePersistence extends Persistence {
         //noinspection ResultOfMethodCallIgnored we are not checking SQLite result either.
         directory.delete();
 
-        /* Delete from database. */
+        /* Delete from database, with the data files that logs reference. */
+        deleteDataFiles(COLUMN_GROUP + " = ?", new String[]{group});
         int deletedCount = mDatabaseManager.delete(COLUMN_GROUP, group);
+        mGroupSizes.remove(group);
         AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs.");
 
         /* Delete from pending state. */
@@ -395,15 +548,242 @@ public class DatabasePersistence extends Persistence {
         }
     }
 
+    /**
+     * Delete the oldest logs of a group with lower or equal priority than a new log until the group
+     * fits its maximum size. If it's not possible, the new log is deleted.
+     *
+     * @param group      The group of the storage for logs.
+     * @param maxSize    The maximum size of the group in bytes.
+     * @param priority   The priority of the new log.
+     * @param databaseId The database identifier of the new log.
+     * @param logSize    The size of the new log payload in bytes.
+     * @throws PersistenceException if the new log does not fit.
+     */
+    private void enforceGroupMaxSize(@NonNull String group, long maxSize, int priority, long databaseId, long logSize) throws PersistenceException {
+        Long cachedSize = mGroupSizes.get(group);
+        long size = cachedSize != null ? cachedSize + logSize : getGroupSize(group);
+        if (size <= maxSize) {
+            mGroupSizes.put(group, size);
+            return;
+        }
+        File directory = getLargePayloadGroupDirectory(group);
+        int deletedCount = 0;
+        int deletedCriticalCount = 0;
+        try {
+            SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+            builder.appendWhere(COLUMN_GROUP + " = ? AND " + COLUMN_PRIORITY + " <= ? AND " + PRIMARY_KEY + " <> ?");
+            String[] selectionArgs = {group, String.valueOf(priority), String.valueOf(databaseId)};
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{PRIMARY_KEY, COLUMN_SIZE, COLUMN_PRIORITY}, selectionArgs, COLUMN_PRIORITY + ", " + PRIMARY_KEY);
+            try {
+                while (size > maxSize && cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+
+                    /* Logs being sent will be deleted soon anyway. */
+                    if (mPendingDbIdentifiers.contains(id)) {
+                        continue;
+                    }
+                    deleteDataFiles(WHERE_ID, new String[]{String.valueOf(id)});
+                    deleteLog(directory, id);
+                    size -= cursor.getLong(1);
+                    deletedCount++;
+                    if (cursor.getInt(2) >= Flags.CRITICAL) {
+                        deletedCriticalCount++;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to delete logs to fit the maximum size of group " + group, e);
+
+            /* Compute the size again next time. */
+            size = -1;
+        }
+        if (deletedCount > 0) {
+            AppCenterLog.info(LOG_TAG, "Deleted " + deletedCount + " logs from group " + group + " to fit its maximum size of " + maxSize + " bytes.");
+            notifyLogsDeleted(group, deletedCount, deletedCriticalCount);
+        }
+        if (size < 0) {
+            mGroupSizes.remove(group);
+            size = getGroupSize(group);
+        }
+        if (size > maxSize) {
+            deleteLog(directory, databaseId);
+            mGroupSizes.put(group, size - logSize);
+            throw new PersistenceException("Group " + group + " is full of logs with higher priority.");
+        }
+        mGroupSizes.put(group, size);
+    }
+
+    /**
+     * Get the total size of the logs payloads of a group.
+     *
+     * @param group The group of the storage for logs.
+     * @return The size in bytes.
+     */
+    private long getGroupSize(@NonNull String group) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(COLUMN_GROUP + " = ?");
+        long size = 0;
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{"SUM(" + COLUMN_SIZE + ")"}, new String[]{group}, null);
+            try {
+                cursor.moveToNext();
+                size = cursor.getLong(0);
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get size of group " + group, e);
+        }
+        return size;
+    }
+
+    @Override
+    public void setGroupStoragePolicy(@NonNull String group, long timeToLive, long maxSizeInBytes) {
+        if (timeToLive > 0) {
+            mGroupTimeToLives.put(group, timeToLive);
+        } else {
+            mGroupTimeToLives.remove(group);
+        }
+        if (maxSizeInBytes > 0) {
+            mGroupMaxSizes.put(group, maxSizeInBytes);
+        } else {
+            mGroupMaxSizes.remove(group);
+        }
+        mGroupSizes.remove(group);
+    }
+
+    @Override
+    public int deleteExpiredLogs(@NonNull String group) {
+        Long timeToLive = mGroupTimeToLives.get(group);
+        if (timeToLive == null) {
+            return 0;
+        }
+        String[] whereArgs = {group, String.valueOf(System.currentTimeMillis() - timeToLive)};
+
+        /* Logs being sent are deleted when their batch completes. */
+        String whereClause = WHERE_EXPIRED + getNotPendingClause();
+
+        /* Large payloads are stored in files, delete them first, and count critical logs. */
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(whereClause);
+        File directory = getLargePayloadGroupDirectory(group);
+        int criticalCount = 0;
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{PRIMARY_KEY, COLUMN_PRIORITY, COLUMN_LOG + " IS NULL"}, whereArgs, null);
+            try {
+                while (cursor.moveToNext()) {
+                    if (cursor.getInt(2) != 0) {
+
+                        //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+                        getLargePayloadFile(directory, cursor.getLong(0)).delete();
+                    }
+                    if (cursor.getInt(1) >= Flags.CRITICAL) {
+                        criticalCount++;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to get expired logs of group " + group, e);
+        }
+
+        /* Then delete all expired rows at once using the index on group and stored time. */
+        deleteDataFiles(whereClause, whereArgs);
+        int deletedCount = mDatabaseManager.deleteWhere(whereClause, whereArgs);
+        if (deletedCount > 0) {
+            AppCenterLog.info(LOG_TAG, "Deleted " + deletedCount + " expired logs from group " + group + ".");
+            mGroupSizes.remove(group);
+            notifyLogsDeleted(group, deletedCount, Math.min(criticalCount, deletedCount));
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Delete the data files referenced by logs that are about to be deleted without being sent.
+     * Only logs whose payload contains a data file reference are read, and files are found from the deserialized logs.
+     *
+     * @param whereClause   The where clause selecting the logs, using ? for arguments.
+     * @param selectionArgs The arguments of the where clause.
+     */
+    private void deleteDataFiles(@NonNull String whereClause, @NonNull String[] selectionArgs) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(whereClause + " AND " + COLUMN_LOG + " LIKE ?");
+        String[] args = Arrays.copyOf(selectionArgs, selectionArgs.length + 1);
+        args[selectionArgs.length] = "%\"" + StreamedDataUtils.REFERENCE_PREFIX + "%";
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{COLUMN_LOG, COLUMN_DATA_TYPE}, args, null);
+            try {
+                while (cursor.moveToNext()) {
+                    try {
+                        Log log = getLogSerializer().deserializeLog(cursor.getString(0), cursor.getString(1));
+                        for (File file : StreamedDataUtils.getDataFiles(log)) {
+                            AppCenterLog.debug(LOG_TAG, "Deleting data file " + file);
+
+                            //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+                            file.delete();
+                        }
+                    } catch (JSONException e) {
+                        AppCenterLog.warn(LOG_TAG, "Cannot deserialize a deleted log to delete its data files.", e);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to delete data files of deleted logs.", e);
+        }
+    }
+
+    /**
+     * Get a where clause suffix that excludes logs being sent.
+     *
+     * @return The clause starting with AND, or an empty string if no log is being sent.
+     */
+    private String getNotPendingClause() {
+        if (mPendingDbIdentifiers.isEmpty()) {
+            return "";
+        }
+        StringBuilder clause = new StringBuilder(" AND " + PRIMARY_KEY + " NOT IN (");
+        for (Long id : mPendingDbIdentifiers) {
+            clause.append(id).append(',');
+        }
+        clause.setCharAt(clause.length() - 1, ')');
+        return clause.toString();
+    }
+
     @Override
     public int countLogs(@NonNull String group) {
+        return countLogs(group, Flags.NORMAL);
+    }
+
+    @Override
+    public int countCriticalLogs(@NonNull String group) {
+        return countLogs(group, Flags.CRITICAL);
+    }
+
+    /**
+     * Gets the number of logs for the given {@code group} with at least the given priority.
+     *
+     * @param group       The group of the storage for logs.
+     * @param minPriority The minimum persistence priority of the logs to count.
+     * @return The number of logs.
+     */
+    private int countLogs(@NonNull String group, int minPriority) {
 
         /* Query database and get scanner. */
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
         builder.appendWhere(COLUMN_GROUP + " = ?");
+        String[] selectionArgs = {group};
+        if (minPriority > Flags.NORMAL) {
+            builder.appendWhere(" AND " + COLUMN_PRIORITY + " >= ?");
+            selectionArgs = new String[]{group, String.valueOf(minPriority)};
+        }
         int count = 0;
         try {
-            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{"COUNT(*)"}, new String[]{group}, null);
+            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{"COUNT(*)"}, selectionArgs, null);
             try {
                 cursor.moveToNext();
                 count = cursor.getInt(0);
@@ -419,15 +799,40 @@ public class DatabasePersistence extends Persistence {
     @Override
     @Nullable
     public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+        return getLogs(group, pausedTargetKeys, Flags.NORMAL, limit, outLogs);
+    }
+
+    @Override
+    @Nullable
+    public String getCriticalLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+        return getLogs(group, pausedTargetKeys, Flags.CRITICAL, limit, outLogs);
+    }
+
+    /**
+     * Gets an array of logs for the given {@code group} with at least the given priority.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param minPriority      The minimum persistence priority of the logs to return.
+     * @param limit            The max number of logs to be returned.
+     * @param outLogs          A list to receive {@link Log} objects.
+     * @return An ID for {@code outLogs}. {@code null} if no logs exist.
+     */
+    @Nullable
+    private String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, int minPriority, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
 
         /* Log. */
-        AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
+        AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group + " with minimum priority " + minPriority);
 
         /* Query database. */
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
         builder.appendWhere(COLUMN_GROUP + " = ?");
         List<String> selectionArgs = new ArrayList<>();
         selectionArgs.add(group);
+        if (minPriority > Flags.NORMAL) {
+            builder.appendWhere(" AND " + COLUMN_PRIORITY + " >= ?");
+            selectionArgs.add(String.valueOf(minPriority));
+        }
         if (!pausedTargetKeys.isEmpty()) {
             StringBuilder filter = new StringBuilder();
             for (int i = 0; i < pausedTargetKeys.size(); i++) {
@@ -471,6 +876,7 @@ public class DatabasePersistence extends Persistence {
 
                         /* Found the record to delete that we could not read when selecting all fields. */
                         deleteLog(largePayloadGroupDirectory, corruptedId);
+                        mGroupSizes.remove(group);
                         AppCenterLog.error(LOG_TAG, "Empty database corrupted empty record deleted, id=" + corruptedId);
                         break;
                     }
@@ -530,6 +936,7 @@ public class DatabasePersistence extends Persistence {
             for (long id : failedDbIdentifiers) {
                 deleteLog(largePayloadGroupDirectory, id);
             }
+            mGroupSizes.remove(group);
             AppCenterLog.warn(LOG_TAG, "Deleted logs that cannot be deserialized");
         }
 
@@ -574,6 +981,15 @@ public class DatabasePersistence extends Persistence {
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
+    @Override
+    public void clearPendingLogState(@NonNull String group, @NonNull String batchId) {
+        List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + batchId);
+        if (dbIdentifiers != null) {
+            mPendingDbIdentifiers.removeAll(dbIdentifiers);
+        }
+        AppCenterLog.debug(LOG_TAG, "Cleared pending log state for " + group + " with " + batchId);
+    }
+
     @Override
     public void close() {
         mDatabaseManager.close();
@@ -28,6 +28,11 @@ public abstract class Persistence implements Closeable {
      */
     private LogSerializer mLogSerializer;
 
+    /**
+     * Listener for logs deleted before being sent.
+     */
+    private Listener mListener;
+
     /**
      * Writes a log to the storage with the given {@code group}.
      *
@@ -63,6 +68,17 @@ public abstract class Persistence implements Closeable {
      */
     public abstract int countLogs(@NonNull String group);
 
+    /**
+     * Gets the number of critical logs for the given {@code group}.
+     *
+     * @param group The group of the storage for logs.
+     * @return The number of logs stored with the {@link Flags#CRITICAL} priority for the given {@code group}.
+     * Returns 0 by default, for implementations that don't store priorities.
+     */
+    public int countCriticalLogs(@NonNull String group) {
+        return 0;
+    }
+
     /**
      * Gets an array of logs for the given {@code group}.
      *
@@ -75,11 +91,58 @@ public abstract class Persistence implements Closeable {
     @Nullable
     public abstract String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs);
 
+    /**
+     * Gets an array of critical logs for the given {@code group}, logs with a lower priority are not returned.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param outLogs          A list to receive {@link Log} objects.
+     * @return An ID for {@code outLogs}. {@code null} if no critical logs exist, which is the default
+     * for implementations that don't store priorities.
+     */
+    @Nullable
+    public String getCriticalLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+        return null;
+    }
+
+    /**
+     * Sets how long logs of the {@code group} are kept and how much storage they can use.
+     * Does nothing by default.
+     *
+     * @param group          The group of the storage for logs.
+     * @param timeToLive     The maximum age of logs in milliseconds, 0 to keep logs until they are sent.
+     * @param maxSizeInBytes The maximum size of the logs payloads of the group in bytes, 0 for no limit other than the storage size.
+     */
+    public void setGroupStoragePolicy(@NonNull String group, long timeToLive, long maxSizeInBytes) {
+    }
+
+    /**
+     * Deletes the logs of the {@code group} that are older than its time to live, except logs being sent.
+     *
+     * @param group The group of the storage for logs.
+     * @return The number of deleted logs, 0 by default.
+     */
+    public int deleteExpiredLogs(@NonNull String group) {
+        return 0;
+    }
+
     /**
      * Clears all associations between logs of the {@code group} and ids returned by {@link #getLogs(String, Collection, int, List)}}.
      */
     public abstract void clearPendingLogState();
 
+    /**
+     * Clears the association between logs of the {@code group} and the {@code batchId} returned by
+     * {@link #getLogs(String, Collection, int, List)}, so that these logs can be returned again.
+     * Does nothing by default, the logs are then only returned again after {@link #clearPendingLogState()}.
+     *
+     * @param group   The group of the storage for logs.
+     * @param batchId The ID returned by {@link #getLogs(String, Collection, int, List)}.
+     */
+    public void clearPendingLogState(@NonNull String group, @NonNull String batchId) {
+    }
+
     /**
      * Gets a {@link LogSerializer}.
      *
@@ -101,6 +164,28 @@ public abstract class Persistence implements Closeable {
         mLogSerializer = logSerializer;
     }
 
+    /**
+     * Sets a listener for logs deleted by the storage before being sent.
+     *
+     * @param listener The listener or null to remove it.
+     */
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Reports logs deleted by the storage before being sent.
+     *
+     * @param group         The group of the storage for logs.
+     * @param count         The number of deleted logs.
+     * @param criticalCount The number of deleted logs that had the critical priority.
+     */
+    void notifyLogsDeleted(@NonNull String group, int count, int criticalCount) {
+        if (mListener != null && count > 0) {
+            mListener.onLogsDeleted(group, count, criticalCount);
+        }
+    }
+
     /**
      * Set maximum SQLite database size.
      *
@@ -109,6 +194,22 @@ public abstract class Persistence implements Closeable {
      */
     public abstract boolean setMaxStorageSize(long maxStorageSizeInBytes);
 
+    /**
+     * Listener for logs deleted by the storage before being sent.
+     */
+    public interface Listener {
+
+        /**
+         * Called when logs that were not being sent are deleted because they expired
+         * or to make room for other logs.
+         *
+         * @param group         The group of the storage for logs.
+         * @param count         The number of deleted logs.
+         * @param criticalCount The number of deleted logs that had the critical priority.
+         */
+        void onLogsDeleted(@NonNull String group, int count, int criticalCount);
+    }
+
     /**
      * Thrown when {@link Persistence} cannot write a log to the storage.
      */
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fast generator of log identifiers.
+ * <p>
+ * {@link UUID#randomUUID()} goes to {@link java.security.SecureRandom} for every call which is
+ * slow and contended when logs are created from several threads. Log identifiers only need to be
+ * unique, not unpredictable, so a random seed is drawn only once per process and identifiers are
+ * then derived from an atomic sequence. The result is still formatted as a version 4 UUID.
+ */
+public class LogIdGenerator {
+
+    /**
+     * Odd 64 bits constant (golden ratio) used to spread sequence numbers over all bits.
+     * Multiplying by an odd number is a bijection modulo 2^64 so no collision is introduced.
+     */
+    private static final long SEQUENCE_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Mask of the version bits in the most significant bits.
+     */
+    private static final long VERSION_MASK = 0xF000L;
+
+    /**
+     * Version 4 bits.
+     */
+    private static final long VERSION_4 = 0x4000L;
+
+    /**
+     * Mask of the variant bits in the least significant bits.
+     */
+    private static final long VARIANT_MASK = 0xC000000000000000L;
+
+    /**
+     * IETF variant bits.
+     */
+    private static final long VARIANT_IETF = 0x8000000000000000L;
+
+    /**
+     * Random most significant bits, drawn once per process.
+     */
+    private final long mSeedMostSigBits;
+
+    /**
+     * Random least significant bits, drawn once per process.
+     */
+    private final long mSeedLeastSigBits;
+
+    /**
+     * Sequence of generated identifiers.
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Init with a random seed.
+     *
+     * @param seed random seed.
+     */
+    @VisibleForTesting
+    LogIdGenerator(@NonNull UUID seed) {
+        mSeedMostSigBits = seed.getMostSignificantBits();
+        mSeedLeastSigBits = seed.getLeastSignificantBits();
+    }
+
+    /**
+     * Get a new log identifier.
+     *
+     * @return a new identifier, unique for this install.
+     */
+    @NonNull
+    public static UUID nextId() {
+        return Holder.INSTANCE.next();
+    }
+
+    /**
+     * Generate next identifier from this generator.
+     *
+     * @return next identifier.
+     */
+    @NonNull
+    @VisibleForTesting
+    UUID next() {
+
+        /*
+         * The 62 random bits of the lower part are offset by a bijective mix of the sequence so
+         * identifiers never repeat within a process before 2^62 calls, and different processes
+         * are separated by the 122 random bits of the seed.
+         */
+        long sequence = mSequence.incrementAndGet() * SEQUENCE_MULTIPLIER;
+        long mostSigBits = (mSeedMostSigBits & ~VERSION_MASK) | VERSION_4;
+        long leastSigBits = ((mSeedLeastSigBits + sequence) & ~VARIANT_MASK) | VARIANT_IETF;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Lazy holder so that the secure random seed is only drawn on first use.
+     */
+    private static class Holder {
+
+        private static final LogIdGenerator INSTANCE = new LogIdGenerator(UUID.randomUUID());
+    }
+}
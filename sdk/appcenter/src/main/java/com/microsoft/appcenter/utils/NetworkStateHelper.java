@@ -132,6 +132,20 @@ public class NetworkStateHelper implements Closeable {
         return mConnected.get() || isAnyNetworkConnected();
     }
 
+    /**
+     * Check whether the active network is metered (cellular data for example).
+     *
+     * @return true if metered or unknown, false if the network is unmetered.
+     */
+    public boolean isNetworkMetered() {
+        try {
+            return mConnectivityManager.isActiveNetworkMetered();
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot access network state information.", e);
+            return true;
+        }
+    }
+
     /**
      * Check if any network is connected.
      *
@@ -7,18 +7,26 @@ package com.microsoft.appcenter.utils;
 
 import android.support.annotation.VisibleForTesting;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Ticket cache for One Collector protocol.
+ * Tickets are read for every request and only written when a token is refreshed,
+ * so reads are lock free on an immutable snapshot that is replaced on every write.
  */
 public class TicketCache {
 
     /**
-     * Cache backed by a simple map.
+     * Current snapshot of tickets by key.
      */
-    private static final Map<String, String> sTickets = new HashMap<>();
+    private static volatile Map<String, String> sTickets = Collections.emptyMap();
+
+    /**
+     * Incremented every time a ticket changes, so that values derived from tickets can be invalidated.
+     */
+    private static volatile int sVersion;
 
     /**
      * Get cached ticket.
@@ -36,12 +44,25 @@ public class TicketCache {
      * @param key   ticket key.
      * @param value ticket value.
      */
-    public static void putTicket(String key, String value) {
-        sTickets.put(key, value);
+    public static synchronized void putTicket(String key, String value) {
+        Map<String, String> tickets = new HashMap<>(sTickets);
+        tickets.put(key, value);
+        sTickets = Collections.unmodifiableMap(tickets);
+        sVersion++;
+    }
+
+    /**
+     * Get the version of the tickets.
+     *
+     * @return a value that changes every time a ticket is inserted or updated.
+     */
+    public static int getVersion() {
+        return sVersion;
     }
 
     @VisibleForTesting
-    public static void clear() {
-        sTickets.clear();
+    public static synchronized void clear() {
+        sTickets = Collections.emptyMap();
+        sVersion++;
     }
 }
@@ -9,10 +9,13 @@ import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 
+import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import java.io.File;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
@@ -27,14 +30,27 @@ import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 public class SessionContext {
 
     /**
-     * Key used in storage to persist sessions.
+     * Key used in storage to persist sessions when the history file cannot be used, and by previous SDK versions.
      */
     private static final String STORAGE_KEY = "sessions";
 
+    /**
+     * Sub path of the session history file.
+     */
+    @VisibleForTesting
+    static final String HISTORY_FILE = "/appcenter/sessions.bin";
+
     /**
      * Maximum number of sessions to persist the state.
      */
-    private static final int STORAGE_MAX_SESSIONS = 10;
+    @VisibleForTesting
+    static final int STORAGE_MAX_SESSIONS = 10;
+
+    /**
+     * Number of records in the history file after which the file is rewritten when loading.
+     */
+    @VisibleForTesting
+    static final int COMPACTION_THRESHOLD = 4 * STORAGE_MAX_SESSIONS;
 
     /**
      * Separator used for persistent storage format.
@@ -62,14 +78,54 @@ public class SessionContext {
      */
     private final long mAppLaunchTimestamp;
 
+    /**
+     * Session history file, null if the application files directory is not available.
+     */
+    private final SessionHistoryFile mHistoryFile;
+
     /**
      * Init.
      */
     @WorkerThread
     private SessionContext() {
-
-        /* Try loading past sessions from storage. */
         mAppLaunchTimestamp = System.currentTimeMillis();
+        mHistoryFile = Constants.FILES_PATH == null ? null : new SessionHistoryFile(new File(Constants.FILES_PATH + HISTORY_FILE));
+
+        /* Try loading past sessions from storage, migrating them from previous storage if needed. */
+        boolean rewriteHistoryFile;
+        if (mHistoryFile != null && mHistoryFile.exists()) {
+            List<SessionInfo> storedSessions = mHistoryFile.load();
+            if (storedSessions != null) {
+                for (SessionInfo session : storedSessions) {
+                    mSessions.put(session.getTimestamp(), session);
+                }
+            }
+            rewriteHistoryFile = storedSessions == null || storedSessions.size() > COMPACTION_THRESHOLD || mHistoryFile.hasIncompleteRecord();
+        } else {
+            loadStringSessions();
+            rewriteHistoryFile = mHistoryFile != null;
+        }
+        AppCenterLog.debug(LOG_TAG, "Loaded stored sessions: " + mSessions);
+
+        /*
+         * Record a session with no identifier
+         * to avoid correlating log to a session from a previous process.
+         * This is written together with the migration or compaction if any.
+         */
+        if (rewriteHistoryFile) {
+            putSession(null);
+            if (mHistoryFile.rewrite(mSessions.values())) {
+                SharedPreferencesManager.remove(STORAGE_KEY);
+            }
+        } else {
+            addSession(null);
+        }
+    }
+
+    /**
+     * Load sessions from the string set storage.
+     */
+    private void loadStringSessions() {
         Set<String> storedSessions = SharedPreferencesManager.getStringSet(STORAGE_KEY);
         if (storedSessions != null) {
             for (String session : storedSessions) {
@@ -92,13 +148,6 @@ public class SessionContext {
                 }
             }
         }
-        AppCenterLog.debug(LOG_TAG, "Loaded stored sessions: " + mSessions);
-
-        /*
-         * Record a session with no identifier
-         * to avoid correlating log to a session from a previous process.
-         */
-        addSession(null);
     }
 
     @WorkerThread
@@ -121,22 +170,39 @@ public class SessionContext {
      * @param sessionId session identifier.
      */
     public synchronized void addSession(UUID sessionId) {
+        SessionInfo session = putSession(sessionId);
+
+        /* Persist sessions, appending a single record to the history file. */
+        if (mHistoryFile != null) {
+            if (mHistoryFile.exists()) {
+                mHistoryFile.append(session);
+            } else {
+                mHistoryFile.rewrite(mSessions.values());
+            }
+        } else {
+            Set<String> sessionStorage = new LinkedHashSet<>();
+            for (SessionInfo storedSession : mSessions.values()) {
+                sessionStorage.add(storedSession.toString());
+            }
+            SharedPreferencesManager.putStringSet(STORAGE_KEY, sessionStorage);
+        }
+    }
 
-        /* Update session map. */
+    /**
+     * Record a new session in memory.
+     * If maximum capacity of storage has been reached, the oldest sessions are discarded.
+     *
+     * @param sessionId session identifier.
+     * @return the new session.
+     */
+    private SessionInfo putSession(UUID sessionId) {
         long now = System.currentTimeMillis();
-        mSessions.put(now, new SessionInfo(now, sessionId, mAppLaunchTimestamp));
-
-        /* Remove oldest session if we reached maximum storage capacity. */
-        if (mSessions.size() > STORAGE_MAX_SESSIONS) {
+        SessionInfo session = new SessionInfo(now, sessionId, mAppLaunchTimestamp);
+        mSessions.put(now, session);
+        while (mSessions.size() > STORAGE_MAX_SESSIONS) {
             mSessions.pollFirstEntry();
         }
-
-        /* Persist sessions. */
-        Set<String> sessionStorage = new LinkedHashSet<>();
-        for (SessionInfo session : mSessions.values()) {
-            sessionStorage.add(session.toString());
-        }
-        SharedPreferencesManager.putStringSet(STORAGE_KEY, sessionStorage);
+        return session;
     }
 
     /**
@@ -158,6 +224,9 @@ public class SessionContext {
      */
     public synchronized void clearSessions() {
         mSessions.clear();
+        if (mHistoryFile != null) {
+            mHistoryFile.delete();
+        }
         SharedPreferencesManager.remove(STORAGE_KEY);
     }
 
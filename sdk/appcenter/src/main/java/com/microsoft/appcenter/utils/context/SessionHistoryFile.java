@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils.context;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.FileManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Append-only binary file of session history.
+ * Each record has a fixed size: session timestamp, session identifier (most then least significant bits,
+ * both zero when there is no session) and application launch timestamp, as big endian longs.
+ */
+class SessionHistoryFile {
+
+    /**
+     * Size of a session record in bytes.
+     */
+    @VisibleForTesting
+    static final int RECORD_SIZE = 4 * 8;
+
+    /**
+     * History file.
+     */
+    private final File mFile;
+
+    /**
+     * Init.
+     *
+     * @param file history file.
+     */
+    SessionHistoryFile(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * Check if the history file exists.
+     *
+     * @return true if the file exists.
+     */
+    boolean exists() {
+        return mFile.exists();
+    }
+
+    /**
+     * Read all records.
+     *
+     * @return sessions in file order, or null if the file could not be read. An incomplete last record is ignored.
+     */
+    @Nullable
+    List<SessionContext.SessionInfo> load() {
+        byte[] contents = FileManager.readBytes(mFile);
+        if (contents == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        List<SessionContext.SessionInfo> sessions = new ArrayList<>(contents.length / RECORD_SIZE);
+        while (buffer.remaining() >= RECORD_SIZE) {
+            long timestamp = buffer.getLong();
+            long mostSignificantBits = buffer.getLong();
+            long leastSignificantBits = buffer.getLong();
+            long appLaunchTimestamp = buffer.getLong();
+            UUID sessionId = mostSignificantBits == 0 && leastSignificantBits == 0 ? null : new UUID(mostSignificantBits, leastSignificantBits);
+            sessions.add(new SessionContext.SessionInfo(timestamp, sessionId, appLaunchTimestamp));
+        }
+        if (buffer.hasRemaining()) {
+            AppCenterLog.warn(LOG_TAG, "Ignore incomplete session record in history file.");
+        }
+        return sessions;
+    }
+
+    /**
+     * Check if the file has an incomplete record, which happens if the process was killed while appending.
+     *
+     * @return true if the file size is not a multiple of the record size.
+     */
+    boolean hasIncompleteRecord() {
+        return mFile.length() % RECORD_SIZE != 0;
+    }
+
+    /**
+     * Append a record.
+     *
+     * @param session session to append.
+     * @return false if the file could not be updated, in which case it is deleted.
+     */
+    boolean append(@NonNull SessionContext.SessionInfo session) {
+        return write(toBytes(session), true);
+    }
+
+    /**
+     * Replace the file contents.
+     *
+     * @param sessions sessions to write.
+     * @return false if the file could not be written, in which case it is deleted.
+     */
+    boolean rewrite(@NonNull Collection<SessionContext.SessionInfo> sessions) {
+        ByteBuffer buffer = ByteBuffer.allocate(sessions.size() * RECORD_SIZE);
+        for (SessionContext.SessionInfo session : sessions) {
+            putRecord(buffer, session);
+        }
+        return write(buffer.array(), false);
+    }
+
+    /**
+     * Delete the file.
+     */
+    void delete() {
+        FileManager.delete(mFile);
+    }
+
+    private boolean write(byte[] bytes, boolean append) {
+        try {
+            File directory = mFile.getParentFile();
+            if (directory != null) {
+
+                /* Only fails if it already exists or cannot be created, the latter is reported when writing. */
+                //noinspection ResultOfMethodCallIgnored
+                directory.mkdirs();
+            }
+            FileOutputStream outputStream = new FileOutputStream(mFile, append);
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                outputStream.write(bytes);
+            } finally {
+                outputStream.close();
+            }
+            return true;
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to write session history file.", e);
+
+            /* A partially written file is rewritten completely next time. */
+            delete();
+            return false;
+        }
+    }
+
+    private static byte[] toBytes(SessionContext.SessionInfo session) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        putRecord(buffer, session);
+        return buffer.array();
+    }
+
+    private static void putRecord(ByteBuffer buffer, SessionContext.SessionInfo session) {
+        UUID sessionId = session.getSessionId();
+        buffer.putLong(session.getTimestamp());
+        buffer.putLong(sessionId == null ? 0 : sessionId.getMostSignificantBits());
+        buffer.putLong(sessionId == null ? 0 : sessionId.getLeastSignificantBits());
+        buffer.putLong(session.getAppLaunchTimestamp());
+    }
+}
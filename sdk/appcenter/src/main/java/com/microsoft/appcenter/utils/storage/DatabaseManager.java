@@ -180,6 +180,20 @@ public class DatabaseManager implements Closeable {
      * @return If a log was inserted, the database identifier. Otherwise -1.
      */
     public long put(@NonNull ContentValues values, @NonNull String priorityColumn) {
+        return put(values, priorityColumn, null);
+    }
+
+    /**
+     * Stores the entry to the table. If the table is full, the oldest logs are discarded until the
+     * new one can fit. If the log is larger than the max table size, database will be cleared and
+     * the log is not inserted.
+     *
+     * @param values           The entry to be stored.
+     * @param priorityColumn   When storage full and deleting data, use this column to determine which entries to delete first.
+     * @param evictionListener Optional listener called before deleting each entry to make room for the new one.
+     * @return If a log was inserted, the database identifier. Otherwise -1.
+     */
+    public long put(@NonNull ContentValues values, @NonNull String priorityColumn, @Nullable EvictionListener evictionListener) {
         Long id = null;
         Cursor cursor = null;
         try {
@@ -200,6 +214,9 @@ public class DatabaseManager implements Closeable {
                     }
                     if (cursor.moveToNext()) {
                         long deletedId = cursor.getLong(0);
+                        if (evictionListener != null) {
+                            evictionListener.onEvicting(deletedId);
+                        }
                         delete(deletedId);
                         AppCenterLog.debug(LOG_TAG, "Deleted log id=" + deletedId);
                     } else {
@@ -258,6 +275,22 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Deletes the entries that match a where clause.
+     *
+     * @param whereClause The where clause, using ? for arguments.
+     * @param whereArgs   The arguments of the where clause.
+     * @return the number of rows affected.
+     */
+    public int deleteWhere(@NonNull String whereClause, @NonNull String[] whereArgs) {
+        try {
+            return getDatabase().delete(mDefaultTable, whereClause, whereArgs);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to delete values that match condition=\"%s\" and values=\"%s\" from database %s.", whereClause, Arrays.toString(whereArgs), mDatabase), e);
+            return 0;
+        }
+    }
+
     /**
      * Clears the table in the database.
      */
@@ -418,6 +451,19 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Listener for entries deleted to make room for a new entry.
+     */
+    public interface EvictionListener {
+
+        /**
+         * Called before an entry is deleted because the storage is full.
+         *
+         * @param id The database identifier of the entry.
+         */
+        void onEvicting(long id);
+    }
+
     /**
      * Database listener.
      */
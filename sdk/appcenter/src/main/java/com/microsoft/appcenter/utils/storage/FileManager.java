@@ -19,10 +19,13 @@ import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * File manager for internal/external storage access
@@ -146,6 +149,30 @@ public class FileManager {
         }
     }
 
+    /**
+     * Write contents to a file and wait for the storage device to persist them before returning.
+     * Contents are encoded through a small buffer, without copying them to a byte array first.
+     *
+     * @param file     The file instance.
+     * @param contents The content to be written to the file. Must not be empty or whitespace only.
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeAndSync(@NonNull File file, @NonNull String contents) throws IOException {
+        if (TextUtils.isEmpty(contents) || TextUtils.getTrimmedLength(contents) <= 0) {
+            return;
+        }
+        FileOutputStream outputStream = new FileOutputStream(file);
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+            writer.write(contents);
+            writer.flush();
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+    }
+
     /**
      * Get an array of filenames in the path.
      *
@@ -15,6 +15,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
@@ -32,6 +33,7 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -241,6 +243,42 @@ public class AbstractAppCenterServiceTest {
         verifyNoMoreInteractions(channel);
     }
 
+    @Test
+    public void storagePolicyAppliedBeforeAddingGroup() {
+        mService = new AbstractAppCenterService() {
+
+            @Override
+            protected String getGroupName() {
+                return "group_test";
+            }
+
+            @Override
+            public String getServiceName() {
+                return "Test";
+            }
+
+            @Override
+            protected String getLoggerTag() {
+                return "TestLog";
+            }
+
+            @Override
+            protected long getLogTimeToLive() {
+                return 1000;
+            }
+        };
+        Channel channel = mock(Channel.class);
+        mService.onStarted(mock(Context.class), channel, "", null, true);
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).setGroupStoragePolicy(mService.getGroupName(), 1000, 0);
+        inOrder.verify(channel).addGroup(eq(mService.getGroupName()), anyInt(), anyLong(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+
+        /* Applied again when enabling. */
+        mService.setInstanceEnabled(false);
+        mService.setInstanceEnabled(true);
+        verify(channel, times(2)).setGroupStoragePolicy(mService.getGroupName(), 1000, 0);
+    }
+
     @Test
     public void isAppSecretRequired() {
         Assert.assertTrue(mService.isAppSecretRequired());
@@ -16,6 +16,7 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Before;
@@ -43,6 +44,7 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
         DeviceInfoHelper.class,
         HandlerUtils.class,
         IdHelper.class,
+        NetworkStateHelper.class,
         SharedPreferencesManager.class,
         System.class
 })
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static com.microsoft.appcenter.channel.DefaultChannel.BACKLOG_DRAIN_BATCH_SIZE_FACTOR;
+import static com.microsoft.appcenter.channel.DefaultChannel.BACKLOG_DRAIN_PARALLEL_BATCHES_FACTOR;
+import static com.microsoft.appcenter.channel.DefaultChannel.BACKLOG_DRAIN_THRESHOLD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+public class DefaultChannelBacklogDrainTest extends AbstractDefaultChannelTest {
+
+    private static final int MAX_LOGS_PER_BATCH = 50;
+
+    private NetworkStateHelper mNetworkStateHelper;
+
+    private Persistence mPersistence;
+
+    private AppCenterIngestion mIngestion;
+
+    private Channel.Listener mListener;
+
+    @Before
+    public void setUpDrain() {
+        mNetworkStateHelper = mock(NetworkStateHelper.class);
+        mockStatic(NetworkStateHelper.class);
+        when(NetworkStateHelper.getSharedInstance(any(Context.class))).thenReturn(mNetworkStateHelper);
+        mPersistence = mock(Persistence.class);
+        when(mPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        mIngestion = mock(AppCenterIngestion.class);
+        mListener = mock(Channel.Listener.class);
+    }
+
+    private DefaultChannel startChannel(int pendingLogCount) {
+        when(mPersistence.countLogs(TEST_GROUP)).thenReturn(pendingLogCount);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.addListener(mListener);
+        channel.addGroup(TEST_GROUP, MAX_LOGS_PER_BATCH, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        return channel;
+    }
+
+    @Test
+    public void drainBacklogWithLargerAndMoreParallelBatches() {
+        int backlog = BACKLOG_DRAIN_THRESHOLD * 2;
+        DefaultChannel channel = startChannel(backlog);
+        assertTrue(channel.getGroupState(TEST_GROUP).mDrainingBacklog);
+        verify(mListener).onBacklogDrainProgress(TEST_GROUP, 0, backlog);
+
+        /* Batches are larger and more of them are sent in parallel. */
+        int maxLogsPerBatch = MAX_LOGS_PER_BATCH * BACKLOG_DRAIN_BATCH_SIZE_FACTOR;
+        int maxParallelBatches = MAX_PARALLEL_BATCHES * BACKLOG_DRAIN_PARALLEL_BATCHES_FACTOR;
+        verify(mPersistence, times(maxParallelBatches)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(maxLogsPerBatch), anyListOf(Log.class));
+        verify(mIngestion, times(maxParallelBatches)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(backlog - maxLogsPerBatch * maxParallelBatches, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void drainStopsWhenBacklogIsCleared() {
+        when(mIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = startChannel(BACKLOG_DRAIN_THRESHOLD);
+
+        /* Progress is reported after each batch then the channel is back to normal. */
+        int maxLogsPerBatch = MAX_LOGS_PER_BATCH * BACKLOG_DRAIN_BATCH_SIZE_FACTOR;
+        verify(mIngestion, times(BACKLOG_DRAIN_THRESHOLD / maxLogsPerBatch)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mListener).onBacklogDrainProgress(TEST_GROUP, maxLogsPerBatch, BACKLOG_DRAIN_THRESHOLD - maxLogsPerBatch);
+        verify(mListener).onBacklogDrained(TEST_GROUP, BACKLOG_DRAIN_THRESHOLD);
+        assertFalse(channel.getGroupState(TEST_GROUP).mDrainingBacklog);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void noDrainOnMeteredNetwork() {
+        when(mNetworkStateHelper.isNetworkMetered()).thenReturn(true);
+        DefaultChannel channel = startChannel(BACKLOG_DRAIN_THRESHOLD);
+        assertFalse(channel.getGroupState(TEST_GROUP).mDrainingBacklog);
+        verify(mListener, never()).onBacklogDrainProgress(anyString(), anyInt(), anyInt());
+        verify(mPersistence, times(MAX_PARALLEL_BATCHES)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(MAX_LOGS_PER_BATCH), anyListOf(Log.class));
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void noDrainBelowThreshold() {
+        DefaultChannel channel = startChannel(BACKLOG_DRAIN_THRESHOLD - 1);
+        assertFalse(channel.getGroupState(TEST_GROUP).mDrainingBacklog);
+        verify(mNetworkStateHelper, never()).isNetworkMetered();
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void drainStopsWhenNetworkBecomesMetered() {
+        when(mNetworkStateHelper.isNetworkMetered()).thenReturn(false, true);
+        DefaultChannel channel = startChannel(BACKLOG_DRAIN_THRESHOLD * 2);
+
+        /* First batch is large, then the channel goes back to normal batches. */
+        assertFalse(channel.getGroupState(TEST_GROUP).mDrainingBacklog);
+        verify(mListener).onBacklogDrained(TEST_GROUP, 0);
+        verify(mPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(MAX_LOGS_PER_BATCH * BACKLOG_DRAIN_BATCH_SIZE_FACTOR), anyListOf(Log.class));
+        verify(mPersistence, times(MAX_PARALLEL_BATCHES - 1)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(MAX_LOGS_PER_BATCH), anyListOf(Log.class));
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void suspendStopsDrain() {
+        DefaultChannel channel = startChannel(BACKLOG_DRAIN_THRESHOLD);
+        assertTrue(channel.getGroupState(TEST_GROUP).mDrainingBacklog);
+        channel.setEnabled(false);
+        assertFalse(channel.getGroupState(TEST_GROUP).mDrainingBacklog);
+        verify(mListener).onBacklogDrained(TEST_GROUP, 0);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultChannelCriticalLogsTest extends AbstractDefaultChannelTest {
+
+    @Test
+    public void criticalLogSentWithoutWaitingForBatchTimeInterval() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Normal log waits for the timer. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.NORMAL);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Critical log is sent immediately, alone. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+        verify(mockPersistence).getCriticalLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class));
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+
+        /* Normal log is still pending. */
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+    }
+
+    @Test
+    public void criticalLogUsesReservedBatch() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Fill all parallel batches with normal logs that never complete. */
+        for (int i = 0; i < MAX_PARALLEL_BATCHES + 1; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.NORMAL);
+        }
+        verify(mockIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Critical log is still sent using the reserved batch. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+        verify(mockIngestion, times(MAX_PARALLEL_BATCHES + 1)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(MAX_PARALLEL_BATCHES + DefaultChannel.CRITICAL_RESERVED_BATCHES, channel.getGroupState(TEST_GROUP).mSendingBatches.size());
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* But there are no more reserved batches for the next critical log. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+        verify(mockIngestion, times(MAX_PARALLEL_BATCHES + 1)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+    }
+
+    @Test
+    public void criticalLogSentWhileSuspendedByNormalLogs() throws IOException {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer(new SocketException()))
+                .then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Normal log fails with a recoverable error, channel is suspended. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.NORMAL);
+        assertFalse(channel.isEnabled());
+        verify(mockPersistence).clearPendingLogState();
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Critical log is still sent and its success resumes the channel which sends the normal log. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+        assertTrue(channel.isEnabled());
+        verify(mockIngestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, times(2)).deleteLogs(eq(TEST_GROUP), anyString());
+
+        /* The ingestion shared with other groups was never closed nor reopened. */
+        verify(mockIngestion, never()).close();
+        verify(mockIngestion, never()).reopen();
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void normalCallsCancelledWhenSuspendedByNormalLogs() throws IOException {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        ServiceCall pendingCall = mock(ServiceCall.class);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture())).thenReturn(pendingCall);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Send 2 batches of normal logs, the first one fails with a recoverable error. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.NORMAL);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.NORMAL);
+        callback.getAllValues().get(0).onCallFailed(new SocketException());
+
+        /* The other call is cancelled but the ingestion stays open for critical logs. */
+        assertFalse(channel.isEnabled());
+        verify(pendingCall).cancel();
+        verify(mockIngestion, never()).close();
+        assertTrue(channel.getGroupState(TEST_GROUP).mSendingCalls.isEmpty());
+    }
+
+    @Test
+    public void criticalLogFailureKeepsChannelSuspended() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer(new SocketException()))
+                .then(getSendAsyncAnswer(new SocketException()))
+                .then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Normal log fails then critical log fails too. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.NORMAL);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertFalse(channel.isEnabled());
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+
+        /* Next critical log is not sent anymore. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+
+        /* Enabling the channel sends everything again. */
+        channel.setEnabled(true);
+        assertTrue(channel.isEnabled());
+        verify(mockIngestion, times(5)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+    }
+
+    @Test
+    public void disablingWhileSuspendedStopsCriticalLogs() throws IOException {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new SocketException()));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Suspend by a normal log failure then disable, ingestion is only closed when disabling. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.NORMAL);
+        verify(mockIngestion, never()).close();
+        channel.setEnabled(false);
+        verify(mockIngestion).close();
+
+        /* Critical log is not sent. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.CRITICAL);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockIngestion, never()).reopen();
+    }
+
+    @Test
+    public void criticalLogCountRestoredFromStorage() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(3);
+        when(mockPersistence.countCriticalLogs(TEST_GROUP)).thenReturn(2);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Critical logs stored by a previous process are sent in the reserved batch. */
+        verify(mockPersistence).getCriticalLogs(eq(TEST_GROUP), anyListOf(String.class), eq(2), anyListOf(Log.class));
+        assertEquals(DefaultChannel.CRITICAL_RESERVED_BATCHES, channel.getGroupState(TEST_GROUP).mCriticalBatchIds.size());
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+    }
+
+    @Test
+    public void criticalLogCountFollowsLogsReturned() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
+        when(mockPersistence.countCriticalLogs(TEST_GROUP)).thenReturn(3);
+
+        /* Only one critical log is returned, the others belong to a paused target. */
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(0));
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(4, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+    }
+}
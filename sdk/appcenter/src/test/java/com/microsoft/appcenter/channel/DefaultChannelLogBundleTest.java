@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogBundle;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultChannelLogBundleTest extends AbstractDefaultChannelTest {
+
+    private static Answer<String> getGetBundleAnswer(final LogBundle bundle) {
+        return new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                ((List<Log>) invocation.getArguments()[3]).add(bundle);
+                return UUID.randomUUID().toString();
+            }
+        };
+    }
+
+    @Test
+    public void bundleSentInOneRequest() throws Persistence.PersistenceException {
+        Log errorLog = mock(Log.class);
+        Log firstAttachment = mock(Log.class);
+        Log secondAttachment = mock(Log.class);
+        LogBundle bundle = new LogBundle();
+        bundle.setLogs(Arrays.asList(errorLog, firstAttachment, secondAttachment));
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetBundleAnswer(bundle));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Bundle is persisted as a single log and counted once. */
+        channel.enqueue(bundle, TEST_GROUP, Flags.CRITICAL);
+        verify(mockPersistence).putLog(bundle, TEST_GROUP, Flags.CRITICAL);
+        verify(mockPersistence).getCriticalLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class));
+
+        /* All bundled logs are sent in the same request. */
+        ArgumentCaptor<LogContainer> container = ArgumentCaptor.forClass(LogContainer.class);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), container.capture(), any(ServiceCallback.class));
+        assertEquals(bundle.getLogs(), container.getValue().getLogs());
+
+        /* And deleted together, the group listener is called for each of them. */
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+        for (Log log : bundle.getLogs()) {
+            verify(mockListener).onBeforeSending(log);
+            verify(mockListener).onSuccess(log);
+        }
+        verify(mockListener, never()).onBeforeSending(bundle);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void bundlesShareRequestWithoutBeingSplit() {
+        final LogBundle firstBundle = new LogBundle();
+        firstBundle.setLogs(Arrays.asList(mock(Log.class), mock(Log.class)));
+        final LogBundle secondBundle = new LogBundle();
+        secondBundle.setLogs(Arrays.asList(mock(Log.class), mock(Log.class)));
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                ((List<Log>) invocation.getArguments()[3]).addAll(Arrays.<Log>asList(firstBundle, secondBundle));
+                return UUID.randomUUID().toString();
+            }
+        });
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mock(Channel.GroupListener.class));
+
+        /* A batch counts bundles, not their logs: both bundles are sent whole in the same request. */
+        channel.enqueue(firstBundle, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(secondBundle, TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<LogContainer> container = ArgumentCaptor.forClass(LogContainer.class);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), container.capture(), any(ServiceCallback.class));
+        List<Log> expectedLogs = new ArrayList<>(firstBundle.getLogs());
+        expectedLogs.addAll(secondBundle.getLogs());
+        assertEquals(expectedLogs, container.getValue().getLogs());
+    }
+
+    @Test
+    public void bundleRetriedTogether() {
+        LogBundle bundle = new LogBundle();
+        bundle.setLogs(Arrays.asList(mock(Log.class), mock(Log.class)));
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        when(mockPersistence.getCriticalLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetBundleAnswer(bundle));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer(new SocketException()));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Recoverable failure keeps the bundle as one pending log, none of its logs fails. */
+        channel.enqueue(bundle, TEST_GROUP, Flags.CRITICAL);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, never()).deleteLogs(eq(TEST_GROUP), anyString());
+        verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+    }
+
+    @Test
+    public void filteredLogsRemovedFromBundle() throws Persistence.PersistenceException {
+        final Log filteredLog = mock(Log.class);
+        Log keptLog = mock(Log.class);
+        LogBundle bundle = new LogBundle();
+        bundle.setLogs(Arrays.asList(filteredLog, keptLog));
+        Persistence mockPersistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        when(listener.shouldFilter(filteredLog)).thenReturn(true);
+        channel.addListener(listener);
+        channel.enqueue(bundle, TEST_GROUP, Flags.CRITICAL);
+        verify(listener).onPreparedLog(filteredLog, TEST_GROUP, Flags.CRITICAL);
+        verify(listener).onPreparedLog(keptLog, TEST_GROUP, Flags.CRITICAL);
+        verify(listener, never()).onPreparingLog(bundle, TEST_GROUP);
+        assertEquals(Collections.singletonList(keptLog), bundle.getLogs());
+        verify(mockPersistence).putLog(bundle, TEST_GROUP, Flags.CRITICAL);
+
+        /* A bundle without any log left is not persisted. */
+        LogBundle filteredBundle = new LogBundle();
+        filteredBundle.setLogs(new ArrayList<>(Collections.singletonList(filteredLog)));
+        channel.enqueue(filteredBundle, TEST_GROUP, Flags.CRITICAL);
+        verify(mockPersistence, never()).putLog(filteredBundle, TEST_GROUP, Flags.CRITICAL);
+    }
+
+    @Test
+    public void bundlePersistenceFailureNotifiesEachLog() throws Persistence.PersistenceException {
+        LogBundle bundle = new LogBundle();
+        bundle.setLogs(Arrays.asList(mock(Log.class), mock(Log.class)));
+        Persistence mockPersistence = mock(Persistence.class);
+        Persistence.PersistenceException exception = new Persistence.PersistenceException("mock", new IOException("mock"));
+        when(mockPersistence.putLog(any(Log.class), anyString(), anyInt())).thenThrow(exception);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.enqueue(bundle, TEST_GROUP, Flags.CRITICAL);
+        for (Log log : bundle.getLogs()) {
+            verify(mockListener).onBeforeSending(log);
+            verify(mockListener).onFailure(log, exception);
+        }
+        verify(mockListener, times(2)).onFailure(any(Log.class), eq(exception));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+}
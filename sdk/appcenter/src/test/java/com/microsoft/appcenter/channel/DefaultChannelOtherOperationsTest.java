@@ -14,11 +14,14 @@ import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.persistence.Persistence;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 
 import java.util.List;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -28,9 +31,11 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -213,4 +218,73 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
         assertTrue(channel.setMaxStorageSize(20480));
         assertFalse(channel.setMaxStorageSize(2));
     }
+
+    @Test
+    public void expiredLogsDeletedWhenAddingGroup() {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.deleteExpiredLogs(TEST_GROUP)).thenReturn(2);
+        when(persistence.countLogs(TEST_GROUP)).thenReturn(1);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+
+        /* Policy is forwarded to persistence. */
+        channel.setGroupStoragePolicy(TEST_GROUP, 1000, 2000);
+        verify(persistence).setGroupStoragePolicy(TEST_GROUP, 1000, 2000);
+
+        /* Expired logs are deleted before counting the remaining ones. */
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).deleteExpiredLogs(TEST_GROUP);
+        inOrder.verify(persistence).countLogs(TEST_GROUP);
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void expiredLogsDeletedBeforeBatchesAtMostOncePerInterval() {
+        Persistence persistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verify(persistence).deleteExpiredLogs(TEST_GROUP);
+
+        /* Expired logs were just deleted when adding the group, a batch sent right after doesn't delete them again. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(persistence).deleteExpiredLogs(TEST_GROUP);
+
+        /* Once the interval elapsed, expired logs are deleted before reading the next batch. */
+        when(System.currentTimeMillis()).thenReturn(DefaultChannel.EXPIRED_LOGS_DELETION_INTERVAL);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).deleteExpiredLogs(TEST_GROUP);
+        inOrder.verify(persistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class));
+        inOrder.verify(persistence).deleteExpiredLogs(TEST_GROUP);
+        inOrder.verify(persistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class));
+        verify(persistence, times(2)).deleteExpiredLogs(TEST_GROUP);
+    }
+
+    @Test
+    public void logsDeletedByPersistenceAreNotCounted() {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.countLogs(TEST_GROUP)).thenReturn(5);
+        when(persistence.countCriticalLogs(TEST_GROUP)).thenReturn(1);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, persistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        ArgumentCaptor<Persistence.Listener> persistenceListener = ArgumentCaptor.forClass(Persistence.Listener.class);
+        verify(persistence).setListener(persistenceListener.capture());
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        channel.addListener(listener);
+
+        /* Deleted logs are not pending anymore and listeners are notified. */
+        persistenceListener.getValue().onLogsDeleted(TEST_GROUP, 2, 1);
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+        verify(listener).onLogsDeleted(TEST_GROUP, 2);
+
+        /* Counts never go below 0. */
+        persistenceListener.getValue().onLogsDeleted(TEST_GROUP, 4, 1);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingCriticalLogCount);
+
+        /* Unknown groups are only reported. */
+        persistenceListener.getValue().onLogsDeleted("other", 1, 0);
+        verify(listener).onLogsDeleted("other", 1);
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultChannelPreparedBatchTest extends AbstractDefaultChannelTest {
+
+    private static final int MAX_LOGS_PER_BATCH = 50;
+
+    private static final int INITIAL_LOG_COUNT = MAX_LOGS_PER_BATCH * (MAX_PARALLEL_BATCHES + 2);
+
+    private Persistence mPersistence;
+
+    private AppCenterIngestion mIngestion;
+
+    private Channel.GroupListener mGroupListener;
+
+    private List<ServiceCallback> mCallbacks;
+
+    private DefaultChannel mChannel;
+
+    @Before
+    public void setUpChannel() {
+        mPersistence = mock(Persistence.class);
+        when(mPersistence.countLogs(TEST_GROUP)).thenReturn(INITIAL_LOG_COUNT);
+        when(mPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class)))
+                .then(getGetLogsAnswer())
+                .then(getGetLogsAnswer())
+                .then(getGetLogsAnswer())
+                .then(getGetLogsAnswer())
+                .then(getGetLogsAnswer())
+                .then(getGetLogsAnswer(0));
+        mIngestion = mock(AppCenterIngestion.class);
+        mCallbacks = new ArrayList<>();
+        when(mIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                mCallbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        mGroupListener = mock(Channel.GroupListener.class);
+        mChannel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        mChannel.addGroup(TEST_GROUP, MAX_LOGS_PER_BATCH, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mGroupListener);
+    }
+
+    @Test
+    public void nextBatchPreparedWhileSending() {
+
+        /* All batches are in use and the next one is already read. */
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mPersistence, times(MAX_PARALLEL_BATCHES + 1)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(MAX_LOGS_PER_BATCH), anyListOf(Log.class));
+        DefaultChannel.GroupState groupState = mChannel.getGroupState(TEST_GROUP);
+        assertNotNull(groupState.mPreparedBatchId);
+        assertEquals(MAX_LOGS_PER_BATCH, groupState.mPendingLogCount);
+
+        /* Listeners are not called until the prepared batch is sent. */
+        verify(mGroupListener, times(MAX_LOGS_PER_BATCH * MAX_PARALLEL_BATCHES)).onBeforeSending(any(Log.class));
+
+        /* When a batch completes, the prepared batch is sent and the last one is prepared. */
+        String preparedBatchId = groupState.mPreparedBatchId;
+        mCallbacks.get(0).onCallSucceeded(new HttpResponse(200, ""));
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES + 1)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mGroupListener, times(MAX_LOGS_PER_BATCH * (MAX_PARALLEL_BATCHES + 1))).onBeforeSending(any(Log.class));
+        assertNotNull(groupState.mSendingBatches.get(preparedBatchId));
+        assertNotNull(groupState.mPreparedBatchId);
+        assertEquals(0, groupState.mPendingLogCount);
+
+        /* Complete everything. */
+        for (int i = 1; i < MAX_PARALLEL_BATCHES + 2; i++) {
+            mCallbacks.get(i).onCallSucceeded(new HttpResponse(200, ""));
+        }
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES + 2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mPersistence, times(MAX_PARALLEL_BATCHES + 2)).deleteLogs(eq(TEST_GROUP), anyString());
+        assertNull(groupState.mPreparedBatchId);
+        verify(mPersistence, never()).clearPendingLogState(anyString(), anyString());
+    }
+
+    @Test
+    public void preparedBatchReleasedWhenPausingTarget() {
+        DefaultChannel.GroupState groupState = mChannel.getGroupState(TEST_GROUP);
+        String preparedBatchId = groupState.mPreparedBatchId;
+        assertNotNull(preparedBatchId);
+        mChannel.pauseGroup(TEST_GROUP, "token");
+        verify(mPersistence).clearPendingLogState(TEST_GROUP, preparedBatchId);
+        assertNull(groupState.mPreparedBatchId);
+        assertEquals(MAX_LOGS_PER_BATCH * 2, groupState.mPendingLogCount);
+    }
+
+    @Test
+    public void preparedBatchReleasedWhenRemovingGroup() {
+        String preparedBatchId = mChannel.getGroupState(TEST_GROUP).mPreparedBatchId;
+        assertNotNull(preparedBatchId);
+        mChannel.removeGroup(TEST_GROUP);
+        verify(mPersistence).clearPendingLogState(TEST_GROUP, preparedBatchId);
+    }
+
+    @Test
+    public void preparedBatchReleasedOnRecoverableFailure() {
+        DefaultChannel.GroupState groupState = mChannel.getGroupState(TEST_GROUP);
+        String preparedBatchId = groupState.mPreparedBatchId;
+        mCallbacks.get(0).onCallFailed(new SocketException());
+        verify(mPersistence).clearPendingLogState(TEST_GROUP, preparedBatchId);
+        verify(mPersistence).clearPendingLogState();
+        assertNull(groupState.mPreparedBatchId);
+
+        /* Remaining logs, prepared batch and failed batch. */
+        assertEquals(MAX_LOGS_PER_BATCH * 3, groupState.mPendingLogCount);
+    }
+
+    @Test
+    public void preparedBatchFailsWhenDisabling() {
+        DefaultChannel.GroupState groupState = mChannel.getGroupState(TEST_GROUP);
+        Log preparedLog = groupState.mPreparedBatch.get(0);
+        mChannel.setEnabled(false);
+        assertNull(groupState.mPreparedBatchId);
+        verify(mGroupListener).onBeforeSending(preparedLog);
+        verify(mGroupListener).onFailure(eq(preparedLog), any(CancellationException.class));
+        verify(mPersistence, never()).clearPendingLogState(anyString(), anyString());
+    }
+
+    @Test
+    public void preparedBatchDroppedWhenClearing() {
+        DefaultChannel.GroupState groupState = mChannel.getGroupState(TEST_GROUP);
+        mChannel.clear(TEST_GROUP);
+        verify(mPersistence).deleteLogs(TEST_GROUP);
+        assertNull(groupState.mPreparedBatchId);
+        verify(mPersistence, never()).clearPendingLogState(anyString(), anyString());
+    }
+}
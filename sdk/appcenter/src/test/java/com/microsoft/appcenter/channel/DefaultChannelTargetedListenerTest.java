@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultChannelTargetedListenerTest extends AbstractDefaultChannelTest {
+
+    private static Log mockLog(String type, Object tag) {
+        Log log = mock(Log.class);
+        when(log.getType()).thenReturn(type);
+        when(log.getTag()).thenReturn(tag);
+        return log;
+    }
+
+    @Test
+    public void taggedListenerCalledOnlyForItsTag() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        Object firstTag = new Object();
+        Object secondTag = new Object();
+        Channel.Listener firstListener = mock(Channel.Listener.class);
+        Channel.Listener secondListener = mock(Channel.Listener.class);
+        channel.addTaggedListener(firstTag, firstListener);
+        channel.addTaggedListener(secondTag, secondListener);
+
+        /* Only the listener bound to the tag is called. */
+        Log firstLog = mockLog("type", firstTag);
+        channel.enqueue(firstLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(firstListener).onPreparingLog(firstLog, TEST_GROUP);
+        verify(firstListener).onPreparedLog(firstLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(firstListener).shouldFilter(firstLog);
+        verify(secondListener, never()).onPreparingLog(any(Log.class), anyString());
+        verify(secondListener, never()).onPreparedLog(any(Log.class), anyString(), anyInt());
+        verify(secondListener, never()).shouldFilter(any(Log.class));
+        verify(mockPersistence).putLog(firstLog, TEST_GROUP, Flags.DEFAULTS);
+
+        /* Untagged logs are not dispatched to tagged listeners. */
+        Log untaggedLog = mockLog("type", null);
+        channel.enqueue(untaggedLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(firstListener, never()).onPreparingLog(untaggedLog, TEST_GROUP);
+        verify(secondListener, never()).onPreparingLog(untaggedLog, TEST_GROUP);
+
+        /* Tagged listener can filter its logs. */
+        Log secondLog = mockLog("type", secondTag);
+        when(secondListener.shouldFilter(secondLog)).thenReturn(true);
+        channel.enqueue(secondLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(secondListener).onPreparedLog(secondLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, never()).putLog(secondLog, TEST_GROUP, Flags.DEFAULTS);
+
+        /* Removed listener is not called anymore. */
+        channel.removeTaggedListener(firstTag);
+        Log thirdLog = mockLog("type", firstTag);
+        channel.enqueue(thirdLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(firstListener, never()).onPreparingLog(thirdLog, TEST_GROUP);
+        verify(mockPersistence).putLog(thirdLog, TEST_GROUP, Flags.DEFAULTS);
+    }
+
+    @Test
+    public void typedListenerCalledOnlyForItsTypeAndGroup() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("otherGroup", 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        channel.addTypedListener(TEST_GROUP, "event", listener);
+
+        /* Called for matching type and group. */
+        Log eventLog = mockLog("event", null);
+        when(listener.shouldFilter(eventLog)).thenReturn(true);
+        channel.enqueue(eventLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(listener).onPreparingLog(eventLog, TEST_GROUP);
+        verify(listener).onPreparedLog(eventLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, never()).putLog(eventLog, TEST_GROUP, Flags.DEFAULTS);
+
+        /* Not called for other types or other groups. */
+        Log pageLog = mockLog("page", null);
+        channel.enqueue(pageLog, TEST_GROUP, Flags.DEFAULTS);
+        Log otherGroupLog = mockLog("event", null);
+        channel.enqueue(otherGroupLog, "otherGroup", Flags.DEFAULTS);
+        verify(listener, never()).onPreparingLog(pageLog, TEST_GROUP);
+        verify(listener, never()).shouldFilter(pageLog);
+        verify(listener, never()).onPreparingLog(otherGroupLog, "otherGroup");
+        verify(listener, never()).shouldFilter(otherGroupLog);
+        verify(mockPersistence).putLog(pageLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).putLog(otherGroupLog, "otherGroup", Flags.DEFAULTS);
+
+        /* A log filtered by a global listener is not passed to typed listeners for filtering. */
+        Channel.Listener globalListener = mock(Channel.Listener.class);
+        Log globallyFilteredLog = mockLog("event", null);
+        when(globalListener.shouldFilter(globallyFilteredLog)).thenReturn(true);
+        channel.addListener(globalListener);
+        channel.enqueue(globallyFilteredLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(listener).onPreparedLog(globallyFilteredLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(listener, never()).shouldFilter(globallyFilteredLog);
+
+        /* Removed listener is not called anymore, removing twice is a no-op. */
+        channel.removeTypedListener(TEST_GROUP, "event", listener);
+        channel.removeTypedListener(TEST_GROUP, "event", listener);
+        channel.removeTypedListener("unknownGroup", "event", listener);
+        Log lastLog = mockLog("event", null);
+        channel.enqueue(lastLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(listener, never()).onPreparingLog(lastLog, TEST_GROUP);
+        verify(mockPersistence).putLog(lastLog, TEST_GROUP, Flags.DEFAULTS);
+    }
+}
@@ -18,6 +18,7 @@ import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
@@ -507,6 +508,41 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mAppCenterHandler, never()).removeCallbacks(any(Runnable.class));
     }
 
+    @Test
+    public void deferredLogsThatCannotBeConvertedFail() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        final Log log = mock(Log.class);
+        final DeferredCommonSchemaLog deferredLog = mock(DeferredCommonSchemaLog.class);
+        IllegalArgumentException conversionError = new IllegalArgumentException();
+        when(deferredLog.getConversionError()).thenReturn(conversionError);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                List<Log> logs = (List<Log>) invocation.getArguments()[3];
+                logs.add(log);
+                logs.add(deferredLog);
+                return UUID.randomUUID().toString();
+            }
+        });
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Enqueuing 2 logs sends a batch. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).deleteLogs(any(String.class), any(String.class));
+
+        /* The log that could not be converted is reported as failed even if the batch succeeded. */
+        verify(mockListener).onSuccess(log);
+        verify(mockListener).onFailure(deferredLog, conversionError);
+        verify(mockListener, never()).onSuccess(deferredLog);
+    }
+
     @Test
     public void errorLogRecoverable() throws Persistence.PersistenceException {
         Persistence mockPersistence = mock(Persistence.class);
@@ -10,13 +10,16 @@ import android.content.Context;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.OneCollectorIngestion;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.Extensions;
 import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.SdkExtension;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 
 import java.util.Arrays;
@@ -36,6 +39,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -185,6 +189,98 @@ public class OneCollectorChannelListenerTest {
         assertNotEquals(log3.getExt().getSdk().getEpoch(), log4.getExt().getSdk().getEpoch());
     }
 
+    @Test
+    public void enqueueDeferredLogs() {
+
+        /* Mock original log. */
+        Log originalLog = mock(Log.class);
+        when(originalLog.getTransmissionTargetTokens()).thenReturn(new HashSet<>(Arrays.asList("t1-key", "t2-key")));
+
+        /* Init listener with lazy conversion. */
+        Channel channel = mock(Channel.class);
+        DefaultLogSerializer logSerializer = mock(DefaultLogSerializer.class);
+        when(logSerializer.validateCommonSchemaLog(originalLog)).thenReturn(true);
+        UUID installId = UUID.randomUUID();
+        OneCollectorChannelListener listener = new OneCollectorChannelListener(channel, logSerializer, createHttpClient(mock(Context.class)), installId);
+        listener.setLazyConversion(true);
+        listener.onPreparedLog(originalLog, TEST_GROUP, CRITICAL);
+        listener.onPreparedLog(originalLog, TEST_GROUP, CRITICAL);
+
+        /* Verify logs are only validated and enqueued with their source, one per target. */
+        verify(logSerializer, times(2)).validateCommonSchemaLog(originalLog);
+        verifyNoMoreInteractions(logSerializer);
+        ArgumentCaptor<DeferredCommonSchemaLog> logs = ArgumentCaptor.forClass(DeferredCommonSchemaLog.class);
+        verify(channel, times(4)).enqueue(logs.capture(), eq(TEST_GROUP + ONE_COLLECTOR_GROUP_NAME_SUFFIX), eq(CRITICAL));
+        for (DeferredCommonSchemaLog log : logs.getAllValues()) {
+            assertSame(originalLog, log.getSource());
+            assertEquals(1, log.getTransmissionTargetTokens().size());
+            assertEquals(Long.valueOf(CRITICAL), log.getFlags());
+            assertNotNull(log.getExt().getSdk().getEpoch());
+            assertEquals(installId, log.getExt().getSdk().getInstallId());
+        }
+
+        /* Verify sequence numbers per target. */
+        DeferredCommonSchemaLog first = logs.getAllValues().get(0);
+        DeferredCommonSchemaLog second = logs.getAllValues().get(2);
+        assertEquals(first.getTransmissionTargetTokens(), second.getTransmissionTargetTokens());
+        assertEquals(first.getExt().getSdk().getEpoch(), second.getExt().getSdk().getEpoch());
+        assertEquals(Long.valueOf(1), first.getExt().getSdk().getSeq());
+        assertEquals(Long.valueOf(2), second.getExt().getSdk().getSeq());
+        assertNotEquals(first.getExt().getSdk().getEpoch(), logs.getAllValues().get(1).getExt().getSdk().getEpoch());
+
+        /* Deferred logs are not converted again. */
+        listener.onPreparedLog(first, TEST_GROUP + ONE_COLLECTOR_GROUP_NAME_SUFFIX, CRITICAL);
+        assertFalse(listener.shouldFilter(first));
+        verify(channel, times(4)).enqueue(any(Log.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void doNotEnqueueDeferredLogsThatCannotBeConverted() {
+
+        /* Mock original logs. */
+        Log invalidLog = mock(Log.class);
+        when(invalidLog.getTransmissionTargetTokens()).thenReturn(Collections.singleton("t1-key"));
+        Log unsupportedLog = mock(Log.class);
+        when(unsupportedLog.getTransmissionTargetTokens()).thenReturn(Collections.singleton("t1-key"));
+        DefaultLogSerializer logSerializer = mock(DefaultLogSerializer.class);
+        when(logSerializer.validateCommonSchemaLog(invalidLog)).thenThrow(new IllegalArgumentException());
+        when(logSerializer.validateCommonSchemaLog(unsupportedLog)).thenReturn(false);
+
+        /* Init listener with lazy conversion. */
+        Channel channel = mock(Channel.class);
+        OneCollectorChannelListener listener = new OneCollectorChannelListener(channel, logSerializer, createHttpClient(mock(Context.class)), UUID.randomUUID());
+        listener.setLazyConversion(true);
+        listener.onPreparedLog(invalidLog, TEST_GROUP, DEFAULTS);
+        listener.onPreparedLog(unsupportedLog, TEST_GROUP, DEFAULTS);
+
+        /* Verify logs are validated when prepared and not enqueued. */
+        verify(logSerializer, never()).toCommonSchemaLog(any(Log.class));
+        verify(channel, never()).enqueue(any(Log.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void validateDeferredLogsByConvertingWithOtherSerializers() {
+
+        /* Mock original logs, only one of them is converted. */
+        Log validLog = mock(Log.class);
+        when(validLog.getTransmissionTargetTokens()).thenReturn(Collections.singleton("t1-key"));
+        Log unsupportedLog = mock(Log.class);
+        when(unsupportedLog.getTransmissionTargetTokens()).thenReturn(Collections.singleton("t1-key"));
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.toCommonSchemaLog(validLog)).thenReturn(Collections.singletonList(mock(CommonSchemaLog.class)));
+        when(logSerializer.toCommonSchemaLog(unsupportedLog)).thenReturn(Collections.<CommonSchemaLog>emptyList());
+
+        /* Init listener with lazy conversion. */
+        Channel channel = mock(Channel.class);
+        OneCollectorChannelListener listener = new OneCollectorChannelListener(channel, logSerializer, createHttpClient(mock(Context.class)), UUID.randomUUID());
+        listener.setLazyConversion(true);
+        listener.onPreparedLog(validLog, TEST_GROUP, DEFAULTS);
+        listener.onPreparedLog(unsupportedLog, TEST_GROUP, DEFAULTS);
+
+        /* Only the log that could be converted is enqueued, still deferred. */
+        verify(channel).enqueue(any(DeferredCommonSchemaLog.class), anyString(), anyInt());
+    }
+
     @Test
     public void validateCommonSchemaLogs() {
 
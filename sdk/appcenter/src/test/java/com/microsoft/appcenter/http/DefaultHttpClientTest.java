@@ -254,6 +254,30 @@ public class DefaultHttpClientTest {
         AppCenterLog.verbose(AppCenterLog.LOG_TAG, prettyString);
     }
 
+    @Test
+    public void postWithoutBodySkipsRequest() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+
+        /* Configure API client with nothing to send. */
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn(null);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+
+        /* The call succeeds through the callback without sending anything. */
+        verify(serviceCallback).onCallSucceeded(null);
+        verifyNoMoreInteractions(serviceCallback);
+        verify(callTemplate, never()).onBeforeCalling(any(URL.class), anyMapOf(String.class, String.class));
+        verify(urlConnection, never()).setDoOutput(true);
+        verify(urlConnection, never()).getResponseCode();
+        verify(urlConnection).disconnect();
+    }
+
     @Test
     public void post200WithoutCallTemplate() throws Exception {
 
@@ -293,6 +317,45 @@ public class DefaultHttpClientTest {
         assertEquals("", sentPayload);
     }
 
+    @Test
+    public void post200Streamed() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Configure streaming template. */
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{a:\"@file:data\"}");
+        when(callTemplate.isStreamed()).thenReturn(true);
+        doAnswer(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream outputStream = (OutputStream) invocation.getArguments()[1];
+                outputStream.write("{a:\"AAEC\"}".getBytes("UTF-8"));
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(anyString(), any(OutputStream.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient(false);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "OK", Collections.<String, String>emptyMap()));
+        verify(urlConnection).setDoOutput(true);
+        verify(urlConnection).setChunkedStreamingMode(anyInt());
+        verify(urlConnection, never()).setFixedLengthStreamingMode(anyInt());
+        verify(callTemplate).writeRequestBody(eq("{a:\"@file:data\"}"), any(OutputStream.class));
+        httpClient.close();
+
+        /* Verify payload written by the template. */
+        assertEquals("{a:\"AAEC\"}", buffer.toString("UTF-8"));
+    }
+
     @Test
     public void get200() throws Exception {
 
@@ -8,6 +8,7 @@ package com.microsoft.appcenter.ingestion;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.http.DefaultHttpClient;
 import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
@@ -15,6 +16,7 @@ import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.DeferredCommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.Extensions;
 import com.microsoft.appcenter.ingestion.models.one.ProtocolExtension;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -41,6 +43,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -58,12 +61,15 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
@@ -177,6 +183,85 @@ public class OneCollectorIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void convertDeferredLogsWhenSending() throws Exception {
+        mockStatic(AppCenterLog.class);
+
+        /* Build some payload. */
+        Extensions ext = new Extensions() {{
+            setProtocol(new ProtocolExtension());
+        }};
+        LogSerializer serializer = mock(LogSerializer.class);
+        CommonSchemaLog convertedLog = mock(CommonSchemaLog.class);
+        when(serializer.serializeLog(convertedLog)).thenReturn("mockPayload");
+        final DeferredCommonSchemaLog log1 = mock(DeferredCommonSchemaLog.class);
+        when(log1.toCommonSchemaLog(serializer)).thenReturn(convertedLog);
+        final DeferredCommonSchemaLog log2 = mock(DeferredCommonSchemaLog.class);
+        IllegalArgumentException conversionError = new IllegalArgumentException();
+        when(log2.toCommonSchemaLog(serializer)).thenThrow(conversionError);
+        final DeferredCommonSchemaLog log3 = mock(DeferredCommonSchemaLog.class);
+        when(log3.toCommonSchemaLog(serializer)).thenReturn(null);
+        when(log3.getSource()).thenReturn(mock(Log.class));
+        for (CommonSchemaLog log : Arrays.asList(log1, log2, log3, convertedLog)) {
+            when(log.getExt()).thenReturn(ext);
+            when(log.getTransmissionTargetTokens()).thenReturn(Collections.singleton("token1"));
+        }
+        LogContainer container = new LogContainer() {{
+            setLogs(Arrays.<Log>asList(log1, log2, log3));
+        }};
+
+        /* Configure mock HTTP. */
+        ArgumentCaptor<HttpClient.CallTemplate> callTemplate = ArgumentCaptor.forClass(HttpClient.CallTemplate.class);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), callTemplate.capture(), same(serviceCallback))).thenReturn(mock(ServiceCall.class));
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, serializer);
+        ingestion.sendAsync(null, null, container, serviceCallback);
+
+        /* Logs are not converted on the calling thread. */
+        verify(log1, never()).toCommonSchemaLog(serializer);
+
+        /* Logs that cannot be converted are skipped and marked with the error when building the body, for the channel to report them. */
+        assertEquals("mockPayload\n", callTemplate.getValue().buildRequestBody());
+        verify(log1, never()).setConversionError(any(IllegalArgumentException.class));
+        verify(log2).setConversionError(conversionError);
+        verify(log3).setConversionError(any(IllegalArgumentException.class));
+        verifyStatic(times(2));
+        AppCenterLog.error(anyString(), anyString());
+        verify(serializer, never()).serializeLog(log1);
+
+        /* Logs are converted only once if the call is retried. */
+        assertEquals("mockPayload\n", callTemplate.getValue().buildRequestBody());
+        verify(log1).toCommonSchemaLog(serializer);
+    }
+
+    @Test
+    public void doNotSendEmptyRequest() throws Exception {
+        mockStatic(AppCenterLog.class);
+
+        /* Build a payload where no log can be converted. */
+        LogSerializer serializer = mock(LogSerializer.class);
+        final DeferredCommonSchemaLog log = mock(DeferredCommonSchemaLog.class);
+        IllegalArgumentException conversionError = new IllegalArgumentException();
+        when(log.toCommonSchemaLog(serializer)).thenThrow(conversionError);
+        when(log.getExt()).thenReturn(new Extensions() {{
+            setProtocol(new ProtocolExtension());
+        }});
+        when(log.getTransmissionTargetTokens()).thenReturn(Collections.singleton("token1"));
+        LogContainer container = new LogContainer() {{
+            setLogs(Collections.<Log>singletonList(log));
+        }};
+        ArgumentCaptor<HttpClient.CallTemplate> callTemplate = ArgumentCaptor.forClass(HttpClient.CallTemplate.class);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), callTemplate.capture(), same(serviceCallback))).thenReturn(mock(ServiceCall.class));
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, serializer);
+        assertNotNull(ingestion.sendAsync(null, null, container, serviceCallback));
+
+        /* The call is made asynchronously, the body is empty so that the request is skipped, and the log is marked as failed. */
+        verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
+        assertNull(callTemplate.getValue().buildRequestBody());
+        verify(log).setConversionError(conversionError);
+    }
+
     @Test
     public void passTicketsDebug() {
         Constants.APPLICATION_DEBUGGABLE = true;
@@ -236,6 +321,53 @@ public class OneCollectorIngestionTest {
         return headers;
     }
 
+    @Test
+    public void headersCachedUntilTicketRefreshed() throws Exception {
+
+        /* Build some payload. */
+        final CommonSchemaLog log = mock(CommonSchemaLog.class);
+        TicketCache.putTicket("key1", "value1");
+        Extensions ext = new Extensions() {{
+            setProtocol(new ProtocolExtension() {{
+                setTicketKeys(Collections.singletonList("key1"));
+            }});
+        }};
+        when(log.getExt()).thenReturn(ext);
+        when(log.getTransmissionTargetTokens()).thenReturn(Collections.singleton("token1"));
+        LogContainer container = new LogContainer() {{
+            setLogs(Collections.<Log>singletonList(log));
+        }};
+        ServiceCall call = mock(ServiceCall.class);
+        when(mHttpClient.callAsync(anyString(), anyString(), mHeadersCaptor.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(call);
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, mock(LogSerializer.class));
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+
+        /* Same batch composition reuses header values. */
+        ingestion.sendAsync(null, null, container, serviceCallback);
+        ingestion.sendAsync(null, null, container, serviceCallback);
+        verifyNew(JSONObject.class, times(1)).withNoArguments();
+        List<Map<String, String>> headers = mHeadersCaptor.getAllValues();
+        assertEquals("token1", headers.get(1).get(OneCollectorIngestion.API_KEY));
+        assertEquals("{\"key1\":\"value1\"}", headers.get(1).get(TICKETS));
+
+        /* Refreshing a token invalidates cached values. */
+        TicketCache.putTicket("key1", "value2");
+        ingestion.sendAsync(null, null, container, serviceCallback);
+        verifyNew(JSONObject.class, times(2)).withNoArguments();
+
+        /* Another batch composition builds its own values. */
+        when(log.getTransmissionTargetTokens()).thenReturn(new LinkedHashSet<>(Arrays.asList("token1", "token2")));
+        ingestion.sendAsync(null, null, container, serviceCallback);
+        verifyNew(JSONObject.class, times(3)).withNoArguments();
+        assertEquals("token1,token2", mHeadersCaptor.getValue().get(OneCollectorIngestion.API_KEY));
+
+        /* Same tokens in another order are not served the cached header. */
+        when(log.getTransmissionTargetTokens()).thenReturn(new LinkedHashSet<>(Arrays.asList("token2", "token1")));
+        ingestion.sendAsync(null, null, container, serviceCallback);
+        verifyNew(JSONObject.class, times(4)).withNoArguments();
+        assertEquals("token2,token1", mHeadersCaptor.getValue().get(OneCollectorIngestion.API_KEY));
+    }
+
     @Test
     public void ticketsFailToSerialize() throws Exception {
 
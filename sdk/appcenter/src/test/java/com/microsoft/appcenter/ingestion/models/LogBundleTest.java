@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import com.microsoft.appcenter.test.TestUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.microsoft.appcenter.test.TestUtils.checkEquals;
+import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class LogBundleTest {
+
+    @Test
+    public void compareDifferentType() {
+        TestUtils.compareSelfNullClass(new LogBundle());
+    }
+
+    @Test
+    public void compare() {
+        LogBundle a = new LogBundle();
+        LogBundle b = new LogBundle();
+        checkEquals(a, b);
+        checkEquals(a.getType(), LogBundle.TYPE);
+        List<Log> logs = Collections.singletonList(mock(Log.class));
+        a.setLogs(logs);
+        checkNotEquals(a, b);
+        b.setLogs(logs);
+        checkEquals(a, b);
+    }
+
+    @Test
+    public void expand() {
+        Log first = mock(Log.class);
+        Log second = mock(Log.class);
+        Log third = mock(Log.class);
+        Log fourth = mock(Log.class);
+
+        /* Same list is returned without bundles. */
+        List<Log> logs = Arrays.asList(first, second);
+        assertSame(logs, LogBundle.expand(logs));
+
+        /* Bundles are replaced by their logs in place. */
+        LogBundle bundle = new LogBundle();
+        bundle.setLogs(Arrays.asList(second, third));
+        LogBundle emptyBundle = new LogBundle();
+        logs = new ArrayList<>(Arrays.asList(first, bundle, emptyBundle, fourth));
+        assertEquals(Arrays.asList(first, second, third, fourth), LogBundle.expand(logs));
+        assertEquals(4, logs.size());
+    }
+}
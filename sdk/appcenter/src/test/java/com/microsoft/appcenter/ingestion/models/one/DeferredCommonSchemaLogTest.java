@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.one;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeferredCommonSchemaLogTest {
+
+    private static CommonSchemaLog createConvertedLog(String targetToken) {
+        CommonSchemaLog log = new MockCommonSchemaLog();
+        log.addTransmissionTarget(targetToken);
+        Extensions ext = new Extensions();
+        ext.setProtocol(new ProtocolExtension());
+        ext.setUser(new UserExtension());
+        ext.getUser().setLocalId("c:bob");
+        ext.setDevice(new DeviceExtension());
+        ext.setApp(new AppExtension());
+        ext.getApp().setName("name");
+        ext.getApp().setVer("1.0");
+        ext.setSdk(new SdkExtension());
+        ext.getSdk().setLibVer("appcenter.android-1.0");
+        log.setExt(ext);
+        return log;
+    }
+
+    @Test
+    public void convertAndApplyPreparedFields() {
+        Log source = mock(Log.class);
+        Date timestamp = new Date();
+        when(source.getTimestamp()).thenReturn(timestamp);
+        DeferredCommonSchemaLog log = new DeferredCommonSchemaLog(source, "target2-key");
+        assertEquals("o:target2", log.getIKey());
+        assertEquals(timestamp, log.getTimestamp());
+        assertEquals(Collections.singleton("target2-key"), log.getTransmissionTargetTokens());
+
+        /* Set fields like channel listeners do while preparing the log. */
+        UUID installId = UUID.randomUUID();
+        log.setFlags(2L);
+        log.getExt().getSdk().setEpoch("epoch");
+        log.getExt().getSdk().setSeq(3L);
+        log.getExt().getSdk().setInstallId(installId);
+        log.getExt().getApp().setVer("2.0");
+        log.getExt().getUser().setLocalId("c:alice");
+        log.getExt().getDevice().setLocalId("a:device");
+        log.getExt().getProtocol().setTicketKeys(Collections.singletonList("ticket"));
+
+        /* Only the log of the target is kept. */
+        CommonSchemaLog otherLog = createConvertedLog("target1-key");
+        CommonSchemaLog convertedLog = createConvertedLog("target2-key");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.toCommonSchemaLog(source)).thenReturn(Arrays.asList(otherLog, convertedLog));
+        assertSame(convertedLog, log.toCommonSchemaLog(logSerializer));
+        verify(source).addTransmissionTarget("target2-key");
+
+        /* Prepared fields override converted ones, other fields are kept. */
+        Extensions ext = convertedLog.getExt();
+        assertEquals(Long.valueOf(2), convertedLog.getFlags());
+        assertEquals("epoch", ext.getSdk().getEpoch());
+        assertEquals(Long.valueOf(3), ext.getSdk().getSeq());
+        assertEquals(installId, ext.getSdk().getInstallId());
+        assertEquals("appcenter.android-1.0", ext.getSdk().getLibVer());
+        assertEquals("name", ext.getApp().getName());
+        assertEquals("2.0", ext.getApp().getVer());
+        assertEquals("c:alice", ext.getUser().getLocalId());
+        assertEquals("a:device", ext.getDevice().getLocalId());
+        assertEquals(Collections.singletonList("ticket"), ext.getProtocol().getTicketKeys());
+        assertNull(otherLog.getFlags());
+    }
+
+    @Test
+    public void notConvertedForTarget() {
+        Log source = mock(Log.class);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.toCommonSchemaLog(source)).thenReturn(Collections.<CommonSchemaLog>emptyList());
+        assertNull(new DeferredCommonSchemaLog(source, "target-key").toCommonSchemaLog(logSerializer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSourceLog() {
+        Log source = mock(Log.class);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.toCommonSchemaLog(source)).thenThrow(new IllegalArgumentException());
+        new DeferredCommonSchemaLog(source, "target-key").toCommonSchemaLog(logSerializer);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogIdGeneratorTest {
+
+    @Test
+    public void nextIdIsVersion4() {
+        UUID id = LogIdGenerator.nextId();
+        assertNotNull(id);
+        assertEquals(4, id.version());
+        assertEquals(2, id.variant());
+        assertNotEquals(id, LogIdGenerator.nextId());
+    }
+
+    @Test
+    public void uniqueWithinProcess() {
+        LogIdGenerator generator = new LogIdGenerator(new UUID(0, 0));
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(ids.add(generator.next()));
+        }
+    }
+
+    @Test
+    public void differentSeedsDifferentIds() {
+        LogIdGenerator generator1 = new LogIdGenerator(new UUID(1, 1));
+        LogIdGenerator generator2 = new LogIdGenerator(new UUID(2, 2));
+        assertNotEquals(generator1.next(), generator2.next());
+    }
+
+    @Test
+    public void uniqueFromSeveralThreads() throws InterruptedException {
+        final LogIdGenerator generator = new LogIdGenerator(UUID.randomUUID());
+        final Set<UUID> ids = new HashSet<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    Set<UUID> localIds = new HashSet<>();
+                    for (int i = 0; i < 10000; i++) {
+                        localIds.add(generator.next());
+                    }
+                    synchronized (ids) {
+                        ids.addAll(localIds);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * 10000, ids.size());
+    }
+}
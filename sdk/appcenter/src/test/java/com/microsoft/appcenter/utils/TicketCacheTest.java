@@ -10,6 +10,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 
 public class TicketCacheTest {
@@ -40,4 +41,16 @@ public class TicketCacheTest {
         assertEquals("2", TicketCache.getTicket("key1"));
         assertEquals("1", TicketCache.getTicket("key2"));
     }
+
+    @Test
+    public void versionChangesOnUpdate() {
+        int version = TicketCache.getVersion();
+        TicketCache.putTicket("key1", "1");
+        assertNotEquals(version, TicketCache.getVersion());
+        version = TicketCache.getVersion();
+        assertEquals(version, TicketCache.getVersion());
+        TicketCache.clear();
+        assertNotEquals(version, TicketCache.getVersion());
+        assertNull(TicketCache.getTicket("key1"));
+    }
 }
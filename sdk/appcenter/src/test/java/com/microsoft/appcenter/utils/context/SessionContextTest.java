@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils.context;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.utils.context.SessionContext.COMPACTION_THRESHOLD;
+import static com.microsoft.appcenter.utils.context.SessionContext.HISTORY_FILE;
+import static com.microsoft.appcenter.utils.context.SessionContext.STORAGE_MAX_SESSIONS;
+import static com.microsoft.appcenter.utils.context.SessionHistoryFile.RECORD_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@PrepareForTest({SharedPreferencesManager.class, AppCenterLog.class})
+@RunWith(PowerMockRunner.class)
+public class SessionContextTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mHistoryFile;
+
+    @Before
+    public void setUp() {
+        mockStatic(SharedPreferencesManager.class);
+        mockStatic(AppCenterLog.class);
+        Constants.FILES_PATH = mTemporaryFolder.getRoot().getAbsolutePath();
+        mHistoryFile = new File(Constants.FILES_PATH + HISTORY_FILE);
+        SessionContext.unsetInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Constants.FILES_PATH = null;
+        SessionContext.unsetInstance();
+    }
+
+    @Test
+    public void sessionsAppendedToHistoryFile() throws Exception {
+
+        /* Launch record is written when loading. */
+        SessionContext sessionContext = SessionContext.getInstance();
+        assertEquals(RECORD_SIZE, mHistoryFile.length());
+        assertNull(sessionContext.getSessionAt(System.currentTimeMillis()).getSessionId());
+
+        /* Each session appends one record. */
+        Thread.sleep(2);
+        UUID sessionId = UUID.randomUUID();
+        sessionContext.addSession(sessionId);
+        long sessionTime = System.currentTimeMillis();
+        assertEquals(2 * RECORD_SIZE, mHistoryFile.length());
+        verifyStatic(never());
+        SharedPreferencesManager.putStringSet(anyString(), anySetOf(String.class));
+
+        /* Sessions are reloaded in next process, which records its own launch. */
+        Thread.sleep(2);
+        SessionContext.unsetInstance();
+        sessionContext = SessionContext.getInstance();
+        assertEquals(3 * RECORD_SIZE, mHistoryFile.length());
+        SessionContext.SessionInfo session = sessionContext.getSessionAt(sessionTime);
+        assertNotNull(session);
+        assertEquals(sessionId, session.getSessionId());
+        assertNull(sessionContext.getSessionAt(System.currentTimeMillis()).getSessionId());
+
+        /* Clear deletes the file. */
+        sessionContext.clearSessions();
+        assertFalse(mHistoryFile.exists());
+        assertNull(sessionContext.getSessionAt(System.currentTimeMillis()));
+
+        /* File is written again completely when it was deleted. */
+        sessionContext.addSession(sessionId);
+        assertEquals(RECORD_SIZE, mHistoryFile.length());
+    }
+
+    @Test
+    public void migrateStringSessions() {
+        UUID sessionId = UUID.randomUUID();
+        when(SharedPreferencesManager.getStringSet("sessions")).thenReturn(Collections.singleton("100/" + sessionId + "/99"));
+        SessionContext sessionContext = SessionContext.getInstance();
+        SessionContext.SessionInfo session = sessionContext.getSessionAt(150);
+        assertNotNull(session);
+        assertEquals(sessionId, session.getSessionId());
+        assertEquals(99, session.getAppLaunchTimestamp());
+
+        /* Migrated with the launch record in a single write. */
+        assertEquals(2 * RECORD_SIZE, mHistoryFile.length());
+        verifyStatic();
+        SharedPreferencesManager.remove("sessions");
+
+        /* String storage is not read anymore. */
+        SessionContext.unsetInstance();
+        when(SharedPreferencesManager.getStringSet("sessions")).thenReturn(null);
+        session = SessionContext.getInstance().getSessionAt(150);
+        assertNotNull(session);
+        assertEquals(sessionId, session.getSessionId());
+    }
+
+    @Test
+    public void compactHistoryFileWithIncompleteRecord() throws Exception {
+        List<SessionContext.SessionInfo> sessions = new ArrayList<>();
+        for (int i = 1; i <= COMPACTION_THRESHOLD + 1; i++) {
+            sessions.add(new SessionContext.SessionInfo(i, UUID.randomUUID(), 0));
+        }
+        assertTrue(new SessionHistoryFile(mHistoryFile).rewrite(sessions));
+
+        /* Simulate a process killed while appending a record. */
+        FileOutputStream outputStream = new FileOutputStream(mHistoryFile, true);
+        outputStream.write(new byte[RECORD_SIZE / 2]);
+        outputStream.close();
+
+        /* Only the most recent sessions and the launch record are kept. */
+        SessionContext sessionContext = SessionContext.getInstance();
+        assertEquals(STORAGE_MAX_SESSIONS * RECORD_SIZE, mHistoryFile.length());
+        assertNull(sessionContext.getSessionAt(COMPACTION_THRESHOLD + 1 - STORAGE_MAX_SESSIONS + 1));
+        assertEquals(sessions.get(COMPACTION_THRESHOLD).getSessionId(), sessionContext.getSessionAt(COMPACTION_THRESHOLD + 1).getSessionId());
+    }
+
+    @Test
+    public void useStringStorageWithoutFilesDirectory() {
+        Constants.FILES_PATH = null;
+        SessionContext.getInstance().addSession(UUID.randomUUID());
+        verifyStatic(times(2));
+        SharedPreferencesManager.putStringSet(anyString(), anySetOf(String.class));
+        assertFalse(mHistoryFile.exists());
+    }
+}
@@ -73,6 +73,14 @@ public class DatabaseManagerTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
     }
 
+    @Test
+    public void deleteWhereFailed() {
+        DatabaseManager databaseManagerMock = getDatabaseManagerMock();
+        assertEquals(0, databaseManagerMock.deleteWhere("key = ?", new String[]{"value"}));
+        verifyStatic();
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
+    }
+
     @Test
     public void clearFailed() {
         DatabaseManager databaseManagerMock = getDatabaseManagerMock();